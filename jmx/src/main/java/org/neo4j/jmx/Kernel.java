@@ -53,4 +53,8 @@ public interface Kernel
 
     @Description( "Whether this is a read only instance" )
     boolean isReadOnly();
+
+    @Description( "The number of transactions committed in one phase with a single resource, "
+                  + "without writing to the transaction manager log" )
+    long getTxLogSkippedCommits();
 }
@@ -29,6 +29,7 @@ import javax.management.ObjectName;
 import org.neo4j.jmx.Kernel;
 import org.neo4j.kernel.KernelData;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.transaction.TxModule;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
 
 public class KernelBean extends Neo4jMBean implements Kernel
@@ -41,6 +42,7 @@ public class KernelBean extends Neo4jMBean implements Kernel
     private final String kernelVersion;
     private final String storeDir;
     private final ObjectName query;
+    private final TxModule txModule;
 
     KernelBean( KernelData kernel, ManagementSupport support ) throws NotCompliantMBeanException
     {
@@ -48,6 +50,7 @@ public class KernelBean extends Neo4jMBean implements Kernel
         NeoStoreXaDataSource datasource = getNeoDataSource( kernel );
         this.kernelVersion = kernel.version().toString();
         this.query = support.createMBeanQuery( kernel.instanceId() );
+        this.txModule = kernel.getConfig().getTxModule();
         storeCreationDate = datasource.getCreationTime();
         storeLogVersion = datasource.getCurrentLogVersion();
         isReadOnly = datasource.isReadOnly();
@@ -112,4 +115,9 @@ public class KernelBean extends Neo4jMBean implements Kernel
     {
         return storeDir;
     }
+
+    public long getTxLogSkippedCommits()
+    {
+        return txModule.getTxLogSkippedCommitCount();
+    }
 }
@@ -22,8 +22,8 @@ package org.neo4j.kernel;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
@@ -59,7 +59,7 @@ public class CommonFactories
     
     public static class DefaultIdGeneratorFactory implements IdGeneratorFactory
     {
-        private final Map<IdType, IdGenerator> generators = new HashMap<IdType, IdGenerator>();
+        private final Map<IdType, IdGenerator> generators = new ConcurrentHashMap<IdType, IdGenerator>();
         
         public IdGenerator open( String fileName, int grabSize, IdType idType,
                 long highestIdInUse )
@@ -81,6 +81,7 @@ public class Config
     public static final String ALLOW_STORE_UPGRADE = "allow_store_upgrade";
     public static final String STRING_BLOCK_SIZE = "string_block_size";
     public static final String ARRAY_BLOCK_SIZE = "array_block_size";
+    public static final String RECOVERY_THREADS = "recovery_threads";
     
     static final String LOAD_EXTENSIONS = "load_kernel_extensions";
 
@@ -21,8 +21,8 @@ package org.neo4j.kernel.impl.core;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import javax.transaction.Status;
@@ -40,6 +40,7 @@ import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeData;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongMap;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.RelIdIterator;
 
@@ -50,26 +51,41 @@ public class LockReleaser
 {
     private static Logger log = Logger.getLogger( LockReleaser.class.getName() );
 
-    private final ArrayMap<Transaction,List<LockElement>> lockMap = 
-        new ArrayMap<Transaction,List<LockElement>>( 5, true, true );
-    private final ArrayMap<Transaction,PrimitiveElement> cowMap = 
-        new ArrayMap<Transaction,PrimitiveElement>( 5, true, true );
+    // state is found through the thread running the transaction, txStates
+    // is only consulted the first time a thread sees a transaction
+    private final ConcurrentMap<Transaction,TxState> txStates = 
+        new ConcurrentHashMap<Transaction,TxState>();
+    private final ThreadLocal<TxState> currentTxState = 
+        new ThreadLocal<TxState>();
 
     private NodeManager nodeManager;
     private final LockManager lockManager;
     private final TransactionManager transactionManager;
     private PropertyIndexManager propertyIndexManager;
     
+    private static class TxState
+    {
+        final Transaction tx;
+        List<LockElement> locks = null;
+        PrimitiveElement cows = null;
+        volatile boolean removed = false;
+
+        TxState( Transaction tx )
+        {
+            this.tx = tx;
+        }
+    }
+
     private static class PrimitiveElement
     {
         PrimitiveElement()
         {
         }
 
-        final ArrayMap<Long,CowNodeElement> nodes =
-            new ArrayMap<Long,CowNodeElement>();
-        final ArrayMap<Long,CowRelElement> relationships =
-            new ArrayMap<Long,CowRelElement>();
+        final PrimitiveLongMap<CowNodeElement> nodes =
+            new PrimitiveLongMap<CowNodeElement>();
+        final PrimitiveLongMap<CowRelElement> relationships =
+            new PrimitiveLongMap<CowRelElement>();
     }
 
     private static class CowNodeElement
@@ -143,7 +159,7 @@ public class LockReleaser
         throws NotInTransactionException
     {
         Transaction tx = getTransaction();
-        List<LockElement> lockElements = lockMap.get( tx );
+        List<LockElement> lockElements = getLockElements( tx );
         if ( lockElements != null )
         {
             lockElements.add( new LockElement( resource, type ) );
@@ -164,7 +180,7 @@ public class LockReleaser
                 return;
             }
             lockElements = new ArrayList<LockElement>();
-            lockMap.put( tx, lockElements );
+            getTxState( tx, true ).locks = lockElements;
             lockElements.add( new LockElement( resource, type ) );
             // we have to have a synchronization hook for read only transaction,
             // write locks can be taken in read only transactions (ex: 
@@ -183,6 +199,86 @@ public class LockReleaser
         }
     }
 
+    private TxState getTxState( Transaction tx, boolean create )
+    {
+        if ( tx == null )
+        {
+            return null;
+        }
+        TxState state = currentTxState.get();
+        if ( state != null && state.tx == tx && !state.removed )
+        {
+            return state;
+        }
+        state = txStates.get( tx );
+        if ( state == null )
+        {
+            if ( !create )
+            {
+                return null;
+            }
+            state = new TxState( tx );
+            TxState existing = txStates.putIfAbsent( tx, state );
+            if ( existing != null )
+            {
+                state = existing;
+            }
+        }
+        currentTxState.set( state );
+        return state;
+    }
+
+    private void removeIfEmpty( TxState state )
+    {
+        if ( state.locks == null && state.cows == null )
+        {
+            state.removed = true;
+            txStates.remove( state.tx, state );
+            if ( currentTxState.get() == state )
+            {
+                currentTxState.remove();
+            }
+        }
+    }
+
+    private List<LockElement> getLockElements( Transaction tx )
+    {
+        TxState state = getTxState( tx, false );
+        return state != null ? state.locks : null;
+    }
+
+    private List<LockElement> removeLockElements( Transaction tx )
+    {
+        TxState state = getTxState( tx, false );
+        if ( state == null )
+        {
+            return null;
+        }
+        List<LockElement> lockElements = state.locks;
+        state.locks = null;
+        removeIfEmpty( state );
+        return lockElements;
+    }
+
+    private PrimitiveElement getCowElement( Transaction tx )
+    {
+        TxState state = getTxState( tx, false );
+        return state != null ? state.cows : null;
+    }
+
+    private PrimitiveElement removeCowElement( Transaction tx )
+    {
+        TxState state = getTxState( tx, false );
+        if ( state == null )
+        {
+            return null;
+        }
+        PrimitiveElement element = state.cows;
+        state.cows = null;
+        removeIfEmpty( state );
+        return element;
+    }
+
     private Transaction getTransaction()
     {
         try
@@ -198,10 +294,10 @@ public class LockReleaser
 
     public RelIdArray getCowRelationshipRemoveMap( NodeImpl node, String type )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getCowElement( getTransaction() );
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null && element.relationshipRemoveMap != null )
@@ -220,7 +316,7 @@ public class LockReleaser
             return getCowRelationshipRemoveMap( node, type );
         }
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
-        ArrayMap<Long,CowNodeElement> cowElements =
+        PrimitiveLongMap<CowNodeElement> cowElements =
             primitiveElement.nodes;
         CowNodeElement element = cowElements.get( node.id );
         if ( element == null )
@@ -243,10 +339,10 @@ public class LockReleaser
 
     public ArrayMap<String,RelIdArray> getCowRelationshipAddMap( NodeImpl node )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getCowElement( getTransaction() );
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null )
@@ -259,10 +355,10 @@ public class LockReleaser
 
     public RelIdArray getCowRelationshipAddMap( NodeImpl node, String type )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getCowElement( getTransaction() );
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null && element.relationshipAddMap != null )
@@ -281,7 +377,7 @@ public class LockReleaser
             return getCowRelationshipRemoveMap( node, type );
         }
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
-        ArrayMap<Long,CowNodeElement> cowElements =
+        PrimitiveLongMap<CowNodeElement> cowElements =
             primitiveElement.nodes;
         CowNodeElement element = cowElements.get( node.id );
         if ( element == null )
@@ -322,13 +418,13 @@ public class LockReleaser
     
     public boolean hasLocks( Transaction tx )
     {
-        List<LockElement> lockElements = lockMap.get( tx );
+        List<LockElement> lockElements = getLockElements( tx );
         return lockElements != null && !lockElements.isEmpty();
     }
     
     void releaseLocks( Transaction tx )
     {
-        List<LockElement> lockElements = lockMap.remove( tx );
+        List<LockElement> lockElements = removeLockElements( tx );
         if ( lockElements != null )
         {
             for ( LockElement lockElement : lockElements )
@@ -357,20 +453,18 @@ public class LockReleaser
 
     void releaseCows( Transaction cowTxId, int param )
     {
-        PrimitiveElement element = cowMap.remove( cowTxId );
+        PrimitiveElement element = removeCowElement( cowTxId );
         if ( element == null )
         {
             return;
         }
-        ArrayMap<Long,CowNodeElement> cowNodeElements = element.nodes;
-        Set<Entry<Long,CowNodeElement>> nodeEntrySet =
-            cowNodeElements.entrySet();
-        for ( Entry<Long,CowNodeElement> entry : nodeEntrySet )
+        PrimitiveLongMap<CowNodeElement> cowNodeElements = element.nodes;
+        for ( long nodeId : cowNodeElements.sortedKeys() )
         {
-            NodeImpl node = nodeManager.getNodeIfCached( entry.getKey() );
+            NodeImpl node = nodeManager.getNodeIfCached( nodeId );
             if ( node != null )
             {
-                CowNodeElement nodeElement = entry.getValue();
+                CowNodeElement nodeElement = cowNodeElements.get( nodeId );
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     node.commitRelationshipMaps( nodeElement.relationshipAddMap,
@@ -385,15 +479,13 @@ public class LockReleaser
                 }
             }
         }
-        ArrayMap<Long,CowRelElement> cowRelElements = element.relationships;
-        Set<Entry<Long,CowRelElement>> relEntrySet =
-            cowRelElements.entrySet();
-        for ( Entry<Long,CowRelElement> entry : relEntrySet )
+        PrimitiveLongMap<CowRelElement> cowRelElements = element.relationships;
+        for ( long relId : cowRelElements.sortedKeys() )
         {
-            RelationshipImpl rel = nodeManager.getRelIfCached( entry.getKey() );
+            RelationshipImpl rel = nodeManager.getRelIfCached( relId );
             if ( rel != null )
             {
-                CowRelElement relElement = entry.getValue();
+                CowRelElement relElement = cowRelElements.get( relId );
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     rel.commitPropertyMaps( relElement.propertyAddMap, 
@@ -406,14 +498,13 @@ public class LockReleaser
                 }
             }
         }
-        cowMap.remove( cowTxId );
     }
 
     // non thread safe but let exception be thrown instead of risking deadlock
     public void dumpLocks()
     {
         System.out.print( "Locks held: " );
-        java.util.Iterator<?> itr = lockMap.keySet().iterator();
+        java.util.Iterator<TxState> itr = txStates.values().iterator();
         if ( !itr.hasNext() )
         {
             System.out.println( "NONE" );
@@ -424,19 +515,23 @@ public class LockReleaser
         }
         while ( itr.hasNext() )
         {
-            Transaction transaction = (Transaction) itr.next();
-            System.out.println( "" + transaction + "->" + 
-                lockMap.get( transaction ).size() );
+            TxState state = itr.next();
+            List<LockElement> lockElements = state.locks;
+            if ( lockElements != null )
+            {
+                System.out.println( "" + state.tx + "->" + 
+                    lockElements.size() );
+            }
         }
     }
 
     public ArrayMap<Integer,PropertyData> getCowPropertyRemoveMap(
         Primitive primitive )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getCowElement( getTransaction() );
         if ( primitiveElement != null && primitive instanceof NodeImpl )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -452,7 +547,7 @@ public class LockReleaser
         else if ( primitiveElement != null && 
             primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Long,CowRelElement> cowElements =
+            PrimitiveLongMap<CowRelElement> cowElements =
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -471,10 +566,10 @@ public class LockReleaser
     public ArrayMap<Integer,PropertyData> getCowPropertyAddMap(
         Primitive primitive )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getCowElement( getTransaction() );
         if ( primitiveElement != null && primitive instanceof NodeImpl )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes; 
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -490,7 +585,7 @@ public class LockReleaser
         else if ( primitiveElement != null && 
             primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Long,CowRelElement> cowElements =
+            PrimitiveLongMap<CowRelElement> cowElements =
                 primitiveElement.relationships; 
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -513,11 +608,12 @@ public class LockReleaser
         {
             throw new NotInTransactionException();
         }
-        PrimitiveElement primitiveElement = cowMap.get( tx );
+        TxState state = getTxState( tx, true );
+        PrimitiveElement primitiveElement = state.cows;
         if ( primitiveElement == null )
         {
             primitiveElement = new PrimitiveElement();
-            cowMap.put( tx, primitiveElement );
+            state.cows = primitiveElement;
         }
         return primitiveElement;
     }
@@ -532,7 +628,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
         if ( primitive instanceof NodeImpl )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -553,7 +649,7 @@ public class LockReleaser
         }
         else if ( primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Long,CowRelElement> cowElements =
+            PrimitiveLongMap<CowRelElement> cowElements =
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -585,7 +681,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
         if ( primitive instanceof NodeImpl )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -606,7 +702,7 @@ public class LockReleaser
         }
         else if ( primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Long,CowRelElement> cowElements =
+            PrimitiveLongMap<CowRelElement> cowElements =
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -633,7 +729,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
         if ( primitive instanceof NodeImpl )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -650,7 +746,7 @@ public class LockReleaser
         }
         else if ( primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Long,CowRelElement> cowElements =
+            PrimitiveLongMap<CowRelElement> cowElements =
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -737,7 +833,7 @@ public class LockReleaser
     public TransactionData getTransactionData()
     {
         TransactionDataImpl result = new TransactionDataImpl();
-        PrimitiveElement element = cowMap.get( getTransaction() );
+        PrimitiveElement element = getCowElement( getTransaction() );
         populateCreatedNodes( element, result );
         if ( element == null )
         {
@@ -757,7 +853,7 @@ public class LockReleaser
     private void populateRelationshipPropertyEvents( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( long relId : element.relationships.keySet() )
+        for ( long relId : element.relationships.sortedKeys() )
         {
             CowRelElement relElement = element.relationships.get( relId );
             RelationshipProxy rel = new RelationshipProxy( relId, nodeManager );
@@ -800,7 +896,7 @@ public class LockReleaser
     private void populateNodeRelEvent( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( long nodeId : element.nodes.keySet() )
+        for ( long nodeId : element.nodes.sortedKeys() )
         {
             CowNodeElement nodeElement = element.nodes.get( nodeId );
             NodeProxy node = new NodeProxy( nodeId, nodeManager );
@@ -909,10 +1005,10 @@ public class LockReleaser
         {
             return false;
         }
-        PrimitiveElement primitiveElement = cowMap.get( tx );
+        PrimitiveElement primitiveElement = getCowElement( tx );
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            PrimitiveLongMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null && (element.relationshipAddMap != null || element.relationshipRemoveMap != null) )
@@ -540,6 +540,34 @@ public abstract class CommonAbstractStore
         windowPool.release( window );
     }
 
+    /**
+     * Returns <CODE>window</CODE> if it encapsulates <CODE>position</CODE>,
+     * otherwise it is released and a new window is acquired for
+     * <CODE>position</CODE>. Lets a caller writing records in id order go
+     * through each window once instead of once per record.
+     *
+     * @param window
+     *            The currently held window, or <CODE>null</CODE>
+     * @param position
+     *            The record position
+     * @param type
+     *            The operation type
+     * @return a persistence window encapsulating the record
+     */
+    protected PersistenceWindow acquireWindow( PersistenceWindow window,
+        long position, OperationType type )
+    {
+        if ( window != null )
+        {
+            if ( ((LockableWindow) window).encapsulates( position ) )
+            {
+                return window;
+            }
+            releaseWindow( window );
+        }
+        return acquireWindow( position, type );
+    }
+
     public void flushAll()
     {
         windowPool.flushAll();
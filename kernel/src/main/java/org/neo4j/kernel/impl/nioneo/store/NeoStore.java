@@ -25,6 +25,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.IdGeneratorFactory;
@@ -364,10 +369,14 @@ public class NeoStore extends AbstractStore
     @Override
     public void makeStoreOk()
     {
-        relTypeStore.makeStoreOk();
-        propStore.makeStoreOk();
-        relStore.makeStoreOk();
-        nodeStore.makeStoreOk();
+        // not ok means non clean shutdown, so id generators will be rebuilt
+        applyToSubStores( new SubStoreAction()
+        {
+            public void apply( CommonAbstractStore store )
+            {
+                store.makeStoreOk();
+            }
+        }, !getStoreOk() );
         super.makeStoreOk();
         isStarted = true;
     }
@@ -375,13 +384,82 @@ public class NeoStore extends AbstractStore
     @Override
     public void rebuildIdGenerators()
     {
-        relTypeStore.rebuildIdGenerators();
-        propStore.rebuildIdGenerators();
-        relStore.rebuildIdGenerators();
-        nodeStore.rebuildIdGenerators();
+        applyToSubStores( new SubStoreAction()
+        {
+            public void apply( CommonAbstractStore store )
+            {
+                store.rebuildIdGenerators();
+            }
+        }, true );
         super.rebuildIdGenerators();
     }
 
+    private static interface SubStoreAction
+    {
+        void apply( CommonAbstractStore store );
+    }
+
+    /**
+     * Applies <CODE>action</CODE> to the relationship type, property,
+     * relationship and node stores. Since they are backed by different files
+     * and id generators a rebuild of them can run in parallel, one thread
+     * per store.
+     */
+    private void applyToSubStores( final SubStoreAction action, boolean parallel )
+    {
+        CommonAbstractStore[] stores = new CommonAbstractStore[] {
+            relTypeStore, propStore, relStore, nodeStore };
+        if ( !parallel || Runtime.getRuntime().availableProcessors() < 2 )
+        {
+            for ( CommonAbstractStore store : stores )
+            {
+                action.apply( store );
+            }
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool( stores.length );
+        try
+        {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for ( final CommonAbstractStore store : stores )
+            {
+                results.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        action.apply( store );
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Object> result : results )
+            {
+                result.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new UnderlyingStorageException( "Interrupted while rebuilding id generators", e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new UnderlyingStorageException( e.getCause() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        logger.fine( "Rebuilt id generators of " + getStorageFileName() + " in " +
+                ( System.currentTimeMillis() - startTime ) + " ms" );
+    }
+
     public void updateIdGenerators()
     {
         this.updateHighId();
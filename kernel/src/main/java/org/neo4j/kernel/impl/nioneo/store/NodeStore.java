@@ -20,6 +20,7 @@
 package org.neo4j.kernel.impl.nioneo.store;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -129,7 +130,43 @@ public class NodeStore extends AbstractStore implements Store
         }
     }
 
+    /**
+     * Writes <CODE>records</CODE>, which should be sorted by id, holding on
+     * to the current window for as long as the following records fall in it.
+     *
+     * @param records the records to write
+     */
+    public void updateRecords( Collection<NodeRecord> records )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            for ( NodeRecord record : records )
+            {
+                window = acquireWindow( window, record.getId(),
+                    OperationType.WRITE );
+                updateRecord( record, window );
+            }
+        }
+        finally
+        {
+            if ( window != null )
+            {
+                releaseWindow( window );
+            }
+        }
+    }
+
     public boolean loadLightNode( long id )
+    {
+        return getLightNode( id ) != null;
+    }
+
+    /**
+     * @return the record of the node, or {@code null} if the node isn't in
+     * use, or the id is too high.
+     */
+    public NodeRecord getLightNode( long id )
     {
         PersistenceWindow window = null;
         try
@@ -139,17 +176,12 @@ public class NodeStore extends AbstractStore implements Store
         catch ( InvalidRecordException e )
         {
             // ok id to high
-            return false;
+            return null;
         }
 
         try
         {
-            NodeRecord record = getRecord( id, window, true );
-            if ( record == null )
-            {
-                return false;
-            }
-            return true;
+            return getRecord( id, window, true );
         }
         finally
         {
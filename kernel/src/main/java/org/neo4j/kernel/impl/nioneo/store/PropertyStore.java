@@ -243,21 +243,60 @@ public class PropertyStore extends AbstractStore implements Store
         }
         if ( !record.isLight() )
         {
-            for ( DynamicRecord valueRecord : record.getValueRecords() )
+            updateValueRecords( record );
+        }
+    }
+
+    private void updateValueRecords( PropertyRecord record )
+    {
+        for ( DynamicRecord valueRecord : record.getValueRecords() )
+        {
+            if ( valueRecord.getType() == PropertyType.STRING.intValue() )
             {
-                if ( valueRecord.getType() == PropertyType.STRING.intValue() )
-                {
-                    stringPropertyStore.updateRecord( valueRecord );
-                }
-                else if ( valueRecord.getType() == 
-                    PropertyType.ARRAY.intValue() )
-                {
-                    arrayPropertyStore.updateRecord( valueRecord );
-                }
-                else
-                {
-                    throw new InvalidRecordException( "Unknown dynamic record" );
-                }
+                stringPropertyStore.updateRecord( valueRecord );
+            }
+            else if ( valueRecord.getType() == 
+                PropertyType.ARRAY.intValue() )
+            {
+                arrayPropertyStore.updateRecord( valueRecord );
+            }
+            else
+            {
+                throw new InvalidRecordException( "Unknown dynamic record" );
+            }
+        }
+    }
+
+    /**
+     * Writes <CODE>records</CODE>, which should be sorted by id, holding on
+     * to the current window for as long as the following records fall in it.
+     *
+     * @param records the records to write
+     */
+    public void updateRecords( Collection<PropertyRecord> records )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            for ( PropertyRecord record : records )
+            {
+                window = acquireWindow( window, record.getId(),
+                    OperationType.WRITE );
+                updateRecord( record, window );
+            }
+        }
+        finally
+        {
+            if ( window != null )
+            {
+                releaseWindow( window );
+            }
+        }
+        for ( PropertyRecord record : records )
+        {
+            if ( !record.isLight() )
+            {
+                updateValueRecords( record );
             }
         }
     }
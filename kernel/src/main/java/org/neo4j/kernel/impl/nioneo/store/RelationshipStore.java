@@ -20,6 +20,7 @@
 package org.neo4j.kernel.impl.nioneo.store;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -154,6 +155,33 @@ public class RelationshipStore extends AbstractStore implements Store
         }
     }
 
+    /**
+     * Writes <CODE>records</CODE>, which should be sorted by id, holding on
+     * to the current window for as long as the following records fall in it.
+     *
+     * @param records the records to write
+     */
+    public void updateRecords( Collection<RelationshipRecord> records )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            for ( RelationshipRecord record : records )
+            {
+                window = acquireWindow( window, record.getId(),
+                    OperationType.WRITE );
+                updateRecord( record, window );
+            }
+        }
+        finally
+        {
+            if ( window != null )
+            {
+                releaseWindow( window );
+            }
+        }
+    }
+
     private void updateRecord( RelationshipRecord record, 
         PersistenceWindow window )
     {
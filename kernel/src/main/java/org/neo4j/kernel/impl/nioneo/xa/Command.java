@@ -179,6 +179,11 @@ abstract class Command extends XaCommand
             this.store = store;
         }
 
+        NodeRecord getRecord()
+        {
+            return record;
+        }
+
         @Override
         public void execute()
         {
@@ -274,6 +279,11 @@ abstract class Command extends XaCommand
             this.store = store;
         }
 
+        RelationshipRecord getRecord()
+        {
+            return record;
+        }
+
         @Override
         public void execute()
         {
@@ -500,6 +510,11 @@ abstract class Command extends XaCommand
             this.store = store;
         }
 
+        PropertyRecord getRecord()
+        {
+            return record;
+        }
+
         @Override
         public void execute()
         {
@@ -79,6 +79,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 
     private final LockManager lockManager;
     private final LockReleaser lockReleaser;
+    private final RecoveryExecutor recoveryExecutor;
     private final String storeDir;
     private final boolean readOnly;
 
@@ -115,6 +116,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         this.lockReleaser = (LockReleaser) config.get( LockReleaser.class );
         storeDir = (String) config.get( "store_dir" );
         msgLog = StringLogger.getLogger( storeDir );
+        recoveryExecutor = new RecoveryExecutor( getRecoveryThreads( config ) );
         String store = (String) config.get( "neo_store" );
         if ( !config.containsKey( REBUILD_IDGENERATORS_FAST ) )
         {
@@ -147,6 +149,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         }
         if ( !xaContainer.getResourceManager().hasRecoveredTransactions() )
         {
+            recoveryExecutor.shutdown();
             neoStore.makeStoreOk();
         }
         else
@@ -169,6 +172,16 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
     }
 
+    private static int getRecoveryThreads( Map<Object,Object> config )
+    {
+        String threads = (String) config.get( Config.RECOVERY_THREADS );
+        if ( threads != null )
+        {
+            return Integer.parseInt( threads );
+        }
+        return Math.min( 5, Runtime.getRuntime().availableProcessors() );
+    }
+
     private void autoCreatePath( String store ) throws IOException
     {
         String fileSeparator = System.getProperty( "file.separator" );
@@ -233,7 +246,11 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 //            neoStore.getPropertyStore().getIndexStore() );
 //    }
 
-    NeoStore getNeoStore()
+    /**
+     * Public for reading the stores directly, f.ex. when populating an index
+     * from existing data. Never write to them.
+     */
+    public NeoStore getNeoStore()
     {
         return neoStore;
     }
@@ -246,6 +263,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
             neoStore.flushAll();
         }
         xaContainer.close();
+        recoveryExecutor.shutdown();
         if ( logApplied )
         {
             neoStore.rebuildIdGenerators();
@@ -301,7 +319,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         public XaTransaction create( int identifier )
         {
             return new WriteTransaction( identifier, getLogicalLog(), neoStore,
-                lockReleaser, lockManager );
+                lockReleaser, lockManager, recoveryExecutor );
         }
 
         @Override
@@ -309,11 +327,15 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         {
             logger.fine( "Recovery complete, "
                 + "all transactions have been resolved" );
+            recoveryExecutor.shutdown();
             logger.fine( "Rebuilding id generators as needed. "
                 + "This can take a while for large stores..." );
+            long startTime = System.currentTimeMillis();
             neoStore.flushAll();
             neoStore.makeStoreOk();
             logger.fine( "Rebuild of id generators complete." );
+            msgLog.logMessage( "Flushed store and rebuilt id generators after recovery in " +
+                    ( System.currentTimeMillis() - startTime ) + " ms", true );
         }
 
         @Override
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+
+/**
+ * Applies groups of recovered commands in parallel. Each group must only
+ * touch records of a single store, the groups themselves may then be applied
+ * in any order since they don't share any records. Threads are started the
+ * first time they are needed and stopped when recovery is complete, so a
+ * clean start up never creates any.
+ */
+class RecoveryExecutor
+{
+    /**
+     * Recovered transactions with fewer commands than this are applied by
+     * the recovering thread, handing them off would cost more than it saves.
+     */
+    static final int PARALLEL_THRESHOLD = 500;
+
+    private final int threads;
+    private ExecutorService executor;
+
+    RecoveryExecutor( int threads )
+    {
+        this.threads = threads;
+    }
+
+    boolean shouldRunInParallel( int commandCount )
+    {
+        return threads > 1 && commandCount >= PARALLEL_THRESHOLD;
+    }
+
+    void runAll( List<Runnable> groups )
+    {
+        ExecutorService executor = getExecutor();
+        List<Future<Object>> results = new ArrayList<Future<Object>>( groups.size() );
+        for ( Runnable group : groups )
+        {
+            results.add( executor.submit( group, null ) );
+        }
+        try
+        {
+            for ( Future<Object> result : results )
+            {
+                result.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new UnderlyingStorageException( "Interrupted during recovery", e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new UnderlyingStorageException( e.getCause() );
+        }
+    }
+
+    private synchronized ExecutorService getExecutor()
+    {
+        if ( executor == null )
+        {
+            executor = Executors.newFixedThreadPool( threads, new ThreadFactory()
+            {
+                private int count = 0;
+
+                public synchronized Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "Recovery-" + ( ++count ) );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+        return executor;
+    }
+
+    synchronized void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+}
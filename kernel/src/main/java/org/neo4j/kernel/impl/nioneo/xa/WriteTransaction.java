@@ -62,6 +62,7 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongMap;
 import org.neo4j.kernel.impl.util.RelIdArray;
 
 /**
@@ -70,12 +71,14 @@ import org.neo4j.kernel.impl.util.RelIdArray;
  */
 class WriteTransaction extends XaTransaction
 {
-    private final Map<Long,NodeRecord> nodeRecords =
-        new HashMap<Long,NodeRecord>();
-    private final Map<Long,PropertyRecord> propertyRecords =
-        new HashMap<Long,PropertyRecord>();
-    private final Map<Long,RelationshipRecord> relRecords =
-        new HashMap<Long,RelationshipRecord>();
+    // iterated in id order so commands are created in the order the
+    // records are laid out in the stores
+    private final PrimitiveLongMap<NodeRecord> nodeRecords =
+        new PrimitiveLongMap<NodeRecord>();
+    private final PrimitiveLongMap<PropertyRecord> propertyRecords =
+        new PrimitiveLongMap<PropertyRecord>();
+    private final PrimitiveLongMap<RelationshipRecord> relRecords =
+        new PrimitiveLongMap<RelationshipRecord>();
     private final Map<Integer,RelationshipTypeRecord> relTypeRecords = 
         new HashMap<Integer,RelationshipTypeRecord>();
     private final Map<Integer,PropertyIndexRecord> propIndexRecords = 
@@ -98,14 +101,17 @@ class WriteTransaction extends XaTransaction
 
     private final LockReleaser lockReleaser;
     private final LockManager lockManager;
+    private final RecoveryExecutor recoveryExecutor;
 
     WriteTransaction( int identifier, XaLogicalLog log, NeoStore neoStore,
-        LockReleaser lockReleaser, LockManager lockManager )
+        LockReleaser lockReleaser, LockManager lockManager,
+        RecoveryExecutor recoveryExecutor )
     {
         super( identifier, log );
         this.neoStore = neoStore;
         this.lockReleaser = lockReleaser;
         this.lockManager = lockManager;
+        this.recoveryExecutor = recoveryExecutor;
     }
 
     public boolean isReadOnly()
@@ -426,18 +432,25 @@ class WriteTransaction extends XaTransaction
             {
                 command.execute();
             }
-            // nodes
+            // nodes, relationships and properties are written in id order
+            // through one window acquisition per window touched
             java.util.Collections.sort( nodeCommands, sorter );
+            List<NodeRecord> nodes = 
+                new ArrayList<NodeRecord>( nodeCommands.size() );
             for ( Command.NodeCommand command : nodeCommands )
             {
-                command.execute();
+                nodes.add( command.getRecord() );
             }
+            getNodeStore().updateRecords( nodes );
             // relationships
             java.util.Collections.sort( relCommands, sorter );
+            List<RelationshipRecord> rels = 
+                new ArrayList<RelationshipRecord>( relCommands.size() );
             for ( Command.RelationshipCommand command : relCommands )
             {
-                command.execute();
+                rels.add( command.getRecord() );
             }
+            getRelationshipStore().updateRecords( rels );
             java.util.Collections.sort( propIndexCommands, sorter );
             for ( Command.PropertyIndexCommand command : propIndexCommands )
             {
@@ -445,10 +458,13 @@ class WriteTransaction extends XaTransaction
             }
             // properties
             java.util.Collections.sort( propCommands, sorter );
+            List<PropertyRecord> props = 
+                new ArrayList<PropertyRecord>( propCommands.size() );
             for ( Command.PropertyCommand command : propCommands )
             {
-                command.execute();
+                props.add( command.getRecord() );
             }
+            getPropertyStore().updateRecords( props );
             
             neoStore.setLastCommittedTx( getCommitTxId() );
             if ( !isRecovered() )
@@ -477,41 +493,16 @@ class WriteTransaction extends XaTransaction
         try
         {
             committed = true;
-            CommandSorter sorter = new CommandSorter();
-            // property index
-            java.util.Collections.sort( propIndexCommands, sorter );
-            for ( Command.PropertyIndexCommand command : propIndexCommands )
-            {
-                command.execute();
-                addPropertyIndexCommand( (int) command.getKey() );
-            }
-            // properties
-            java.util.Collections.sort( propCommands, sorter );
-            for ( Command.PropertyCommand command : propCommands )
-            {
-                command.execute();
-                removePropertyFromCache( command );
-            }
-            // reltypes
-            java.util.Collections.sort( relTypeCommands, sorter );
-            for ( Command.RelationshipTypeCommand command : relTypeCommands )
-            {
-                command.execute();
-                addRelationshipType( (int) command.getKey() );
-            }
-            // relationships
-            java.util.Collections.sort( relCommands, sorter );
-            for ( Command.RelationshipCommand command : relCommands )
+            int commandCount = propIndexCommands.size() + propCommands.size() +
+                relTypeCommands.size() + relCommands.size() + nodeCommands.size();
+            if ( recoveryExecutor != null &&
+                recoveryExecutor.shouldRunInParallel( commandCount ) )
             {
-                command.execute();
-                removeRelationshipFromCache( command.getKey() );
+                executeRecoveredInParallel();
             }
-            // nodes
-            java.util.Collections.sort( nodeCommands, sorter );
-            for ( Command.NodeCommand command : nodeCommands )
+            else
             {
-                command.execute();
-                removeNodeFromCache( command.getKey() );
+                executeRecovered();
             }
             neoStore.setRecoveredStatus( true );
             try
@@ -543,6 +534,102 @@ class WriteTransaction extends XaTransaction
             relTypeCommands.clear();
         }
     }
+
+    private void executeRecovered()
+    {
+        CommandSorter sorter = new CommandSorter();
+        // property index
+        java.util.Collections.sort( propIndexCommands, sorter );
+        for ( Command.PropertyIndexCommand command : propIndexCommands )
+        {
+            command.execute();
+            addPropertyIndexCommand( (int) command.getKey() );
+        }
+        // properties
+        java.util.Collections.sort( propCommands, sorter );
+        for ( Command.PropertyCommand command : propCommands )
+        {
+            command.execute();
+            removePropertyFromCache( command );
+        }
+        // reltypes
+        java.util.Collections.sort( relTypeCommands, sorter );
+        for ( Command.RelationshipTypeCommand command : relTypeCommands )
+        {
+            command.execute();
+            addRelationshipType( (int) command.getKey() );
+        }
+        // relationships
+        java.util.Collections.sort( relCommands, sorter );
+        for ( Command.RelationshipCommand command : relCommands )
+        {
+            command.execute();
+            removeRelationshipFromCache( command.getKey() );
+        }
+        // nodes
+        java.util.Collections.sort( nodeCommands, sorter );
+        for ( Command.NodeCommand command : nodeCommands )
+        {
+            command.execute();
+            removeNodeFromCache( command.getKey() );
+        }
+    }
+
+    /**
+     * Executes the commands of each store in a thread of its own, records
+     * of the same store are still written in id order. Property index and
+     * relationship type commands are few and are executed up front by this
+     * thread, since recovered property commands toggle the recovered flag of
+     * the property index store they share. The caches are updated afterwards
+     * by this thread since both property and primitive commands may evict the
+     * same entity.
+     */
+    private void executeRecoveredInParallel()
+    {
+        sortAndExecute( propIndexCommands ).run();
+        sortAndExecute( relTypeCommands ).run();
+        List<Runnable> storeGroups = new ArrayList<Runnable>();
+        storeGroups.add( sortAndExecute( propCommands ) );
+        storeGroups.add( sortAndExecute( relCommands ) );
+        storeGroups.add( sortAndExecute( nodeCommands ) );
+        recoveryExecutor.runAll( storeGroups );
+
+        for ( Command.PropertyIndexCommand command : propIndexCommands )
+        {
+            addPropertyIndexCommand( (int) command.getKey() );
+        }
+        for ( Command.PropertyCommand command : propCommands )
+        {
+            removePropertyFromCache( command );
+        }
+        for ( Command.RelationshipTypeCommand command : relTypeCommands )
+        {
+            addRelationshipType( (int) command.getKey() );
+        }
+        for ( Command.RelationshipCommand command : relCommands )
+        {
+            removeRelationshipFromCache( command.getKey() );
+        }
+        for ( Command.NodeCommand command : nodeCommands )
+        {
+            removeNodeFromCache( command.getKey() );
+        }
+    }
+
+    private static Runnable sortAndExecute( final List<? extends Command> commands )
+    {
+        return new Runnable()
+        {
+            public void run()
+            {
+                java.util.Collections.sort( commands, new CommandSorter() );
+                for ( Command command : commands )
+                {
+                    command.execute();
+                }
+            }
+        };
+    }
     
 
     private void removePropertyFromCache( PropertyCommand command )
@@ -130,28 +130,13 @@ class TransactionImpl implements Transaction
             {
                 if ( resourceList.size() == 0 )
                 {
-                    if ( !globalStartRecordWritten )
-                    {
-                        txManager.writeStartRecord( globalId );
-                        globalStartRecordWritten = true;
-                    }
-                    // 
+                    // No tx log records are written until a second branch
+                    // is enlisted, a transaction with a single branch is
+                    // committed in one phase and recovered by its resource
                     byte branchId[] = txManager.getBranchId( xaRes );
                     Xid xid = new XidImpl( globalId, branchId );
                     resourceList.add( new ResourceElement( xid, xaRes ) );
                     xaRes.start( xid, XAResource.TMNOFLAGS );
-                    try
-                    {
-                        txManager.getTxLog().addBranch( globalId, branchId );
-                    }
-                    catch ( IOException e )
-                    {
-                        e.printStackTrace();
-                        log.severe( "Error writing transaction log" );
-                        txManager.setTmNotOk();
-                        throw new SystemException( "TM encountered a problem, "
-                            + " error writing transaction log," + e );
-                    }
                     return true;
                 }
                 Xid sameRmXid = null;
@@ -190,6 +175,7 @@ class TransactionImpl implements Transaction
                     // ResourceElement re = resourceList.getFirst();
                     byte branchId[] = txManager.getBranchId( xaRes );
                     Xid xid = new XidImpl( globalId, branchId );
+                    writeStartRecordAndEnlistedBranches();
                     resourceList.add( new ResourceElement( xid, xaRes ) );
                     xaRes.start( xid, XAResource.TMNOFLAGS );
                     try
@@ -226,6 +212,42 @@ class TransactionImpl implements Transaction
             + txManager.getTxStatusAsString( status ) );
     }
 
+    /**
+     * Called when the transaction is about to get its second branch, writes
+     * the start record and the branches enlisted so far to the tx log so
+     * that the transaction can be recovered by the {@link TxManager}.
+     */
+    private void writeStartRecordAndEnlistedBranches() throws SystemException
+    {
+        if ( globalStartRecordWritten )
+        {
+            return;
+        }
+        txManager.writeStartRecord( globalId );
+        globalStartRecordWritten = true;
+        List<Xid> writtenXids = new ArrayList<Xid>();
+        try
+        {
+            for ( ResourceElement re : resourceList )
+            {
+                if ( !writtenXids.contains( re.getXid() ) )
+                {
+                    writtenXids.add( re.getXid() );
+                    txManager.getTxLog().addBranch( globalId,
+                        re.getXid().getBranchQualifier() );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+            log.severe( "Error writing transaction log" );
+            txManager.setTmNotOk();
+            throw new SystemException( "TM encountered a problem, "
+                + " error writing transaction log," + e );
+        }
+    }
+
     public synchronized boolean delistResource( XAResource xaRes, int flag )
         throws IllegalStateException
     {
@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -51,7 +52,6 @@ import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.helpers.UTF8;
 import org.neo4j.kernel.impl.core.KernelPanicEventGenerator;
 import org.neo4j.kernel.impl.transaction.xaframework.XaResource;
-import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 /**
@@ -63,7 +63,10 @@ public class TxManager extends AbstractTransactionManager
 {
     private static Logger log = Logger.getLogger( TxManager.class.getName() );
 
-    private ArrayMap<Thread,TransactionImpl> txThreadMap;
+    // the transaction of the current thread is found through currentTx,
+    // txThreadMap is only used to count and list all active transactions
+    private Map<Thread,TransactionImpl> txThreadMap;
+    private ThreadLocal<TransactionImpl> currentTx;
 
     private final String txLogDir;
     private static String separator = File.separator;
@@ -82,6 +85,7 @@ public class TxManager extends AbstractTransactionManager
     private final AtomicInteger startedTxCount = new AtomicInteger( 0 );
     private final AtomicInteger comittedTxCount = new AtomicInteger( 0 );
     private final AtomicInteger rolledBackTxCount = new AtomicInteger( 0 );
+    private final AtomicInteger txLogSkippedCommitCount = new AtomicInteger( 0 );
     private int peakConcurrentTransactions = 0;
     
     private final StringLogger msgLog;
@@ -122,7 +126,8 @@ public class TxManager extends AbstractTransactionManager
     public void init( XaDataSourceManager xaDsManagerToUse )
     {
         this.xaDsManager = xaDsManagerToUse;
-        txThreadMap = new ArrayMap<Thread,TransactionImpl>( 5, true, true );
+        txThreadMap = new ConcurrentHashMap<Thread,TransactionImpl>();
+        currentTx = new ThreadLocal<TransactionImpl>();
         logSwitcherFileName = txLogDir + separator + "active_tx_log";
         txLog1FileName = "tm_tx_log.1";
         txLog2FileName = "tm_tx_log.2";
@@ -517,14 +522,14 @@ public class TxManager extends AbstractTransactionManager
         }
 
         Thread thread = Thread.currentThread();
-        TransactionImpl tx = txThreadMap.get( thread );
+        TransactionImpl tx = getCurrentTx( thread );
         if ( tx != null )
         {
             throw new NotSupportedException(
                 "Nested transactions not supported" );
         }
         tx = new TransactionImpl( this );
-        txThreadMap.put( thread, tx );
+        associate( thread, tx );
         int concurrentTxCount = txThreadMap.size();
         if ( concurrentTxCount > peakConcurrentTransactions )
         {
@@ -560,7 +565,7 @@ public class TxManager extends AbstractTransactionManager
                 + "please perform neccesary action (tx recovery/restart)" );
         }
         Thread thread = Thread.currentThread();
-        TransactionImpl tx = txThreadMap.get( thread );
+        TransactionImpl tx = getCurrentTx( thread );
         if ( tx == null )
         {
             throw new IllegalStateException( "Not in transaction" );
@@ -581,6 +586,11 @@ public class TxManager extends AbstractTransactionManager
             if ( tx.getStatus() == Status.STATUS_ACTIVE )
             {
                 comittedTxCount.incrementAndGet();
+                if ( !tx.isGlobalStartRecordWritten()
+                    && tx.getResourceCount() > 0 )
+                {
+                    txLogSkippedCommitCount.incrementAndGet();
+                }
                 commit( thread, tx );
             }
             else if ( tx.getStatus() == Status.STATUS_MARKED_ROLLBACK )
@@ -665,7 +675,7 @@ public class TxManager extends AbstractTransactionManager
                         + e.errorCode );
             }
             tx.doAfterCompletion();
-            txThreadMap.remove( thread );
+            disassociate( thread );
             try
             {
                 if ( tx.isGlobalStartRecordWritten() )
@@ -696,7 +706,7 @@ public class TxManager extends AbstractTransactionManager
             }
         }
         tx.doAfterCompletion();
-        txThreadMap.remove( thread );
+        disassociate( thread );
         try
         {
             if ( tx.isGlobalStartRecordWritten() )
@@ -735,7 +745,7 @@ public class TxManager extends AbstractTransactionManager
         }
 
         tx.doAfterCompletion();
-        txThreadMap.remove( thread );
+        disassociate( thread );
         try
         {
             if ( tx.isGlobalStartRecordWritten() )
@@ -764,7 +774,7 @@ public class TxManager extends AbstractTransactionManager
                 + "please perform neccesary action (tx recovery/restart)" );
         }
         Thread thread = Thread.currentThread();
-        TransactionImpl tx = txThreadMap.get( thread );
+        TransactionImpl tx = getCurrentTx( thread );
         if ( tx == null )
         {
             throw new IllegalStateException( "Not in transaction" );
@@ -798,7 +808,7 @@ public class TxManager extends AbstractTransactionManager
                         + " ---> error code for rollback: " + e.errorCode );
                 }
                 tx.doAfterCompletion();
-                txThreadMap.remove( thread );
+                disassociate( thread );
                 try
                 {
                     if ( tx.isGlobalStartRecordWritten() )
@@ -834,7 +844,7 @@ public class TxManager extends AbstractTransactionManager
     public int getStatus()
     {
         Thread thread = Thread.currentThread();
-        TransactionImpl tx = txThreadMap.get( thread );
+        TransactionImpl tx = getCurrentTx( thread );
         if ( tx != null )
         {
             return tx.getStatus();
@@ -844,7 +854,7 @@ public class TxManager extends AbstractTransactionManager
 
     public Transaction getTransaction()
     {
-        return txThreadMap.get( Thread.currentThread() );
+        return currentTx.get();
     }
 
     public void resume( Transaction tx ) throws IllegalStateException,
@@ -856,7 +866,7 @@ public class TxManager extends AbstractTransactionManager
                 + "please perform neccesary action (tx recovery/restart)" );
         }
         Thread thread = Thread.currentThread();
-        if ( txThreadMap.get( thread ) != null )
+        if ( getCurrentTx( thread ) != null )
         {
             throw new IllegalStateException( "Transaction already associated" );
         }
@@ -866,7 +876,7 @@ public class TxManager extends AbstractTransactionManager
             if ( txImpl.getStatus() != Status.STATUS_NO_TRANSACTION )
             {
                 txImpl.markAsActive();
-                txThreadMap.put( thread, txImpl );
+                associate( thread, txImpl );
             }
             // generate pro-active event resume
         }
@@ -880,7 +890,7 @@ public class TxManager extends AbstractTransactionManager
                 + "please perform neccesary action (tx recovery/restart)" );
         }
         // check for ACTIVE/MARKED_ROLLBACK?
-        TransactionImpl tx = txThreadMap.remove( Thread.currentThread() );
+        TransactionImpl tx = disassociate( Thread.currentThread() );
         if ( tx != null )
         {
             // generate pro-active event suspend
@@ -897,7 +907,7 @@ public class TxManager extends AbstractTransactionManager
                 + "please perform neccesary action (tx recovery/restart)" );
         }
         Thread thread = Thread.currentThread();
-        TransactionImpl tx = txThreadMap.get( thread );
+        TransactionImpl tx = getCurrentTx( thread );
         if ( tx == null )
         {
             throw new IllegalStateException( "Not in transaction" );
@@ -987,6 +997,26 @@ public class TxManager extends AbstractTransactionManager
         return -1;
     }
     
+    private TransactionImpl getCurrentTx( Thread thread )
+    {
+        assert thread == Thread.currentThread();
+        return currentTx.get();
+    }
+
+    private void associate( Thread thread, TransactionImpl tx )
+    {
+        assert thread == Thread.currentThread();
+        currentTx.set( tx );
+        txThreadMap.put( thread, tx );
+    }
+
+    private TransactionImpl disassociate( Thread thread )
+    {
+        assert thread == Thread.currentThread();
+        currentTx.remove();
+        return txThreadMap.remove( thread );
+    }
+
     public int getStartedTxCount()
     {
         return startedTxCount.get();
@@ -1002,6 +1032,15 @@ public class TxManager extends AbstractTransactionManager
         return rolledBackTxCount.get();
     }
     
+    /**
+     * @return the number of transactions committed with a single resource
+     * that never had to write to (or force) the tx log.
+     */
+    public int getTxLogSkippedCommitCount()
+    {
+        return txLogSkippedCommitCount.get();
+    }
+
     public int getActiveTxCount()
     {
         return txThreadMap.size();
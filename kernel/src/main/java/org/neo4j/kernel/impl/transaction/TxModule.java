@@ -225,6 +225,15 @@ public class TxModule
         return 0;
     }
 
+    public int getTxLogSkippedCommitCount()
+    {
+        if ( txManager instanceof TxManager )
+        {
+            return ((TxManager) txManager).getTxLogSkippedCommitCount();
+        }
+        return 0;
+    }
+
     public int getActiveTxCount()
     {
         if ( txManager instanceof TxManager )
@@ -265,7 +265,8 @@ public class LogIoUtils
         subdir.mkdir();
         for ( File file : storeDir.listFiles() )
         {
-            if ( file.getName().contains( "nioneo_logical.log.v" ) )
+            if ( file.getName().contains( "nioneo_logical.log.v" ) ||
+                 file.getName().equals( "nioneo_logical.log" + TxPositionIndex.FILE_SUFFIX ) )
             {
                 file.renameTo( new File( subdir, file.getName() ) );
             }
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a {@link FileChannel} sequentially through a large buffer so that
+ * parsing log entries, which is done a few bytes at a time, doesn't turn
+ * into one system call per field. The underlying channel will be positioned
+ * ahead of what has been consumed, use {@link #position()} to get the
+ * logical position of the next byte to be read.
+ * <p>
+ * Reads will fill the destination buffer as far as the file allows, so a
+ * short read means that the end of the file has been reached.
+ */
+class ReadAheadLogChannel implements ReadableByteChannel
+{
+    static final int DEFAULT_READ_AHEAD_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer readAhead;
+    private long position;
+
+    ReadAheadLogChannel( FileChannel channel, int readAheadSize ) throws IOException
+    {
+        this.channel = channel;
+        this.position = channel.position();
+        this.readAhead = ByteBuffer.allocate( readAheadSize );
+        readAhead.limit( 0 );
+    }
+
+    public int read( ByteBuffer dst ) throws IOException
+    {
+        int total = 0;
+        while ( dst.hasRemaining() )
+        {
+            if ( !readAhead.hasRemaining() && !fill() )
+            {
+                break;
+            }
+            int count = Math.min( dst.remaining(), readAhead.remaining() );
+            ByteBuffer chunk = readAhead.duplicate();
+            chunk.limit( chunk.position() + count );
+            dst.put( chunk );
+            readAhead.position( readAhead.position() + count );
+            total += count;
+        }
+        position += total;
+        return total == 0 && dst.hasRemaining() ? -1 : total;
+    }
+
+    private boolean fill() throws IOException
+    {
+        readAhead.clear();
+        int read = channel.read( readAhead );
+        readAhead.flip();
+        return read > 0;
+    }
+
+    /**
+     * @return the position in the file of the next byte to be returned by
+     * {@link #read(ByteBuffer)}.
+     */
+    long position()
+    {
+        return position;
+    }
+
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    /**
+     * Does nothing, the underlying channel is owned by whoever created this
+     * channel and should be closed by it.
+     */
+    public void close() throws IOException
+    {
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog.TxPosition;
+
+/**
+ * A file next to the logical logs mapping committed tx ids to where the
+ * transaction starts in the logs. Records have a fixed size and are placed
+ * at an offset calculated from the tx id, so both looking up and adding a
+ * transaction is a single positioned read or write.
+ * <p>
+ * The index isn't forced to disk, it is only a hint. A record is only
+ * returned if it was written for the requested tx id, a missing or torn
+ * record means that the caller has to find the transaction by scanning the
+ * logs. Not thread safe, {@link XaLogicalLog} synchronizes access to it.
+ *
+ * <pre>
+ * header: [format version 8b][base tx id 8b]
+ * record: [tx id 8b][log version 8b][start position 8b][identifier 4b][master id 4b]
+ * </pre>
+ */
+class TxPositionIndex
+{
+    static final String FILE_SUFFIX = ".txindex";
+
+    private static final long FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+
+    private final String fileName;
+    private final ByteBuffer buffer = ByteBuffer.allocate( RECORD_SIZE );
+    private FileChannel channel;
+    private long baseTxId;
+
+    TxPositionIndex( String fileName )
+    {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Opens the index, creating it if it doesn't exist or has an unknown
+     * format.
+     *
+     * @param baseTxIdIfNew the lowest tx id a new index should be able to
+     * hold, transactions before it can't be added to the index.
+     */
+    void open( long baseTxIdIfNew ) throws IOException
+    {
+        channel = new RandomAccessFile( fileName, "rw" ).getChannel();
+        if ( channel.size() >= HEADER_SIZE )
+        {
+            buffer.clear();
+            buffer.limit( HEADER_SIZE );
+            readFully( 0 );
+            if ( buffer.getLong() == FORMAT_VERSION )
+            {
+                baseTxId = buffer.getLong();
+                return;
+            }
+        }
+        channel.truncate( 0 );
+        baseTxId = Math.max( 1, baseTxIdIfNew );
+        buffer.clear();
+        buffer.putLong( FORMAT_VERSION ).putLong( baseTxId );
+        buffer.flip();
+        channel.write( buffer, 0 );
+    }
+
+    void put( long txId, TxPosition position ) throws IOException
+    {
+        if ( txId < baseTxId )
+        {
+            return;
+        }
+        buffer.clear();
+        buffer.putLong( txId );
+        buffer.putLong( position.version );
+        buffer.putLong( position.position );
+        buffer.putInt( position.identifier );
+        buffer.putInt( position.masterId );
+        buffer.flip();
+        long offset = offsetOf( txId );
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer, offset + buffer.position() );
+        }
+    }
+
+    /**
+     * @return the position of {@code txId} or {@code null} if it isn't in
+     * the index.
+     */
+    TxPosition get( long txId ) throws IOException
+    {
+        if ( txId < baseTxId )
+        {
+            return null;
+        }
+        long offset = offsetOf( txId );
+        if ( offset + RECORD_SIZE > channel.size() )
+        {
+            return null;
+        }
+        buffer.clear();
+        if ( !readFully( offset ) || buffer.getLong() != txId )
+        {
+            return null;
+        }
+        long version = buffer.getLong();
+        long position = buffer.getLong();
+        int identifier = buffer.getInt();
+        int masterId = buffer.getInt();
+        return new TxPosition( version, masterId, identifier, position );
+    }
+
+    void close() throws IOException
+    {
+        if ( channel != null )
+        {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private long offsetOf( long txId )
+    {
+        return HEADER_SIZE + ( txId - baseTxId ) * RECORD_SIZE;
+    }
+
+    private boolean readFully( long offset ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, offset + buffer.position() ) <= 0 )
+            {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
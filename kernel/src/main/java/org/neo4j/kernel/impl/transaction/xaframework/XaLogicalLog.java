@@ -78,6 +78,7 @@ public class XaLogicalLog
     private final Map<Integer,XaTransaction> recoveredTxMap =
         new HashMap<Integer,XaTransaction>();
     private int nextIdentifier = 1;
+    private int recoveredCommitCount = 0;
     private boolean scanIsComplete = false;
     private boolean nonCleanShutdown = false;
 
@@ -98,6 +99,7 @@ public class XaLogicalLog
 
     private final LruCache<Long, TxPosition> txStartPositionCache =
         new LruCache<Long, TxPosition>( "Tx start position cache", 10000, null );
+    private TxPositionIndex txPositionIndex;
 
 
     XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,
@@ -356,8 +358,60 @@ public class XaLogicalLog
         {
             throw new RuntimeException( "StartEntry.position is " + startEntry.getStartPosition() );
         }
-        txStartPositionCache.put( txId, new TxPosition( logVersion, masterId, startEntry.getIdentifier(),
-                startEntry.getStartPosition() ) );
+        TxPosition position = new TxPosition( logVersion, masterId, startEntry.getIdentifier(),
+                startEntry.getStartPosition() );
+        txStartPositionCache.put( txId, position );
+        try
+        {
+            getTxPositionIndex().put( txId, position );
+        }
+        catch ( IOException e )
+        {
+            // The index is only a hint, lookups will fall back to scanning the logs
+            msgLog.logMessage( "Unable to add txId=" + txId + " to tx position index", e );
+        }
+    }
+
+    private TxPositionIndex getTxPositionIndex() throws IOException
+    {
+        if ( txPositionIndex == null )
+        {
+            TxPositionIndex index = new TxPositionIndex( fileName + TxPositionIndex.FILE_SUFFIX );
+            index.open( getFirstTxIdInOldestLog() );
+            txPositionIndex = index;
+        }
+        return txPositionIndex;
+    }
+
+    private long getFirstTxIdInOldestLog() throws IOException
+    {
+        long version = logVersion;
+        while ( version > 0 && hasLogicalLog( version - 1 ) )
+        {
+            version--;
+        }
+        if ( version == logVersion )
+        {
+            return previousLogLastCommittedTx + 1;
+        }
+        ReadableByteChannel log = getLogicalLog( version );
+        try
+        {
+            return readAndAssertLogHeader( ByteBuffer.allocate( 16 ), log, version )[1] + 1;
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    private void closeTxPositionIndex() throws IOException
+    {
+        if ( txPositionIndex != null )
+        {
+            txPositionIndex.close();
+            txPositionIndex = null;
+        }
     }
 
     // [DONE][identifier]
@@ -417,7 +471,6 @@ public class XaLogicalLog
     public synchronized void writeCommand( XaCommand command, int identifier )
         throws IOException
     {
-        checkLogRotation();
         assert xidIdentMap.get( identifier ) != null;
         LogIoUtils.writeCommand( writeBuffer, identifier, command );
     }
@@ -508,6 +561,11 @@ public class XaLogicalLog
             XaTransaction xaTx = xaRm.getXaTransaction( xid );
             xaTx.setCommitTxId( txId );
             xaRm.injectOnePhaseCommit( xid );
+            recoveredCommitCount++;
+            if ( startEntry.getStartPosition() != -1 )
+            {
+                cacheTxStartPosition( txId, commit.getMasterId(), startEntry );
+            }
             msgLog.logMessage( "Injected one phase commit, txId=" + commit.getTxId(), true );
         }
         catch ( XAException e )
@@ -551,6 +609,11 @@ public class XaLogicalLog
             XaTransaction xaTx = xaRm.getXaTransaction( xid );
             xaTx.setCommitTxId( txId );
             xaRm.injectTwoPhaseCommit( xid );
+            recoveredCommitCount++;
+            if ( startEntry.getStartPosition() != -1 )
+            {
+                cacheTxStartPosition( txId, commit.getMasterId(), startEntry );
+            }
             msgLog.logMessage( "Injected two phase commit, txId=" + commit.getTxId(), true );
         }
         catch ( XAException e )
@@ -573,7 +636,11 @@ public class XaLogicalLog
         xaTx.injectCommand( command );
     }
 
-    private void checkLogRotation() throws IOException
+    /**
+     * Rotates the log if it has grown past its target size, called by the
+     * {@link XaResourceManager} before a transaction is committed.
+     */
+    synchronized void checkLogRotation() throws IOException
     {
         if ( autoRotate &&
             writeBuffer.getFileChannelPosition() >= rotateAtSize )
@@ -676,12 +743,14 @@ public class XaLogicalLog
             writeBuffer.force();
             writeBuffer = null;
             fileChannel.close();
+            closeTxPositionIndex();
             log.info( "Dirty log: " + fileName + "." + currentLog +
                 " now closed. Recovery will be started automatically next " +
                 "time it is opened." );
             return;
         }
         releaseCurrentLogFile();
+        closeTxPositionIndex();
         char logWas = currentLog;
         if ( currentLog != CLEAN ) // again special case, see above
         {
@@ -755,20 +824,26 @@ public class XaLogicalLog
             lastCommittedTx + "]" );
         msgLog.logMessage( "[" + logFileName + "] logVersion=" + logVersion +
                 " with committed tx=" + lastCommittedTx, true );
+        long recoveryStartTime = System.currentTimeMillis();
+        recoveredCommitCount = 0;
         long logEntriesFound = 0;
-        long lastEntryPos = fileChannel.position();
+        ReadAheadLogChannel recoveryChannel = new ReadAheadLogChannel(
+                fileChannel, ReadAheadLogChannel.DEFAULT_READ_AHEAD_SIZE );
+        long lastEntryPos = recoveryChannel.position();
         LogEntry entry;
-        while ( (entry = readEntry()) != null )
+        while ( (entry = readEntry( recoveryChannel )) != null )
         {
             applyEntry( entry );
             logEntriesFound++;
-            lastEntryPos = fileChannel.position();
+            lastEntryPos = recoveryChannel.position();
         }
         // make sure we overwrite any broken records
         fileChannel.position( lastEntryPos );
 
         msgLog.logMessage( "[" + logFileName + "] entries found=" + logEntriesFound +
-                " lastEntryPos=" + lastEntryPos, true  );
+                " lastEntryPos=" + lastEntryPos + ", recovered " + recoveredCommitCount +
+                " committed transactions in " + ( System.currentTimeMillis() - recoveryStartTime ) +
+                " ms", true );
 
         // zero out the slow way since windows don't support truncate very well
         buffer.clear();
@@ -797,7 +872,8 @@ public class XaLogicalLog
         if ( xidIdentMap.size() == 0 )
         {
             log.fine( "Recovery completed." );
-            msgLog.logMessage( "Recovery on log [" + logFileName + "] completed." );
+            msgLog.logMessage( "Recovery on log [" + logFileName + "] completed in " +
+                    ( System.currentTimeMillis() - recoveryStartTime ) + " ms." );
         }
         else
         {
@@ -821,10 +897,10 @@ public class XaLogicalLog
         recoveredTxMap.clear();
     }
 
-    private LogEntry readEntry() throws IOException
+    private LogEntry readEntry( ReadAheadLogChannel channel ) throws IOException
     {
-        long position = fileChannel.position();
-        LogEntry entry = LogIoUtils.readEntry( buffer, fileChannel, cf );
+        long position = channel.position();
+        LogEntry entry = LogIoUtils.readEntry( buffer, channel, cf );
         if ( entry instanceof LogEntry.Start )
         {
             ((LogEntry.Start) entry).setStartPosition( position );
@@ -914,16 +990,17 @@ public class XaLogicalLog
         }
     }
 
-    private LogEntry.Commit extractTransactionFromLog( long txId,
+    /**
+     * @return the commit entry of {@code txId}, or {@code null} if
+     * {@code txPosition} is given and the transaction starting there turned
+     * out to be another one, i.e. the position is stale.
+     */
+    private LogEntry.Commit extractTransactionFromLog( long txId, TxPosition txPosition,
             long expectedVersion, ReadableByteChannel log, LogBuffer targetBuffer ) throws IOException
     {
-        // Assertions in read?
-        Map<Integer,List<LogEntry>> transactions =
-            new HashMap<Integer,List<LogEntry>>();
         LogEntry entry;
-        TxPosition txPosition = txStartPositionCache.get( txId );
         LogEntryCollector collector = txPosition != null ?
-                new KnownIdentifierCollector( txPosition.identifier, targetBuffer ) :
+                new KnownIdentifierCollector( txPosition.identifier, txId, targetBuffer ) :
                 new KnownTxIdCollector( txId, targetBuffer );
         LogEntry.Commit commitEntry = null;
         while ( (entry = LogIoUtils.readEntry( buffer, log, cf )) != null && commitEntry == null )
@@ -937,6 +1014,11 @@ public class XaLogicalLog
             }
         }
 
+        if ( txPosition != null && (commitEntry == null || commitEntry.getTxId() != txId) )
+        {
+            // Identifiers are reused, another transaction started there
+            return null;
+        }
         if ( commitEntry == null )
         {
             msgLog.logMessage( "txId=" + txId + " not found in log=" + expectedVersion, true  );
@@ -992,41 +1074,58 @@ public class XaLogicalLog
 
     private LogEntry.Commit extractLogEntryList( long txId, LogBuffer targetBuffer ) throws IOException
     {
-        long version = 0;
-        ReadableByteChannel log = null;
-        TxPosition txPosition = txStartPositionCache.get( txId );
-        try
+        TxPosition txPosition = getTxPosition( txId );
+        if ( txPosition != null )
         {
-            if ( txPosition != null )
-            {
-                // We have log version and start position cached
-                version = txPosition.version;
-                log = getLogicalLogOrMyself( version, txPosition.position );
-            }
-            else
+            // We have log version and start position cached or indexed
+            ReadableByteChannel log = getLogicalLogOrMyself( txPosition.version,
+                    txPosition.position );
+            try
             {
-                // We have to look backwards in log files
-                version = findLogContainingTxId( txId )[0];
-                if ( version == -1 )
+                LogEntry.Commit commitEntry = extractTransactionFromLog( txId, txPosition,
+                        txPosition.version, log, targetBuffer );
+                if ( commitEntry != null )
                 {
-                    throw new RuntimeException( "txId:" + txId + " not found in any logical log "
-                                                + "(starting at " + logVersion
-                                                + " and searching backwards" );
+                    txStartPositionCache.put( txId, txPosition );
+                    return commitEntry;
                 }
-                log = getLogicalLogOrMyself( version, 0 );
-                long[] header = readAndAssertLogHeader( buffer, log, version );
-                long prevTxId = header[1];
-                assertLogCanContainTx( txId, prevTxId );
             }
-            return extractTransactionFromLog( txId, version, log, targetBuffer );
-        }
-        finally
-        {
-            if ( log != null )
+            finally
             {
                 log.close();
             }
+            msgLog.logMessage( "Position " + txPosition.position + " in log=" +
+                    txPosition.version + " for txId=" + txId + " is stale", true );
+            txStartPositionCache.remove( txId );
+        }
+
+        // We have to look backwards in log files
+        long version = findLogContainingTxId( txId )[0];
+        if ( version == -1 )
+        {
+            throw new RuntimeException( "txId:" + txId + " not found in any logical log "
+                                        + "(starting at " + logVersion
+                                        + " and searching backwards" );
+        }
+        ReadableByteChannel log = getLogicalLogOrMyself( version, 0 );
+        LogEntry.Commit commitEntry;
+        try
+        {
+            long[] header = readAndAssertLogHeader( buffer, log, version );
+            long prevTxId = header[1];
+            assertLogCanContainTx( txId, prevTxId );
+            commitEntry = extractTransactionFromLog( txId, null, version, log, targetBuffer );
+        }
+        finally
+        {
+            log.close();
         }
+        if ( txPosition != null && version < logVersion )
+        {
+            // Replace the stale positions of that log version in the index
+            indexLogVersion( version );
+        }
+        return commitEntry;
     }
 
     public synchronized ReadableByteChannel getCommittedTransaction( long txId )
@@ -1052,6 +1151,8 @@ public class XaLogicalLog
             return MASTER_ID_REPRESENTING_NO_MASTER;
         }
 
+        // Only positions which have been read are trusted, an indexed one may
+        // be stale
         TxPosition cache = txStartPositionCache.get( txId );
         if ( cache != null )
         {
@@ -1067,6 +1168,126 @@ public class XaLogicalLog
                 txId + "]" );// in log[" + version + "]" );
     }
 
+    /**
+     * Looks up where a committed transaction starts, first in the cache
+     * and then in the tx position index. If the index doesn't know about the
+     * transaction the log version containing it is indexed, which is a one
+     * time cost for every log version written before the index existed.
+     * Indexed positions are only cached once the transaction has been read
+     * from them, see {@link #extractLogEntryList(long, LogBuffer)}.
+     *
+     * @return the position of the transaction or {@code null} if it has to
+     * be found by scanning the logs.
+     */
+    private TxPosition getTxPosition( long txId ) throws IOException
+    {
+        TxPosition position = txStartPositionCache.get( txId );
+        if ( position != null )
+        {
+            return position;
+        }
+        position = getIndexedTxPosition( txId );
+        if ( position == null )
+        {
+            long version = findLogContainingTxId( txId )[0];
+            if ( version >= 0 && version < logVersion )
+            {
+                indexLogVersion( version );
+                position = getIndexedTxPosition( txId );
+            }
+        }
+        return position;
+    }
+
+    private TxPosition getIndexedTxPosition( long txId ) throws IOException
+    {
+        TxPosition position = getTxPositionIndex().get( txId );
+        if ( position == null || !isStartEntryAt( position ) )
+        {
+            return null;
+        }
+        return position;
+    }
+
+    /**
+     * The index isn't forced or kept in sync with log files being removed,
+     * so make sure an indexed position still points to a start entry with the
+     * indexed identifier. Identifiers are reused, so whether it's the start
+     * of the indexed transaction is only known once its commit entry has been
+     * read.
+     */
+    private boolean isStartEntryAt( TxPosition position )
+    {
+        if ( position.version > logVersion ||
+            ( position.version < logVersion && !hasLogicalLog( position.version ) ) )
+        {
+            return false;
+        }
+        try
+        {
+            ReadableByteChannel log = getLogicalLogOrMyself( position.version, position.position );
+            try
+            {
+                LogEntry entry = LogIoUtils.readEntry( buffer, log, cf );
+                return entry instanceof LogEntry.Start &&
+                    entry.getIdentifier() == position.identifier;
+            }
+            finally
+            {
+                log.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+
+    private void indexLogVersion( long version ) throws IOException
+    {
+        FileChannel channel = (FileChannel) getLogicalLog( version );
+        try
+        {
+            ReadAheadLogChannel log = new ReadAheadLogChannel( channel,
+                    ReadAheadLogChannel.DEFAULT_READ_AHEAD_SIZE );
+            readAndAssertLogHeader( buffer, log, version );
+            TxPositionIndex index = getTxPositionIndex();
+            Map<Integer,Long> startPositions = new HashMap<Integer,Long>();
+            int indexed = 0;
+            long position = log.position();
+            LogEntry entry;
+            while ( (entry = LogIoUtils.readEntry( buffer, log, cf )) != null )
+            {
+                if ( entry instanceof LogEntry.Start )
+                {
+                    startPositions.put( entry.getIdentifier(), position );
+                }
+                else if ( entry instanceof LogEntry.Commit )
+                {
+                    Long startPosition = startPositions.get( entry.getIdentifier() );
+                    if ( startPosition != null )
+                    {
+                        LogEntry.Commit commit = (LogEntry.Commit) entry;
+                        index.put( commit.getTxId(), new TxPosition( version,
+                                commit.getMasterId(), entry.getIdentifier(), startPosition ) );
+                        indexed++;
+                    }
+                }
+                else if ( entry instanceof LogEntry.Done )
+                {
+                    startPositions.remove( entry.getIdentifier() );
+                }
+                position = log.position();
+            }
+            msgLog.logMessage( "Added " + indexed + " transactions from log version " +
+                    version + " to tx position index", true );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
     private ReadableByteChannel getLogicalLogOrMyself( long version, long position )
             throws IOException
     {
@@ -1534,14 +1755,14 @@ public class XaLogicalLog
         return nonCleanShutdown;
     }
 
-    private static class TxPosition
+    static class TxPosition
     {
         final long version;
         final int masterId;
         final int identifier;
         final long position;
 
-        private TxPosition( long version, int masterId, int identifier, long position )
+        TxPosition( long version, int masterId, int identifier, long position )
         {
             this.version = version;
             this.masterId = masterId;
@@ -1557,14 +1778,22 @@ public class XaLogicalLog
         int getIdentifier();
     }
 
+    /**
+     * Collects the entries with a known identifier, from a known start
+     * position. They are only written to the target once the commit entry
+     * shows that they are of the requested transaction.
+     */
     private static class KnownIdentifierCollector implements LogEntryCollector
     {
+        private final List<LogEntry> entries = new LinkedList<LogEntry>();
         private final int identifier;
+        private final long txId;
         private final LogBuffer target;
 
-        KnownIdentifierCollector( int identifier, LogBuffer target )
+        KnownIdentifierCollector( int identifier, long txId, LogBuffer target )
         {
             this.identifier = identifier;
+            this.txId = txId;
             this.target = target;
         }
 
@@ -1575,15 +1804,23 @@ public class XaLogicalLog
 
         public boolean collect( LogEntry entry ) throws IOException
         {
-            if ( entry.getIdentifier() == identifier )
+            if ( entry.getIdentifier() != identifier )
             {
-                if ( target != null )
+                return false;
+            }
+            if ( target != null )
+            {
+                entries.add( entry );
+                if ( entry instanceof LogEntry.Commit &&
+                        ((LogEntry.Commit) entry).getTxId() == txId )
                 {
-                    LogIoUtils.writeLogEntry( entry, target );
+                    for ( LogEntry collected : entries )
+                    {
+                        LogIoUtils.writeLogEntry( collected, target );
+                    }
                 }
-                return true;
             }
-            return false;
+            return true;
         }
     }
 
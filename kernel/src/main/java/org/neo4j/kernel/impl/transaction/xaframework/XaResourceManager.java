@@ -31,22 +31,40 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
-import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 // make package access?
+/**
+ * Keeps track of the transactions of a data source and drives them through
+ * their states. Transactions are kept in concurrent maps and the state of
+ * each transaction is guarded by the transaction itself, so transactions
+ * don't wait for each other until they commit. Generating the tx id,
+ * writing the commit entry to the logical log and applying the transaction
+ * is done while holding the commit lock since tx ids are handed out from
+ * the last committed tx and transactions must be applied in that order.
+ * Recovery bookkeeping is guarded by the resource manager itself.
+ * <p>
+ * Locks are always taken in the order commit lock, resource manager,
+ * logical log. Starting a transaction holds the resource manager while the
+ * log writes the start entry, and applying a transaction holds the log
+ * while it injects the transaction here, so applying takes the resource
+ * manager before it calls the log.
+ */
 public class XaResourceManager
 {
-    private final ArrayMap<XAResource,Xid> xaResourceMap = 
-        new ArrayMap<XAResource,Xid>();
-    private final ArrayMap<Xid,XidStatus> xidMap = 
-        new ArrayMap<Xid,XidStatus>();
+    private final ConcurrentMap<XAResource,Xid> xaResourceMap =
+        new ConcurrentHashMap<XAResource,Xid>();
+    private final ConcurrentMap<Xid,XidStatus> xidMap =
+        new ConcurrentHashMap<Xid,XidStatus>();
+    private final Object commitLock = new Object();
     private int recoveredTxCount = 0;
     private Set<Integer> recoveredDoneRecords = new HashSet<Integer>();
 
@@ -79,10 +97,25 @@ public class XaResourceManager
         }
     }
 
-    synchronized XaTransaction getXaTransaction( XAResource xaRes )
+    private XidStatus getStatus( Xid xid )
+    {
+        return xid != null ? xidMap.get( xid ) : null;
+    }
+
+    private XidStatus getExistingStatus( Xid xid ) throws XAException
+    {
+        XidStatus status = getStatus( xid );
+        if ( status == null )
+        {
+            throw new XAException( "Unknown xid[" + xid + "]" );
+        }
+        return status;
+    }
+
+    XaTransaction getXaTransaction( XAResource xaRes )
         throws XAException
     {
-        XidStatus status = xidMap.get( xaResourceMap.get( xaRes ) );
+        XidStatus status = getStatus( xaResourceMap.get( xaRes ) );
         if ( status == null )
         {
             throw new XAException( "Resource[" + xaRes + "] not enlisted" );
@@ -90,15 +123,22 @@ public class XaResourceManager
         return status.getTransactionStatus().getTransaction();
     }
 
-    synchronized void start( XAResource xaResource, Xid xid )
+    void start( XAResource xaResource, Xid xid )
         throws XAException
     {
-        if ( xaResourceMap.get( xaResource ) != null )
+        if ( xaResourceMap.putIfAbsent( xaResource, xid ) != null )
         {
             throw new XAException( "Resource[" + xaResource
                 + "] already enlisted or suspended" );
         }
-        xaResourceMap.put( xaResource, xid );
+        if ( xidMap.get( xid ) == null )
+        {
+            createTransaction( xid );
+        }
+    }
+
+    private synchronized void createTransaction( Xid xid ) throws XAException
+    {
         if ( xidMap.get( xid ) == null )
         {
             int identifier = log.start( xid );
@@ -119,36 +159,30 @@ public class XaResourceManager
         recoveredTxCount++;
     }
 
-    synchronized void resume( Xid xid ) throws XAException
+    void resume( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-
-        if ( status.getActive() )
+        XidStatus status = getExistingStatus( xid );
+        synchronized ( status )
         {
-            throw new XAException( "Xid [" + xid + "] not suspended" );
+            if ( status.getActive() )
+            {
+                throw new XAException( "Xid [" + xid + "] not suspended" );
+            }
+            status.setActive( true );
         }
-        status.setActive( true );
     }
 
-    synchronized void join( XAResource xaResource, Xid xid ) throws XAException
+    void join( XAResource xaResource, Xid xid ) throws XAException
     {
-        if ( xidMap.get( xid ) == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        if ( xaResourceMap.get( xaResource ) != null )
+        getExistingStatus( xid );
+        if ( xaResourceMap.putIfAbsent( xaResource, xid ) != null )
         {
             throw new XAException( "Resource[" + xaResource
                 + "] already enlisted" );
         }
-        xaResourceMap.put( xaResource, xid );
     }
 
-    synchronized void end( XAResource xaResource, Xid xid ) throws XAException
+    void end( XAResource xaResource, Xid xid ) throws XAException
     {
         Xid xidEntry = xaResourceMap.remove( xaResource );
         if ( xidEntry == null )
@@ -157,38 +191,33 @@ public class XaResourceManager
         }
     }
 
-    synchronized void suspend( Xid xid ) throws XAException
+    void suspend( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        if ( !status.getActive() )
+        XidStatus status = getExistingStatus( xid );
+        synchronized ( status )
         {
-            throw new XAException( "Xid[" + xid + "] already suspended" );
+            if ( !status.getActive() )
+            {
+                throw new XAException( "Xid[" + xid + "] already suspended" );
+            }
+            status.setActive( false );
         }
-        status.setActive( false );
     }
 
-    synchronized void fail( XAResource xaResource, Xid xid ) throws XAException
+    void fail( XAResource xaResource, Xid xid ) throws XAException
     {
-        if ( xidMap.get( xid ) == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
+        XidStatus status = getExistingStatus( xid );
         Xid xidEntry = xaResourceMap.remove( xaResource );
         if ( xidEntry == null )
         {
             throw new XAException( "Resource[" + xaResource + "] not enlisted" );
         }
-        XidStatus status = xidMap.get( xid );
         status.getTransactionStatus().markAsRollback();
     }
 
-    synchronized void validate( XAResource xaResource ) throws XAException
+    void validate( XAResource xaResource ) throws XAException
     {
-        XidStatus status = xidMap.get( xaResourceMap.get( xaResource ) );
+        XidStatus status = getStatus( xaResourceMap.get( xaResource ) );
         if ( status == null )
         {
             throw new XAException( "Resource[" + xaResource + "] not enlisted" );
@@ -200,14 +229,14 @@ public class XaResourceManager
     }
 
     // TODO: check so we're not currently committing on the resource
-    synchronized void destroy( XAResource xaResource )
+    void destroy( XAResource xaResource )
     {
         xaResourceMap.remove( xaResource );
     }
 
     private static class XidStatus
     {
-        private boolean active = true;
+        private volatile boolean active = true;
         private TransactionStatus txStatus;
 
         XidStatus( XaTransaction xaTransaction )
@@ -233,9 +262,9 @@ public class XaResourceManager
 
     private static class TransactionStatus
     {
-        private boolean prepared = false;
-        private boolean commitStarted = false;
-        private boolean rollback = false;
+        private volatile boolean prepared = false;
+        private volatile boolean commitStarted = false;
+        private volatile boolean rollback = false;
         private final XaTransaction xaTransaction;
 
         TransactionStatus( XaTransaction xaTransaction )
@@ -286,32 +315,25 @@ public class XaResourceManager
         }
     }
 
-    synchronized int prepare( Xid xid ) throws XAException
+    int prepare( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        TransactionStatus txStatus = status.getTransactionStatus();
+        TransactionStatus txStatus = getExistingStatus( xid ).getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
-        if ( xaTransaction.isReadOnly() )
+        synchronized ( txStatus )
         {
-            log.done( xaTransaction.getIdentifier() );
-            xidMap.remove( xid );
-            if ( xaTransaction.isRecovered() )
+            if ( xaTransaction.isReadOnly() )
             {
-                recoveredTxCount--;
-                checkIfRecoveryComplete();
+                log.done( xaTransaction.getIdentifier() );
+                removeTransaction( xid, xaTransaction );
+                return XAResource.XA_RDONLY;
+            }
+            else
+            {
+                xaTransaction.prepare();
+                log.prepare( xaTransaction.getIdentifier() );
+                txStatus.markAsPrepared();
+                return XAResource.XA_OK;
             }
-            return XAResource.XA_RDONLY;
-        }
-        else
-        {
-            xaTransaction.prepare();
-            log.prepare( xaTransaction.getIdentifier() );
-            txStatus.markAsPrepared();
-            return XAResource.XA_OK;
         }
     }
 
@@ -328,12 +350,7 @@ public class XaResourceManager
         XaTransaction xaTransaction = txStatus.getTransaction();
         if ( xaTransaction.isReadOnly() )
         {
-            xidMap.remove( xid );
-            if ( xaTransaction.isRecovered() )
-            {
-                recoveredTxCount--;
-                checkIfRecoveryComplete();
-            }
+            removeTransaction( xid, xaTransaction );
             return true;
         }
         else
@@ -379,148 +396,168 @@ public class XaResourceManager
         xaTransaction.commit();
     }
     
-    synchronized XaTransaction getXaTransaction( Xid xid ) throws XAException
+    XaTransaction getXaTransaction( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        TransactionStatus txStatus = status.getTransactionStatus();
-        XaTransaction xaTransaction = txStatus.getTransaction();
-        return xaTransaction;
+        return getExistingStatus( xid ).getTransactionStatus().getTransaction();
     }
     
-    synchronized XaTransaction commit( Xid xid, boolean onePhase )
+    XaTransaction commit( Xid xid, boolean onePhase )
         throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        TransactionStatus txStatus = status.getTransactionStatus();
+        TransactionStatus txStatus = getExistingStatus( xid ).getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
-        if ( onePhase )
+        synchronized ( txStatus )
         {
-            if ( !xaTransaction.isReadOnly() )
+            boolean writeOnePhase = onePhase && !xaTransaction.isReadOnly() &&
+                !xaTransaction.isRecovered();
+            if ( writeOnePhase )
             {
-                if ( !xaTransaction.isRecovered() )
-                {
-                    xaTransaction.prepare();
-                    
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
-                    int masterId = txIdGenerator.getCurrentMasterId();
-                    xaTransaction.setCommitTxId( txId );
-                    log.commitOnePhase( xaTransaction.getIdentifier(), 
-                            xaTransaction.getCommitTxId(), masterId );
-                }
+                // The commands only depend on this transaction, so they
+                // are written to the log without waiting for other commits
+                xaTransaction.prepare();
             }
-            txStatus.markAsPrepared();
-        }
-        if ( !txStatus.prepared() || txStatus.rollback() )
-        {
-            throw new XAException( "Transaction not prepared or "
-                + "(marked as) rolledbacked" );
-        }
-        if ( !xaTransaction.isReadOnly() )
-        {
-            if ( !xaTransaction.isRecovered() )
+            synchronized ( commitLock )
             {
-                if ( !onePhase )
+                if ( writeOnePhase )
                 {
+                    rotateLogIfNeeded();
                     long txId = txIdGenerator.generate( dataSource,
                             xaTransaction.getIdentifier() );
                     int masterId = txIdGenerator.getCurrentMasterId();
                     xaTransaction.setCommitTxId( txId );
-                    log.commitTwoPhase( xaTransaction.getIdentifier(),
+                    log.commitOnePhase( xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), masterId );
                 }
+                if ( onePhase )
+                {
+                    txStatus.markAsPrepared();
+                }
+                if ( !txStatus.prepared() || txStatus.rollback() )
+                {
+                    throw new XAException( "Transaction not prepared or "
+                        + "(marked as) rolledbacked" );
+                }
+                if ( !xaTransaction.isReadOnly() )
+                {
+                    if ( !xaTransaction.isRecovered() )
+                    {
+                        if ( !onePhase )
+                        {
+                            rotateLogIfNeeded();
+                            long txId = txIdGenerator.generate( dataSource,
+                                    xaTransaction.getIdentifier() );
+                            int masterId = txIdGenerator.getCurrentMasterId();
+                            xaTransaction.setCommitTxId( txId );
+                            log.commitTwoPhase( xaTransaction.getIdentifier(),
+                                    xaTransaction.getCommitTxId(), masterId );
+                        }
+                    }
+                    txStatus.markCommitStarted();
+                    if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
+                    {
+                        xaTransaction.setCommitTxId( dataSource.getLastCommittedTxId() + 1 );
+                    }
+                    xaTransaction.commit();
+                }
+                if ( !xaTransaction.isRecovered() )
+                {
+                    log.done( xaTransaction.getIdentifier() );
+                    xidMap.remove( xid );
+                }
+                else
+                {
+                    recoveredTransactionCommitted( xid, xaTransaction );
+                }
             }
-            txStatus.markCommitStarted();
-            if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
-            {
-                xaTransaction.setCommitTxId( dataSource.getLastCommittedTxId() + 1 );
-            }
-            xaTransaction.commit();
         }
-        if ( !xaTransaction.isRecovered() )
+        return xaTransaction;
+    }
+
+    /**
+     * Log rotation flushes the stores, so it is done here where no other
+     * transaction can be applying its changes at the same time.
+     */
+    private void rotateLogIfNeeded() throws XAException
+    {
+        try
         {
-            log.done( xaTransaction.getIdentifier() );
+            log.checkLogRotation();
         }
-        else if ( !log.scanIsComplete() || recoveredTxCount > 0 )
+        catch ( IOException e )
         {
-            recoveredDoneRecords.add( xaTransaction.getIdentifier() );
+            throw new XAException( "Unable to rotate logical log " + e );
         }
-        xidMap.remove( xid );
-        if ( xaTransaction.isRecovered() )
+    }
+
+    private synchronized void recoveredTransactionCommitted( Xid xid,
+            XaTransaction xaTransaction )
+    {
+        if ( !log.scanIsComplete() || recoveredTxCount > 0 )
         {
-            recoveredTxCount--;
-            checkIfRecoveryComplete();
+            recoveredDoneRecords.add( xaTransaction.getIdentifier() );
         }
-        return xaTransaction;
+        xidMap.remove( xid );
+        recoveredTxCount--;
+        checkIfRecoveryComplete();
     }
 
-    synchronized XaTransaction rollback( Xid xid ) throws XAException
+    private void removeTransaction( Xid xid, XaTransaction xaTransaction )
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
+        if ( xaTransaction.isRecovered() )
         {
-            throw new XAException( "Unknown xid[" + xid + "]" );
+            removeRecoveredTransaction( xid );
         }
-        TransactionStatus txStatus = status.getTransactionStatus();
-        XaTransaction xaTransaction = txStatus.getTransaction();
-        if ( txStatus.commitStarted() )
+        else
         {
-            throw new XAException( "Transaction already started commit" );
+            xidMap.remove( xid );
         }
-        txStatus.markAsRollback();
-        xaTransaction.rollback();
-        log.done( xaTransaction.getIdentifier() );
+    }
+
+    private synchronized void removeRecoveredTransaction( Xid xid )
+    {
         xidMap.remove( xid );
-        if ( xaTransaction.isRecovered() )
-        {
-            recoveredTxCount--;
-            checkIfRecoveryComplete();
-        }
-        return txStatus.getTransaction();
+        recoveredTxCount--;
+        checkIfRecoveryComplete();
     }
 
-    synchronized XaTransaction forget( Xid xid ) throws XAException
+    XaTransaction rollback( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        TransactionStatus txStatus = status.getTransactionStatus();
+        TransactionStatus txStatus = getExistingStatus( xid ).getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
-        log.done( xaTransaction.getIdentifier() );
-        xidMap.remove( xid );
-        if ( xaTransaction.isRecovered() )
+        synchronized ( txStatus )
         {
-            recoveredTxCount--;
-            checkIfRecoveryComplete();
+            if ( txStatus.commitStarted() )
+            {
+                throw new XAException( "Transaction already started commit" );
+            }
+            txStatus.markAsRollback();
+            xaTransaction.rollback();
+            log.done( xaTransaction.getIdentifier() );
+            removeTransaction( xid, xaTransaction );
         }
         return xaTransaction;
     }
 
-    synchronized void markAsRollbackOnly( Xid xid ) throws XAException
+    XaTransaction forget( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
+        TransactionStatus txStatus = getStatus( xid ).getTransactionStatus();
+        XaTransaction xaTransaction = txStatus.getTransaction();
+        synchronized ( txStatus )
         {
-            throw new XAException( "Unknown xid[" + xid + "]" );
+            log.done( xaTransaction.getIdentifier() );
+            removeTransaction( xid, xaTransaction );
         }
-        TransactionStatus txStatus = status.getTransactionStatus();
-        txStatus.markAsRollback();
+        return xaTransaction;
     }
 
-    synchronized Xid[] recover( int flag ) throws XAException
+    void markAsRollbackOnly( Xid xid ) throws XAException
     {
-        List<Xid> xids = new ArrayList<Xid>();
-        Iterator<Xid> keyIterator = xidMap.keySet().iterator();
-        while ( keyIterator.hasNext() )
-        {
-            xids.add( keyIterator.next() );
-        }
+        getExistingStatus( xid ).getTransactionStatus().markAsRollback();
+    }
+
+    Xid[] recover( int flag ) throws XAException
+    {
+        List<Xid> xids = new ArrayList<Xid>( xidMap.keySet() );
         return xids.toArray( new Xid[xids.size()] );
     }
 
@@ -534,13 +571,11 @@ public class XaResourceManager
         }
         TransactionStatus txStatus = status.getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
-        xidMap.remove( xid );
         if ( xaTransaction.isRecovered() )
         {
             recoveredDoneRecords.remove( xaTransaction.getIdentifier() );
-            recoveredTxCount--;
-            checkIfRecoveryComplete();
         }
+        removeTransaction( xid, xaTransaction );
     }
 
     synchronized void pruneXidIfExist( Xid xid ) throws IOException
@@ -551,13 +586,7 @@ public class XaResourceManager
             return;
         }
         TransactionStatus txStatus = status.getTransactionStatus();
-        XaTransaction xaTransaction = txStatus.getTransaction();
-        xidMap.remove( xid );
-        if ( xaTransaction.isRecovered() )
-        {
-            recoveredTxCount--;
-            checkIfRecoveryComplete();
-        }
+        removeTransaction( xid, txStatus.getTransaction() );
     }
     
     synchronized void checkXids() throws IOException
@@ -674,37 +703,55 @@ public class XaResourceManager
         return recoveredTxCount > 0;
     }
 
-    public synchronized void applyCommittedTransaction(
+    public void applyCommittedTransaction(
             ReadableByteChannel transaction, long txId ) throws IOException
     {
-        long lastCommittedTxId = dataSource.getLastCommittedTxId();
-        if ( lastCommittedTxId + 1 == txId )
-        {
-            log.applyTransaction( transaction );
-        }
-        else if ( lastCommittedTxId + 1 < txId )
-        {
-            throw new IOException( "Tried to apply transaction with txId=" + txId + 
-                    " but last committed txId=" + lastCommittedTxId );
-        }
-        else
+        synchronized ( commitLock )
         {
-            msgLog.logMessage( "Tried to apply transaction with txId=" + txId + 
-                    " but last committed txId=" + lastCommittedTxId, true );
+            synchronized ( this )
+            {
+                long lastCommittedTxId = dataSource.getLastCommittedTxId();
+                if ( lastCommittedTxId + 1 == txId )
+                {
+                    log.applyTransaction( transaction );
+                }
+                else if ( lastCommittedTxId + 1 < txId )
+                {
+                    throw new IOException( "Tried to apply transaction with txId=" + txId + 
+                            " but last committed txId=" + lastCommittedTxId );
+                }
+                else
+                {
+                    msgLog.logMessage( "Tried to apply transaction with txId=" + txId + 
+                            " but last committed txId=" + lastCommittedTxId, true );
+                }
+            }
         }
     }
     
-    public synchronized long applyPreparedTransaction(
+    public long applyPreparedTransaction(
             ReadableByteChannel transaction ) throws IOException
     {
-        long txId = TxIdGenerator.DEFAULT.generate( dataSource, 0 );
-        int masterId = txIdGenerator.getCurrentMasterId();
-        log.applyTransactionWithoutTxId( transaction, txId, masterId );
-        return txId;
+        synchronized ( commitLock )
+        {
+            synchronized ( this )
+            {
+                long txId = TxIdGenerator.DEFAULT.generate( dataSource, 0 );
+                int masterId = txIdGenerator.getCurrentMasterId();
+                log.applyTransactionWithoutTxId( transaction, txId, masterId );
+                return txId;
+            }
+        }
     }
     
-    public synchronized void rotateLogicalLog() throws IOException
+    public void rotateLogicalLog() throws IOException
     {
-        log.rotate();
+        synchronized ( commitLock )
+        {
+            synchronized ( this )
+            {
+                log.rotate();
+            }
+        }
     }
 }
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map from primitive long keys (entity ids) to values, without boxing the
+ * keys or creating an entry object per mapping. Uses open addressing with
+ * linear probing. Iteration is in key order, so changes kept in it can be
+ * applied in the order they are laid out in the store.
+ * <p>
+ * Null values aren't allowed and mappings can't be removed, only cleared.
+ * Not thread safe.
+ */
+public class PrimitiveLongMap<V>
+{
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private long[] sortedKeys;
+
+    public PrimitiveLongMap()
+    {
+        this( DEFAULT_CAPACITY );
+    }
+
+    public PrimitiveLongMap( int expectedSize )
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while ( capacity < expectedSize * 2 )
+        {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V get( long key )
+    {
+        int mask = keys.length - 1;
+        for ( int i = slot( key, mask ); values[i] != null; i = (i + 1) & mask )
+        {
+            if ( keys[i] == key )
+            {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    public void put( long key, V value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value for " + key );
+        }
+        if ( (size + 1) * 2 > keys.length )
+        {
+            resize( keys.length * 2 );
+        }
+        if ( insert( keys, values, key, value ) )
+        {
+            size++;
+            sortedKeys = null;
+        }
+    }
+
+    public boolean containsKey( long key )
+    {
+        return get( key ) != null;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        if ( size == 0 )
+        {
+            return;
+        }
+        if ( keys.length > DEFAULT_CAPACITY * 64 )
+        {
+            keys = new long[DEFAULT_CAPACITY];
+            values = new Object[DEFAULT_CAPACITY];
+        }
+        else
+        {
+            Arrays.fill( values, null );
+        }
+        size = 0;
+        sortedKeys = null;
+    }
+
+    /**
+     * @return the keys in this map in ascending order. The returned array
+     * must not be modified.
+     */
+    public long[] sortedKeys()
+    {
+        if ( sortedKeys == null )
+        {
+            long[] result = new long[size];
+            int index = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                if ( values[i] != null )
+                {
+                    result[index++] = keys[i];
+                }
+            }
+            Arrays.sort( result );
+            sortedKeys = result;
+        }
+        return sortedKeys;
+    }
+
+    /**
+     * @return the values in this map ordered by their keys.
+     */
+    public List<V> values()
+    {
+        long[] sorted = sortedKeys();
+        List<V> result = new ArrayList<V>( sorted.length );
+        for ( long key : sorted )
+        {
+            result.add( get( key ) );
+        }
+        return result;
+    }
+
+    private void resize( int capacity )
+    {
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            if ( values[i] != null )
+            {
+                insert( newKeys, newValues, keys[i], values[i] );
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * @return {@code true} if the key was added, {@code false} if it
+     * already existed and its value was replaced.
+     */
+    private static boolean insert( long[] keys, Object[] values, long key,
+        Object value )
+    {
+        int mask = keys.length - 1;
+        int i = slot( key, mask );
+        while ( values[i] != null )
+        {
+            if ( keys[i] == key )
+            {
+                values[i] = value;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        return true;
+    }
+
+    private static int slot( long key, int mask )
+    {
+        // ids are often sequential, spread them over the table
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -48,7 +48,7 @@ public class JumpingIdGeneratorFactory implements IdGeneratorFactory
         return get( idType );
     }
     
-    public IdGenerator get( IdType idType )
+    public synchronized IdGenerator get( IdType idType )
     {
         if ( idType == IdType.NODE || idType == IdType.RELATIONSHIP || idType == IdType.PROPERTY ||
                 idType == IdType.STRING_BLOCK || idType == IdType.ARRAY_BLOCK )
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Measures the throughput of small read/write transactions from 1 to 64
+ * threads. Each transaction reads a property of a shared node and writes a
+ * property on a node owned by the thread, so threads never wait for each
+ * other's locks and the numbers show the overhead of the transaction
+ * bookkeeping itself.
+ */
+public class TransactionThroughputBenchmark
+{
+    private static final int NODE_COUNT = 1000;
+    private static final int MAX_THREADS = 64;
+
+    public static void main( String[] args ) throws Exception
+    {
+        String storeDir = args.length > 0 ? args[0] : "target/var/txthroughput";
+        long seconds = args.length > 1 ? Long.parseLong( args[1] ) : 10;
+        deleteRecursively( new File( storeDir ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir );
+        try
+        {
+            long[] sharedNodes = createNodes( db, NODE_COUNT );
+            long[] ownNodes = createNodes( db, MAX_THREADS );
+            for ( int threads = 1; threads <= MAX_THREADS; threads *= 2 )
+            {
+                long count = run( db, threads, sharedNodes, ownNodes,
+                        TimeUnit.SECONDS.toMillis( seconds ) );
+                System.out.printf( "%2d threads: %.1f tx/s%n", threads,
+                        count / (double) seconds );
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private static long run( final GraphDatabaseService db, int threads,
+            final long[] sharedNodes, final long[] ownNodes, long millis )
+            throws InterruptedException
+    {
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final long endTime[] = new long[1];
+        Thread[] workers = new Thread[threads];
+        for ( int i = 0; i < threads; i++ )
+        {
+            final long ownNode = ownNodes[i];
+            workers[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random();
+                    long done = 0;
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    while ( System.currentTimeMillis() < endTime[0] )
+                    {
+                        Transaction tx = db.beginTx();
+                        try
+                        {
+                            Node shared = db.getNodeById(
+                                    sharedNodes[random.nextInt( sharedNodes.length )] );
+                            Object value = shared.getProperty( "value" );
+                            db.getNodeById( ownNode ).setProperty( "value", value );
+                            tx.success();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                        done++;
+                    }
+                    count.addAndGet( done );
+                }
+            };
+            workers[i].start();
+        }
+        endTime[0] = System.currentTimeMillis() + millis;
+        start.countDown();
+        for ( Thread worker : workers )
+        {
+            worker.join();
+        }
+        return count.get();
+    }
+
+    private static long[] createNodes( GraphDatabaseService db, int count )
+    {
+        long[] ids = new long[count];
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                Node node = db.createNode();
+                node.setProperty( "value", i );
+                ids[i] = node.getId();
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return ids;
+    }
+
+    private static void deleteRecursively( File file )
+    {
+        if ( file.isDirectory() )
+        {
+            for ( File child : file.listFiles() )
+            {
+                deleteRecursively( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.map;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestUpdateRecords
+{
+    private static final int RECORDS = 1000;
+    
+    private NodeStore nodeStore;
+    private RelationshipStore relationshipStore;
+    private PropertyStore propertyStore;
+    
+    private String path()
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "updaterecords" );
+        new File( path ).mkdirs();
+        return path;
+    }
+    
+    private String file( String name )
+    {
+        return path() + File.separator + name;
+    }
+    
+    /**
+     * @param mappedMemory memory mapped for each store. "1M" is little enough
+     * for a window to hold only a hundred or so records, so that the records
+     * written span many windows, and with "0" each record gets a row of its
+     * own.
+     */
+    private Map<?, ?> config( String mappedMemory )
+    {
+        return map(
+                "store_dir", path(),
+                IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory(),
+                FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction(),
+                "nodes.db.mapped_memory", mappedMemory,
+                "relationships.db.mapped_memory", mappedMemory,
+                "properties.db.mapped_memory", mappedMemory );
+    }
+    
+    private void createStores( String mappedMemory )
+    {
+        Map<?, ?> config = config( mappedMemory );
+        NodeStore.createStore( file( "nodes.db" ), config );
+        RelationshipStore.createStore( file( "relationships.db" ),
+                CommonFactories.defaultIdGeneratorFactory() );
+        PropertyStore.createStore( file( "properties.db" ), config );
+        nodeStore = new NodeStore( file( "nodes.db" ), config );
+        relationshipStore = new RelationshipStore( file( "relationships.db" ), config );
+        propertyStore = new PropertyStore( file( "properties.db" ), config );
+    }
+    
+    @Before
+    public void deleteStores()
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path() ) );
+    }
+    
+    @After
+    public void closeStores()
+    {
+        if ( nodeStore != null )
+        {
+            nodeStore.close();
+            relationshipStore.close();
+            propertyStore.close();
+        }
+    }
+    
+    @Test
+    public void nodeRecordsAreWrittenAcrossMappedWindows()
+    {
+        createStores( "1M" );
+        writeAndUpdateNodes();
+    }
+    
+    @Test
+    public void nodeRecordsAreWrittenThroughOneRowPerRecord()
+    {
+        createStores( "0" );
+        writeAndUpdateNodes();
+    }
+    
+    private void writeAndUpdateNodes()
+    {
+        List<NodeRecord> records = new ArrayList<NodeRecord>();
+        for ( int i = 0; i < RECORDS; i++ )
+        {
+            NodeRecord record = new NodeRecord( nodeStore.nextId() );
+            record.setInUse( true );
+            record.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+            record.setNextProp( i );
+            records.add( record );
+        }
+        nodeStore.updateRecords( records );
+        
+        List<NodeRecord> updated = new ArrayList<NodeRecord>();
+        for ( NodeRecord written : records )
+        {
+            NodeRecord record = nodeStore.getRecord( written.getId() );
+            assertEquals( written.getNextProp(), record.getNextProp() );
+            if ( record.getId() % 3 == 0 )
+            {
+                record.setInUse( false );
+            }
+            else
+            {
+                record.setNextRel( record.getId() * 2 );
+            }
+            updated.add( record );
+        }
+        nodeStore.updateRecords( updated );
+        
+        for ( NodeRecord written : records )
+        {
+            long id = written.getId();
+            NodeRecord record = nodeStore.getLightNode( id );
+            if ( id % 3 == 0 )
+            {
+                assertNull( record );
+            }
+            else
+            {
+                assertEquals( id * 2, record.getNextRel() );
+                assertEquals( written.getNextProp(), record.getNextProp() );
+            }
+        }
+    }
+    
+    @Test
+    public void relationshipRecordsAreWrittenAcrossWindows()
+    {
+        createStores( "1M" );
+        List<RelationshipRecord> records = new ArrayList<RelationshipRecord>();
+        for ( int i = 0; i < RECORDS; i++ )
+        {
+            RelationshipRecord record = new RelationshipRecord( relationshipStore.nextId(), i,
+                    i + 1, i % 4 );
+            record.setInUse( true );
+            record.setFirstPrevRel( Record.NO_PREV_RELATIONSHIP.intValue() );
+            record.setFirstNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+            record.setSecondPrevRel( Record.NO_PREV_RELATIONSHIP.intValue() );
+            record.setSecondNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+            record.setNextProp( Record.NO_NEXT_PROPERTY.intValue() );
+            records.add( record );
+        }
+        relationshipStore.updateRecords( records );
+        
+        List<RelationshipRecord> updated = new ArrayList<RelationshipRecord>();
+        for ( RelationshipRecord written : records )
+        {
+            RelationshipRecord record = relationshipStore.getRecord( written.getId() );
+            if ( record.getId() % 3 == 0 )
+            {
+                record.setInUse( false );
+            }
+            else
+            {
+                record.setFirstNextRel( record.getId() + 1 );
+            }
+            updated.add( record );
+        }
+        relationshipStore.updateRecords( updated );
+        
+        for ( RelationshipRecord written : records )
+        {
+            long id = written.getId();
+            RelationshipRecord record = relationshipStore.getLightRel( id );
+            if ( id % 3 == 0 )
+            {
+                assertNull( record );
+            }
+            else
+            {
+                assertEquals( written.getFirstNode(), record.getFirstNode() );
+                assertEquals( written.getSecondNode(), record.getSecondNode() );
+                assertEquals( written.getType(), record.getType() );
+                assertEquals( id + 1, record.getFirstNextRel() );
+            }
+        }
+    }
+    
+    @Test
+    public void propertyRecordsAreWrittenAcrossWindowsWithTheirValueRecords()
+    {
+        createStores( "1M" );
+        List<PropertyRecord> records = new ArrayList<PropertyRecord>();
+        for ( int i = 0; i < RECORDS; i++ )
+        {
+            PropertyRecord record = new PropertyRecord( propertyStore.nextId() );
+            record.setInUse( true );
+            record.setKeyIndexId( i % 10 );
+            record.setPrevProp( Record.NO_PREVIOUS_PROPERTY.intValue() );
+            record.setNextProp( Record.NO_NEXT_PROPERTY.intValue() );
+            propertyStore.encodeValue( record, value( record.getId() ) );
+            records.add( record );
+        }
+        propertyStore.updateRecords( records );
+        
+        List<PropertyRecord> updated = new ArrayList<PropertyRecord>();
+        for ( PropertyRecord written : records )
+        {
+            long id = written.getId();
+            if ( id % 3 == 0 )
+            {
+                PropertyRecord record = propertyStore.getRecord( id );
+                record.setInUse( false );
+                for ( DynamicRecord valueRecord : record.getValueRecords() )
+                {
+                    valueRecord.setInUse( false );
+                }
+                updated.add( record );
+            }
+            else
+            {
+                PropertyRecord record = propertyStore.getLightRecord( id );
+                record.setNextProp( id + 1 );
+                updated.add( record );
+            }
+        }
+        propertyStore.updateRecords( updated );
+        
+        for ( PropertyRecord written : records )
+        {
+            long id = written.getId();
+            if ( id % 3 == 0 )
+            {
+                try
+                {
+                    propertyStore.getRecord( id );
+                    fail( "Property record " + id + " should have been deleted" );
+                }
+                catch ( InvalidRecordException e )
+                { // good
+                }
+            }
+            else
+            {
+                PropertyRecord record = propertyStore.getRecord( id );
+                assertEquals( written.getKeyIndexId(), record.getKeyIndexId() );
+                assertEquals( id + 1, record.getNextProp() );
+                assertEquals( value( id ), propertyStore.getValue( record ) );
+            }
+        }
+    }
+    
+    /**
+     * Every other value is a string long enough to need several dynamic
+     * records.
+     */
+    private Object value( long id )
+    {
+        if ( id % 2 == 0 )
+        {
+            return Integer.valueOf( (int) id );
+        }
+        StringBuilder value = new StringBuilder();
+        while ( value.length() < 300 )
+        {
+            value.append( "value " ).append( id ).append( ' ' );
+        }
+        return value.toString();
+    }
+    
+    @Test
+    public void acquireWindowOnlySwitchesWhenThePositionIsOutsideTheWindow()
+    {
+        createStores( "1M" );
+        assertWindowsEncapsulatePositions( true );
+    }
+    
+    @Test
+    public void acquireWindowSwitchesRowForEachPosition()
+    {
+        createStores( "0" );
+        assertWindowsEncapsulatePositions( false );
+    }
+    
+    private void assertWindowsEncapsulatePositions( boolean sharedWindows )
+    {
+        List<NodeRecord> records = new ArrayList<NodeRecord>();
+        for ( int i = 0; i < RECORDS; i++ )
+        {
+            NodeRecord record = new NodeRecord( nodeStore.nextId() );
+            record.setInUse( true );
+            record.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+            record.setNextProp( Record.NO_NEXT_PROPERTY.intValue() );
+            records.add( record );
+        }
+        nodeStore.updateRecords( records );
+        
+        PersistenceWindow window = null;
+        int switches = 0;
+        try
+        {
+            for ( NodeRecord record : records )
+            {
+                PersistenceWindow next = nodeStore.acquireWindow( window, record.getId(),
+                        OperationType.READ );
+                assertTrue( ((LockableWindow) next).encapsulates( record.getId() ) );
+                if ( next != window )
+                {
+                    switches++;
+                }
+                window = next;
+            }
+        }
+        finally
+        {
+            if ( window != null )
+            {
+                nodeStore.releaseWindow( window );
+            }
+        }
+        if ( sharedWindows )
+        {
+            assertTrue( "Switched windows " + switches + " times", switches > 1 &&
+                    switches < RECORDS / 10 );
+        }
+        else
+        {
+            assertEquals( RECORDS, switches );
+        }
+    }
+}
@@ -28,10 +28,12 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -58,8 +60,10 @@ import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaConnection;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.XidImpl;
+import org.neo4j.kernel.impl.transaction.xaframework.InMemoryLogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBufferFactory;
 import org.neo4j.kernel.impl.transaction.xaframework.TxIdGenerator;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 
 public class TestXa extends AbstractNeo4jTestCase
 {
@@ -457,10 +461,63 @@ public class TestXa extends AbstractNeo4jTestCase
             TxIdGenerator.class, TxIdGenerator.DEFAULT,
             "store_dir", path(),
             "neo_store", file( "neo" ),
-            "logical_log", file( "nioneo_logical.log" ) );
+            "logical_log", file( "nioneo_logical.log" ),
+            Config.RECOVERY_THREADS, "4" );
         return new NeoStoreXaDataSource( config );
     }
 
+    @Test
+    public void testRecoverLargeTransaction() throws Exception
+    {
+        Xid xid = new XidImpl( new byte[3], new byte[3] );
+        XAResource xaRes = xaCon.getXaResource();
+        xaRes.start( xid, XAResource.TMNOFLAGS );
+        int relType1 = (int) ds.nextId( RelationshipType.class );
+        xaCon.getRelationshipTypeConsumer().addRelationshipType( relType1,
+            "relationshiptype1" );
+        long[] nodes = new long[500];
+        long[] rels = new long[nodes.length - 1];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = ds.nextId( Node.class );
+            xaCon.getNodeConsumer().createNode( nodes[i] );
+            xaCon.getNodeConsumer().addProperty( nodes[i],
+                ds.nextId( PropertyStore.class ), index( "prop" + i % 50 ), "value" + i );
+            if ( i > 0 )
+            {
+                rels[i - 1] = ds.nextId( Relationship.class );
+                xaCon.getRelationshipConsumer().createRelationship( rels[i - 1],
+                    nodes[i - 1], nodes[i], relType1 );
+            }
+        }
+        xaRes.end( xid, XAResource.TMSUCCESS );
+        xaRes.commit( xid, true );
+        copyLogicalLog( path() );
+        xaCon.clearAllTransactions();
+        ds.close();
+        deleteLogicalLogIfExist();
+        renameCopiedLogicalLog( path() );
+        ds = newNeoStore();
+        xaCon = (NeoStoreXaConnection) ds.getXaConnection();
+        xaRes = xaCon.getXaResource();
+        assertEquals( 0, xaRes.recover( XAResource.TMNOFLAGS ).length );
+        xid = new XidImpl( new byte[4], new byte[4] );
+        xaRes.start( xid, XAResource.TMNOFLAGS );
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            assertTrue( xaCon.getNodeConsumer().loadLightNode( nodes[i] ) );
+            assertEquals( 1, xaCon.getNodeConsumer().getProperties( nodes[i], false ).size() );
+        }
+        for ( int i = 0; i < rels.length; i++ )
+        {
+            assertEquals( nodes[i], xaCon.getRelationshipConsumer().getRelationship(
+                rels[i] ).firstNode() );
+        }
+        xaRes.end( xid, XAResource.TMSUCCESS );
+        xaRes.commit( xid, true );
+        xaCon.clearAllTransactions();
+    }
+
     @Test
     public void testLogicalLogPrepared() throws Exception
     {
@@ -709,6 +766,95 @@ public class TestXa extends AbstractNeo4jTestCase
         assertTrue( logicalLogExists( currentVersion + 1 ) );
     }
 
+    @Test
+    public void testCommittedTransactionsFoundInRotatedLogsAfterRestart() throws Exception
+    {
+        ds.keepLogicalLogs( true );
+        long[] txIds = new long[4];
+        for ( int i = 0; i < txIds.length; i++ )
+        {
+            Xid xid = new XidImpl( new byte[] { (byte) i }, new byte[1] );
+            xaCon = (NeoStoreXaConnection) ds.getXaConnection();
+            XAResource xaRes = xaCon.getXaResource();
+            xaRes.start( xid, XAResource.TMNOFLAGS );
+            xaCon.getNodeConsumer().createNode( ds.nextId( Node.class ) );
+            xaRes.end( xid, XAResource.TMSUCCESS );
+            xaRes.commit( xid, true );
+            txIds[i] = ds.getLastCommittedTxId();
+            if ( i % 2 == 1 )
+            {
+                ds.rotateLogicalLog();
+            }
+        }
+        xaCon.clearAllTransactions();
+        ds.close();
+        // Transactions committed before the index existed are indexed on demand
+        File index = new File( file( "nioneo_logical.log.txindex" ) );
+        assertTrue( index.delete() );
+        ds = newNeoStore();
+        ds.keepLogicalLogs( true );
+        xaCon = (NeoStoreXaConnection) ds.getXaConnection();
+        for ( long txId : txIds )
+        {
+            assertEquals( XaLogicalLog.MASTER_ID_REPRESENTING_NO_MASTER,
+                ds.getMasterForCommittedTx( txId ) );
+            InMemoryLogBuffer buffer = new InMemoryLogBuffer();
+            ds.getCommittedTransaction( txId, buffer );
+            assertTrue( buffer.read( ByteBuffer.allocate( 1 ) ) > 0 );
+        }
+        assertEquals( txIds[0] + txIds.length - 1, txIds[txIds.length - 1] );
+        assertTrue( index.length() > 0 );
+    }
+
+    @Test
+    public void testConcurrentCommits() throws Exception
+    {
+        final int threadCount = 4;
+        final int txPerThread = 50;
+        long lastTxBefore = ds.getLastCommittedTxId();
+        final List<Throwable> failures = Collections.synchronizedList(
+            new ArrayList<Throwable>() );
+        Thread[] threads = new Thread[threadCount];
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int threadId = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = 0; i < txPerThread; i++ )
+                        {
+                            NeoStoreXaConnection connection =
+                                (NeoStoreXaConnection) ds.getXaConnection();
+                            Xid xid = new XidImpl( new byte[] { (byte) threadId,
+                                (byte) i }, new byte[1] );
+                            XAResource xaRes = connection.getXaResource();
+                            xaRes.start( xid, XAResource.TMNOFLAGS );
+                            connection.getNodeConsumer().createNode(
+                                ds.nextId( Node.class ) );
+                            xaRes.end( xid, XAResource.TMSUCCESS );
+                            xaRes.commit( xid, true );
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failures.add( e );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( Collections.emptyList(), failures );
+        assertEquals( lastTxBefore + threadCount * txPerThread, ds.getLastCommittedTxId() );
+    }
+
 	private boolean logicalLogExists( long version ) throws IOException
 	{
 		ReadableByteChannel log = ds.getLogicalLog( version );
@@ -701,15 +701,39 @@ public class TestJtaCompliance extends AbstractNeo4jTestCase
     }
 
     /**
-     * Is one-phase commit always performed when only one (or many isSameRM)
-     * resource(s) are present in the transaction?
-     * 
-     * If so it could be tested...
+     * o Tests that a transaction with only one resource is committed in one
+     * phase without writing to the tx log, and that a second resource makes
+     * it a regular two-phase commit again.
      */
-    // public void test1PhaseCommit()
-    // {
-    //	
-    // }
+    @Test
+    public void test1PhaseCommit() throws Exception
+    {
+        TxModule txModule = getEmbeddedGraphDb().getConfig().getTxModule();
+        int skippedBefore = txModule.getTxLogSkippedCommitCount();
+        tm.begin();
+        FakeXAResource res1 = new FakeXAResource( "XAResource1" );
+        tm.getTransaction().enlistResource( res1 );
+        tm.getTransaction().delistResource( res1, XAResource.TMSUCCESS );
+        res1.getAndRemoveMethodCalls();
+        tm.commit();
+        MethodCall calls1[] = res1.getAndRemoveMethodCalls();
+        assertEquals( 1, calls1.length );
+        assertEquals( "commit", calls1[0].getMethodName() );
+        assertEquals( true,
+            ((Boolean) calls1[0].getArgs()[1]).booleanValue() );
+        assertEquals( skippedBefore + 1,
+            txModule.getTxLogSkippedCommitCount() );
+
+        tm.begin();
+        FakeXAResource res2 = new FakeXAResource( "XAResource2" );
+        tm.getTransaction().enlistResource( res1 );
+        tm.getTransaction().enlistResource( res2 );
+        tm.getTransaction().delistResource( res1, XAResource.TMSUCCESS );
+        tm.getTransaction().delistResource( res2, XAResource.TMSUCCESS );
+        tm.commit();
+        assertEquals( skippedBefore + 1,
+            txModule.getTxLogSkippedCommitCount() );
+    }
     public static class DummyXaDataSource extends XaDataSource
     {
         private XAResource xaResource = null;
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.neo4j.kernel.impl.AbstractNeo4jTestCase.deleteFileOrDirectory;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+public class TestApplyTransactions
+{
+    private static final String MASTER_DIR = "target/var/apply-master";
+    private static final String SLAVE_DIR = "target/var/apply-slave";
+    private static final int TRANSACTIONS = 200;
+    
+    private EmbeddedGraphDatabase master;
+    private EmbeddedGraphDatabase slave;
+    
+    @Before
+    public void startDbs()
+    {
+        deleteFileOrDirectory( MASTER_DIR );
+        deleteFileOrDirectory( SLAVE_DIR );
+        master = new EmbeddedGraphDatabase( MASTER_DIR,
+                MapUtil.stringMap( Config.KEEP_LOGICAL_LOGS, "true" ) );
+        slave = new EmbeddedGraphDatabase( SLAVE_DIR );
+    }
+    
+    @After
+    public void stopDbs()
+    {
+        master.shutdown();
+        slave.shutdown();
+    }
+    
+    private static XaDataSource dataSource( EmbeddedGraphDatabase db )
+    {
+        return db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                "nioneodb" );
+    }
+    
+    @Test
+    public void transactionsCanBeAppliedWhileOthersStart() throws Exception
+    {
+        final XaDataSource masterDs = dataSource( master );
+        final XaDataSource slaveDs = dataSource( slave );
+        final long base = slaveDs.getLastCommittedTxId();
+        assertEquals( base, masterDs.getLastCommittedTxId() );
+        for ( int i = 0; i < TRANSACTIONS; i++ )
+        {
+            Transaction tx = master.beginTx();
+            master.createNode();
+            tx.success();
+            tx.finish();
+        }
+        
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread applier = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for ( long txId = base + 1; txId <= base + TRANSACTIONS; txId++ )
+                    {
+                        slaveDs.applyCommittedTransaction( txId,
+                                masterDs.getCommittedTransaction( txId ) );
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    failure.set( t );
+                }
+            }
+        };
+        Thread[] starters = new Thread[4];
+        for ( int i = 0; i < starters.length; i++ )
+        {
+            starters[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    // local transactions which start, but never commit, so
+                    // that the applied tx ids stay in order
+                    while ( slaveDs.getLastCommittedTxId() < base + TRANSACTIONS
+                            && failure.get() == null )
+                    {
+                        Transaction tx = slave.beginTx();
+                        try
+                        {
+                            slave.createNode();
+                            tx.failure();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                    }
+                }
+            };
+            starters[i].start();
+        }
+        applier.start();
+        
+        applier.join( 60000 );
+        assertFalse( "Applying transactions deadlocked with starting ones",
+                applier.isAlive() );
+        for ( Thread starter : starters )
+        {
+            starter.join( 10000 );
+            assertFalse( starter.isAlive() );
+        }
+        assertNull( failure.get() );
+        assertEquals( base + TRANSACTIONS, slaveDs.getLastCommittedTxId() );
+    }
+}
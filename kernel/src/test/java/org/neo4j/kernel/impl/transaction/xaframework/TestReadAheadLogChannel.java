@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReadAheadLogChannel
+{
+    private File testFileObject;
+    private RandomAccessFile testRAFile;
+
+    @Before
+    public void createFiles() throws Exception
+    {
+        testFileObject = new File( "target/var/readahead" );
+        testFileObject.getParentFile().mkdirs();
+        testRAFile = new RandomAccessFile( testFileObject, "rw" );
+    }
+
+    @After
+    public void deleteFiles() throws Exception
+    {
+        testRAFile.close();
+        testFileObject.delete();
+    }
+
+    @Test
+    public void readsAcrossReadAheadBoundaries() throws Exception
+    {
+        FileChannel channel = createFromData( 1, 2, 3, 4, 5 );
+        // 6 bytes of read ahead won't hold any two whole ints
+        ReadAheadLogChannel readAhead = new ReadAheadLogChannel( channel, 6 );
+        ByteBuffer readBuffer = ByteBuffer.allocate( 4 );
+        for ( int i = 1; i <= 5; i++ )
+        {
+            readBuffer.clear();
+            assertEquals( 4, readAhead.read( readBuffer ) );
+            readBuffer.flip();
+            assertEquals( i, readBuffer.getInt() );
+            assertEquals( i * 4, readAhead.position() );
+        }
+        readBuffer.clear();
+        assertEquals( -1, readAhead.read( readBuffer ) );
+        assertEquals( 20, readAhead.position() );
+    }
+
+    @Test
+    public void shortReadAtEndOfFile() throws Exception
+    {
+        FileChannel channel = createFromData( 1, 2, 3 );
+        ReadAheadLogChannel readAhead = new ReadAheadLogChannel( channel, 1024 );
+        ByteBuffer readBuffer = ByteBuffer.allocate( 8 );
+        assertEquals( 8, readAhead.read( readBuffer ) );
+        readBuffer.clear();
+        assertEquals( 4, readAhead.read( readBuffer ) );
+        assertEquals( 12, readAhead.position() );
+    }
+
+    @Test
+    public void startsAtPositionOfChannel() throws Exception
+    {
+        FileChannel channel = createFromData( 1, 2, 3 );
+        channel.position( 4 );
+        ReadAheadLogChannel readAhead = new ReadAheadLogChannel( channel, 1024 );
+        assertEquals( 4, readAhead.position() );
+        ByteBuffer readBuffer = ByteBuffer.allocate( 4 );
+        readAhead.read( readBuffer );
+        readBuffer.flip();
+        assertEquals( 2, readBuffer.getInt() );
+        assertEquals( 8, readAhead.position() );
+    }
+
+    private FileChannel createFromData( int... data ) throws Exception
+    {
+        FileChannel channel = testRAFile.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate( data.length * 4 );
+        for ( int datum : data )
+        {
+            buffer.putInt( datum );
+        }
+        buffer.flip();
+        channel.write( buffer );
+        channel.position( 0 );
+        return channel;
+    }
+}
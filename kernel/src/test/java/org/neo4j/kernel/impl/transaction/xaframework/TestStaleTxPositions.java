@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.neo4j.kernel.impl.AbstractNeo4jTestCase.deleteFileOrDirectory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog.TxPosition;
+
+public class TestStaleTxPositions
+{
+    private static final String DIR = "target/var/stale-tx-positions";
+    private static final String INDEX = DIR + File.separator + "nioneo_logical.log" +
+            TxPositionIndex.FILE_SUFFIX;
+    
+    private EmbeddedGraphDatabase db;
+    
+    @Before
+    public void createStore()
+    {
+        deleteFileOrDirectory( DIR );
+        startDb();
+        db.shutdown();
+    }
+    
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+    
+    private void startDb()
+    {
+        db = new EmbeddedGraphDatabase( DIR, MapUtil.stringMap( Config.KEEP_LOGICAL_LOGS, "true" ) );
+    }
+    
+    private XaDataSource dataSource()
+    {
+        return db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                "nioneodb" );
+    }
+    
+    /**
+     * Starts the database, commits a transaction first thing, so that it gets
+     * the first identifier, and rotates the log it is in.
+     * 
+     * @return the tx id of the transaction.
+     */
+    private long commitFirstTransactionAndRotate() throws Exception
+    {
+        startDb();
+        Transaction tx = db.beginTx();
+        db.createNode();
+        tx.success();
+        tx.finish();
+        long txId = dataSource().getLastCommittedTxId();
+        dataSource().rotateLogicalLog();
+        db.shutdown();
+        return txId;
+    }
+    
+    private byte[] committedTransaction( long txId ) throws Exception
+    {
+        InMemoryLogBuffer buffer = new InMemoryLogBuffer();
+        dataSource().getCommittedTransaction( txId, buffer );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer chunk = ByteBuffer.allocate( 1024 );
+        while ( buffer.read( chunk ) > 0 )
+        {
+            chunk.flip();
+            bytes.write( chunk.array(), 0, chunk.limit() );
+            chunk.clear();
+        }
+        return bytes.toByteArray();
+    }
+    
+    @Test
+    public void stalePositionOfAReusedIdentifierIsNotServed() throws Exception
+    {
+        long first = commitFirstTransactionAndRotate();
+        long second = commitFirstTransactionAndRotate();
+        
+        TxPositionIndex index = new TxPositionIndex( INDEX );
+        index.open( 0 );
+        TxPosition firstPosition = index.get( first );
+        TxPosition secondPosition = index.get( second );
+        // The identifier counter starts over with the database, so both
+        // transactions have the same identifier, in different log versions
+        assertEquals( firstPosition.identifier, secondPosition.identifier );
+        assertFalse( firstPosition.version == secondPosition.version );
+        
+        startDb();
+        byte[] expected = committedTransaction( second );
+        db.shutdown();
+        
+        // The index says that the second transaction is where the first one is
+        index.put( second, firstPosition );
+        index.close();
+        
+        startDb();
+        assertArrayEquals( expected, committedTransaction( second ) );
+        assertFalse( Arrays.equals( expected, committedTransaction( first ) ) );
+        db.shutdown();
+        
+        // The stale position has been replaced in the index
+        index = new TxPositionIndex( INDEX );
+        index.open( 0 );
+        assertEquals( secondPosition.version, index.get( second ).version );
+        index.close();
+        startDb();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog.TxPosition;
+
+public class TestTxPositionIndex
+{
+    private File file;
+    private TxPositionIndex index;
+
+    @Before
+    public void createIndex() throws Exception
+    {
+        file = new File( "target/var/txpositionindex" );
+        file.getParentFile().mkdirs();
+        file.delete();
+        index = new TxPositionIndex( file.getPath() );
+        index.open( 10 );
+    }
+
+    @After
+    public void deleteIndex() throws Exception
+    {
+        index.close();
+        file.delete();
+    }
+
+    @Test
+    public void addedPositionsCanBeLookedUp() throws Exception
+    {
+        index.put( 10, new TxPosition( 0, -1, 3, 16 ) );
+        index.put( 11, new TxPosition( 1, 2, 4, 1234 ) );
+        assertPosition( index.get( 10 ), 0, -1, 3, 16 );
+        assertPosition( index.get( 11 ), 1, 2, 4, 1234 );
+    }
+
+    @Test
+    public void unknownTransactionsAreNotFound() throws Exception
+    {
+        index.put( 12, new TxPosition( 0, -1, 3, 16 ) );
+        assertNull( index.get( 9 ) );
+        assertNull( index.get( 11 ) );
+        assertNull( index.get( 13 ) );
+        index.put( 5, new TxPosition( 0, -1, 1, 16 ) );
+        assertNull( index.get( 5 ) );
+    }
+
+    @Test
+    public void laterPositionReplacesEarlier() throws Exception
+    {
+        index.put( 10, new TxPosition( 0, -1, 3, 16 ) );
+        index.put( 10, new TxPosition( 1, -1, 3, 16 ) );
+        assertPosition( index.get( 10 ), 1, -1, 3, 16 );
+    }
+
+    @Test
+    public void survivesReopen() throws Exception
+    {
+        index.put( 15, new TxPosition( 2, 1, 7, 100 ) );
+        index.close();
+        index = new TxPositionIndex( file.getPath() );
+        index.open( 100 );
+        assertPosition( index.get( 15 ), 2, 1, 7, 100 );
+    }
+
+    @Test
+    public void tornRecordIsNotFound() throws Exception
+    {
+        index.put( 10, new TxPosition( 0, -1, 3, 16 ) );
+        index.put( 11, new TxPosition( 0, -1, 4, 200 ) );
+        index.close();
+        RandomAccessFile raFile = new RandomAccessFile( file, "rw" );
+        raFile.setLength( raFile.length() - 4 );
+        raFile.close();
+        index = new TxPositionIndex( file.getPath() );
+        index.open( 10 );
+        assertPosition( index.get( 10 ), 0, -1, 3, 16 );
+        assertNull( index.get( 11 ) );
+    }
+
+    private void assertPosition( TxPosition position, long version, int masterId,
+            int identifier, long startPosition )
+    {
+        assertEquals( version, position.version );
+        assertEquals( masterId, position.masterId );
+        assertEquals( identifier, position.identifier );
+        assertEquals( startPosition, position.position );
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestPrimitiveLongMap
+{
+    @Test
+    public void testPutGet()
+    {
+        PrimitiveLongMap<String> map = new PrimitiveLongMap<String>();
+        assertTrue( map.isEmpty() );
+        assertNull( map.get( 0 ) );
+        map.put( 0, "zero" );
+        map.put( 1L << 35, "big" );
+        map.put( 3, "three" );
+        assertEquals( "zero", map.get( 0 ) );
+        assertEquals( "big", map.get( 1L << 35 ) );
+        assertEquals( "three", map.get( 3 ) );
+        assertNull( map.get( 2 ) );
+        map.put( 3, "THREE" );
+        assertEquals( "THREE", map.get( 3 ) );
+        assertEquals( 3, map.size() );
+    }
+
+    @Test
+    public void testIteratesInKeyOrder()
+    {
+        PrimitiveLongMap<Long> map = new PrimitiveLongMap<Long>();
+        Random random = new Random( 1234 );
+        long[] keys = new long[10000];
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            keys[i] = random.nextInt( Integer.MAX_VALUE );
+            map.put( keys[i], keys[i] );
+        }
+        long[] expected = sortedDistinct( keys );
+        assertArrayEquals( expected, map.sortedKeys() );
+        assertEquals( expected.length, map.size() );
+        List<Long> values = map.values();
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            assertEquals( expected[i], values.get( i ).longValue() );
+        }
+    }
+
+    @Test
+    public void testClear()
+    {
+        PrimitiveLongMap<String> map = new PrimitiveLongMap<String>();
+        for ( long i = 0; i < 1000; i++ )
+        {
+            map.put( i, "" + i );
+        }
+        map.clear();
+        assertTrue( map.isEmpty() );
+        assertNull( map.get( 10 ) );
+        assertEquals( 0, map.sortedKeys().length );
+        map.put( 10, "ten" );
+        assertEquals( "ten", map.get( 10 ) );
+    }
+
+    private long[] sortedDistinct( long[] keys )
+    {
+        long[] sorted = keys.clone();
+        Arrays.sort( sorted );
+        int count = 0;
+        for ( int i = 0; i < sorted.length; i++ )
+        {
+            if ( i == 0 || sorted[i] != sorted[i - 1] )
+            {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf( sorted, count );
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.index.impl.lucene.AbstractIndexHits;
+
+/**
+ * The entities of the ids found by a hash index lookup. Entities which have
+ * been deleted without being removed from the index are skipped.
+ */
+abstract class EntityHits<T> extends AbstractIndexHits<T>
+{
+    private final long[] ids;
+    private int position;
+    
+    EntityHits( long[] ids )
+    {
+        this.ids = ids;
+    }
+    
+    @Override
+    protected T fetchNextOrNull()
+    {
+        while ( position < ids.length )
+        {
+            try
+            {
+                return getById( ids[position++] );
+            }
+            catch ( NotFoundException e )
+            {
+                // Deleted, but still in the index
+            }
+        }
+        return null;
+    }
+    
+    protected abstract T getById( long id );
+    
+    public int size()
+    {
+        return ids.length;
+    }
+    
+    public float currentScore()
+    {
+        return Float.NaN;
+    }
+}
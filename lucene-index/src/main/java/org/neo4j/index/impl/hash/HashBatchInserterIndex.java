@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.neo4j.graphdb.index.BatchInserterIndex;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+
+class HashBatchInserterIndex implements BatchInserterIndex
+{
+    private final HashIndexTables tables;
+    
+    HashBatchInserterIndex( File directory )
+    {
+        try
+        {
+            this.tables = new HashIndexTables( directory );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+    
+    public void add( long entityId, Map<String, Object> properties )
+    {
+        try
+        {
+            for ( Map.Entry<String, Object> entry : properties.entrySet() )
+            {
+                for ( Object oneValue : IoPrimitiveUtils.asArray( entry.getValue() ) )
+                {
+                    tables.add( entityId, entry.getKey(), oneValue.toString() );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+    
+    public void updateOrAdd( long entityId, Map<String, Object> properties )
+    {
+        tables.remove( entityId, null );
+        add( entityId, properties );
+    }
+    
+    public IndexHits<Long> get( String key, Object value )
+    {
+        return new EntityHits<Long>( tables.get( key, value.toString() ) )
+        {
+            @Override
+            protected Long getById( long id )
+            {
+                return id;
+            }
+        };
+    }
+    
+    public IndexHits<Long> query( String key, Object queryOrQueryObject )
+    {
+        throw HashIndex.queryNotSupported();
+    }
+    
+    public IndexHits<Long> query( Object queryOrQueryObject )
+    {
+        throw HashIndex.queryNotSupported();
+    }
+    
+    public void flush()
+    {
+        // Writes are visible to get directly
+    }
+    
+    public void setCacheCapacity( String key, int size )
+    {
+        // Lookups go straight to the memory mapped tables, there's no cache
+    }
+    
+    void shutdown()
+    {
+        try
+        {
+            tables.close();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+}
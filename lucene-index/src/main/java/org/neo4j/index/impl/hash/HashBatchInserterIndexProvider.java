@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.index.BatchInserterIndex;
+import org.neo4j.graphdb.index.BatchInserterIndexProvider;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+import org.neo4j.kernel.impl.index.IndexStore;
+
+/**
+ * The {@link BatchInserter} version of {@link HashIndexImplementation}. The
+ * tables are written directly, without a logical log, so indexes created and
+ * populated using {@link BatchInserterIndex}s from this provider are
+ * compatible with {@link Index}s from {@link HashIndexImplementation}.
+ */
+public class HashBatchInserterIndexProvider implements BatchInserterIndexProvider
+{
+    private final Map<IndexIdentifier, HashBatchInserterIndex> indexes =
+            new HashMap<IndexIdentifier, HashBatchInserterIndex>();
+    private final IndexStore indexStore;
+    private final File baseDirectory;
+    
+    public HashBatchInserterIndexProvider( BatchInserter inserter )
+    {
+        this.indexStore = ((BatchInserterImpl) inserter).getIndexStore();
+        this.baseDirectory = HashDataSource.getStoreDir( ((BatchInserterImpl) inserter).getStore() );
+    }
+    
+    public BatchInserterIndex nodeIndex( String indexName, Map<String, String> config )
+    {
+        config( Node.class, indexName, config );
+        return index( new IndexIdentifier( HashCommand.NODE, indexName ) );
+    }
+    
+    public BatchInserterIndex relationshipIndex( String indexName, Map<String, String> config )
+    {
+        config( Relationship.class, indexName, config );
+        return index( new IndexIdentifier( HashCommand.RELATIONSHIP, indexName ) );
+    }
+    
+    private void config( Class<? extends PropertyContainer> cls, String indexName,
+            Map<String, String> config )
+    {
+        Map<String, String> result = config != null ?
+                new HashMap<String, String>( config ) : new HashMap<String, String>();
+        indexStore.setIfNecessary( cls, indexName, MapUtil.stringMap( result,
+                HashIndexImplementation.KEY_PROVIDER, HashIndexImplementation.SERVICE_NAME ) );
+    }
+    
+    private BatchInserterIndex index( IndexIdentifier identifier )
+    {
+        // Single threaded, just as the batch inserter
+        HashBatchInserterIndex index = indexes.get( identifier );
+        if ( index == null )
+        {
+            index = new HashBatchInserterIndex( HashDataSource.getIndexDirectory(
+                    baseDirectory, identifier ) );
+            indexes.put( identifier, index );
+        }
+        return index;
+    }
+    
+    public void shutdown()
+    {
+        for ( HashBatchInserterIndex index : indexes.values() )
+        {
+            index.shutdown();
+        }
+    }
+}
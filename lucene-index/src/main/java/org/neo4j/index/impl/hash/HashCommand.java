@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+
+/**
+ * A change to a hash index. The key and value of a remove command may be
+ * {@code null}, meaning all values of the key, or all keys, of the entity.
+ */
+class HashCommand extends XaCommand
+{
+    static final byte ADD_COMMAND = (byte) 1;
+    static final byte REMOVE_COMMAND = (byte) 2;
+    static final byte DELETE_COMMAND = (byte) 3;
+    static final byte CREATE_INDEX_COMMAND = (byte) 4;
+    
+    static final byte NODE = (byte) 1;
+    static final byte RELATIONSHIP = (byte) 2;
+    
+    final byte type;
+    final IndexIdentifier identifier;
+    final long entityId;
+    final String key;
+    final String value;
+    final Map<String, String> config;
+    
+    private HashCommand( byte type, IndexIdentifier identifier, long entityId, String key,
+            String value, Map<String, String> config )
+    {
+        this.type = type;
+        this.identifier = identifier;
+        this.entityId = entityId;
+        this.key = key;
+        this.value = value;
+        this.config = config;
+    }
+    
+    static HashCommand add( IndexIdentifier identifier, long entityId, String key, String value )
+    {
+        return new HashCommand( ADD_COMMAND, identifier, entityId, key, value, null );
+    }
+    
+    static HashCommand remove( IndexIdentifier identifier, long entityId, String keyOrNull,
+            String valueOrNull )
+    {
+        return new HashCommand( REMOVE_COMMAND, identifier, entityId, keyOrNull, valueOrNull, null );
+    }
+    
+    static HashCommand delete( IndexIdentifier identifier )
+    {
+        return new HashCommand( DELETE_COMMAND, identifier, -1, null, null, null );
+    }
+    
+    static HashCommand createIndex( IndexIdentifier identifier, Map<String, String> config )
+    {
+        return new HashCommand( CREATE_INDEX_COMMAND, identifier, -1, null, null, config );
+    }
+    
+    /**
+     * Applies this command to the tables of its index, which must be locked
+     * for commit. Adds and removes can be applied any number of times, which
+     * recovery relies on.
+     */
+    void applyTo( HashIndexTables tables ) throws IOException
+    {
+        switch ( type )
+        {
+        case ADD_COMMAND:
+            tables.add( entityId, key, value );
+            break;
+        case REMOVE_COMMAND:
+            if ( value != null )
+            {
+                tables.remove( entityId, key, value );
+            }
+            else
+            {
+                tables.remove( entityId, key );
+            }
+            break;
+        default:
+            throw new IllegalStateException( "Command " + type + " isn't applied to an index" );
+        }
+    }
+    
+    @Override
+    public void execute()
+    {
+        // Applied by HashTransaction, per index
+    }
+    
+    @Override
+    public void writeToFile( LogBuffer buffer ) throws IOException
+    {
+        buffer.put( type );
+        buffer.put( identifier.entityType );
+        writeString( buffer, identifier.indexName );
+        if ( type == CREATE_INDEX_COMMAND )
+        {
+            buffer.putInt( config.size() );
+            for ( Map.Entry<String, String> entry : config.entrySet() )
+            {
+                writeString( buffer, entry.getKey() );
+                writeString( buffer, entry.getValue() );
+            }
+        }
+        else if ( type != DELETE_COMMAND )
+        {
+            buffer.putLong( entityId );
+            writeString( buffer, key );
+            writeString( buffer, value );
+        }
+    }
+    
+    private static void writeString( LogBuffer buffer, String string ) throws IOException
+    {
+        if ( string == null )
+        {
+            buffer.putInt( -1 );
+        }
+        else
+        {
+            char[] chars = string.toCharArray();
+            buffer.putInt( chars.length );
+            buffer.put( chars );
+        }
+    }
+    
+    /**
+     * @return the command read from {@code channel}, or {@code null} if the
+     * log ended before the whole command could be read.
+     */
+    static HashCommand readCommand( ReadableByteChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        buffer.clear(); buffer.limit( 2 );
+        if ( channel.read( buffer ) != buffer.limit() )
+        {
+            return null;
+        }
+        buffer.flip();
+        byte type = buffer.get();
+        byte entityType = buffer.get();
+        if ( entityType != NODE && entityType != RELATIONSHIP )
+        {
+            throw new IOException( "Unknown entity type " + entityType );
+        }
+        String indexName = IoPrimitiveUtils.readLengthAndString( channel, buffer );
+        if ( indexName == null )
+        {
+            return null;
+        }
+        IndexIdentifier identifier = new IndexIdentifier( entityType, indexName );
+        switch ( type )
+        {
+        case CREATE_INDEX_COMMAND:
+            Integer size = IoPrimitiveUtils.readInt( channel, buffer );
+            if ( size == null )
+            {
+                return null;
+            }
+            Map<String, String> config = new HashMap<String, String>();
+            for ( int i = 0; i < size; i++ )
+            {
+                String key = IoPrimitiveUtils.readLengthAndString( channel, buffer );
+                String value = IoPrimitiveUtils.readLengthAndString( channel, buffer );
+                if ( key == null || value == null )
+                {
+                    return null;
+                }
+                config.put( key, value );
+            }
+            return createIndex( identifier, config );
+        case DELETE_COMMAND:
+            return delete( identifier );
+        case ADD_COMMAND:
+        case REMOVE_COMMAND:
+            Long entityId = IoPrimitiveUtils.readLong( channel, buffer );
+            if ( entityId == null )
+            {
+                return null;
+            }
+            String[] keyAndValue = new String[2];
+            for ( int i = 0; i < keyAndValue.length; i++ )
+            {
+                Integer length = IoPrimitiveUtils.readInt( channel, buffer );
+                if ( length == null )
+                {
+                    return null;
+                }
+                if ( length != -1 )
+                {
+                    keyAndValue[i] = IoPrimitiveUtils.readString( channel, buffer, length );
+                    if ( keyAndValue[i] == null )
+                    {
+                        return null;
+                    }
+                }
+            }
+            return new HashCommand( type, identifier, entityId, keyAndValue[0], keyAndValue[1], null );
+        default:
+            throw new IOException( "Unknown command type " + type );
+        }
+    }
+    
+    static byte entityType( Class<?> cls )
+    {
+        if ( cls == Node.class )
+        {
+            return NODE;
+        }
+        else if ( cls == Relationship.class )
+        {
+            return RELATIONSHIP;
+        }
+        throw new IllegalArgumentException( "Unknown entity type " + cls );
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "HashCommand[" + type + ", " + identifier + ", " + entityId + ", " + key + ", " + value + "]";
+    }
+}
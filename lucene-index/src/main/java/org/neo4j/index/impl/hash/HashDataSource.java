@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.helpers.collection.ClosableIterable;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.index.IndexProviderStore;
+import org.neo4j.kernel.impl.index.IndexStore;
+import org.neo4j.kernel.impl.transaction.xaframework.LogBackedXaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommandFactory;
+import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
+import org.neo4j.kernel.impl.transaction.xaframework.XaContainer;
+import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
+import org.neo4j.kernel.impl.transaction.xaframework.XaTransactionFactory;
+
+/**
+ * An {@link LogBackedXaDataSource} for hash indexes, which keeps the
+ * {@link HashIndexTables} of each index under {@code index/hash} in the
+ * store directory. Changes are logged in its own logical log before they
+ * are applied to the memory mapped tables, which are forced to disk when
+ * the log is rotated.
+ * 
+ * This class is public because the XA framework requires it.
+ */
+public class HashDataSource extends LogBackedXaDataSource
+{
+    public static final String DEFAULT_NAME = "hash-index";
+    public static final byte[] DEFAULT_BRANCH_ID = UTF8.encode( "262375" );
+    
+    private final ConcurrentHashMap<IndexIdentifier, HashIndexTables> tables =
+            new ConcurrentHashMap<IndexIdentifier, HashIndexTables>();
+    private final XaContainer xaContainer;
+    private final File baseDirectory;
+    final IndexStore indexStore;
+    private final IndexProviderStore providerStore;
+    private boolean closed;
+    final Map<IndexIdentifier, HashIndex<? extends PropertyContainer>> indexes =
+            new HashMap<IndexIdentifier, HashIndex<? extends PropertyContainer>>();
+    
+    /**
+     * Constructs this data source.
+     * 
+     * @param params XA parameters.
+     * @throws InstantiationException if the data source couldn't be
+     * instantiated
+     */
+    public HashDataSource( Map<Object, Object> params ) throws InstantiationException
+    {
+        super( params );
+        this.baseDirectory = getStoreDir( (String) params.get( "store_dir" ) );
+        this.indexStore = (IndexStore) params.get( IndexStore.class );
+        this.providerStore = new IndexProviderStore( new File( baseDirectory, "hash-store.db" ) );
+        Object readOnly = params.get( "read_only" );
+        boolean isReadOnly = readOnly instanceof Boolean ? (Boolean) readOnly :
+                Boolean.parseBoolean( (String) readOnly );
+        
+        xaContainer = XaContainer.create( this, new File( baseDirectory, "hash.log" ).getPath(),
+                new HashCommandFactory(), new HashTransactionFactory(), params );
+        if ( !isReadOnly )
+        {
+            try
+            {
+                xaContainer.openLogicalLog();
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to open hash index log in " + baseDirectory, e );
+            }
+            xaContainer.getLogicalLog().setKeepLogs(
+                    shouldKeepLog( (String) params.get( Config.KEEP_LOGICAL_LOGS ), DEFAULT_NAME ) );
+            setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
+        }
+    }
+    
+    static File getStoreDir( String dbStoreDir )
+    {
+        File dir = new File( new File( new File( dbStoreDir ), "index" ), "hash" );
+        if ( !dir.exists() && !dir.mkdirs() )
+        {
+            throw new RuntimeException( "Unable to create directory path["
+                    + dir.getAbsolutePath() + "] for Neo4j store." );
+        }
+        return dir;
+    }
+    
+    static File getIndexDirectory( File baseDirectory, IndexIdentifier identifier )
+    {
+        return new File( getEntityDirectory( baseDirectory, identifier.entityType ), identifier.indexName );
+    }
+    
+    private static File getEntityDirectory( File baseDirectory, byte entityType )
+    {
+        return new File( baseDirectory, entityType == HashCommand.NODE ? "node" : "relationship" );
+    }
+    
+    /**
+     * @return the tables of the index, which are opened, or created, the
+     * first time they are asked for.
+     */
+    HashIndexTables getTables( IndexIdentifier identifier )
+    {
+        HashIndexTables result = tables.get( identifier );
+        if ( result == null )
+        {
+            synchronized ( tables )
+            {
+                result = tables.get( identifier );
+                if ( result == null )
+                {
+                    try
+                    {
+                        result = new HashIndexTables( getIndexDirectory( baseDirectory, identifier ) );
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( "Unable to open " + identifier, e );
+                    }
+                    tables.put( identifier, result );
+                }
+            }
+        }
+        return result;
+    }
+    
+    void deleteIndex( IndexIdentifier identifier, boolean recovery )
+    {
+        synchronized ( tables )
+        {
+            HashIndexTables indexTables = tables.remove( identifier );
+            if ( indexTables != null )
+            {
+                try
+                {
+                    indexTables.close();
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( "Unable to close " + identifier, e );
+                }
+            }
+        }
+        deleteFileOrDirectory( getIndexDirectory( baseDirectory, identifier ) );
+        boolean removeFromIndexStore = !recovery ||
+                indexStore.has( identifier.getEntityClass(), identifier.indexName );
+        if ( removeFromIndexStore )
+        {
+            indexStore.remove( identifier.getEntityClass(), identifier.indexName );
+        }
+        synchronized ( indexes )
+        {
+            HashIndex<? extends PropertyContainer> index = indexes.remove( identifier );
+            if ( index != null )
+            {
+                index.markAsDeleted();
+            }
+        }
+    }
+    
+    private static void deleteFileOrDirectory( File file )
+    {
+        if ( file.exists() )
+        {
+            if ( file.isDirectory() )
+            {
+                for ( File child : file.listFiles() )
+                {
+                    deleteFileOrDirectory( child );
+                }
+            }
+            file.delete();
+        }
+    }
+    
+    @Override
+    public void close()
+    {
+        if ( closed )
+        {
+            return;
+        }
+        if ( xaContainer != null )
+        {
+            xaContainer.close();
+        }
+        for ( Map.Entry<IndexIdentifier, HashIndexTables> entry : tables.entrySet() )
+        {
+            try
+            {
+                entry.getValue().close();
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to close " + entry.getKey(), e );
+            }
+        }
+        tables.clear();
+        providerStore.close();
+        closed = true;
+    }
+    
+    @Override
+    public XaConnection getXaConnection()
+    {
+        return new HashXaConnection( baseDirectory, xaContainer.getResourceManager(), getBranchId() );
+    }
+    
+    private class HashCommandFactory extends XaCommandFactory
+    {
+        @Override
+        public XaCommand readCommand( ReadableByteChannel channel, ByteBuffer buffer )
+                throws IOException
+        {
+            return HashCommand.readCommand( channel, buffer );
+        }
+    }
+    
+    private class HashTransactionFactory extends XaTransactionFactory
+    {
+        @Override
+        public XaTransaction create( int identifier )
+        {
+            return new HashTransaction( identifier, getLogicalLog(), HashDataSource.this );
+        }
+        
+        @Override
+        public void flushAll()
+        {
+            for ( HashIndexTables indexTables : tables.values() )
+            {
+                indexTables.force();
+            }
+        }
+        
+        @Override
+        public long getCurrentVersion()
+        {
+            return providerStore.getVersion();
+        }
+        
+        @Override
+        public long getAndSetNewVersion()
+        {
+            return providerStore.incrementVersion();
+        }
+        
+        @Override
+        public long getLastCommittedTx()
+        {
+            return providerStore.getLastCommittedTx();
+        }
+    }
+    
+    @Override
+    public long getCreationTime()
+    {
+        return providerStore.getCreationTime();
+    }
+    
+    @Override
+    public long getRandomIdentifier()
+    {
+        return providerStore.getRandomNumber();
+    }
+    
+    @Override
+    public long getCurrentLogVersion()
+    {
+        return providerStore.getVersion();
+    }
+    
+    @Override
+    public long getLastCommittedTxId()
+    {
+        return providerStore.getLastCommittedTx();
+    }
+    
+    @Override
+    public void setLastCommittedTxId( long txId )
+    {
+        providerStore.setLastCommittedTx( txId );
+    }
+    
+    @Override
+    public XaContainer getXaContainer()
+    {
+        return this.xaContainer;
+    }
+    
+    /**
+     * Lists the tables of all indexes, forced to disk first. Commits going
+     * on while they are copied may or may not be in the copies, which is
+     * fine since applying a transaction again is harmless.
+     */
+    @Override
+    public ClosableIterable<File> listStoreFiles() throws IOException
+    {
+        final Collection<File> files = new ArrayList<File>();
+        for ( IndexIdentifier identifier : existingIndexes() )
+        {
+            HashIndexTables indexTables = getTables( identifier );
+            indexTables.force();
+            files.addAll( indexTables.getFiles() );
+        }
+        files.add( providerStore.getFile() );
+        return new ClosableIterable<File>()
+        {
+            public Iterator<File> iterator()
+            {
+                return files.iterator();
+            }
+            
+            public void close()
+            {
+            }
+        };
+    }
+    
+    private Collection<IndexIdentifier> existingIndexes()
+    {
+        Collection<IndexIdentifier> result = new ArrayList<IndexIdentifier>();
+        for ( byte entityType : new byte[] { HashCommand.NODE, HashCommand.RELATIONSHIP } )
+        {
+            String[] names = getEntityDirectory( baseDirectory, entityType ).list();
+            for ( String name : names != null ? names : new String[0] )
+            {
+                result.add( new IndexIdentifier( entityType, name ) );
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.kernel.impl.core.ReadOnlyDbException;
+import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+
+/**
+ * An {@link Index} backed by {@link HashIndexTables}, which only supports
+ * exact lookups with {@link #get(String, Object)}. Values are indexed by
+ * their {@link Object#toString()}.
+ */
+abstract class HashIndex<T extends PropertyContainer> implements Index<T>
+{
+    final HashIndexImplementation service;
+    final IndexIdentifier identifier;
+    private volatile boolean deleted;
+    
+    HashIndex( HashIndexImplementation service, IndexIdentifier identifier )
+    {
+        this.service = service;
+        this.identifier = identifier;
+    }
+    
+    HashTransaction getTx()
+    {
+        assertNotDeleted();
+        if ( service.broker() == null )
+        {
+            throw new ReadOnlyDbException();
+        }
+        return service.broker().acquireResourceConnection().getTx();
+    }
+    
+    private HashTransaction getReadOnlyTxOrNull()
+    {
+        assertNotDeleted();
+        HashXaConnection connection = service.broker() == null ? null :
+                service.broker().acquireReadOnlyResourceConnection();
+        return connection != null ? connection.getTx() : null;
+    }
+    
+    private void assertNotDeleted()
+    {
+        if ( deleted )
+        {
+            throw new IllegalStateException( "This index (" + identifier + ") has been deleted" );
+        }
+    }
+    
+    void markAsDeleted()
+    {
+        this.deleted = true;
+    }
+    
+    public String getName()
+    {
+        return identifier.indexName;
+    }
+    
+    public void add( T entity, String key, Object value )
+    {
+        HashTransaction tx = getTx();
+        for ( Object oneValue : IoPrimitiveUtils.asArray( value ) )
+        {
+            tx.add( identifier, getEntityId( entity ), key, oneValue.toString() );
+        }
+    }
+    
+    public void remove( T entity, String key, Object value )
+    {
+        HashTransaction tx = getTx();
+        for ( Object oneValue : IoPrimitiveUtils.asArray( value ) )
+        {
+            tx.remove( identifier, getEntityId( entity ), key, oneValue.toString() );
+        }
+    }
+    
+    public void remove( T entity, String key )
+    {
+        getTx().remove( identifier, getEntityId( entity ), key, null );
+    }
+    
+    public void remove( T entity )
+    {
+        getTx().remove( identifier, getEntityId( entity ), null, null );
+    }
+    
+    public void delete()
+    {
+        getTx().delete( identifier );
+    }
+    
+    public IndexHits<T> get( String key, Object value )
+    {
+        return hits( ids( key, value ) );
+    }
+    
+    IndexHits<T> hits( long[] ids )
+    {
+        return new EntityHits<T>( ids )
+        {
+            @Override
+            protected T getById( long id )
+            {
+                return HashIndex.this.getById( id );
+            }
+        };
+    }
+    
+    long[] ids( String key, Object value )
+    {
+        String valueAsString = value.toString();
+        long[] ids = service.dataSource().getTables( identifier ).get( key, valueAsString );
+        HashTransaction tx = getReadOnlyTxOrNull();
+        if ( tx == null || !tx.hasChanges( identifier ) )
+        {
+            return ids;
+        }
+        Collection<Long> withChanges = tx.get( identifier, key, valueAsString, ids );
+        long[] result = new long[withChanges.size()];
+        int i = 0;
+        for ( long id : withChanges )
+        {
+            result[i++] = id;
+        }
+        return result;
+    }
+    
+    public IndexHits<T> query( String key, Object queryOrQueryObject )
+    {
+        throw queryNotSupported();
+    }
+    
+    public IndexHits<T> query( Object queryOrQueryObject )
+    {
+        throw queryNotSupported();
+    }
+    
+    static UnsupportedOperationException queryNotSupported()
+    {
+        return new UnsupportedOperationException( "Hash indexes only support exact lookups, with get" );
+    }
+    
+    protected abstract T getById( long id );
+    
+    protected abstract long getEntityId( T entity );
+    
+    static class NodeIndex extends HashIndex<Node>
+    {
+        NodeIndex( HashIndexImplementation service, IndexIdentifier identifier )
+        {
+            super( service, identifier );
+        }
+        
+        @Override
+        protected Node getById( long id )
+        {
+            return service.graphDb().getNodeById( id );
+        }
+        
+        @Override
+        protected long getEntityId( Node entity )
+        {
+            return entity.getId();
+        }
+        
+        public Class<Node> getEntityType()
+        {
+            return Node.class;
+        }
+    }
+    
+    static class RelationshipIndex extends HashIndex<Relationship>
+            implements org.neo4j.graphdb.index.RelationshipIndex
+    {
+        RelationshipIndex( HashIndexImplementation service, IndexIdentifier identifier )
+        {
+            super( service, identifier );
+        }
+        
+        @Override
+        protected Relationship getById( long id )
+        {
+            return service.graphDb().getRelationshipById( id );
+        }
+        
+        @Override
+        protected long getEntityId( Relationship entity )
+        {
+            return entity.getId();
+        }
+        
+        public Class<Relationship> getEntityType()
+        {
+            return Relationship.class;
+        }
+        
+        /**
+         * Needs both {@code key} and {@code valueOrNull}, the hits are then
+         * filtered by start and end node.
+         */
+        public IndexHits<Relationship> get( String key, Object valueOrNull, Node startNodeOrNull,
+                Node endNodeOrNull )
+        {
+            if ( key == null || valueOrNull == null )
+            {
+                throw queryNotSupported();
+            }
+            long[] ids = ids( key, valueOrNull );
+            long[] matching = new long[ids.length];
+            int count = 0;
+            for ( long id : ids )
+            {
+                try
+                {
+                    Relationship relationship = getById( id );
+                    if ( (startNodeOrNull == null || relationship.getStartNode().equals( startNodeOrNull )) &&
+                            (endNodeOrNull == null || relationship.getEndNode().equals( endNodeOrNull )) )
+                    {
+                        matching[count++] = id;
+                    }
+                }
+                catch ( NotFoundException e )
+                {
+                    // Deleted, but still in the index
+                }
+            }
+            return hits( Arrays.copyOf( matching, count ) );
+        }
+        
+        public IndexHits<Relationship> query( String key, Object queryOrQueryObjectOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            throw queryNotSupported();
+        }
+        
+        public IndexHits<Relationship> query( Object queryOrQueryObjectOrNull, Node startNodeOrNull,
+                Node endNodeOrNull )
+        {
+            throw queryNotSupported();
+        }
+    }
+}
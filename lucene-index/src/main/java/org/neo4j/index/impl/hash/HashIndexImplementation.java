@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.transaction.TransactionManager;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexImplementation;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.index.IndexConnectionBroker;
+import org.neo4j.kernel.impl.index.ReadOnlyIndexConnectionBroker;
+import org.neo4j.kernel.impl.transaction.TxModule;
+
+/**
+ * Indexes for exact lookups of unique, or nearly unique, values, such as
+ * identifiers from other systems. A lookup is a probe in a memory mapped
+ * hash table, without the query machinery of a Lucene index, but
+ * {@link Index#query(Object)} isn't supported. Create one with
+ * {@link #CONFIG} as its configuration.
+ */
+public class HashIndexImplementation extends IndexImplementation
+{
+    static final String KEY_PROVIDER = "provider";
+    public static final String SERVICE_NAME = "hash";
+    
+    public static final Map<String, String> CONFIG =
+            Collections.unmodifiableMap( MapUtil.stringMap( KEY_PROVIDER, SERVICE_NAME ) );
+    
+    private static final String DATA_SOURCE_NAME = HashDataSource.DEFAULT_NAME;
+    
+    private final IndexConnectionBroker<HashXaConnection> broker;
+    private final HashDataSource dataSource;
+    private final GraphDatabaseService graphDb;
+    
+    HashIndexImplementation( GraphDatabaseService db, Config config )
+    {
+        this.graphDb = db;
+        TxModule txModule = config.getTxModule();
+        boolean isReadOnly = config.isReadOnly();
+        Map<Object, Object> params = new HashMap<Object, Object>( config.getParams() );
+        params.put( "read_only", isReadOnly );
+        dataSource = (HashDataSource) txModule.registerDataSource( DATA_SOURCE_NAME,
+                HashDataSource.class.getName(), HashDataSource.DEFAULT_BRANCH_ID, params, true );
+        broker = isReadOnly ? new ReadOnlyIndexConnectionBroker<HashXaConnection>( txModule.getTxManager() )
+                : new ConnectionBroker( txModule.getTxManager(), dataSource );
+    }
+    
+    IndexConnectionBroker<HashXaConnection> broker()
+    {
+        return this.broker;
+    }
+    
+    HashDataSource dataSource()
+    {
+        return this.dataSource;
+    }
+    
+    GraphDatabaseService graphDb()
+    {
+        return this.graphDb;
+    }
+    
+    @Override
+    public Index<Node> nodeIndex( String indexName, Map<String, String> config )
+    {
+        IndexIdentifier identifier = new IndexIdentifier( HashCommand.NODE, indexName );
+        synchronized ( dataSource.indexes )
+        {
+            HashIndex<?> index = dataSource.indexes.get( identifier );
+            if ( index == null )
+            {
+                index = new HashIndex.NodeIndex( this, identifier );
+                dataSource.indexes.put( identifier, index );
+            }
+            return (HashIndex.NodeIndex) index;
+        }
+    }
+    
+    @Override
+    public RelationshipIndex relationshipIndex( String indexName, Map<String, String> config )
+    {
+        IndexIdentifier identifier = new IndexIdentifier( HashCommand.RELATIONSHIP, indexName );
+        synchronized ( dataSource.indexes )
+        {
+            HashIndex<?> index = dataSource.indexes.get( identifier );
+            if ( index == null )
+            {
+                index = new HashIndex.RelationshipIndex( this, identifier );
+                dataSource.indexes.put( identifier, index );
+            }
+            return (HashIndex.RelationshipIndex) index;
+        }
+    }
+    
+    @Override
+    public Map<String, String> fillInDefaults( Map<String, String> source )
+    {
+        return source != null ? new HashMap<String, String>( source ) : new HashMap<String, String>();
+    }
+    
+    @Override
+    public boolean configMatches( Map<String, String> storedConfig, Map<String, String> config )
+    {
+        // There's nothing to configure
+        return true;
+    }
+    
+    @Override
+    public String getDataSourceName()
+    {
+        return DATA_SOURCE_NAME;
+    }
+    
+    private static class ConnectionBroker extends IndexConnectionBroker<HashXaConnection>
+    {
+        private final HashDataSource xaDs;
+        
+        ConnectionBroker( TransactionManager transactionManager, HashDataSource dataSource )
+        {
+            super( transactionManager );
+            this.xaDs = dataSource;
+        }
+        
+        @Override
+        protected HashXaConnection newConnection()
+        {
+            return (HashXaConnection) xaDs.getXaConnection();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The files of one hash index: a {@link HashTable} from the hash of each
+ * key/value to the ids of the entities and one from entity ids back to the
+ * hashes of their key/values, used to remove all values of a key, or all
+ * keys, from an entity.
+ * <p>
+ * A key/value is identified by two independent 64 bit hashes of it, rather
+ * than by the key and value themselves, which keeps the records small and of
+ * fixed size. Two different key/values colliding on all 128 bits is, for any
+ * realistic number of them, much less likely than a disk error.
+ * <p>
+ * Lookups take the read lock and commits the write lock, so lookups run
+ * concurrently and only wait for a commit to the same index.
+ */
+class HashIndexTables
+{
+    static final String VALUES_FILE = "values";
+    static final String ENTITIES_FILE = "entities";
+    
+    private final HashTable values;
+    private final HashTable entities;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    HashIndexTables( File directory ) throws IOException
+    {
+        if ( !directory.exists() && !directory.mkdirs() )
+        {
+            throw new IOException( "Unable to create " + directory );
+        }
+        values = new HashTable( new File( directory, VALUES_FILE ) );
+        entities = new HashTable( new File( directory, ENTITIES_FILE ) );
+    }
+    
+    long[] get( String key, String value )
+    {
+        long[] hash = hash( key, value );
+        lock.readLock().lock();
+        try
+        {
+            return values.find( hash[0], hash[1] );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    void lockForCommit()
+    {
+        lock.writeLock().lock();
+    }
+    
+    void unlockForCommit()
+    {
+        lock.writeLock().unlock();
+    }
+    
+    /**
+     * Must be called between {@link #lockForCommit()} and
+     * {@link #unlockForCommit()}, as must the remove methods.
+     */
+    void add( long entityId, String key, String value ) throws IOException
+    {
+        long[] hash = hash( key, value );
+        long keyHash = keyHash( key );
+        values.add( hash[0], hash[1], entityId, keyHash );
+        entities.add( entityTag( entityId ), keyHash, hash[0], hash[1] );
+    }
+    
+    void remove( long entityId, String key, String value )
+    {
+        long[] hash = hash( key, value );
+        long keyHash = keyHash( key );
+        values.remove( hash[0], hash[1], entityId, keyHash );
+        entities.remove( entityTag( entityId ), keyHash, hash[0], hash[1] );
+    }
+    
+    /**
+     * Removes all values of {@code key}, or of all keys if {@code key} is
+     * {@code null}, from the entity.
+     */
+    void remove( long entityId, String keyOrNull )
+    {
+        long tag = entityTag( entityId );
+        long keyHash = keyOrNull != null ? keyHash( keyOrNull ) : 0;
+        List<long[]> records = entities.find( tag );
+        for ( long[] record : records )
+        {
+            if ( keyOrNull == null || record[0] == keyHash )
+            {
+                values.remove( record[1], record[2], entityId, record[0] );
+                entities.remove( tag, record[0], record[1], record[2] );
+            }
+        }
+    }
+    
+    long size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return values.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    List<File> getFiles()
+    {
+        return Arrays.asList( values.getFile(), entities.getFile() );
+    }
+    
+    void force()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            values.force();
+            entities.force();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    void close() throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            values.close();
+            entities.close();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static long entityTag( long entityId )
+    {
+        // Tags 0 and 1 are reserved by the hash table
+        return entityId + 2;
+    }
+    
+    /**
+     * @return two independent 64 bit hashes of the key/value, the first one
+     * never being a reserved tag of {@link HashTable}.
+     */
+    static long[] hash( String key, String value )
+    {
+        long fnv = 0xcbf29ce484222325L;
+        long polynomial = 0x2545f4914f6cdd1dL;
+        for ( int i = 0, length = key.length(); i < length; i++ )
+        {
+            char c = key.charAt( i );
+            fnv = (fnv ^ c) * 0x100000001b3L;
+            polynomial = polynomial * 31 + c;
+        }
+        // A separator (a noncharacter), so that "ab"/"c" and "a"/"bc" differ
+        fnv = (fnv ^ 0xFFFF) * 0x100000001b3L;
+        polynomial = polynomial * 31 + 0xFFFF;
+        for ( int i = 0, length = value.length(); i < length; i++ )
+        {
+            char c = value.charAt( i );
+            fnv = (fnv ^ c) * 0x100000001b3L;
+            polynomial = polynomial * 31 + c;
+        }
+        long first = HashTable.mix( fnv );
+        if ( first == HashTable.FREE || first == HashTable.REMOVED )
+        {
+            first += 2;
+        }
+        return new long[] { first, HashTable.mix( polynomial ) };
+    }
+    
+    static long keyHash( String key )
+    {
+        long hash = 0xcbf29ce484222325L;
+        for ( int i = 0, length = key.length(); i < length; i++ )
+        {
+            hash = (hash ^ key.charAt( i )) * 0x100000001b3L;
+        }
+        return HashTable.mix( hash );
+    }
+}
@@ -0,0 +1,415 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An open addressing hash table of fixed size records in a memory mapped
+ * file, probed linearly. A record is four longs {@code [tag, b, c, d]}, where
+ * records are found by their tag. Tag {@link #FREE} marks a free slot and tag
+ * {@link #REMOVED} a removed record, so callers must use tags from 2 and up.
+ * The table may hold many records with the same tag, but never two identical
+ * records, which makes {@link #add(long, long, long, long)} and
+ * {@link #remove(long, long, long, long)} idempotent so that transactions
+ * can be applied again during recovery.
+ * <p>
+ * The table is rebuilt into a new file, twice the size, when it gets half
+ * full. Files are mapped in segments so that a table isn't limited by the
+ * size of one {@link MappedByteBuffer}.
+ * <p>
+ * Not thread safe, {@link HashIndexTables} guards it with a read/write lock.
+ */
+class HashTable
+{
+    static final long FREE = 0;
+    static final long REMOVED = 1;
+    
+    private static final long MAGIC = 0x4e344841534854L;
+    private static final int RECORD_SIZE = 32;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEGMENT_SHIFT = 24;
+    private static final long MIN_CAPACITY = 1 << 10;
+    
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long mask;
+    private long used;
+    private long removed;
+    
+    HashTable( File file ) throws IOException
+    {
+        this.file = file;
+        new File( file.getPath() + ".tmp" ).delete();
+        if ( file.exists() )
+        {
+            open();
+        }
+        else
+        {
+            create( file, MIN_CAPACITY );
+            open();
+        }
+    }
+    
+    private void open() throws IOException
+    {
+        channel = new RandomAccessFile( file, "rw" ).getChannel();
+        header = channel.map( MapMode.READ_WRITE, 0, HEADER_SIZE );
+        if ( header.getLong( 0 ) != MAGIC )
+        {
+            channel.close();
+            throw new IOException( file + " isn't a hash index file" );
+        }
+        capacity = header.getLong( 8 );
+        mask = capacity - 1;
+        segments = map( channel, capacity );
+        if ( header.getLong( 32 ) == 1 )
+        {
+            used = header.getLong( 16 );
+            removed = header.getLong( 24 );
+        }
+        else
+        {
+            // Not closed properly, the counts may not have been written
+            recount();
+        }
+        header.putLong( 32, 0 );
+    }
+    
+    private static void create( File file, long capacity ) throws IOException
+    {
+        RandomAccessFile raFile = new RandomAccessFile( file, "rw" );
+        try
+        {
+            raFile.setLength( 0 );
+            raFile.setLength( HEADER_SIZE + capacity * RECORD_SIZE );
+            raFile.writeLong( MAGIC );
+            raFile.writeLong( capacity );
+            raFile.writeLong( 0 );
+            raFile.writeLong( 0 );
+            raFile.writeLong( 1 );
+            raFile.getChannel().force( false );
+        }
+        finally
+        {
+            raFile.close();
+        }
+    }
+    
+    private static MappedByteBuffer[] map( FileChannel channel, long capacity ) throws IOException
+    {
+        long segmentRecords = Math.min( capacity, 1L << SEGMENT_SHIFT );
+        MappedByteBuffer[] result = new MappedByteBuffer[(int) (capacity / segmentRecords)];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = channel.map( MapMode.READ_WRITE,
+                    HEADER_SIZE + i * segmentRecords * RECORD_SIZE, segmentRecords * RECORD_SIZE );
+        }
+        return result;
+    }
+    
+    private void recount()
+    {
+        used = 0;
+        removed = 0;
+        for ( long slot = 0; slot < capacity; slot++ )
+        {
+            long tag = get( slot, 0 );
+            if ( tag == REMOVED )
+            {
+                removed++;
+            }
+            else if ( tag != FREE )
+            {
+                used++;
+            }
+        }
+    }
+    
+    /**
+     * @return {@code true} if the record was added, {@code false} if an
+     * identical record already existed.
+     */
+    boolean add( long tag, long b, long c, long d ) throws IOException
+    {
+        assertValidTag( tag );
+        if ( (used + removed + 1) * 2 > capacity )
+        {
+            rebuild( (used + 1) * 4 > capacity ? capacity * 2 : capacity );
+        }
+        long firstRemoved = -1;
+        long slot = slot( tag );
+        for ( long current; (current = get( slot, 0 )) != FREE; slot = (slot + 1) & mask )
+        {
+            if ( current == REMOVED )
+            {
+                if ( firstRemoved == -1 )
+                {
+                    firstRemoved = slot;
+                }
+            }
+            else if ( matches( slot, tag, b, c, d ) )
+            {
+                return false;
+            }
+        }
+        if ( firstRemoved != -1 )
+        {
+            slot = firstRemoved;
+            removed--;
+        }
+        write( slot, tag, b, c, d );
+        used++;
+        writeCounts();
+        return true;
+    }
+    
+    /**
+     * @return {@code true} if the record was removed, {@code false} if
+     * there was no such record.
+     */
+    boolean remove( long tag, long b, long c, long d )
+    {
+        assertValidTag( tag );
+        for ( long slot = slot( tag ), current; (current = get( slot, 0 )) != FREE; slot = (slot + 1) & mask )
+        {
+            if ( current == tag && matches( slot, tag, b, c, d ) )
+            {
+                put( slot, 0, REMOVED );
+                used--;
+                removed++;
+                writeCounts();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return the {@code c} of all records with {@code tag} and {@code b}.
+     */
+    long[] find( long tag, long b )
+    {
+        assertValidTag( tag );
+        long[] result = null;
+        int count = 0;
+        for ( long slot = slot( tag ), current; (current = get( slot, 0 )) != FREE; slot = (slot + 1) & mask )
+        {
+            if ( current == tag && get( slot, 1 ) == b )
+            {
+                if ( result == null )
+                {
+                    result = new long[1];
+                }
+                else if ( count == result.length )
+                {
+                    result = Arrays.copyOf( result, count * 2 );
+                }
+                result[count++] = get( slot, 2 );
+            }
+        }
+        return result == null ? new long[0] : count == result.length ? result : Arrays.copyOf( result, count );
+    }
+    
+    /**
+     * @return {@code [b, c, d]} of all records with {@code tag}.
+     */
+    List<long[]> find( long tag )
+    {
+        assertValidTag( tag );
+        List<long[]> result = new ArrayList<long[]>();
+        for ( long slot = slot( tag ), current; (current = get( slot, 0 )) != FREE; slot = (slot + 1) & mask )
+        {
+            if ( current == tag )
+            {
+                result.add( new long[] { get( slot, 1 ), get( slot, 2 ), get( slot, 3 ) } );
+            }
+        }
+        return result;
+    }
+    
+    long size()
+    {
+        return used;
+    }
+    
+    long capacity()
+    {
+        return capacity;
+    }
+    
+    File getFile()
+    {
+        return file;
+    }
+    
+    void force()
+    {
+        for ( MappedByteBuffer segment : segments )
+        {
+            segment.force();
+        }
+        header.force();
+    }
+    
+    void close() throws IOException
+    {
+        force();
+        header.putLong( 32, 1 );
+        header.force();
+        channel.close();
+    }
+    
+    /**
+     * Copies all records to a new file with {@code newCapacity} slots, which
+     * then replaces the current one. The records which were removed are left
+     * out. If this is interrupted the current file is intact and the new one
+     * is deleted when the table is opened again.
+     */
+    private void rebuild( long newCapacity ) throws IOException
+    {
+        if ( newCapacity > 1L << 40 )
+        {
+            throw new IllegalStateException( "Hash index " + file + " is full" );
+        }
+        File tmpFile = new File( file.getPath() + ".tmp" );
+        create( tmpFile, newCapacity );
+        FileChannel newChannel = new RandomAccessFile( tmpFile, "rw" ).getChannel();
+        MappedByteBuffer newHeader = newChannel.map( MapMode.READ_WRITE, 0, HEADER_SIZE );
+        MappedByteBuffer[] newSegments = map( newChannel, newCapacity );
+        
+        MappedByteBuffer[] oldSegments = segments;
+        long oldCapacity = capacity;
+        segments = newSegments;
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        for ( long oldSlot = 0; oldSlot < oldCapacity; oldSlot++ )
+        {
+            int offset = offset( oldSlot );
+            MappedByteBuffer segment = oldSegments[segment( oldSlot )];
+            long tag = segment.getLong( offset );
+            if ( tag != FREE && tag != REMOVED )
+            {
+                long slot = slot( tag );
+                while ( get( slot, 0 ) != FREE )
+                {
+                    slot = (slot + 1) & mask;
+                }
+                write( slot, tag, segment.getLong( offset + 8 ),
+                        segment.getLong( offset + 16 ), segment.getLong( offset + 24 ) );
+            }
+        }
+        removed = 0;
+        for ( MappedByteBuffer segment : segments )
+        {
+            segment.force();
+        }
+        newHeader.putLong( 16, used );
+        newHeader.force();
+        
+        channel.close();
+        if ( !tmpFile.renameTo( file ) && !(file.delete() && tmpFile.renameTo( file )) )
+        {
+            throw new IOException( "Unable to replace " + file + " with " + tmpFile );
+        }
+        channel = newChannel;
+        header = newHeader;
+        header.putLong( 32, 0 );
+    }
+    
+    private void writeCounts()
+    {
+        header.putLong( 16, used );
+        header.putLong( 24, removed );
+    }
+    
+    private boolean matches( long slot, long tag, long b, long c, long d )
+    {
+        return get( slot, 0 ) == tag && get( slot, 1 ) == b && get( slot, 2 ) == c && get( slot, 3 ) == d;
+    }
+    
+    private void write( long slot, long tag, long b, long c, long d )
+    {
+        // The tag last, it's what makes the record visible
+        put( slot, 1, b );
+        put( slot, 2, c );
+        put( slot, 3, d );
+        put( slot, 0, tag );
+    }
+    
+    private long get( long slot, int field )
+    {
+        return segments[segment( slot )].getLong( offset( slot ) + field * 8 );
+    }
+    
+    private void put( long slot, int field, long value )
+    {
+        segments[segment( slot )].putLong( offset( slot ) + field * 8, value );
+    }
+    
+    private static int segment( long slot )
+    {
+        return (int) (slot >>> SEGMENT_SHIFT);
+    }
+    
+    private static int offset( long slot )
+    {
+        return (int) (slot & ((1 << SEGMENT_SHIFT) - 1)) * RECORD_SIZE;
+    }
+    
+    private long slot( long tag )
+    {
+        return mix( tag ) & mask;
+    }
+    
+    private static void assertValidTag( long tag )
+    {
+        if ( tag == FREE || tag == REMOVED )
+        {
+            throw new IllegalArgumentException( "Invalid tag " + tag );
+        }
+    }
+    
+    /**
+     * Spreads the bits of {@code value} so that sequential values end up
+     * far apart, the finalizer of MurmurHash3.
+     */
+    static long mix( long value )
+    {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
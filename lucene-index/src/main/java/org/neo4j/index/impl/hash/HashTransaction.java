@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
+import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
+
+/**
+ * Keeps the changes of a transaction to hash indexes, both as commands to
+ * apply at commit and in a form which lookups within the transaction can
+ * combine with what's committed.
+ */
+class HashTransaction extends XaTransaction
+{
+    private final HashDataSource dataSource;
+    private final Map<IndexIdentifier, List<HashCommand>> commands =
+            new LinkedHashMap<IndexIdentifier, List<HashCommand>>();
+    private final List<HashCommand> creations = new ArrayList<HashCommand>();
+    private final Map<IndexIdentifier, TxState> states = new HashMap<IndexIdentifier, TxState>();
+    
+    HashTransaction( int identifier, XaLogicalLog log, HashDataSource dataSource )
+    {
+        super( identifier, log );
+        this.dataSource = dataSource;
+    }
+    
+    void add( IndexIdentifier identifier, long entityId, String key, String value )
+    {
+        state( identifier ).add( entityId, key, value );
+        queue( HashCommand.add( identifier, entityId, key, value ) );
+    }
+    
+    void remove( IndexIdentifier identifier, long entityId, String keyOrNull, String valueOrNull )
+    {
+        state( identifier ).remove( entityId, keyOrNull, valueOrNull );
+        queue( HashCommand.remove( identifier, entityId, keyOrNull, valueOrNull ) );
+    }
+    
+    void delete( IndexIdentifier identifier )
+    {
+        state( identifier ).deleted = true;
+        queue( HashCommand.delete( identifier ) );
+    }
+    
+    void createIndex( IndexIdentifier identifier, Map<String, String> config )
+    {
+        creations.add( HashCommand.createIndex( identifier, config ) );
+    }
+    
+    /**
+     * @return the committed ids, with the changes of this transaction to
+     * {@code key}/{@code value} applied.
+     */
+    Collection<Long> get( IndexIdentifier identifier, String key, String value, long[] committedIds )
+    {
+        TxState state = states.get( identifier );
+        Collection<Long> result = new LinkedHashSet<Long>();
+        for ( long id : committedIds )
+        {
+            if ( state == null || !state.isRemoved( id, key, value ) )
+            {
+                result.add( id );
+            }
+        }
+        if ( state != null )
+        {
+            result.addAll( state.added( key, value ) );
+        }
+        return result;
+    }
+    
+    boolean hasChanges( IndexIdentifier identifier )
+    {
+        return states.containsKey( identifier );
+    }
+    
+    private TxState state( IndexIdentifier identifier )
+    {
+        TxState state = states.get( identifier );
+        if ( state == null )
+        {
+            state = new TxState();
+            states.put( identifier, state );
+        }
+        else if ( state.deleted )
+        {
+            throw new IllegalStateException( "This index (" + identifier +
+                    ") has been marked as deleted in this transaction" );
+        }
+        return state;
+    }
+    
+    private void queue( HashCommand command )
+    {
+        List<HashCommand> list = commands.get( command.identifier );
+        if ( list == null )
+        {
+            list = new ArrayList<HashCommand>();
+            commands.put( command.identifier, list );
+        }
+        if ( command.type == HashCommand.DELETE_COMMAND )
+        {
+            list.clear();
+        }
+        list.add( command );
+    }
+    
+    @Override
+    protected void doAddCommand( XaCommand command )
+    { // we override inject command and manage our own in memory command list
+    }
+    
+    @Override
+    protected void injectCommand( XaCommand command )
+    {
+        HashCommand hashCommand = (HashCommand) command;
+        if ( hashCommand.type == HashCommand.CREATE_INDEX_COMMAND )
+        {
+            creations.add( hashCommand );
+        }
+        else
+        {
+            queue( hashCommand );
+        }
+    }
+    
+    @Override
+    protected void doPrepare()
+    {
+        for ( HashCommand command : creations )
+        {
+            addCommand( command );
+        }
+        for ( List<HashCommand> list : commands.values() )
+        {
+            for ( HashCommand command : list )
+            {
+                addCommand( command );
+            }
+        }
+    }
+    
+    @Override
+    protected void doCommit()
+    {
+        for ( HashCommand creation : creations )
+        {
+            dataSource.indexStore.setIfNecessary( creation.identifier.getEntityClass(),
+                    creation.identifier.indexName, creation.config );
+        }
+        for ( Map.Entry<IndexIdentifier, List<HashCommand>> entry : commands.entrySet() )
+        {
+            IndexIdentifier identifier = entry.getKey();
+            List<HashCommand> list = entry.getValue();
+            if ( list.get( 0 ).type == HashCommand.DELETE_COMMAND )
+            {
+                dataSource.deleteIndex( identifier, isRecovered() );
+                continue;
+            }
+            
+            HashIndexTables tables = dataSource.getTables( identifier );
+            tables.lockForCommit();
+            try
+            {
+                for ( HashCommand command : list )
+                {
+                    command.applyTo( tables );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to apply changes to " + identifier, e );
+            }
+            finally
+            {
+                tables.unlockForCommit();
+            }
+        }
+        dataSource.setLastCommittedTxId( getCommitTxId() );
+        clear();
+    }
+    
+    @Override
+    protected void doRollback()
+    {
+        clear();
+    }
+    
+    private void clear()
+    {
+        commands.clear();
+        creations.clear();
+        states.clear();
+    }
+    
+    @Override
+    public boolean isReadOnly()
+    {
+        return commands.isEmpty() && creations.isEmpty();
+    }
+    
+    /**
+     * The changes of this transaction to one index, for lookups.
+     */
+    private static class TxState
+    {
+        private final Map<String, Map<String, Set<Long>>> added =
+                new HashMap<String, Map<String, Set<Long>>>();
+        private final Map<String, Map<String, Set<Long>>> removed =
+                new HashMap<String, Map<String, Set<Long>>>();
+        private final Map<Long, Set<String>> removedKeys = new HashMap<Long, Set<String>>();
+        private final Set<Long> removedEntities = new HashSet<Long>();
+        private boolean deleted;
+        
+        void add( long entityId, String key, String value )
+        {
+            ids( added, key, value, true ).add( entityId );
+            Set<Long> removedIds = ids( removed, key, value, false );
+            if ( removedIds != null )
+            {
+                removedIds.remove( entityId );
+            }
+        }
+        
+        void remove( long entityId, String keyOrNull, String valueOrNull )
+        {
+            if ( valueOrNull != null )
+            {
+                ids( removed, keyOrNull, valueOrNull, true ).add( entityId );
+                Set<Long> addedIds = ids( added, keyOrNull, valueOrNull, false );
+                if ( addedIds != null )
+                {
+                    addedIds.remove( entityId );
+                }
+                return;
+            }
+            
+            if ( keyOrNull != null )
+            {
+                Set<String> keys = removedKeys.get( entityId );
+                if ( keys == null )
+                {
+                    keys = new HashSet<String>();
+                    removedKeys.put( entityId, keys );
+                }
+                keys.add( keyOrNull );
+            }
+            else
+            {
+                removedEntities.add( entityId );
+            }
+            for ( Map.Entry<String, Map<String, Set<Long>>> entry : added.entrySet() )
+            {
+                if ( keyOrNull == null || keyOrNull.equals( entry.getKey() ) )
+                {
+                    for ( Set<Long> ids : entry.getValue().values() )
+                    {
+                        ids.remove( entityId );
+                    }
+                }
+            }
+        }
+        
+        boolean isRemoved( long entityId, String key, String value )
+        {
+            if ( removedEntities.contains( entityId ) )
+            {
+                return true;
+            }
+            Set<String> keys = removedKeys.get( entityId );
+            if ( keys != null && keys.contains( key ) )
+            {
+                return true;
+            }
+            Set<Long> ids = ids( removed, key, value, false );
+            return ids != null && ids.contains( entityId );
+        }
+        
+        Set<Long> added( String key, String value )
+        {
+            Set<Long> ids = ids( added, key, value, false );
+            return ids != null ? ids : new HashSet<Long>();
+        }
+        
+        private static Set<Long> ids( Map<String, Map<String, Set<Long>>> map, String key,
+                String value, boolean create )
+        {
+            Map<String, Set<Long>> values = map.get( key );
+            if ( values == null )
+            {
+                if ( !create )
+                {
+                    return null;
+                }
+                values = new HashMap<String, Set<Long>>();
+                map.put( key, values );
+            }
+            Set<Long> ids = values.get( value );
+            if ( ids == null && create )
+            {
+                ids = new HashSet<Long>();
+                values.put( value, ids );
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+
+class IndexIdentifier
+{
+    final byte entityType;
+    final String indexName;
+    private final int hashCode;
+    
+    IndexIdentifier( byte entityType, String indexName )
+    {
+        this.entityType = entityType;
+        this.indexName = indexName;
+        this.hashCode = 31 * entityType + indexName.hashCode();
+    }
+    
+    Class<? extends PropertyContainer> getEntityClass()
+    {
+        return entityType == HashCommand.NODE ? Node.class : Relationship.class;
+    }
+    
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( !(o instanceof IndexIdentifier) )
+        {
+            return false;
+        }
+        IndexIdentifier other = (IndexIdentifier) o;
+        return entityType == other.entityType && indexName.equals( other.indexName );
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "Index[" + indexName + ", " + (entityType == HashCommand.NODE ? "node" : "relationship") + "]";
+    }
+}
@@ -19,51 +19,293 @@
  */
 package org.neo4j.index.impl.lucene;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
-import org.neo4j.kernel.impl.cache.LruCache;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Caches the ids found by exact lookups, i.e. {@code index.get( key, value )},
+ * as {@code long[]}s. Lookups are admitted into the cache once they have been
+ * made {@link #ADMISSION_FREQUENCY} times recently, so that values which are
+ * looked up only once don't push out the hot ones. Keys which have been given
+ * a capacity with {@link #setCapacity(IndexIdentifier, String, int)} are
+ * always admitted.
+ * <p>
+ * The cache is bounded by the estimated number of bytes it holds and evicts
+ * with the CLOCK algorithm, an approximation of LRU which needs no locking.
+ * Committing transactions invalidate the (index, key, value) combinations
+ * they change, see {@link LuceneCommand}.
+ */
 public class Cache
 {
-    private final Map<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>> caching = 
-            Collections.synchronizedMap( 
-                    new HashMap<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>>() );
+    static final int ADMISSION_FREQUENCY = 2;
+    static final int MAX_IDS_PER_ENTRY = 1024;
+    
+    private static final int ENTRY_OVERHEAD = 96;
+    
+    private final ConcurrentHashMap<Lookup, Entry> entries = new ConcurrentHashMap<Lookup, Entry>();
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final ConcurrentHashMap<IndexIdentifier, ConcurrentHashMap<String, Integer>> capacities =
+            new ConcurrentHashMap<IndexIdentifier, ConcurrentHashMap<String, Integer>>();
+    private final FrequencySketch frequencies = new FrequencySketch( 1 << 14 );
+    private final long maxBytes;
+    
+    public Cache( long maxBytes )
+    {
+        this.maxBytes = maxBytes;
+    }
     
     public void setCapacity( IndexIdentifier identifier, String key, int size )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        ConcurrentHashMap<String, Integer> map = capacities.get( identifier );
         if ( map == null )
         {
-            map = new HashMap<String, LruCache<String,Collection<Long>>>();
-            caching.put( identifier, map );
+            ConcurrentHashMap<String, Integer> newMap = new ConcurrentHashMap<String, Integer>();
+            map = capacities.putIfAbsent( identifier, newMap );
+            map = map != null ? map : newMap;
         }
-        map.put( key, new LruCache<String, Collection<Long>>( key, size, null ) );
+        map.put( key, size );
     }
     
-    public LruCache<String, Collection<Long>> get( IndexIdentifier identifier, String key )
+    public Integer getCapacity( IndexIdentifier identifier, String key )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        ConcurrentHashMap<String, Integer> map = capacities.get( identifier );
         return map != null ? map.get( key ) : null;
     }
     
-    public void disable( IndexIdentifier identifier, String key )
+    /**
+     * Looks up the cached ids for {@code key}/{@code value} in the index and
+     * counts the lookup towards the admission of it into the cache.
+     * 
+     * @return the cached ids, which must not be modified, or {@code null}
+     * if they aren't cached.
+     */
+    public long[] get( IndexIdentifier identifier, String key, String value )
+    {
+        if ( maxBytes <= 0 )
+        {
+            return null;
+        }
+        Lookup lookup = new Lookup( identifier, key, value );
+        frequencies.increment( lookup.hashCode() );
+        Entry entry = entries.get( lookup );
+        if ( entry == null )
+        {
+            return null;
+        }
+        entry.referenced = true;
+        return entry.ids;
+    }
+    
+    /**
+     * @return whether or not the result of a lookup which just missed the
+     * cache should be put into it.
+     */
+    public boolean shouldCache( IndexIdentifier identifier, String key, String value )
+    {
+        if ( maxBytes <= 0 )
+        {
+            return false;
+        }
+        return getCapacity( identifier, key ) != null ||
+                frequencies.frequency( new Lookup( identifier, key, value ).hashCode() ) >= ADMISSION_FREQUENCY;
+    }
+    
+    /**
+     * Caches the ids found for {@code key}/{@code value}. The caller must
+     * make sure that no transaction changing them commits meanwhile.
+     */
+    public void put( IndexIdentifier identifier, String key, String value, long[] ids )
+    {
+        Lookup lookup = new Lookup( identifier, key, value );
+        Entry entry = new Entry( lookup, ids );
+        if ( ids.length > MAX_IDS_PER_ENTRY || entry.size > maxBytes )
+        {
+            return;
+        }
+        entries.put( lookup, entry );
+        clock.offer( entry );
+        // Entries which are replaced or invalidated are accounted for until
+        // the clock hand passes them, which keeps the queue bounded as well.
+        if ( usedBytes.addAndGet( entry.size ) > maxBytes )
+        {
+            evict();
+        }
+    }
+    
+    private void evict()
+    {
+        while ( usedBytes.get() > maxBytes )
+        {
+            Entry entry = clock.poll();
+            if ( entry == null )
+            {
+                return;
+            }
+            if ( entry.referenced && entries.get( entry.lookup ) == entry )
+            {
+                entry.referenced = false;
+                clock.offer( entry );
+                continue;
+            }
+            entries.remove( entry.lookup, entry );
+            usedBytes.addAndGet( -entry.size );
+        }
+    }
+    
+    public void invalidate( IndexIdentifier identifier, String key, String value )
+    {
+        entries.remove( new Lookup( identifier, key, value ) );
+    }
+    
+    /**
+     * Invalidates all cached values for {@code key} in the index, or all
+     * cached lookups in the index if {@code key} is {@code null}.
+     */
+    public void invalidate( IndexIdentifier identifier, String key )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
-        if ( map != null )
+        for ( Iterator<Lookup> iterator = entries.keySet().iterator(); iterator.hasNext(); )
         {
-            map.remove( key );
+            Lookup lookup = iterator.next();
+            if ( lookup.identifier.equals( identifier ) && (key == null || lookup.key.equals( key )) )
+            {
+                iterator.remove();
+            }
         }
     }
     
+    /**
+     * Invalidates all cached lookups in the index and forgets the capacities
+     * set for it, used when the index is deleted.
+     */
     public void disable( IndexIdentifier identifier )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
-        if ( map != null )
+        capacities.remove( identifier );
+        invalidate( identifier, null );
+    }
+    
+    int size()
+    {
+        return entries.size();
+    }
+    
+    long usedBytes()
+    {
+        return usedBytes.get();
+    }
+    
+    private static class Lookup
+    {
+        private final IndexIdentifier identifier;
+        private final String key;
+        private final String value;
+        private final int hashCode;
+        
+        Lookup( IndexIdentifier identifier, String key, String value )
+        {
+            this.identifier = identifier;
+            this.key = key;
+            this.value = value;
+            this.hashCode = 31 * (31 * identifier.hashCode() + key.hashCode()) + value.hashCode();
+        }
+        
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( !(obj instanceof Lookup) )
+            {
+                return false;
+            }
+            Lookup other = (Lookup) obj;
+            return hashCode == other.hashCode && value.equals( other.value ) &&
+                    key.equals( other.key ) && identifier.equals( other.identifier );
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+    
+    private static class Entry
+    {
+        private final Lookup lookup;
+        private final long[] ids;
+        private final int size;
+        private volatile boolean referenced;
+        
+        Entry( Lookup lookup, long[] ids )
+        {
+            this.lookup = lookup;
+            this.ids = ids;
+            this.size = ENTRY_OVERHEAD + 8 * ids.length +
+                    2 * (lookup.key.length() + lookup.value.length());
+        }
+    }
+    
+    /**
+     * Approximate counts of recent lookups, a count-min sketch of four
+     * counters per lookup. All counters are halved every now and then so
+     * that lookups which were popular long ago are forgotten. Increments
+     * racing with each other may get lost, which is fine for an estimate.
+     */
+    private static class FrequencySketch
+    {
+        private final int[] counters;
+        private final int mask;
+        private final int resetInterval;
+        private final AtomicInteger increments = new AtomicInteger();
+        
+        FrequencySketch( int size )
+        {
+            this.counters = new int[size];
+            this.mask = size - 1;
+            this.resetInterval = size * 10;
+        }
+        
+        void increment( int hash )
+        {
+            for ( int i = 0; i < 4; i++ )
+            {
+                counters[slot( hash, i )]++;
+            }
+            if ( increments.incrementAndGet() >= resetInterval )
+            {
+                age();
+            }
+        }
+        
+        int frequency( int hash )
+        {
+            int frequency = Integer.MAX_VALUE;
+            for ( int i = 0; i < 4; i++ )
+            {
+                frequency = Math.min( frequency, counters[slot( hash, i )] );
+            }
+            return frequency;
+        }
+        
+        private synchronized void age()
+        {
+            if ( increments.get() < resetInterval )
+            {
+                return;
+            }
+            for ( int i = 0; i < counters.length; i++ )
+            {
+                counters[i] >>>= 1;
+            }
+            increments.set( 0 );
+        }
+        
+        private int slot( int hash, int i )
         {
-            map.clear();
+            long spread = (hash + i * 0x9E3779B9L) * 0x9E3779B97F4A7C15L;
+            return (int) (spread >>> 32) & mask;
         }
     }
 }
@@ -19,11 +19,15 @@
  */
 package org.neo4j.index.impl.lucene;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.IndexSearcher;
 import org.neo4j.index.impl.lucene.LuceneTransaction.CommandList;
 
@@ -42,6 +46,7 @@ class CommitContext
     
     IndexWriter writer;
     IndexSearcher searcher;
+    private IndexSearcherRef searcherRef;
     
     CommitContext( LuceneDataSource dataSource, IndexIdentifier identifier, IndexType indexType, CommandList commandList )
     {
@@ -57,20 +62,91 @@ class CommitContext
         if ( writer == null )
         {
             writer = dataSource.getIndexWriter( identifier );
-            searcher = dataSource.getIndexSearcher( identifier, false ).getSearcher();
+            searcherRef = dataSource.getIndexSearcher( identifier, true );
+            searcher = searcherRef.getSearcher();
+            loadDocuments();
+        }
+    }
+    
+    /**
+     * Looks up the existing documents of all entities that the commands
+     * change, in one pass over the id terms in term order. That's a lot
+     * cheaper than a search per entity for transactions touching many
+     * entities, since the term dictionary is read sequentially.
+     */
+    private void loadDocuments()
+    {
+        Map<String, Object> entityIds = new TreeMap<String, Object>();
+        for ( LuceneCommand command : commandList.commands )
+        {
+            if ( command.isConsideredNormalWriteCommand() )
+            {
+                String idText = "" + idOf( command.entityId );
+                if ( !entityIds.containsKey( idText ) )
+                {
+                    entityIds.put( idText, command.entityId );
+                }
+            }
+        }
+        if ( entityIds.isEmpty() )
+        {
+            return;
+        }
+        
+        try
+        {
+            TermDocs termDocs = searcher.getIndexReader().termDocs();
+            try
+            {
+                for ( Map.Entry<String, Object> entry : entityIds.entrySet() )
+                {
+                    termDocs.seek( new Term( LuceneIndex.KEY_DOC_ID, entry.getKey() ) );
+                    long id = idOf( entry.getValue() );
+                    documents.put( id, termDocs.next() ?
+                            new DocumentContext( indexType.restoreDocument(
+                                    searcher.doc( termDocs.doc() ) ), true, id ) :
+                            new DocumentContext( identifier.entityType.newDocument( entry.getValue() ), false, id ) );
+                }
+            }
+            finally
+            {
+                termDocs.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to look up documents in " + identifier, e );
+        }
+    }
+    
+    private static long idOf( Object entityId )
+    {
+        return entityId instanceof Long ? (Long) entityId : ((RelationshipId)entityId).id;
+    }
+    
+    /**
+     * Releases the searcher used to look up existing documents.
+     */
+    void close()
+    {
+        if ( searcherRef != null )
+        {
+            searcherRef.closeStrict();
+            searcherRef = null;
+            searcher = null;
         }
     }
     
     DocumentContext getDocument( Object entityId )
     {
-        long id = entityId instanceof Long ? (Long) entityId : ((RelationshipId)entityId).id;
+        long id = idOf( entityId );
         DocumentContext context = documents.get( id );
         if ( context == null )
         {
             Document document = LuceneDataSource.findDocument( indexType, searcher, id );
             context = document == null ?
                     new DocumentContext( identifier.entityType.newDocument( entityId ), false, id ) :
-                    new DocumentContext( document, true, id );
+                    new DocumentContext( indexType.restoreDocument( document ), true, id );
             documents.put( id, context );
         }
         return context;
@@ -24,78 +24,16 @@ import java.util.Collection;
 import org.apache.lucene.document.Document;
 import org.neo4j.graphdb.index.IndexHits;
 
-class DocToIdIterator extends AbstractIndexHits<Long>
+class DocToIdIterator extends DocToObjectIterator<Long>
 {
-    private final Collection<Long> exclude;
-    private IndexSearcherRef searcherOrNull;
-    private final IndexHits<Document> source;
-    
     DocToIdIterator( IndexHits<Document> source, Collection<Long> exclude, IndexSearcherRef searcherOrNull )
     {
-        this.source = source;
-        this.exclude = exclude;
-        this.searcherOrNull = searcherOrNull;
-        if ( source.size() == 0 )
-        {
-            close();
-        }
+        super( source, exclude, searcherOrNull );
     }
 
     @Override
-    protected Long fetchNextOrNull()
+    protected Long convert( Document doc, long id )
     {
-        Long result = null;
-        while ( result == null )
-        {
-            if ( !source.hasNext() )
-            {
-                endReached();
-                break;
-            }
-            Document doc = source.next();
-            Long id = Long.parseLong( doc.getField( LuceneIndex.KEY_DOC_ID ).stringValue() );
-            if ( exclude == null || !exclude.contains( id ) )
-            {
-                result = id;
-            }
-        }
-        return result;
-    }
-
-    protected void endReached()
-    {
-        close();
-    }
-    
-    @Override
-    public void close()
-    {
-        if ( !isClosed() )
-        {
-            this.searcherOrNull.closeStrict();
-            this.searcherOrNull = null;
-        }
-    }
-
-    public int size()
-    {
-        return exclude == null ? source.size() : source.size()-exclude.size();
-    }
-
-    private boolean isClosed()
-    {
-        return searcherOrNull==null;
-    }
-
-    public float currentScore()
-    {
-        return source.currentScore();
-    }
-    
-    @Override
-    protected void finalize() throws Throwable
-    {
-        close();
-        super.finalize();
+        return id;
     }
 }
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.Collection;
+
+import org.apache.lucene.document.Document;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * Turns documents from a search into the objects they stand for, leaving out
+ * the ones with excluded ids. Releases the searcher when all documents have
+ * been read, or when closed.
+ */
+abstract class DocToObjectIterator<T> extends AbstractIndexHits<T>
+{
+    private final Collection<Long> exclude;
+    private IndexSearcherRef searcherOrNull;
+    private final IndexHits<Document> source;
+    
+    DocToObjectIterator( IndexHits<Document> source, Collection<Long> exclude, IndexSearcherRef searcherOrNull )
+    {
+        this.source = source;
+        this.exclude = exclude;
+        this.searcherOrNull = searcherOrNull;
+        if ( !source.hasNext() )
+        {
+            close();
+        }
+    }
+
+    @Override
+    protected T fetchNextOrNull()
+    {
+        T result = null;
+        while ( result == null )
+        {
+            if ( !source.hasNext() )
+            {
+                endReached();
+                break;
+            }
+            Document doc = source.next();
+            long id = Long.parseLong( doc.getField( LuceneIndex.KEY_DOC_ID ).stringValue() );
+            if ( exclude == null || !exclude.contains( id ) )
+            {
+                result = convert( doc, id );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the object for the document, or {@code null} to leave it out.
+     */
+    protected abstract T convert( Document doc, long id );
+
+    protected void endReached()
+    {
+        close();
+    }
+    
+    @Override
+    public void close()
+    {
+        if ( !isClosed() )
+        {
+            this.searcherOrNull.closeStrict();
+            this.searcherOrNull = null;
+        }
+    }
+
+    public int size()
+    {
+        return exclude == null ? source.size() : source.size()-exclude.size();
+    }
+
+    private boolean isClosed()
+    {
+        return searcherOrNull==null;
+    }
+
+    public float currentScore()
+    {
+        return source.currentScore();
+    }
+    
+    @Override
+    protected void finalize() throws Throwable
+    {
+        close();
+        super.finalize();
+    }
+}
@@ -31,7 +31,6 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Searcher;
 import org.neo4j.helpers.Pair;
 import org.neo4j.index.lucene.QueryContext;
-import org.neo4j.index.lucene.ValueContext;
 
 public class ExactTxData extends TxData
 {
@@ -153,7 +152,7 @@ public class ExactTxData extends TxData
     @Override
     Pair<Collection<Long>, TxData> get( String key, Object value )
     {
-        value = value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
+        value = index.type.correctValue( value );
         Set<Object> ids = idCollection( key, value, false );
         if ( ids == null || ids.isEmpty() )
         {
@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.store.AlreadyClosedException;
+
+/**
+ * Keeps the work of keeping lucene indexes in shape off of the threads which
+ * commit transactions. Applying a transaction to an index only adds to the
+ * buffer of its {@link IndexWriter}.
+ * <ul>
+ * <li>Segment merges are handed over to a maintenance thread, which starts
+ * them in background merge threads at a lower priority. At most
+ * {@code mergeThreads} merges run at a time, for all indexes of the data
+ * source together. A committing thread which triggers merges never waits
+ * for them, not even if all merge threads are busy.</li>
+ * <li>Indexes which have changed are committed by the maintenance thread
+ * every {@code commitInterval} milliseconds, so that there's little left to
+ * commit when the logical log is rotated, and when recovering.</li>
+ * </ul>
+ * An index is committed while holding its write lock, so that a commit never
+ * has half of a transaction in it, and the commit stores the id of the last
+ * transaction applied to the index in its commit user data. When the logical
+ * log is rotated all indexes are committed synchronously. Recovery replays
+ * the transactions which weren't marked as done in the log, some of which
+ * may already be in a background commit of an index. Their writes to an index
+ * whose last commit has them, or a later transaction, are skipped, since
+ * replaying an addition would leave two of the document in the index.
+ */
+class IndexMaintenance
+{
+    private static final Logger logger = Logger.getLogger( IndexMaintenance.class.getName() );
+    
+    static final long DEFAULT_COMMIT_INTERVAL = 5000;
+    static final int DEFAULT_MERGE_THREADS = 1;
+    
+    private final ScheduledThreadPoolExecutor executor;
+    private final long commitInterval;
+    private final int mergeThreads;
+    /**
+     * Shared by the merge schedulers of all writers, so that no more than
+     * {@code mergeThreads} merges run at a time in the whole data source.
+     */
+    private final Semaphore mergePermits;
+    private final Set<IndexIdentifier> changed = Collections.newSetFromMap(
+            new ConcurrentHashMap<IndexIdentifier, Boolean>() );
+    
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong commitTime = new AtomicLong();
+    private final AtomicLong merges = new AtomicLong();
+    private final AtomicLong mergeTime = new AtomicLong();
+    private final AtomicInteger runningMerges = new AtomicInteger();
+    private volatile long lastMergeTime;
+    private volatile long lastCommitTime;
+    
+    IndexMaintenance( final String name, long commitInterval, int mergeThreads )
+    {
+        this.commitInterval = commitInterval;
+        this.mergeThreads = Math.max( 1, mergeThreads );
+        this.mergePermits = new Semaphore( this.mergeThreads, true );
+        // One thread for commits and one for handing out merges, so that
+        // neither has to wait for the other
+        this.executor = new ScheduledThreadPoolExecutor( 2, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "Lucene maintenance " + name + "-" +
+                        count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+    
+    /**
+     * Starts committing changed indexes every {@code commitInterval}
+     * milliseconds, unless the interval is 0.
+     */
+    void start( final LuceneDataSource dataSource )
+    {
+        if ( commitInterval <= 0 )
+        {
+            return;
+        }
+        executor.scheduleWithFixedDelay( new Runnable()
+        {
+            public void run()
+            {
+                commitChanged( dataSource );
+            }
+        }, commitInterval, commitInterval, TimeUnit.MILLISECONDS );
+    }
+    
+    /**
+     * Marks the index as changed, so that it's committed the next time
+     * changed indexes are.
+     */
+    void changed( IndexIdentifier identifier )
+    {
+        changed.add( identifier );
+    }
+    
+    private void commitChanged( LuceneDataSource dataSource )
+    {
+        for ( IndexIdentifier identifier : changed )
+        {
+            // commitIndex leaves it be if the writer has been closed
+            changed.remove( identifier );
+            try
+            {
+                dataSource.commitIndex( identifier );
+            }
+            catch ( AlreadyClosedException e )
+            {
+                // Deleted, or shut down, while we were at it
+            }
+            catch ( IOException e )
+            {
+                // The changes are still in the writer, and it's still marked
+                // as changed, so it's tried again next time
+                logger.log( Level.WARNING, "Unable to commit " + identifier, e );
+            }
+        }
+    }
+    
+    /**
+     * Commits the writer of the index in the calling thread, with
+     * {@code commitUserData} stored in the commit, and keeps track of how
+     * long it took. The index is no longer changed, unless the commit fails.
+     */
+    void commit( IndexIdentifier identifier, IndexWriter writer,
+            Map<String, String> commitUserData ) throws IOException
+    {
+        changed.remove( identifier );
+        long start = System.currentTimeMillis();
+        try
+        {
+            writer.commit( commitUserData );
+        }
+        catch ( IOException e )
+        {
+            changed.add( identifier );
+            throw e;
+        }
+        long time = System.currentTimeMillis() - start;
+        commits.incrementAndGet();
+        commitTime.addAndGet( time );
+        lastCommitTime = time;
+    }
+    
+    /**
+     * @return the {@link MergeScheduler} for a new {@link IndexWriter}.
+     */
+    MergeScheduler newMergeScheduler()
+    {
+        BackgroundMergeScheduler scheduler = new BackgroundMergeScheduler();
+        scheduler.setMaxThreadCount( mergeThreads );
+        scheduler.setMergeThreadPriority( Thread.MIN_PRIORITY );
+        return scheduler;
+    }
+    
+    /**
+     * Stops the maintenance thread. Merges started after this are run by
+     * the thread which asks for them, which is what closing a writer does.
+     */
+    void shutdown()
+    {
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination( 1, TimeUnit.MINUTES );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    long getCommitInterval()
+    {
+        return commitInterval;
+    }
+    
+    int getMergeThreads()
+    {
+        return mergeThreads;
+    }
+    
+    long getCommitCount()
+    {
+        return commits.get();
+    }
+    
+    long getCommitTime()
+    {
+        return commitTime.get();
+    }
+    
+    long getLastCommitTime()
+    {
+        return lastCommitTime;
+    }
+    
+    long getMergeCount()
+    {
+        return merges.get();
+    }
+    
+    long getMergeTime()
+    {
+        return mergeTime.get();
+    }
+    
+    long getLastMergeTime()
+    {
+        return lastMergeTime;
+    }
+    
+    int getRunningMerges()
+    {
+        return runningMerges.get();
+    }
+    
+    int getUncommittedIndexCount()
+    {
+        return changed.size();
+    }
+    
+    /**
+     * A {@link ConcurrentMergeScheduler} which returns at once to the thread
+     * that asks for merges. It's the maintenance thread which hands the
+     * merges to the merge threads, and waits for one to be free if needed.
+     */
+    private class BackgroundMergeScheduler extends ConcurrentMergeScheduler
+    {
+        private final AtomicBoolean queued = new AtomicBoolean();
+        
+        @Override
+        public void merge( final IndexWriter writer ) throws IOException
+        {
+            if ( !queued.compareAndSet( false, true ) )
+            {
+                // Merges registered before the queued task starts are picked up by it
+                return;
+            }
+            try
+            {
+                executor.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        queued.set( false );
+                        try
+                        {
+                            mergeNow( writer );
+                        }
+                        catch ( AlreadyClosedException e )
+                        {
+                            // The writer was closed before we got to it
+                        }
+                        catch ( IOException e )
+                        {
+                            logger.log( Level.WARNING, "Unable to merge " + writer.getDirectory(), e );
+                        }
+                    }
+                } );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // Shutting down
+                queued.set( false );
+                super.merge( writer );
+            }
+        }
+        
+        private void mergeNow( IndexWriter writer ) throws IOException
+        {
+            super.merge( writer );
+        }
+        
+        @Override
+        protected void doMerge( MergePolicy.OneMerge merge ) throws IOException
+        {
+            // Each writer has merge threads of its own, so this is what keeps
+            // the merges of all indexes within the limit
+            mergePermits.acquireUninterruptibly();
+            runningMerges.incrementAndGet();
+            long start = System.currentTimeMillis();
+            try
+            {
+                super.doMerge( merge );
+            }
+            finally
+            {
+                long time = System.currentTimeMillis() - start;
+                runningMerges.decrementAndGet();
+                mergePermits.release();
+                merges.incrementAndGet();
+                mergeTime.addAndGet( time );
+                lastMergeTime = time;
+            }
+        }
+    }
+}
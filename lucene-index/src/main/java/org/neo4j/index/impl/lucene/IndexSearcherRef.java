@@ -55,12 +55,23 @@ class IndexSearcherRef
         return identifier;
     }
 
-    void incRef()
+    /**
+     * Increments the reference count unless this searcher has been replaced
+     * by a refreshed one or closed, in which case it must not be used.
+     * 
+     * @return whether or not the reference count was incremented.
+     */
+    synchronized boolean tryIncRef()
     {
+        if ( this.detached || this.isClosed )
+        {
+            return false;
+        }
         this.refCount.incrementAndGet();
+        return true;
     }
     
-    public void dispose() throws IOException
+    public synchronized void dispose() throws IOException
     {
         if ( !this.isClosed )
         {
@@ -70,7 +81,7 @@ class IndexSearcherRef
         }
     }
     
-    public void detachOrClose() throws IOException
+    public synchronized void detachOrClose() throws IOException
     {
         if ( this.refCount.get() == 0 )
         {
@@ -82,7 +93,7 @@ class IndexSearcherRef
         }
     }
     
-    public boolean close() throws IOException
+    public synchronized boolean close() throws IOException
     {
         if ( this.isClosed || this.refCount.get() == 0 )
         {
@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * Measures what the indexes cost to use: latencies of exact lookups, queries
+ * and commits as histograms per index, how often and for how long searchers
+ * are reopened and how often lookups are answered from the {@link Cache}.
+ * Lookups and queries taking longer than the slow query threshold are logged,
+ * with the query, the time it took and the number of hits, and the most
+ * recent of them are kept for the management bean.
+ * <p>
+ * Hits are read lazily, so the latency of a lookup or query is the time of
+ * the search plus the time spent reading its hits, not counting what the
+ * caller does in between. It is recorded when the hits have been read to the
+ * end or closed, see {@link #timed(IndexIdentifier, boolean, Object, long, IndexHits)}.
+ * Hits which are neither aren't measured.
+ */
+class IndexStatistics
+{
+    private static final Logger logger = Logger.getLogger( IndexStatistics.class.getName() );
+    
+    static final long DEFAULT_SLOW_QUERY_THRESHOLD = 0;
+    static final int MAX_SLOW_QUERIES = 100;
+    
+    private final ConcurrentHashMap<IndexIdentifier, Statistics> indexes =
+            new ConcurrentHashMap<IndexIdentifier, Statistics>();
+    private final LinkedList<String> slowQueries = new LinkedList<String>();
+    private volatile long slowQueryThreshold;
+    
+    IndexStatistics( long slowQueryThreshold )
+    {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+    
+    /**
+     * @param start the {@link System#nanoTime()} when the lookup, if
+     * {@code exact}, or query started.
+     * @param hits the hits of the lookup or query.
+     * @return hits which record the lookup or query when they have been
+     * read to the end, or closed, with the time spent until now and inside
+     * {@code hits} while reading them.
+     */
+    <T> IndexHits<T> timed( IndexIdentifier identifier, boolean exact, Object query, long start,
+            IndexHits<T> hits )
+    {
+        return new TimedHits<T>( identifier, exact, query, start, hits );
+    }
+    
+    /**
+     * @param time the nanoseconds the lookup, if {@code exact}, or query
+     * took.
+     * @param hits the number of hits which were read.
+     */
+    void searched( IndexIdentifier identifier, boolean exact, Object query, long time, int hits )
+    {
+        Statistics statistics = statistics( identifier );
+        (exact ? statistics.gets : statistics.queries).record( time );
+        long threshold = slowQueryThreshold;
+        if ( threshold > 0 && TimeUnit.NANOSECONDS.toMillis( time ) >= threshold )
+        {
+            slowQuery( identifier + " " + (exact ? "get " : "query ") + query + " took " +
+                    TimeUnit.NANOSECONDS.toMillis( time ) + "ms, " + hits + " hits read" );
+        }
+    }
+    
+    void committed( IndexIdentifier identifier, long start )
+    {
+        statistics( identifier ).commits.record( System.nanoTime() - start );
+    }
+    
+    void reopened( IndexIdentifier identifier, long start )
+    {
+        Statistics statistics = statistics( identifier );
+        statistics.reopens.incrementAndGet();
+        statistics.reopenTime.addAndGet( System.nanoTime() - start );
+    }
+    
+    void cacheLookup( IndexIdentifier identifier, boolean hit )
+    {
+        Statistics statistics = statistics( identifier );
+        (hit ? statistics.cacheHits : statistics.cacheMisses).incrementAndGet();
+    }
+    
+    void deleted( IndexIdentifier identifier )
+    {
+        indexes.remove( identifier );
+    }
+    
+    private Statistics statistics( IndexIdentifier identifier )
+    {
+        Statistics statistics = indexes.get( identifier );
+        if ( statistics == null )
+        {
+            Statistics newStatistics = new Statistics();
+            statistics = indexes.putIfAbsent( identifier, newStatistics );
+            statistics = statistics != null ? statistics : newStatistics;
+        }
+        return statistics;
+    }
+    
+    private void slowQuery( String description )
+    {
+        logger.warning( "Slow query: " + description );
+        synchronized ( slowQueries )
+        {
+            slowQueries.addLast( description );
+            if ( slowQueries.size() > MAX_SLOW_QUERIES )
+            {
+                slowQueries.removeFirst();
+            }
+        }
+    }
+    
+    long getSlowQueryThreshold()
+    {
+        return slowQueryThreshold;
+    }
+    
+    void setSlowQueryThreshold( long millis )
+    {
+        this.slowQueryThreshold = millis;
+    }
+    
+    /**
+     * @return the most recent slow queries, oldest first.
+     */
+    String[] getSlowQueries()
+    {
+        synchronized ( slowQueries )
+        {
+            return slowQueries.toArray( new String[slowQueries.size()] );
+        }
+    }
+    
+    /**
+     * @param documentCounts the number of documents in the indexes which
+     * are open.
+     * @return a summary per index of what has been measured for it.
+     */
+    String[] summarize( Map<IndexIdentifier, Integer> documentCounts )
+    {
+        List<String> result = new ArrayList<String>();
+        for ( Map.Entry<IndexIdentifier, Statistics> entry : indexes.entrySet() )
+        {
+            Integer documents = documentCounts.get( entry.getKey() );
+            result.add( entry.getKey() + ": " + entry.getValue().summarize() +
+                    (documents != null ? ", documents=" + documents : "") );
+        }
+        return result.toArray( new String[result.size()] );
+    }
+    
+    Statistics get( IndexIdentifier identifier )
+    {
+        return indexes.get( identifier );
+    }
+    
+    private class TimedHits<T> extends AbstractIndexHits<T>
+    {
+        private final IndexIdentifier identifier;
+        private final boolean exact;
+        private final Object query;
+        private final IndexHits<T> hits;
+        private long time;
+        private int read;
+        private boolean recorded;
+        
+        TimedHits( IndexIdentifier identifier, boolean exact, Object query, long start,
+                IndexHits<T> hits )
+        {
+            this.identifier = identifier;
+            this.exact = exact;
+            this.query = query;
+            this.hits = hits;
+            this.time = System.nanoTime() - start;
+        }
+        
+        @Override
+        protected T fetchNextOrNull()
+        {
+            long before = System.nanoTime();
+            T next = hits.hasNext() ? hits.next() : null;
+            time += System.nanoTime() - before;
+            if ( next == null )
+            {
+                record();
+            }
+            else
+            {
+                read++;
+            }
+            return next;
+        }
+        
+        public int size()
+        {
+            return hits.size();
+        }
+        
+        public float currentScore()
+        {
+            return hits.currentScore();
+        }
+        
+        @Override
+        public void close()
+        {
+            hits.close();
+            record();
+        }
+        
+        private void record()
+        {
+            if ( !recorded )
+            {
+                recorded = true;
+                searched( identifier, exact, query, time, read );
+            }
+        }
+    }
+    
+    static class Statistics
+    {
+        final LatencyHistogram gets = new LatencyHistogram();
+        final LatencyHistogram queries = new LatencyHistogram();
+        final LatencyHistogram commits = new LatencyHistogram();
+        final AtomicLong reopens = new AtomicLong();
+        final AtomicLong reopenTime = new AtomicLong();
+        final AtomicLong cacheHits = new AtomicLong();
+        final AtomicLong cacheMisses = new AtomicLong();
+        
+        /**
+         * @return the ratio of exact lookups answered from the cache, or
+         * {@link Double#NaN} if there haven't been any.
+         */
+        double cacheHitRatio()
+        {
+            long hits = cacheHits.get();
+            long total = hits + cacheMisses.get();
+            return total == 0 ? Double.NaN : (double) hits / total;
+        }
+        
+        String summarize()
+        {
+            return "get[" + gets + "], query[" + queries + "], commit[" + commits + "], reopens=" +
+                    reopens.get() + " (" + TimeUnit.NANOSECONDS.toMillis( reopenTime.get() ) + "ms)" +
+                    ", cache hit ratio=" + String.format( "%.2f", cacheHitRatio() );
+        }
+    }
+    
+    /**
+     * Counts latencies in buckets of powers of two microseconds, from below a
+     * microsecond to above an hour, so recording is a few atomic increments
+     * and percentiles are within a factor of two.
+     */
+    static class LatencyHistogram
+    {
+        private static final int BUCKETS = 33;
+        
+        private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        
+        void record( long nanos )
+        {
+            long micros = TimeUnit.NANOSECONDS.toMicros( nanos );
+            int bucket = micros == 0 ? 0 : Math.min( BUCKETS - 1, 64 - Long.numberOfLeadingZeros( micros ) );
+            buckets.incrementAndGet( bucket );
+            count.incrementAndGet();
+            total.addAndGet( nanos );
+            long currentMax;
+            while ( nanos > (currentMax = max.get()) && !max.compareAndSet( currentMax, nanos ) )
+            {
+                // Someone else raised it meanwhile, try again
+            }
+        }
+        
+        long count()
+        {
+            return count.get();
+        }
+        
+        /**
+         * @return the mean latency in microseconds.
+         */
+        long mean()
+        {
+            long count = this.count.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros( total.get() / count );
+        }
+        
+        /**
+         * @return the max latency in microseconds.
+         */
+        long max()
+        {
+            return TimeUnit.NANOSECONDS.toMicros( max.get() );
+        }
+        
+        /**
+         * @param percentile between 0 and 1.
+         * @return the upper bound, in microseconds, of the bucket which the
+         * latency at {@code percentile} is in.
+         */
+        long percentile( double percentile )
+        {
+            long count = this.count.get();
+            if ( count == 0 )
+            {
+                return 0;
+            }
+            long rank = (long) Math.ceil( percentile * count );
+            long seen = 0;
+            for ( int i = 0; i < BUCKETS; i++ )
+            {
+                seen += buckets.get( i );
+                if ( seen >= rank )
+                {
+                    return Math.min( 1L << i, max() );
+                }
+            }
+            return max();
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "count=" + count() + " mean=" + mean() + "us p50=" + percentile( 0.5 ) +
+                    "us p99=" + percentile( 0.99 ) + "us max=" + max() + "us";
+        }
+    }
+}
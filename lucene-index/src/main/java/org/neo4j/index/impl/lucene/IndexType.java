@@ -34,13 +34,16 @@ import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.Version;
 import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.ValueContext;
 
 abstract class IndexType
 {
@@ -97,6 +100,189 @@ abstract class IndexType
         }
     };
     
+    /**
+     * Indexes values as numbers only, without a string field next to them.
+     * Every value is indexed as a double, integral ones too, since long and
+     * double trie terms in the same field can't be matched by one range. A
+     * value then has one representation which can be queried for, and which
+     * can be restored from its stored form. Longs beyond 2^53 lose precision.
+     */
+    private static final IndexType NUMERIC = new IndexType( LuceneDataSource.KEYWORD_ANALYZER, false )
+    {
+        @Override
+        Object correctValue( Object value )
+        {
+            return toDouble( value );
+        }
+        
+        @Override
+        public Query deletionQuery( long entityId, String key, Object value )
+        {
+            BooleanQuery q = new BooleanQuery();
+            q.add( idTermQuery( entityId ), Occur.MUST );
+            q.add( get( key, value ), Occur.MUST );
+            return q;
+        }
+
+        @Override
+        public Query get( String key, Object value )
+        {
+            Double number = toDouble( value );
+            return NumericRangeQuery.newDoubleRange( key, number, number, true, true );
+        }
+        
+        /**
+         * Ranges given as query objects, e.g. from
+         * {@link QueryContext#numericRange(String, Number, Number)} with long
+         * bounds, are turned into double ranges to match the indexed values.
+         */
+        @Override
+        Query query( String keyOrNull, Object value, QueryContext contextOrNull )
+        {
+            return value instanceof Query ? toDoubleRanges( (Query) value ) :
+                    super.query( keyOrNull, value, contextOrNull );
+        }
+        
+        private Query toDoubleRanges( Query query )
+        {
+            if ( query instanceof NumericRangeQuery )
+            {
+                NumericRangeQuery<?> range = (NumericRangeQuery<?>) query;
+                Number min = range.getMin();
+                Number max = range.getMax();
+                if ( min instanceof Double || max instanceof Double )
+                {
+                    return range;
+                }
+                NumericRangeQuery<Double> result = NumericRangeQuery.newDoubleRange( range.getField(),
+                        min != null ? min.doubleValue() : null, max != null ? max.doubleValue() : null,
+                        range.includesMin(), range.includesMax() );
+                result.setBoost( range.getBoost() );
+                return result;
+            }
+            else if ( query instanceof BooleanQuery )
+            {
+                BooleanQuery result = new BooleanQuery( ((BooleanQuery) query).isCoordDisabled() );
+                result.setMinimumNumberShouldMatch( ((BooleanQuery) query).getMinimumNumberShouldMatch() );
+                result.setBoost( query.getBoost() );
+                for ( BooleanClause clause : ((BooleanQuery) query).getClauses() )
+                {
+                    result.add( toDoubleRanges( clause.getQuery() ), clause.getOccur() );
+                }
+                return result;
+            }
+            return query;
+        }
+        
+        @Override
+        QueryParser newQueryParser( String keyOrNull )
+        {
+            return new NumericQueryParser( keyOrNull, analyzer );
+        }
+
+        @Override
+        public void addToDocument( Document document, String key, Object value )
+        {
+            document.add( instantiateField( key, toDouble( value ), Index.NOT_ANALYZED ) );
+        }
+
+        @Override
+        void removeFieldsFromDocument( Document document, String key, Object value )
+        {
+            if ( value == null )
+            {
+                document.removeFields( key );
+                return;
+            }
+            
+            String stringValue = toDouble( value ).toString();
+            Fieldable[] fields = document.getFieldables( key );
+            for ( int i = 0; i < fields.length; i++ )
+            {
+                if ( stringValue.equals( fields[i].stringValue() ) )
+                {
+                    document.removeFields( key );
+                    for ( int j = 0; j < fields.length; j++ )
+                    {
+                        if ( j != i )
+                        {
+                            document.add( fields[j] );
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        
+        @Override
+        Document restoreDocument( Document document )
+        {
+            // Stored numbers are read back as plain string fields, which
+            // would be indexed as strings if the document was written again
+            Document result = new Document();
+            for ( Fieldable field : document.getFields() )
+            {
+                String name = field.name();
+                boolean reserved = name.equals( LuceneIndex.KEY_DOC_ID ) ||
+                        name.equals( LuceneIndex.KEY_START_NODE_ID ) ||
+                        name.equals( LuceneIndex.KEY_END_NODE_ID ) ||
+                        name.equals( LuceneIndex.KEY_TYPE );
+                result.add( reserved || field instanceof NumericField ? field :
+                        instantiateField( name, toDouble( field.stringValue() ), Index.NOT_ANALYZED ) );
+            }
+            return result;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "NUMERIC";
+        }
+    };
+    
+    /**
+     * Turns terms and ranges in a query string into numeric queries, e.g.
+     * {@code age:[18 TO *]}.
+     */
+    private static class NumericQueryParser extends QueryParser
+    {
+        NumericQueryParser( String keyOrNull, Analyzer analyzer )
+        {
+            super( Version.LUCENE_30, keyOrNull, analyzer );
+        }
+        
+        @Override
+        protected Query getFieldQuery( String field, String queryText ) throws ParseException
+        {
+            return NUMERIC.get( field, parse( queryText ) );
+        }
+        
+        @Override
+        protected Query getRangeQuery( String field, String part1, String part2, boolean inclusive )
+                throws ParseException
+        {
+            return NumericRangeQuery.newDoubleRange( field, parseBound( part1 ), parseBound( part2 ),
+                    inclusive, inclusive );
+        }
+        
+        private Double parseBound( String text ) throws ParseException
+        {
+            return text.equals( "*" ) ? null : parse( text );
+        }
+        
+        private Double parse( String text ) throws ParseException
+        {
+            try
+            {
+                return toDouble( text );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                throw new ParseException( e.getMessage() );
+            }
+        }
+    }
+    
     private static class CustomType extends IndexType
     {
         private final Similarity similarity;
@@ -190,11 +376,15 @@ abstract class IndexType
         Analyzer customAnalyzer = getCustomAnalyzer( config );
         if ( type != null )
         {
-            // Use the built in alternatives... "exact" or "fulltext"
+            // Use the built in alternatives... "exact", "numeric" or "fulltext"
             if ( type.equals( "exact" ) )
             {
                 result = EXACT;
             }
+            else if ( type.equals( "numeric" ) )
+            {
+                result = NUMERIC;
+            }
             else if ( type.equals( "fulltext" ) )
             {
                 Analyzer analyzer = customAnalyzer;
@@ -269,7 +459,7 @@ abstract class IndexType
             return (Query) value;
         }
         
-        QueryParser parser = new QueryParser( Version.LUCENE_30, keyOrNull, analyzer );
+        QueryParser parser = newQueryParser( keyOrNull );
         parser.setAllowLeadingWildcard( true );
         parser.setLowercaseExpandedTerms( toLowerCase );
         if ( contextOrNull != null && contextOrNull.getDefaultOperator() != null )
@@ -286,8 +476,32 @@ abstract class IndexType
         }
     }
     
+    QueryParser newQueryParser( String keyOrNull )
+    {
+        return new QueryParser( Version.LUCENE_30, keyOrNull, analyzer );
+    }
+    
+    /**
+     * @return the value to index, and to keep in transaction state, for a
+     * value given to {@link LuceneIndex#add(org.neo4j.graphdb.PropertyContainer, String, Object)}
+     * or one of the other index methods.
+     */
+    Object correctValue( Object value )
+    {
+        return value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
+    }
+    
     abstract void addToDocument( Document document, String key, Object value );
     
+    /**
+     * @return {@code document}, read from the index, prepared to be changed
+     * and written back.
+     */
+    Document restoreDocument( Document document )
+    {
+        return document;
+    }
+    
     Fieldable instantiateField( String key, Object value, Index analyzed )
     {
         Fieldable field = null;
@@ -348,6 +562,31 @@ abstract class IndexType
         }
     }
     
+    /**
+     * @return {@code value}, a number, a {@link ValueContext} or a string,
+     * as a {@link Double}.
+     */
+    static Double toDouble( Object value )
+    {
+        if ( value instanceof ValueContext )
+        {
+            value = ((ValueContext) value).getValue();
+        }
+        if ( value instanceof Number )
+        {
+            return ((Number) value).doubleValue();
+        }
+        
+        try
+        {
+            return Double.valueOf( value.toString() );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "'" + value + "' isn't a number" );
+        }
+    }
+    
     static Document newBaseDocument( long entityId )
     {
         Document doc = new Document();
@@ -355,6 +594,25 @@ abstract class IndexType
                 Index.NOT_ANALYZED ) );
         return doc;
     }
+    
+    /**
+     * @return a document for the relationship, with its start node, end node
+     * and type stored so that queries can return them without going to the
+     * relationship store.
+     */
+    static Document newRelationshipDocument( RelationshipId relId )
+    {
+        Document doc = newBaseDocument( relId.id );
+        doc.add( new Field( LuceneIndex.KEY_START_NODE_ID, "" + relId.startNode, Store.YES,
+                Index.NOT_ANALYZED ) );
+        doc.add( new Field( LuceneIndex.KEY_END_NODE_ID, "" + relId.endNode, Store.YES,
+                Index.NOT_ANALYZED ) );
+        if ( relId.type != null )
+        {
+            doc.add( new Field( LuceneIndex.KEY_TYPE, relId.type, Store.YES, Index.NOT_ANALYZED ) );
+        }
+        return doc;
+    }
 
     Term idTerm( long entityId )
     {
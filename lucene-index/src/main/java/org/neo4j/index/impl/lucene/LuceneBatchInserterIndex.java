@@ -79,7 +79,7 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
                 value = isValueContext ? ((ValueContext) value).getCorrectValue() : value;
                 for ( Object oneValue : IoPrimitiveUtils.asArray( value ) )
                 {
-                    oneValue = isValueContext ? oneValue : oneValue.toString();
+                    oneValue = isValueContext ? oneValue : type.correctValue( oneValue );
                     type.addToDocument( document, key, oneValue );
                     if ( createdNow )
                     {
@@ -330,6 +330,7 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
 
     public IndexHits<Long> get( String key, Object value )
     {
+        value = type.correctValue( value );
         IndexHits<Long> cached = getFromCache( key, value );
         return cached != null ? cached : query( type.get( key, value ), key, value );
     }
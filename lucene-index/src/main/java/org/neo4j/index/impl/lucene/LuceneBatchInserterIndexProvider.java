@@ -23,8 +23,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Store;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
@@ -74,18 +72,14 @@ public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvi
                 RelationshipId relId = null;
                 if(entityId instanceof Long) {
                     SimpleRelationship relationship = inserter.getRelationshipById( (Long) entityId );
-                    relId = new RelationshipId( relationship.getId(), relationship.getStartNode(), relationship.getEndNode() );
+                    relId = new RelationshipId( relationship.getId(), relationship.getStartNode(),
+                            relationship.getEndNode(), relationship.getType().name() );
                 } else if (entityId instanceof RelationshipId ) {
                     relId = (RelationshipId) entityId;
                 } else {
                     new IllegalArgumentException( "Ids of type "  + entityId.getClass() + " are not supported.");
                 }
-                Document doc = IndexType.newBaseDocument( relId.id );                    
-                doc.add( new Field( LuceneIndex.KEY_START_NODE_ID, "" + relId.startNode,
-                        Store.YES, org.apache.lucene.document.Field.Index.NOT_ANALYZED ) );
-                doc.add( new Field( LuceneIndex.KEY_END_NODE_ID, "" + relId.endNode,
-                        Store.YES, org.apache.lucene.document.Field.Index.NOT_ANALYZED ) );
-                return doc;
+                return IndexType.newRelationshipDocument( relId );
             }
             
             public Class<? extends PropertyContainer> getType()
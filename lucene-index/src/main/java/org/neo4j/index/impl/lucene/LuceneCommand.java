@@ -38,6 +38,8 @@ abstract class LuceneCommand extends XaCommand
     private static final byte REMOVE_COMMAND = (byte) 2;
     private static final byte DELETE_COMMAND = (byte) 3;
     private static final byte CREATE_INDEX_COMMAND = (byte) 4;
+    // Like ADD_COMMAND for relationships, but with the relationship type as well
+    private static final byte ADD_RELATIONSHIP_COMMAND = (byte) 5;
     
     public static final byte NODE = (byte) 1;
     public static final byte RELATIONSHIP = (byte) 2;
@@ -201,15 +203,21 @@ abstract class LuceneCommand extends XaCommand
         AddRelationshipCommand( IndexIdentifier indexId, byte entityType, RelationshipId entityId, String key,
                 Object value )
         {
-            super( indexId, entityType, entityId, key, value, ADD_COMMAND );
+            super( indexId, entityType, entityId, key, value,
+                    entityId.type != null ? ADD_RELATIONSHIP_COMMAND : ADD_COMMAND );
         }
         
         @Override
         public void writeToFile( LogBuffer buffer ) throws IOException
         {
             super.writeToFile( buffer );
-            buffer.putLong( ((RelationshipId) entityId).startNode );
-            buffer.putLong( ((RelationshipId) entityId).endNode );
+            RelationshipId relId = (RelationshipId) entityId;
+            buffer.putLong( relId.startNode );
+            buffer.putLong( relId.endNode );
+            if ( relId.type != null )
+            {
+                writeLengthAndString( buffer, relId.type );
+            }
         }
 
         @Override
@@ -423,7 +431,9 @@ abstract class LuceneCommand extends XaCommand
             
             Long startNodeId = null;
             Long endNodeId = null;
-            if ( commandType == ADD_COMMAND && entityTypeByte == RELATIONSHIP )
+            String relationshipType = null;
+            if ( (commandType == ADD_COMMAND && entityTypeByte == RELATIONSHIP) ||
+                    commandType == ADD_RELATIONSHIP_COMMAND )
             {
                 startNodeId = IoPrimitiveUtils.readLong( channel, buffer );
                 endNodeId = IoPrimitiveUtils.readLong( channel, buffer );
@@ -432,6 +442,14 @@ abstract class LuceneCommand extends XaCommand
                     return null;
                 }
             }
+            if ( commandType == ADD_RELATIONSHIP_COMMAND )
+            {
+                relationshipType = IoPrimitiveUtils.readLengthAndString( channel, buffer );
+                if ( relationshipType == null )
+                {
+                    return null;
+                }
+            }
             
             IndexIdentifier identifier = new IndexIdentifier( entityTypeByte, entityType, indexName );
             
@@ -440,7 +458,9 @@ abstract class LuceneCommand extends XaCommand
                 case ADD_COMMAND: return entityTypeByte == NODE ?
                         new AddCommand( identifier, entityTypeByte, entityId, key, value ) :
                         new AddRelationshipCommand( identifier, entityTypeByte,
-                                new RelationshipId( entityId, startNodeId, endNodeId ), key, value );
+                                new RelationshipId( entityId, startNodeId, endNodeId, null ), key, value );
+                case ADD_RELATIONSHIP_COMMAND: return new AddRelationshipCommand( identifier, entityTypeByte,
+                        new RelationshipId( entityId, startNodeId, endNodeId, relationshipType ), key, value );
                 case REMOVE_COMMAND: return new RemoveCommand( identifier, entityTypeByte, entityId, key, value );
                 case DELETE_COMMAND: return new DeleteCommand( identifier );
                 default:
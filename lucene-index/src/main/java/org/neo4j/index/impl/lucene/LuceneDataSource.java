@@ -19,6 +19,8 @@
  */
 package org.neo4j.index.impl.lucene;
 
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
@@ -30,8 +32,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.KeywordAnalyzer;
@@ -39,8 +42,6 @@ import org.apache.lucene.analysis.LowerCaseFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.WhitespaceTokenizer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
@@ -62,7 +63,6 @@ import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.UTF8;
 import org.neo4j.helpers.collection.ClosableIterable;
 import org.neo4j.kernel.Config;
-import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.index.IndexProviderStore;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBackedXaDataSource;
@@ -84,6 +84,45 @@ public class LuceneDataSource extends LogBackedXaDataSource
     public static final String DEFAULT_NAME = "lucene-index";
     public static final byte[] DEFAULT_BRANCH_ID = UTF8.encode( "162374" );
     
+    /**
+     * Configuration key for the memory, e.g. "8M", that the cache of exact
+     * lookups may use. "0" disables the cache.
+     */
+    public static final String LOOKUP_CACHE_SIZE = "lucene_lookup_cache_size";
+    static final long DEFAULT_LOOKUP_CACHE_SIZE = 8 * 1024 * 1024;
+    
+    /**
+     * Configuration key for how often, in milliseconds, indexes which have
+     * changed are committed in the background. "0" leaves committing to
+     * rotation of the logical log.
+     */
+    public static final String COMMIT_INTERVAL = "lucene_commit_interval";
+    
+    /**
+     * Configuration key for the maximum number of segment merges which may
+     * run at the same time, in background threads.
+     */
+    public static final String MERGE_THREADS = "lucene_merge_threads";
+    
+    /**
+     * Configuration key for the merge factor of the index writers, see
+     * {@link IndexWriter#setMergeFactor(int)}. Lower values mean fewer
+     * segments to search, but more merging.
+     */
+    public static final String MERGE_FACTOR = "lucene_merge_factor";
+    
+    /**
+     * Configuration key for how long, in milliseconds, an index lookup or
+     * query may take before it's logged as slow. "0", the default, logs none.
+     */
+    public static final String SLOW_QUERY_THRESHOLD = "lucene_slow_query_threshold";
+    
+    /**
+     * Key in the commit user data of an index for the id of the last
+     * transaction in the commit.
+     */
+    static final String LAST_APPLIED_TX = "last_applied_tx";
+    
     /**
      * Default {@link Analyzer} for fulltext parsing.
      */
@@ -121,18 +160,33 @@ public class LuceneDataSource extends LogBackedXaDataSource
     public static final Analyzer KEYWORD_ANALYZER = new KeywordAnalyzer();
     
     private final Map<IndexIdentifier,Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy>> indexWriters = 
-        new HashMap<IndexIdentifier,Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy>>();
+        new ConcurrentHashMap<IndexIdentifier,Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy>>();
     private final Map<IndexIdentifier,IndexSearcherRef> indexSearchers = 
-        new HashMap<IndexIdentifier,IndexSearcherRef>();
+        new ConcurrentHashMap<IndexIdentifier,IndexSearcherRef>();
+    /**
+     * One lock per index, held while a transaction applies its changes to
+     * the index and while the searcher of the index is refreshed, so that a
+     * refreshed searcher never sees half of a transaction.
+     */
+    private final ConcurrentHashMap<IndexIdentifier,ReentrantLock> indexLocks =
+        new ConcurrentHashMap<IndexIdentifier,ReentrantLock>();
 
     private final XaContainer xaContainer;
     private final String baseStorePath;
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); 
     final IndexStore indexStore;
     final IndexProviderStore providerStore;
     private final IndexTypeCache typeCache;
     private boolean closed;
     private final Cache caching;
+    private final IndexMaintenance maintenance;
+    /**
+     * The id of the last transaction applied to each index with an open
+     * writer, which is what's stored in the commit user data of the index.
+     */
+    private final Map<IndexIdentifier, Long> appliedTxs =
+            new ConcurrentHashMap<IndexIdentifier, Long>();
+    private final IndexStatistics statistics;
+    private final int mergeFactor;
     EntityType nodeEntityType;
     EntityType relationshipEntityType;
     final Map<IndexIdentifier, LuceneIndex<? extends PropertyContainer>> indexes =
@@ -149,7 +203,13 @@ public class LuceneDataSource extends LogBackedXaDataSource
         throws InstantiationException
     {
         super( params );
-        caching = new Cache();
+        caching = new Cache( parseLookupCacheSize( params.get( LOOKUP_CACHE_SIZE ) ) );
+        maintenance = new IndexMaintenance( DEFAULT_NAME,
+                parseNumber( params, COMMIT_INTERVAL, IndexMaintenance.DEFAULT_COMMIT_INTERVAL ),
+                (int) parseNumber( params, MERGE_THREADS, IndexMaintenance.DEFAULT_MERGE_THREADS ) );
+        mergeFactor = (int) parseNumber( params, MERGE_FACTOR, IndexWriter.DEFAULT_MERGE_FACTOR );
+        statistics = new IndexStatistics( parseNumber( params, SLOW_QUERY_THRESHOLD,
+                IndexStatistics.DEFAULT_SLOW_QUERY_THRESHOLD ) );
         String storeDir = (String) params.get( "store_dir" );
         this.baseStorePath = getStoreDir( storeDir ).first();
         cleanWriteLocks( baseStorePath );
@@ -186,13 +246,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         {
             public Document newDocument( Object entityId )
             {
-                RelationshipId relId = (RelationshipId) entityId;
-                Document doc = IndexType.newBaseDocument( relId.id );
-                doc.add( new Field( LuceneIndex.KEY_START_NODE_ID, "" + relId.startNode,
-                        Store.YES, org.apache.lucene.document.Field.Index.NOT_ANALYZED ) );
-                doc.add( new Field( LuceneIndex.KEY_END_NODE_ID, "" + relId.endNode,
-                        Store.YES, org.apache.lucene.document.Field.Index.NOT_ANALYZED ) );
-                return doc;
+                return IndexType.newRelationshipDocument( (RelationshipId) entityId );
             }
 
             public Class<? extends PropertyContainer> getType()
@@ -220,6 +274,58 @@ public class LuceneDataSource extends LogBackedXaDataSource
             xaContainer.getLogicalLog().setKeepLogs(
                     shouldKeepLog( (String) params.get( Config.KEEP_LOGICAL_LOGS ), DEFAULT_NAME ) );
             setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
+            maintenance.start( this );
+        }
+    }
+    
+    private static long parseNumber( Map<Object, Object> params, String key, long defaultValue )
+    {
+        Object value = params.get( key );
+        if ( value == null )
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Long.parseLong( value.toString().trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Invalid " + key + " '" + value + "'", e );
+        }
+    }
+    
+    static long parseLookupCacheSize( Object size )
+    {
+        if ( size == null )
+        {
+            return DEFAULT_LOOKUP_CACHE_SIZE;
+        }
+        String string = size.toString().trim();
+        long multiplier = 1;
+        if ( string.endsWith( "G" ) )
+        {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        else if ( string.endsWith( "M" ) )
+        {
+            multiplier = 1024 * 1024;
+        }
+        else if ( string.endsWith( "k" ) )
+        {
+            multiplier = 1024;
+        }
+        if ( multiplier > 1 )
+        {
+            string = string.substring( 0, string.length() - 1 );
+        }
+        try
+        {
+            return Long.parseLong( string ) * multiplier;
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Invalid " + LOOKUP_CACHE_SIZE + " '" + size + "'", e );
         }
     }
     
@@ -284,6 +390,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
             return;
         }
         
+        maintenance.shutdown();
         for ( IndexSearcherRef searcher : indexSearchers.values() )
         {
             try
@@ -301,7 +408,10 @@ public class LuceneDataSource extends LogBackedXaDataSource
         {
             try
             {
-                entry.getValue().first().close( true );
+                // Committed first so that the commit has the last applied tx
+                IndexWriter writer = entry.getValue().first();
+                maintenance.commit( entry.getKey(), writer, commitUserData( entry.getKey() ) );
+                writer.close( true );
             }
             catch ( IOException e )
             {
@@ -351,15 +461,15 @@ public class LuceneDataSource extends LogBackedXaDataSource
         @Override
         public void flushAll()
         {
-            for ( Map.Entry<IndexIdentifier, Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy>> entry : indexWriters.entrySet() )
+            for ( IndexIdentifier identifier : indexWriters.keySet() )
             {
                 try
                 {
-                    entry.getValue().first().commit();
+                    commitIndex( identifier );
                 }
                 catch ( IOException e )
                 {
-                    throw new RuntimeException( "unable to commit changes to " + entry.getKey(), e );
+                    throw new RuntimeException( "unable to commit changes to " + identifier, e );
                 }
             }
         }
@@ -383,24 +493,110 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
     
-    void getReadLock()
+    /**
+     * Commits the writer of the index, if it's open, between transactions.
+     */
+    void commitIndex( IndexIdentifier identifier ) throws IOException
+    {
+        getWriteLock( identifier );
+        try
+        {
+            Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy> writer = indexWriters.get( identifier );
+            if ( writer != null )
+            {
+                maintenance.commit( identifier, writer.first(), commitUserData( identifier ) );
+            }
+        }
+        finally
+        {
+            releaseWriteLock( identifier );
+        }
+    }
+    
+    private Map<String, String> commitUserData( IndexIdentifier identifier )
+    {
+        Long txId = appliedTxs.get( identifier );
+        return txId != null ? stringMap( LAST_APPLIED_TX, txId.toString() ) : null;
+    }
+    
+    /**
+     * Called while holding the write lock of the index, when a transaction
+     * has been applied to it.
+     */
+    void applied( IndexIdentifier identifier, long txId )
+    {
+        appliedTxs.put( identifier, txId );
+    }
+    
+    /**
+     * @return the id of the last transaction applied to the index, which
+     * for a recovered index is the last one committed to it, or -1 if it's
+     * not known.
+     */
+    long getAppliedTxId( IndexIdentifier identifier )
+    {
+        getIndexWriter( identifier );
+        Long txId = appliedTxs.get( identifier );
+        return txId != null ? txId : -1;
+    }
+    
+    IndexMaintenance getMaintenance()
     {
-        lock.readLock().lock();
+        return maintenance;
     }
     
-    void releaseReadLock()
+    IndexStatistics getStatistics()
     {
-        lock.readLock().unlock();
+        return statistics;
     }
     
-    void getWriteLock()
+    /**
+     * @return the number of documents in each index which has a searcher
+     * open, indexes which haven't been used aren't opened for this.
+     */
+    Map<IndexIdentifier, Integer> getDocumentCounts()
     {
-        lock.writeLock().lock();
+        Map<IndexIdentifier, Integer> result = new HashMap<IndexIdentifier, Integer>();
+        for ( IndexSearcherRef searcher : indexSearchers.values() )
+        {
+            if ( searcher.tryIncRef() )
+            {
+                try
+                {
+                    result.put( searcher.getIdentifier(), searcher.getSearcher().getIndexReader().numDocs() );
+                }
+                finally
+                {
+                    searcher.closeStrict();
+                }
+            }
+        }
+        return result;
     }
     
-    void releaseWriteLock()
+    void getWriteLock( IndexIdentifier identifier )
     {
-        lock.writeLock().unlock();
+        indexLock( identifier ).lock();
+    }
+    
+    void releaseWriteLock( IndexIdentifier identifier )
+    {
+        indexLock( identifier ).unlock();
+    }
+    
+    private ReentrantLock indexLock( IndexIdentifier identifier )
+    {
+        ReentrantLock lock = indexLocks.get( identifier );
+        if ( lock == null )
+        {
+            ReentrantLock newLock = new ReentrantLock();
+            lock = indexLocks.putIfAbsent( identifier, newLock );
+            if ( lock == null )
+            {
+                lock = newLock;
+            }
+        }
+        return lock;
     }
     
     /**
@@ -424,7 +620,6 @@ public class LuceneDataSource extends LogBackedXaDataSource
             if ( reopened != reader )
             {
                 IndexSearcher newSearcher = new IndexSearcher( reopened );
-                searcher.detachOrClose();
                 return new IndexSearcherRef( searcher.getIdentifier(), newSearcher );
             }
             return null;
@@ -471,8 +666,43 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return TopFieldCollector.create( sorting, n, false, true, false, true );
     }
     
-    synchronized IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    /**
+     * Returns a searcher over all transactions committed to the index. The
+     * searcher is a snapshot, transactions committed later don't affect it.
+     * Getting it doesn't wait for transactions committing to other indexes,
+     * and only waits for one committing to the same index when there are
+     * earlier commits that the current searcher doesn't see yet.
+     * 
+     * @param incRef whether or not to increment the reference count of the
+     * searcher, which then must be released with
+     * {@link IndexSearcherRef#close()}.
+     */
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    {
+        while ( true )
+        {
+            IndexSearcherRef searcher = indexSearchers.get( identifier );
+            if ( searcher == null || searcherIsStale( identifier ) )
+            {
+                searcher = refreshIndexSearcher( identifier );
+            }
+            if ( !incRef || searcher.tryIncRef() )
+            {
+                return searcher;
+            }
+            // replaced by a refreshed searcher after we got it, try again
+        }
+    }
+    
+    private boolean searcherIsStale( IndexIdentifier identifier )
+    {
+        Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy> writer = indexWriters.get( identifier );
+        return writer != null && writer.second().get();
+    }
+    
+    private IndexSearcherRef refreshIndexSearcher( IndexIdentifier identifier )
     {
+        getWriteLock( identifier );
         try
         {
             IndexSearcherRef searcher = indexSearchers.get( identifier );
@@ -489,23 +719,27 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy> writer = indexWriters.get( identifier );
                 if ( writer != null && writer.second().compareAndSet( true, false ) )
                 {
-                    searcher = refreshSearcher( searcher );
-                    if ( searcher != null )
+                    long start = System.nanoTime();
+                    IndexSearcherRef refreshed = refreshSearcher( searcher );
+                    if ( refreshed != null )
                     {
-                        indexSearchers.put( identifier, searcher );
+                        indexSearchers.put( identifier, refreshed );
+                        searcher.detachOrClose();
+                        searcher = refreshed;
+                        statistics.reopened( identifier, start );
                     }
                 }
             }
-            if ( incRef )
-            {
-                searcher.incRef();
-            }
             return searcher;
         }
         catch ( IOException e )
         {
             throw new RuntimeException( e );
         }
+        finally
+        {
+            releaseWriteLock( identifier );
+        }
     }
 
     XaTransaction createTransaction( int identifier,
@@ -514,18 +748,20 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return new LuceneTransaction( identifier, logicalLog, this );
     }
 
-    synchronized void invalidateIndexSearcher( IndexIdentifier identifier )
+    void invalidateIndexSearcher( IndexIdentifier identifier )
     {
         Triplet<IndexWriter, AtomicBoolean, SnapshotDeletionPolicy> writer = indexWriters.get( identifier );
         if ( writer != null )
         {
             writer.second().set( true );
         }
+        maintenance.changed( identifier );
     }
 
     void deleteIndex( IndexIdentifier identifier, boolean recovery )
     {
         closeWriter( identifier );
+        appliedTxs.remove( identifier );
         deleteFileOrDirectory( getFileDirectory( baseStorePath, identifier ) );
         invalidateCache( identifier );
         boolean removeFromIndexStore = !recovery || (recovery &&
@@ -535,6 +771,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
             indexStore.remove( identifier.entityType.getType(), identifier.indexName );
         }
         typeCache.invalidate( identifier );
+        statistics.deleted( identifier );
         synchronized ( indexes )
         {
             LuceneIndex<? extends PropertyContainer> index = indexes.remove( identifier );
@@ -545,7 +782,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
     
-    private static void deleteFileOrDirectory( File file )
+    static void deleteFileOrDirectory( File file )
     {
         if ( file.exists() )
         {
@@ -571,7 +808,14 @@ public class LuceneDataSource extends LogBackedXaDataSource
         try
         {
             Directory dir = getDirectory( baseStorePath, identifier );
-            directoryExists( dir );
+            if ( directoryExists( dir ) )
+            {
+                String txId = IndexReader.getCommitUserData( dir ).get( LAST_APPLIED_TX );
+                if ( txId != null )
+                {
+                    appliedTxs.put( identifier, Long.valueOf( txId ) );
+                }
+            }
             IndexType type = getType( identifier );
             SnapshotDeletionPolicy deletionPolicy = new MultipleBackupDeletionPolicy();
             IndexWriter indexWriter = new IndexWriter( dir, type.analyzer, deletionPolicy, MaxFieldLength.UNLIMITED );
@@ -581,11 +825,8 @@ public class LuceneDataSource extends LogBackedXaDataSource
             {
                 writer.first().setSimilarity( similarity );
             }
-            
-            // TODO We should tamper with this value and see how it affects the
-            // general performance. Lucene docs says rather <10 for mixed
-            // reads/writes 
-//            writer.setMergeFactor( 8 );
+            indexWriter.setMergeFactor( mergeFactor );
+            indexWriter.setMergeScheduler( maintenance.newMergeScheduler() );
             
             indexWriters.put( identifier, writer );
             return writer.first();
@@ -673,9 +914,44 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
-    LruCache<String,Collection<Long>> getFromCache( IndexIdentifier identifier, String key )
+    long[] getFromCache( IndexIdentifier identifier, String key, Object value )
     {
-        return caching.get( identifier, key );
+        long[] ids = caching.get( identifier, key, value.toString() );
+        statistics.cacheLookup( identifier, ids != null );
+        return ids;
+    }
+    
+    boolean shouldCache( IndexIdentifier identifier, String key, Object value )
+    {
+        return caching.shouldCache( identifier, key, value.toString() );
+    }
+    
+    /**
+     * Caches the ids found by an exact lookup with {@code searcher}, but only
+     * if no transaction has been committed to the index since the searcher
+     * was created. That's checked under the index lock, without waiting for
+     * it, so that a commit can't slip in between the check and the put. A
+     * transaction which commits later invalidates the entry itself.
+     */
+    void cacheIfCurrent( IndexIdentifier identifier, String key, Object value, long[] ids,
+            IndexSearcherRef searcher )
+    {
+        ReentrantLock lock = indexLock( identifier );
+        if ( !lock.tryLock() )
+        {
+            return;
+        }
+        try
+        {
+            if ( indexSearchers.get( identifier ) == searcher && !searcherIsStale( identifier ) )
+            {
+                caching.put( identifier, key, value.toString(), ids );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     void setCacheCapacity( IndexIdentifier identifier, String key, int maxNumberOfCachedEntries )
@@ -685,16 +961,24 @@ public class LuceneDataSource extends LogBackedXaDataSource
     
     Integer getCacheCapacity( IndexIdentifier identifier, String key )
     {
-        LruCache<String, Collection<Long>> cache = this.caching.get( identifier, key );
-        return cache != null ? cache.maxSize() : null;
+        return this.caching.getCapacity( identifier, key );
     }
     
+    /**
+     * Invalidates the cached lookup of {@code value} for {@code key}. A
+     * {@code null} value invalidates all values of the key, and a
+     * {@code null} key all lookups in the index, as used when all values
+     * of a key, or all keys, are removed from an entity.
+     */
     void invalidateCache( IndexIdentifier identifier, String key, Object value )
     {
-        LruCache<String,Collection<Long>> cache = caching.get( identifier, key );
-        if ( cache != null )
+        if ( key != null && value != null )
+        {
+            caching.invalidate( identifier, key, value.toString() );
+        }
+        else
         {
-            cache.remove( value.toString() );
+            caching.invalidate( identifier, key );
         }
     }
     
@@ -23,7 +23,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.lucene.document.Document;
@@ -31,6 +34,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.MultiSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.Sort;
@@ -40,16 +44,19 @@ import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.index.lucene.IndexedRelationship;
+import org.neo4j.index.lucene.LuceneIdIndex;
+import org.neo4j.index.lucene.LuceneRelationshipIndex;
 import org.neo4j.index.lucene.QueryContext;
-import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
 import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
 
-public abstract class LuceneIndex<T extends PropertyContainer> implements Index<T>
+public abstract class LuceneIndex<T extends PropertyContainer> implements LuceneIdIndex<T>
 {
     static final String KEY_DOC_ID = "_id_";
     static final String KEY_START_NODE_ID = "_start_node_id_";
     static final String KEY_END_NODE_ID = "_end_node_id_";
+    static final String KEY_TYPE = "_type_";
     
     final LuceneIndexImplementation service;
     private IndexIdentifier identifier;
@@ -173,6 +180,7 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
     
     public IndexHits<T> get( String key, Object value )
     {
+        value = type.correctValue( value );
         return query( type.get( key, value ), key, value, null );
     }
 
@@ -207,9 +215,47 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return query( null, queryOrQueryObject );
     }
     
+    public IndexHits<Long> getIds( String key, Object value )
+    {
+        value = type.correctValue( value );
+        return ids( type.get( key, value ), key, value, null );
+    }
+    
+    public IndexHits<Long> queryIds( String key, Object queryOrQueryObject )
+    {
+        QueryContext context = queryOrQueryObject instanceof QueryContext ?
+                (QueryContext) queryOrQueryObject : null;
+        return ids( type.query( key, context != null ?
+                context.getQueryOrQueryObject() : queryOrQueryObject, context ), null, null, context );
+    }
+    
     protected IndexHits<T> query( Query query, String keyForDirectLookup,
             Object valueForDirectLookup, QueryContext additionalParametersOrNull )
     {
+        return new IdToEntityIterator<T>( ids( query, keyForDirectLookup, valueForDirectLookup,
+                additionalParametersOrNull ) )
+        {
+            @Override
+            protected T underlyingObjectToObject( Long id )
+            {
+                return getById( id );
+            }
+            
+            protected void itemDodged( Long item )
+            {
+                abandonedIds.add( item );
+            }
+        };
+    }
+    
+    /**
+     * @return the ids of the entities matching {@code query}, including the
+     * changes of the current transaction.
+     */
+    private IndexHits<Long> ids( Query query, String keyForDirectLookup,
+            Object valueForDirectLookup, QueryContext additionalParametersOrNull )
+    {
+        long start = System.nanoTime();
         List<Long> ids = new ArrayList<Long>();
         LuceneXaConnection con = getReadOnlyConnection();
         LuceneTransaction luceneTx = con != null ? con.getLuceneTx() : null;
@@ -229,28 +275,66 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
                     luceneTx.getRemovedIds( this, keyForDirectLookup, valueForDirectLookup ) :
                     luceneTx.getRemovedIds( this, query );
         }
-        service.dataSource().getReadLock();
         IndexHits<Long> idIterator = null;
-        IndexSearcherRef searcher = null;
-        try
+        // The searcher is a snapshot of the index, so no lock is needed to
+        // keep commits from changing it while the hits are read. The
+        // DocToIdIterator releases it when it's done.
+        IndexSearcherRef searcher = service.dataSource().getIndexSearcher( identifier, true );
+        if ( searcher != null )
         {
-            searcher = service.dataSource().getIndexSearcher( identifier, true );
-            if ( searcher != null )
+            long[] cachedIds = keyForDirectLookup != null ? service.dataSource().getFromCache(
+                    identifier, keyForDirectLookup, valueForDirectLookup ) : null;
+            if ( cachedIds != null )
             {
-                boolean foundInCache = false;
-                LruCache<String, Collection<Long>> cachedIdsMap = null;
-                if ( keyForDirectLookup != null )
+                searcher.closeStrict();
+                for ( long id : cachedIds )
                 {
-                    cachedIdsMap = service.dataSource().getFromCache(
-                            identifier, keyForDirectLookup );
-                    foundInCache = fillFromCache( cachedIdsMap, ids,
-                            keyForDirectLookup, valueForDirectLookup.toString(), removedIds );
+                    if ( !removedIds.contains( id ) )
+                    {
+                        ids.add( id );
+                    }
+                }
+            }
+            else
+            {
+                IndexHits<Long> searchedIds = additionsSearcher == null &&
+                        StreamingIdIterator.canStream( additionalParametersOrNull ) ?
+                        new StreamingIdIterator( searcher, query, removedIds ) :
+                        new DocToIdIterator( search( searcher, query, additionalParametersOrNull,
+                                additionsSearcher, removedIds ), removedIds, searcher );
+                if ( keyForDirectLookup != null && removedIds.isEmpty() &&
+                        service.dataSource().shouldCache( identifier, keyForDirectLookup, valueForDirectLookup ) )
+                {
+                    // Nothing is left out of the hits by this transaction,
+                    // so they are what's committed and can be cached, unless
+                    // there are too many of them. Reading one more than that
+                    // is enough to tell, without counting them all.
+                    List<Long> firstIds = new ArrayList<Long>();
+                    while ( firstIds.size() <= Cache.MAX_IDS_PER_ENTRY && searchedIds.hasNext() )
+                    {
+                        firstIds.add( searchedIds.next() );
+                    }
+                    if ( !searchedIds.hasNext() )
+                    {
+                        searchedIds.close();
+                        if ( firstIds.size() <= Cache.MAX_IDS_PER_ENTRY )
+                        {
+                            service.dataSource().cacheIfCurrent( identifier, keyForDirectLookup,
+                                    valueForDirectLookup, toArray( firstIds ), searcher );
+                        }
+                        firstIds.addAll( ids );
+                        ids = firstIds;
+                        searchedIds = null;
+                    }
+                    else
+                    {
+                        searchedIds = new PrefixedIdHits( firstIds, searchedIds );
+                    }
                 }
                 
-                if ( !foundInCache )
+                // Unless all of them have been read into ids already
+                if ( searchedIds != null )
                 {
-                    DocToIdIterator searchedIds = new DocToIdIterator( search( searcher,
-                            query, additionalParametersOrNull, additionsSearcher, removedIds ), removedIds, searcher );
                     if ( ids.isEmpty() )
                     {
                         idIterator = searchedIds;
@@ -265,55 +349,67 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
                 }
             }
         }
-        finally
-        {
-            // The DocToIdIterator closes the IndexSearchRef instance anyways,
-            // or the LazyIterator if it's a lazy one. So no need here.
-            service.dataSource().releaseReadLock();
-        }
 
         idIterator = idIterator == null ? new ConstantScoreIterator<Long>( ids, 0 ) : idIterator;
-        return new IdToEntityIterator<T>( idIterator )
+        return service.dataSource().getStatistics().timed( identifier, keyForDirectLookup != null,
+                keyForDirectLookup != null ? keyForDirectLookup + "=" + valueForDirectLookup : query, start,
+                idIterator );
+    }
+    
+    private static long[] toArray( List<Long> ids )
+    {
+        long[] result = new long[ids.size()];
+        for ( int i = 0; i < result.length; i++ )
         {
-            @Override
-            protected T underlyingObjectToObject( Long id )
-            {
-                return getById( id );
-            }
-            
-            protected void itemDodged( Long item )
-            {
-                abandonedIds.add( item );
-            }
-        };
+            result[i] = ids.get( i );
+        }
+        return result;
     }
     
-    private boolean fillFromCache(
-            LruCache<String, Collection<Long>> cachedNodesMap,
-            List<Long> ids, String key, String valueAsString,
-            Collection<Long> deletedNodes )
+    /**
+     * Hits which have had their first ids read already, returning those
+     * before the rest of the hits. The size is that of the hits, which
+     * includes the ids read already.
+     */
+    private static class PrefixedIdHits extends AbstractIndexHits<Long>
     {
-        boolean found = false;
-        if ( cachedNodesMap != null )
+        private final Iterator<Long> first;
+        private final IndexHits<Long> rest;
+        
+        PrefixedIdHits( List<Long> first, IndexHits<Long> rest )
+        {
+            this.first = first.iterator();
+            this.rest = rest;
+        }
+        
+        @Override
+        protected Long fetchNextOrNull()
         {
-            Collection<Long> cachedNodes = cachedNodesMap.get( valueAsString );
-            if ( cachedNodes != null )
+            if ( first.hasNext() )
             {
-                found = true;
-                for ( Long cachedNodeId : cachedNodes )
-                {
-                    if ( deletedNodes == null ||
-                            !deletedNodes.contains( cachedNodeId ) )
-                    {
-                        ids.add( cachedNodeId );
-                    }
-                }
+                return first.next();
             }
+            return rest.hasNext() ? rest.next() : null;
+        }
+        
+        public int size()
+        {
+            return rest.size();
+        }
+        
+        public float currentScore()
+        {
+            return rest.currentScore();
+        }
+        
+        @Override
+        public void close()
+        {
+            rest.close();
         }
-        return found;
     }
     
-    private IndexHits<Document> search( IndexSearcherRef searcherRef, Query query,
+    IndexHits<Document> search( IndexSearcherRef searcherRef, Query query,
             QueryContext additionalParametersOrNull, Searcher additionsSearcher, Collection<Long> removed )
     {
         try
@@ -326,16 +422,23 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             Searcher searcher = additionsSearcher == null ? searcherRef.getSearcher() :
                     new MultiSearcher( searcherRef.getSearcher(), additionsSearcher );
             IndexHits<Document> result = null;
-            if ( additionalParametersOrNull != null && additionalParametersOrNull.getTop() > 0 )
+            Sort sorting = additionalParametersOrNull != null ?
+                    additionalParametersOrNull.getSorting() : null;
+            if ( additionsSearcher == null && NumericRangeIterator.canIterate( query, sorting ) )
+            {
+                result = new NumericRangeIterator( searcherRef.getSearcher(),
+                        (NumericRangeQuery<?>) query, additionalParametersOrNull.getTop() );
+            }
+            else if ( additionalParametersOrNull != null && additionalParametersOrNull.getTop() > 0 )
             {
                 result = new TopDocsIterator( query, additionalParametersOrNull, searcher );
             }
             else
             {
-                Sort sorting = additionalParametersOrNull != null ?
-                        additionalParametersOrNull.getSorting() : null;
-                boolean forceScore = additionalParametersOrNull == null ||
-                        !additionalParametersOrNull.getTradeCorrectnessForSpeed();
+                // Numeric ranges are constant score, so scoring them is wasted
+                boolean forceScore = (additionalParametersOrNull == null ||
+                        !additionalParametersOrNull.getTradeCorrectnessForSpeed()) &&
+                        !(query instanceof NumericRangeQuery);
                 Hits hits = new Hits( searcher, query, null, sorting, forceScore );
                 result = new HitsIterator( hits );
             }
@@ -426,7 +529,7 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
     }
     
     static class RelationshipIndex extends LuceneIndex<Relationship>
-            implements org.neo4j.graphdb.index.RelationshipIndex
+            implements LuceneRelationshipIndex
     {
         RelationshipIndex( LuceneIndexImplementation service,
                 IndexIdentifier identifier )
@@ -453,6 +556,42 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
 
         public IndexHits<Relationship> get( String key, Object valueOrNull, Node startNodeOrNull,
                 Node endNodeOrNull )
+        {
+            return query( exactQuery( key, valueOrNull, startNodeOrNull, endNodeOrNull ),
+                    (String) null, null, null );
+        }
+
+        public IndexHits<Relationship> query( String key, Object queryOrQueryObjectOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            QueryContext context = context( queryOrQueryObjectOrNull );
+            return query( parsedQuery( key, queryOrQueryObjectOrNull, context, startNodeOrNull,
+                    endNodeOrNull ), (String) null, null, context );
+        }
+        
+        public IndexHits<IndexedRelationship> getIndexed( String key, Object valueOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            return indexed( exactQuery( key, valueOrNull, startNodeOrNull, endNodeOrNull ), null );
+        }
+        
+        public IndexHits<IndexedRelationship> queryIndexed( String key, Object queryOrQueryObjectOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            QueryContext context = context( queryOrQueryObjectOrNull );
+            return indexed( parsedQuery( key, queryOrQueryObjectOrNull, context, startNodeOrNull,
+                    endNodeOrNull ), context );
+        }
+        
+        private static QueryContext context( Object queryOrQueryObjectOrNull )
+        {
+            return queryOrQueryObjectOrNull != null &&
+                    queryOrQueryObjectOrNull instanceof QueryContext ?
+                            (QueryContext) queryOrQueryObjectOrNull : null;
+        }
+        
+        private Query exactQuery( String key, Object valueOrNull, Node startNodeOrNull,
+                Node endNodeOrNull )
         {
             BooleanQuery query = new BooleanQuery();
             if ( key != null && valueOrNull != null )
@@ -461,16 +600,12 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             }
             addIfNotNull( query, startNodeOrNull, KEY_START_NODE_ID );
             addIfNotNull( query, endNodeOrNull, KEY_END_NODE_ID );
-            return query( query, (String) null, null, null );
+            return query;
         }
-
-        public IndexHits<Relationship> query( String key, Object queryOrQueryObjectOrNull,
+        
+        private Query parsedQuery( String key, Object queryOrQueryObjectOrNull, QueryContext context,
                 Node startNodeOrNull, Node endNodeOrNull )
         {
-            QueryContext context = queryOrQueryObjectOrNull != null &&
-                    queryOrQueryObjectOrNull instanceof QueryContext ?
-                            (QueryContext) queryOrQueryObjectOrNull : null;
-                    
             BooleanQuery query = new BooleanQuery();
             if ( (context != null && context.getQueryOrQueryObject() != null) ||
                     (context == null && queryOrQueryObjectOrNull != null ) )
@@ -480,7 +615,50 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             }
             addIfNotNull( query, startNodeOrNull, KEY_START_NODE_ID );
             addIfNotNull( query, endNodeOrNull, KEY_END_NODE_ID );
-            return query( query, (String) null, null, context );
+            return query;
+        }
+        
+        /**
+         * Reads the relationships from the stored fields of the documents,
+         * so that the relationship store isn't touched. Sorting and top hits
+         * are done by the search.
+         */
+        private IndexHits<IndexedRelationship> indexed( Query query, QueryContext context )
+        {
+            long start = System.nanoTime();
+            LuceneXaConnection con = getReadOnlyConnection();
+            LuceneTransaction luceneTx = con != null ? con.getLuceneTx() : null;
+            Collection<Long> removedIds = Collections.emptySet();
+            Searcher additionsSearcher = null;
+            if ( luceneTx != null )
+            {
+                additionsSearcher = luceneTx.getAdditionsAsSearcher( this, context );
+                removedIds = luceneTx.getRemovedIds( this, query );
+            }
+            IndexSearcherRef searcher = service.dataSource().getIndexSearcher( getIdentifier(), true );
+            if ( searcher == null )
+            {
+                return new ConstantScoreIterator<IndexedRelationship>(
+                        Collections.<IndexedRelationship>emptyList(), 0 );
+            }
+            IndexHits<IndexedRelationship> hits = new DocToObjectIterator<IndexedRelationship>(
+                    search( searcher, query, context, additionsSearcher, removedIds ), removedIds, searcher )
+            {
+                // A relationship added in this transaction may be committed as well
+                private final Set<Long> alreadyReturned = new HashSet<Long>();
+                
+                @Override
+                protected IndexedRelationship convert( Document doc, long id )
+                {
+                    if ( !alreadyReturned.add( id ) )
+                    {
+                        return null;
+                    }
+                    return new IndexedRelationship( id, Long.parseLong( doc.get( KEY_START_NODE_ID ) ),
+                            Long.parseLong( doc.get( KEY_END_NODE_ID ) ), doc.get( KEY_TYPE ) );
+                }
+            };
+            return service.dataSource().getStatistics().timed( getIdentifier(), false, query, start, hits );
         }
         
         private static void addIfNotNull( BooleanQuery query, Node nodeOrNull, String field )
@@ -47,6 +47,15 @@ public class LuceneIndexImplementation extends IndexImplementation
             Collections.unmodifiableMap( MapUtil.stringMap(
                     KEY_PROVIDER, SERVICE_NAME, KEY_TYPE, "exact" ) );
 
+    /**
+     * Values are indexed as doubles only, without a string representation,
+     * for indexes which are only queried for exact numbers and numeric ranges,
+     * see {@link org.neo4j.index.lucene.QueryContext#numericRange(String, Number, Number)}.
+     */
+    public static final Map<String, String> NUMERIC_CONFIG =
+            Collections.unmodifiableMap( MapUtil.stringMap(
+                    KEY_PROVIDER, SERVICE_NAME, KEY_TYPE, "numeric" ) );
+
     public static final Map<String, String> FULLTEXT_CONFIG =
             Collections.unmodifiableMap( MapUtil.stringMap(
                     KEY_PROVIDER, SERVICE_NAME, KEY_TYPE, "fulltext",
@@ -126,6 +135,11 @@ public class LuceneIndexImplementation extends IndexImplementation
 
     @Override
     public Map<String, String> fillInDefaults( Map<String, String> source )
+    {
+        return withDefaults( source );
+    }
+
+    static Map<String, String> withDefaults( Map<String, String> source )
     {
         Map<String, String> result = source != null ?
                 new HashMap<String, String>( source ) : new HashMap<String, String>();
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.index.lucene.LuceneIndexMaintenance;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class LuceneIndexMaintenanceBean extends ManagementBeanProvider
+{
+    public LuceneIndexMaintenanceBean()
+    {
+        super( LuceneIndexMaintenance.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new LuceneIndexMaintenanceImpl( management );
+    }
+
+    private static class LuceneIndexMaintenanceImpl extends Neo4jMBean implements LuceneIndexMaintenance
+    {
+        private final XaDataSourceManager dataSources;
+
+        LuceneIndexMaintenanceImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.dataSources = management.getKernelData().getConfig().getTxModule().getXaDataSourceManager();
+        }
+
+        /**
+         * The lucene data source is registered when the first index is
+         * used, which may be after this bean has been created.
+         */
+        private IndexMaintenance maintenance()
+        {
+            LuceneDataSource dataSource = (LuceneDataSource) dataSources.getXaDataSource(
+                    LuceneDataSource.DEFAULT_NAME );
+            return dataSource != null ? dataSource.getMaintenance() : null;
+        }
+
+        public long getCommitInterval()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getCommitInterval() : 0;
+        }
+
+        public int getMergeThreads()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getMergeThreads() : 0;
+        }
+
+        public long getCommitCount()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getCommitCount() : 0;
+        }
+
+        public long getCommitTime()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getCommitTime() : 0;
+        }
+
+        public long getLastCommitTime()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getLastCommitTime() : 0;
+        }
+
+        public int getUncommittedIndexCount()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getUncommittedIndexCount() : 0;
+        }
+
+        public long getMergeCount()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getMergeCount() : 0;
+        }
+
+        public long getMergeTime()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getMergeTime() : 0;
+        }
+
+        public long getLastMergeTime()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getLastMergeTime() : 0;
+        }
+
+        public int getRunningMerges()
+        {
+            IndexMaintenance maintenance = maintenance();
+            return maintenance != null ? maintenance.getRunningMerges() : 0;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.FSDirectory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyIndexData;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeData;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
+import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+
+/**
+ * Builds a new lucene index from properties which nodes or relationships
+ * already have, f.ex. to index existing data under a new index.
+ * <p>
+ * Instead of adding each entity through transactions, the node or
+ * relationship store and the property store are read directly, by several
+ * threads in parallel, and the documents are written straight to a new
+ * index on the side. When done the index is moved into place and created,
+ * so it's either there with all its entities or not at all.
+ * <p>
+ * The database stays online while populating. Entities created, changed or
+ * deleted while populating may or may not be reflected in the index, just as
+ * with any index which is populated by the application. The index must not
+ * exist, and must not be created by anyone else, while it's populated.
+ * Use {@link #throttle(long)} to leave room for other work.
+ * <pre>
+ * Index&lt;Node&gt; names = new LuceneIndexPopulator( graphDb ).threads( 4 )
+ *         .populateNodeIndex( "names", LuceneIndexImplementation.EXACT_CONFIG, "name" );
+ * </pre>
+ */
+public class LuceneIndexPopulator
+{
+    private static final int CHUNK_SIZE = 10000;
+    
+    private final AbstractGraphDatabase graphDb;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long maxRecordsPerSecond;
+    
+    public LuceneIndexPopulator( GraphDatabaseService graphDb )
+    {
+        this.graphDb = (AbstractGraphDatabase) graphDb;
+    }
+    
+    /**
+     * @param threads the number of threads which reads the stores and
+     * creates documents, by default the number of available processors.
+     * @return this populator.
+     */
+    public LuceneIndexPopulator threads( int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of threads " + threads );
+        }
+        this.threads = threads;
+        return this;
+    }
+    
+    /**
+     * @param maxRecordsPerSecond the maximum number of node or relationship
+     * records to read per second, all threads together. 0, the default,
+     * means as fast as possible.
+     * @return this populator.
+     */
+    public LuceneIndexPopulator throttle( long maxRecordsPerSecond )
+    {
+        this.maxRecordsPerSecond = maxRecordsPerSecond;
+        return this;
+    }
+    
+    /**
+     * Creates a node index with the given configuration and populates it
+     * with the values which nodes have for the given property keys.
+     * 
+     * @param indexName the name of the index, which must not exist.
+     * @param config the configuration of the index, as for
+     * {@link org.neo4j.graphdb.index.IndexManager#forNodes(String, Map)}.
+     * @param keys the property keys to index.
+     * @return the populated index.
+     */
+    public Index<Node> populateNodeIndex( String indexName, Map<String, String> config, String... keys )
+    {
+        if ( graphDb.index().existsForNodes( indexName ) )
+        {
+            throw new IllegalArgumentException( "Node index '" + indexName + "' already exists" );
+        }
+        config = luceneConfig( config );
+        LuceneDataSource dataSource = luceneDataSource();
+        final NeoStore neoStore = neoStore();
+        populate( new IndexIdentifier( LuceneCommand.NODE, dataSource.nodeEntityType, indexName ),
+                config, keys, neoStore.getNodeStore().getHighId(), new Entities()
+        {
+            @Override
+            Pair<Object, Long> load( long id )
+            {
+                NodeRecord record = neoStore.getNodeStore().getLightNode( id );
+                return record != null ? Pair.<Object, Long>of( id, record.getNextProp() ) : null;
+            }
+        } );
+        return graphDb.index().forNodes( indexName, config );
+    }
+    
+    /**
+     * Creates a relationship index with the given configuration and
+     * populates it with the values which relationships have for the given
+     * property keys.
+     * 
+     * @param indexName the name of the index, which must not exist.
+     * @param config the configuration of the index, as for
+     * {@link org.neo4j.graphdb.index.IndexManager#forRelationships(String, Map)}.
+     * @param keys the property keys to index.
+     * @return the populated index.
+     */
+    public RelationshipIndex populateRelationshipIndex( String indexName, Map<String, String> config,
+            String... keys )
+    {
+        if ( graphDb.index().existsForRelationships( indexName ) )
+        {
+            throw new IllegalArgumentException( "Relationship index '" + indexName + "' already exists" );
+        }
+        config = luceneConfig( config );
+        LuceneDataSource dataSource = luceneDataSource();
+        final NeoStore neoStore = neoStore();
+        final Map<Integer, String> types = new HashMap<Integer, String>();
+        for ( RelationshipTypeData type : neoStore.getRelationshipTypeStore().getRelationshipTypes() )
+        {
+            types.put( type.getId(), type.getName() );
+        }
+        populate( new IndexIdentifier( LuceneCommand.RELATIONSHIP, dataSource.relationshipEntityType, indexName ),
+                config, keys, neoStore.getRelationshipStore().getHighId(), new Entities()
+        {
+            @Override
+            Pair<Object, Long> load( long id )
+            {
+                RelationshipRecord record = neoStore.getRelationshipStore().getLightRel( id );
+                return record != null && record.inUse() ? Pair.<Object, Long>of(
+                        new RelationshipId( id, record.getFirstNode(), record.getSecondNode(),
+                                types.get( record.getType() ) ),
+                        record.getNextProp() ) : null;
+            }
+        } );
+        return graphDb.index().forRelationships( indexName, config );
+    }
+    
+    private Map<String, String> luceneConfig( Map<String, String> config )
+    {
+        Map<String, String> result = new HashMap<String, String>( config );
+        result.put( LuceneIndexImplementation.KEY_PROVIDER, LuceneIndexImplementation.SERVICE_NAME );
+        return LuceneIndexImplementation.withDefaults( result );
+    }
+    
+    private LuceneDataSource luceneDataSource()
+    {
+        LuceneDataSource dataSource = (LuceneDataSource) dataSources().getXaDataSource(
+                LuceneDataSource.DEFAULT_NAME );
+        if ( dataSource == null )
+        {
+            throw new IllegalStateException( "No lucene index provider in " + graphDb );
+        }
+        return dataSource;
+    }
+    
+    private NeoStore neoStore()
+    {
+        return ((NeoStoreXaDataSource) dataSources().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME )).getNeoStore();
+    }
+    
+    private XaDataSourceManager dataSources()
+    {
+        return graphDb.getConfig().getTxModule().getXaDataSourceManager();
+    }
+    
+    private void populate( IndexIdentifier identifier, Map<String, String> config, String[] keys,
+            long highId, Entities entities )
+    {
+        IndexType type = IndexType.getIndexType( identifier, config );
+        String baseStorePath = LuceneDataSource.getStoreDir( graphDb.getStoreDir() ).first();
+        File target = LuceneDataSource.getFileDirectory( baseStorePath, identifier );
+        File building = LuceneDataSource.getFileDirectory(
+                baseStorePath + File.separator + "populating", identifier );
+        // Left overs from a deleted index, or an earlier population which failed
+        LuceneDataSource.deleteFileOrDirectory( target );
+        LuceneDataSource.deleteFileOrDirectory( building );
+        
+        try
+        {
+            IndexWriter writer = newWriter( building, type );
+            try
+            {
+                new Population( identifier, type, writer, keyIds( keys ), highId, entities ).run();
+                writer.commit();
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            LuceneDataSource.deleteFileOrDirectory( building );
+            throw new RuntimeException( "Unable to populate " + identifier, e );
+        }
+        catch ( RuntimeException e )
+        {
+            LuceneDataSource.deleteFileOrDirectory( building );
+            throw e;
+        }
+        
+        target.getParentFile().mkdirs();
+        if ( !building.renameTo( target ) )
+        {
+            LuceneDataSource.deleteFileOrDirectory( building );
+            throw new RuntimeException( "Unable to move populated index " + building + " to " + target );
+        }
+    }
+    
+    private IndexWriter newWriter( File directory, IndexType type ) throws IOException
+    {
+        IndexWriter writer = new IndexWriter( FSDirectory.open( directory ), type.analyzer, true,
+                MaxFieldLength.UNLIMITED );
+        writer.setRAMBufferSizeMB( Math.max( writer.getRAMBufferSizeMB(),
+                Runtime.getRuntime().maxMemory() / (1024 * 1024 * 14) ) );
+        Similarity similarity = type.getSimilarity();
+        if ( similarity != null )
+        {
+            writer.setSimilarity( similarity );
+        }
+        return writer;
+    }
+    
+    /**
+     * @return the names of the given property keys by their ids. A name may
+     * have more than one id.
+     */
+    private Map<Integer, String> keyIds( String[] keys )
+    {
+        Set<String> names = new HashSet<String>();
+        for ( String key : keys )
+        {
+            names.add( key );
+        }
+        Map<Integer, String> result = new HashMap<Integer, String>();
+        for ( PropertyIndexData key : neoStore().getPropertyStore().getIndexStore().getPropertyIndexes(
+                Integer.MAX_VALUE ) )
+        {
+            if ( names.contains( key.getValue() ) )
+            {
+                result.put( key.getKeyId(), key.getValue() );
+            }
+        }
+        return result;
+    }
+    
+    private static abstract class Entities
+    {
+        /**
+         * @return the id to create a document for and the id of the first
+         * property record of the entity, or {@code null} if it isn't in use.
+         */
+        abstract Pair<Object, Long> load( long id );
+    }
+    
+    /**
+     * The records are read in chunks of {@link #CHUNK_SIZE} ids, which the
+     * threads take turns to grab, so that each thread reads a consecutive
+     * part of the store at a time.
+     */
+    private class Population
+    {
+        private final IndexIdentifier identifier;
+        private final IndexType type;
+        private final IndexWriter writer;
+        private final Map<Integer, String> keys;
+        private final long highId;
+        private final Entities entities;
+        private final PropertyStore propertyStore;
+        private final AtomicLong nextChunk = new AtomicLong();
+        private final AtomicLong readRecords = new AtomicLong();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private long startTime;
+        
+        Population( IndexIdentifier identifier, IndexType type, IndexWriter writer,
+                Map<Integer, String> keys, long highId, Entities entities )
+        {
+            this.identifier = identifier;
+            this.type = type;
+            this.writer = writer;
+            this.keys = keys;
+            this.highId = highId;
+            this.entities = entities;
+            this.propertyStore = neoStore().getPropertyStore();
+        }
+        
+        void run() throws IOException
+        {
+            if ( keys.isEmpty() )
+            {
+                return;
+            }
+            startTime = System.currentTimeMillis();
+            Thread[] workers = new Thread[threads];
+            for ( int i = 0; i < workers.length; i++ )
+            {
+                workers[i] = new Thread( "Index population " + identifier + "-" + (i + 1) )
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            populateChunks();
+                        }
+                        catch ( Throwable t )
+                        {
+                            failure.compareAndSet( null, t );
+                        }
+                    }
+                };
+                workers[i].start();
+            }
+            for ( Thread worker : workers )
+            {
+                try
+                {
+                    worker.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    failure.compareAndSet( null, e );
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Throwable t = failure.get();
+            if ( t instanceof IOException )
+            {
+                throw (IOException) t;
+            }
+            else if ( t != null )
+            {
+                throw new RuntimeException( t );
+            }
+        }
+        
+        private void populateChunks() throws IOException, InterruptedException
+        {
+            for ( long start = nextChunk.getAndAdd( CHUNK_SIZE ); start < highId && failure.get() == null;
+                    start = nextChunk.getAndAdd( CHUNK_SIZE ) )
+            {
+                long end = Math.min( start + CHUNK_SIZE, highId );
+                for ( long id = start; id < end; id++ )
+                {
+                    Document document = document( id );
+                    if ( document != null )
+                    {
+                        writer.addDocument( document );
+                    }
+                }
+                throttle( end - start );
+            }
+        }
+        
+        private Document document( long id )
+        {
+            try
+            {
+                Pair<Object, Long> entity = entities.load( id );
+                if ( entity == null )
+                {
+                    return null;
+                }
+                Document document = null;
+                long nextProp = entity.other();
+                while ( nextProp != Record.NO_NEXT_PROPERTY.intValue() )
+                {
+                    PropertyRecord record = propertyStore.getLightRecord( nextProp );
+                    String key = keys.get( record.getKeyIndexId() );
+                    if ( key != null )
+                    {
+                        propertyStore.makeHeavy( record );
+                        if ( document == null )
+                        {
+                            document = identifier.entityType.newDocument( entity.first() );
+                        }
+                        for ( Object value : IoPrimitiveUtils.asArray( propertyStore.getValue( record ) ) )
+                        {
+                            type.addToDocument( document, key, type.correctValue( value ) );
+                        }
+                    }
+                    nextProp = record.getNextProp();
+                }
+                return document;
+            }
+            catch ( InvalidRecordException e )
+            {
+                // Deleted while we were reading it
+                return null;
+            }
+        }
+        
+        /**
+         * Sleeps for as long as the records read so far are ahead of
+         * {@link LuceneIndexPopulator#maxRecordsPerSecond}.
+         */
+        private void throttle( long records ) throws InterruptedException
+        {
+            long read = readRecords.addAndGet( records );
+            if ( maxRecordsPerSecond <= 0 )
+            {
+                return;
+            }
+            long ahead = read * 1000 / maxRecordsPerSecond - (System.currentTimeMillis() - startTime);
+            if ( ahead > 0 )
+            {
+                Thread.sleep( ahead );
+            }
+        }
+    }
+}
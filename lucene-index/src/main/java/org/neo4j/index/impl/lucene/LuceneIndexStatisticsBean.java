@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.index.lucene.LuceneIndexStatistics;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class LuceneIndexStatisticsBean extends ManagementBeanProvider
+{
+    public LuceneIndexStatisticsBean()
+    {
+        super( LuceneIndexStatistics.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new LuceneIndexStatisticsImpl( management );
+    }
+
+    private static class LuceneIndexStatisticsImpl extends Neo4jMBean implements LuceneIndexStatistics
+    {
+        private final XaDataSourceManager dataSources;
+
+        LuceneIndexStatisticsImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.dataSources = management.getKernelData().getConfig().getTxModule().getXaDataSourceManager();
+        }
+
+        /**
+         * The lucene data source is registered when the first index is
+         * used, which may be after this bean has been created.
+         */
+        private LuceneDataSource dataSource()
+        {
+            return (LuceneDataSource) dataSources.getXaDataSource( LuceneDataSource.DEFAULT_NAME );
+        }
+
+        public String[] getIndexStatistics()
+        {
+            LuceneDataSource dataSource = dataSource();
+            return dataSource != null ?
+                    dataSource.getStatistics().summarize( dataSource.getDocumentCounts() ) : new String[0];
+        }
+
+        public long getSlowQueryThreshold()
+        {
+            LuceneDataSource dataSource = dataSource();
+            return dataSource != null ? dataSource.getStatistics().getSlowQueryThreshold() : 0;
+        }
+
+        public void setSlowQueryThreshold( long millis )
+        {
+            LuceneDataSource dataSource = dataSource();
+            if ( dataSource != null )
+            {
+                dataSource.getStatistics().setSlowQueryThreshold( millis );
+            }
+        }
+
+        public String[] getSlowQueries()
+        {
+            LuceneDataSource dataSource = dataSource();
+            return dataSource != null ? dataSource.getStatistics().getSlowQueries() : new String[0];
+        }
+    }
+}
@@ -28,7 +28,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Searcher;
 import org.neo4j.graphdb.Node;
@@ -39,7 +41,6 @@ import org.neo4j.index.impl.lucene.LuceneCommand.CreateIndexCommand;
 import org.neo4j.index.impl.lucene.LuceneCommand.DeleteCommand;
 import org.neo4j.index.impl.lucene.LuceneCommand.RemoveCommand;
 import org.neo4j.index.lucene.QueryContext;
-import org.neo4j.index.lucene.ValueContext;
 import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
@@ -63,7 +64,7 @@ class LuceneTransaction extends XaTransaction
     <T extends PropertyContainer> void add( LuceneIndex<T> index, T entity,
             String key, Object value )
     {
-        value = value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
+        value = index.type.correctValue( value );
         TxDataBoth data = getTxData( index, true );
         insert( index, entity, key, value, data.added( true ), data.removed( false ) );
         queueCommand( index.newAddCommand( entity, key, value ) );
@@ -91,7 +92,7 @@ class LuceneTransaction extends XaTransaction
     <T extends PropertyContainer> void remove( LuceneIndex<T> index, T entity,
             String key, Object value )
     {
-        value = value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
+        value = index.type.correctValue( value );
         TxDataBoth data = getTxData( index, true );
         insert( index, entity, key, value, data.removed( true ), data.added( false ) );
         queueCommand( index.newRemoveCommand( entity, key, value ) );
@@ -238,7 +239,6 @@ class LuceneTransaction extends XaTransaction
     @Override
     protected void doCommit()
     {
-        dataSource.getWriteLock();
         try
         {
             for ( Map.Entry<IndexIdentifier, CommandList> entry :
@@ -251,18 +251,50 @@ class LuceneTransaction extends XaTransaction
                 
                 IndexIdentifier identifier = entry.getKey();
                 CommandList commandList = entry.getValue();
-                IndexType type = identifier == LuceneCommand.CreateIndexCommand.FAKE_IDENTIFIER || !commandList.containsWrites() ? null :
-                    dataSource.getType( identifier );
-                CommitContext context = new CommitContext( dataSource, identifier, type, commandList );
-                for ( LuceneCommand command : commandList.commands )
+                // Only this index is locked, queries and commits to other
+                // indexes go on meanwhile
+                dataSource.getWriteLock( identifier );
+                // Timed from when the lock is held, so that waiting for
+                // other commits isn't counted
+                long start = System.nanoTime();
+                CommitContext context = null;
+                try
                 {
-                    command.perform( context );
+                    IndexType type = identifier == LuceneCommand.CreateIndexCommand.FAKE_IDENTIFIER || !commandList.containsWrites() ? null :
+                        dataSource.getType( identifier );
+                    context = new CommitContext( dataSource, identifier, type, commandList );
+                    // A recovered transaction may have been committed to the
+                    // index before the crash, and its documents would then
+                    // be added twice
+                    boolean skipWrites = commandList.isRecovery() && commandList.containsWrites() &&
+                            getCommitTxId() <= dataSource.getAppliedTxId( identifier );
+                    for ( LuceneCommand command : commandList.commands )
+                    {
+                        if ( skipWrites && command.isConsideredNormalWriteCommand() )
+                        {
+                            continue;
+                        }
+                        command.perform( context );
+                    }
+                    
+                    applyDocuments( context.writer, type, context.documents );
+                    if ( context.writer != null )
+                    {
+                        dataSource.applied( identifier, getCommitTxId() );
+                        dataSource.invalidateIndexSearcher( identifier );
+                    }
                 }
-                
-                applyDocuments( context.writer, type, context.documents );
-                if ( context.writer != null )
+                finally
                 {
-                    dataSource.invalidateIndexSearcher( identifier );
+                    if ( context != null )
+                    {
+                        context.close();
+                    }
+                    dataSource.releaseWriteLock( identifier );
+                    if ( commandList.containsWrites() )
+                    {
+                        dataSource.getStatistics().committed( identifier, start );
+                    }
                 }
             }
             
@@ -273,34 +305,41 @@ class LuceneTransaction extends XaTransaction
         {
             throw new RuntimeException( e );
         }
-        finally
-        {
-            dataSource.releaseWriteLock();
-        }
     }
 
+    /**
+     * Replaces the changed documents in one go, first deleting all the old
+     * versions and then adding the new ones, rather than a delete and an
+     * add per document.
+     */
     private void applyDocuments( IndexWriter writer, IndexType type,
             Map<Long, DocumentContext> documents ) throws IOException
     {
-        for ( Map.Entry<Long, DocumentContext> entry : documents.entrySet() )
+        if ( documents.isEmpty() )
+        {
+            return;
+        }
+        List<Term> deletes = new ArrayList<Term>( documents.size() );
+        List<Document> additions = new ArrayList<Document>( documents.size() );
+        for ( DocumentContext context : documents.values() )
         {
-            DocumentContext context = entry.getValue();
             if ( context.exists )
             {
-                if ( LuceneDataSource.documentIsEmpty( context.document ) )
-                {
-                    writer.deleteDocuments( type.idTerm( context.entityId ) );
-                }
-                else
-                {
-                    writer.updateDocument( type.idTerm( context.entityId ), context.document );
-                }
+                deletes.add( type.idTerm( context.entityId ) );
             }
-            else
+            if ( !context.exists || !LuceneDataSource.documentIsEmpty( context.document ) )
             {
-                writer.addDocument( context.document );
+                additions.add( context.document );
             }
         }
+        if ( !deletes.isEmpty() )
+        {
+            writer.deleteDocuments( deletes.toArray( new Term[deletes.size()] ) );
+        }
+        for ( Document document : additions )
+        {
+            writer.addDocument( document );
+        }
     }
 
     private void closeTxData()
@@ -430,7 +469,7 @@ class LuceneTransaction extends XaTransaction
     
     static class CommandList
     {
-        private final List<LuceneCommand> commands = new ArrayList<LuceneCommand>();
+        final List<LuceneCommand> commands = new ArrayList<LuceneCommand>();
         private boolean containsWrites;
         
         void add( LuceneCommand command )
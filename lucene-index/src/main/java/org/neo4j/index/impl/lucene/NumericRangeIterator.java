@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * The documents matching a long or double {@link NumericRangeQuery}, in
+ * ascending order of their values. The full precision terms of a numeric
+ * field are ordered by value, so walking them from the low end of the range
+ * gives the documents in sorted order, one at a time. Nothing is collected,
+ * sorted or scored up front and no field cache is loaded, so the cost is
+ * proportional to how many hits are read and not to the size of the index.
+ */
+class NumericRangeIterator extends AbstractIndexHits<Document>
+{
+    private final IndexSearcher searcher;
+    private final String field;
+    private final long low;
+    private final long high;
+    private final boolean empty;
+    private final int max;
+    private TermEnum terms;
+    private TermDocs docs;
+    private int returned;
+    private int size = -1;
+    
+    NumericRangeIterator( IndexSearcher searcher, NumericRangeQuery<?> query, int maxOrZero )
+    {
+        this.searcher = searcher;
+        this.field = query.getField();
+        this.max = maxOrZero > 0 ? maxOrZero : Integer.MAX_VALUE;
+        long low = query.getMin() == null ? Long.MIN_VALUE : sortable( query.getMin() );
+        long high = query.getMax() == null ? Long.MAX_VALUE : sortable( query.getMax() );
+        boolean empty = false;
+        if ( query.getMin() != null && !query.includesMin() )
+        {
+            empty |= low == Long.MAX_VALUE;
+            low++;
+        }
+        if ( query.getMax() != null && !query.includesMax() )
+        {
+            empty |= high == Long.MIN_VALUE;
+            high--;
+        }
+        this.empty = empty;
+        this.low = low;
+        this.high = high;
+    }
+    
+    /**
+     * @return whether or not {@code query} sorted by {@code sorting} can be
+     * answered by a {@link NumericRangeIterator}, i.e. if it's a long or
+     * double range sorted by its own field in ascending order.
+     */
+    static boolean canIterate( Query query, Sort sorting )
+    {
+        if ( !(query instanceof NumericRangeQuery) || sorting == null )
+        {
+            return false;
+        }
+        NumericRangeQuery<?> range = (NumericRangeQuery<?>) query;
+        Object type = range.getMin() != null ? range.getMin() : range.getMax();
+        if ( type != null && !(type instanceof Long) && !(type instanceof Double) )
+        {
+            return false;
+        }
+        SortField[] fields = sorting.getSort();
+        return fields.length == 1 && !fields[0].getReverse() &&
+                range.getField().equals( fields[0].getField() ) &&
+                (fields[0].getType() == SortField.LONG || fields[0].getType() == SortField.DOUBLE);
+    }
+    
+    private static long sortable( Number value )
+    {
+        return value instanceof Double ? NumericUtils.doubleToSortableLong( value.doubleValue() ) :
+                value.longValue();
+    }
+    
+    /**
+     * @return a {@link TermEnum} positioned on the first term in the range,
+     * or {@code null} if the range is empty.
+     */
+    private TermEnum seek() throws IOException
+    {
+        if ( empty || low > high )
+        {
+            return null;
+        }
+        return searcher.getIndexReader().terms( new Term( field, NumericUtils.longToPrefixCoded( low ) ) );
+    }
+    
+    /**
+     * @return whether or not the term {@code terms} is positioned on is a
+     * full precision value in the range.
+     */
+    private boolean inRange( TermEnum terms )
+    {
+        Term term = terms.term();
+        if ( term == null || !term.field().equals( field ) )
+        {
+            return false;
+        }
+        String text = term.text();
+        // Lower precision terms for the field come after all full precision ones
+        return text.length() > 0 && text.charAt( 0 ) == NumericUtils.SHIFT_START_LONG &&
+                NumericUtils.prefixCodedToLong( text ) <= high;
+    }
+    
+    @Override
+    protected Document fetchNextOrNull()
+    {
+        try
+        {
+            if ( returned >= max )
+            {
+                close();
+                return null;
+            }
+            if ( docs == null )
+            {
+                terms = seek();
+                if ( terms == null || !inRange( terms ) )
+                {
+                    close();
+                    return null;
+                }
+                IndexReader reader = searcher.getIndexReader();
+                docs = reader.termDocs( terms.term() );
+            }
+            while ( !docs.next() )
+            {
+                if ( !terms.next() || !inRange( terms ) )
+                {
+                    close();
+                    return null;
+                }
+                docs.seek( terms );
+            }
+            returned++;
+            return searcher.doc( docs.doc() );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to read range of " + field, e );
+        }
+    }
+    
+    /**
+     * Counts the matching documents from the document frequencies of the
+     * terms in the range, so deleted documents which haven't been merged
+     * away yet may be counted as well.
+     */
+    public int size()
+    {
+        if ( size == -1 )
+        {
+            int count = 0;
+            try
+            {
+                TermEnum counter = seek();
+                if ( counter != null )
+                {
+                    try
+                    {
+                        while ( count < max && inRange( counter ) )
+                        {
+                            count += counter.docFreq();
+                            if ( !counter.next() )
+                            {
+                                break;
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        counter.close();
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to count range of " + field, e );
+            }
+            size = Math.min( count, max );
+        }
+        return size;
+    }
+    
+    public float currentScore()
+    {
+        return Float.NaN;
+    }
+    
+    @Override
+    public void close()
+    {
+        try
+        {
+            if ( docs != null )
+            {
+                docs.close();
+            }
+            if ( terms != null )
+            {
+                terms.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        finally
+        {
+            docs = null;
+            terms = null;
+            returned = max;
+        }
+    }
+}
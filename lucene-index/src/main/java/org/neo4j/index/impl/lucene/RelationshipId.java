@@ -26,17 +26,24 @@ class RelationshipId
     final long id;
     final long startNode;
     final long endNode;
+    /**
+     * The name of the relationship type, or {@code null} for relationships
+     * which were added to an index before types were stored in it.
+     */
+    final String type;
 
-    RelationshipId( long id, long startNode, long endNode )
+    RelationshipId( long id, long startNode, long endNode, String type )
     {
         this.id = id;
         this.startNode = startNode;
         this.endNode = endNode;
+        this.type = type;
     }
     
     public static RelationshipId of( Relationship rel )
     {
-        return new RelationshipId( rel.getId(), rel.getStartNode().getId(), rel.getEndNode().getId() );
+        return new RelationshipId( rel.getId(), rel.getStartNode().getId(), rel.getEndNode().getId(),
+                rel.getType().name() );
     }
     
     @Override
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ReaderUtil;
+import org.neo4j.index.lucene.QueryContext;
+
+/**
+ * The ids of the documents matching a query, in index order and without
+ * scores. The matches are visited segment by segment as they are read and
+ * the ids come from the per segment {@link FieldCache} of the id field, so
+ * no documents are loaded and nothing is collected up front. Leaves out the
+ * excluded ids and releases the searcher when all hits have been read, or
+ * when closed.
+ */
+class StreamingIdIterator extends AbstractIndexHits<Long>
+{
+    private final Query query;
+    private final Collection<Long> exclude;
+    private final IndexReader[] segments;
+    private IndexSearcherRef searcherOrNull;
+    private Weight weight;
+    private int segment = -1;
+    private Scorer scorer;
+    private long[] ids;
+    private int returned;
+    private int size = -1;
+    
+    StreamingIdIterator( IndexSearcherRef searcher, Query query, Collection<Long> exclude )
+    {
+        this.searcherOrNull = searcher;
+        this.query = query;
+        this.exclude = exclude;
+        List<IndexReader> readers = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders( readers, searcher.getSearcher().getIndexReader() );
+        this.segments = readers.toArray( new IndexReader[readers.size()] );
+    }
+    
+    /**
+     * @return whether or not hits for a query with {@code contextOrNull} may
+     * be streamed, i.e. if the query has asked for
+     * {@link QueryContext#tradeCorrectnessForSpeed()} and the hits don't have
+     * to be sorted or limited to the top hits. Other hits are in relevance
+     * order.
+     */
+    static boolean canStream( QueryContext contextOrNull )
+    {
+        return contextOrNull != null && contextOrNull.getTradeCorrectnessForSpeed() &&
+                contextOrNull.getSorting() == null && contextOrNull.getTop() == 0;
+    }
+    
+    @Override
+    protected Long fetchNextOrNull()
+    {
+        try
+        {
+            while ( searcherOrNull != null )
+            {
+                if ( scorer != null )
+                {
+                    for ( int doc = scorer.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                            doc = scorer.nextDoc() )
+                    {
+                        long id = ids[doc];
+                        if ( !isExcluded( id ) )
+                        {
+                            returned++;
+                            return id;
+                        }
+                    }
+                }
+                if ( !nextSegment() )
+                {
+                    if ( size == -1 )
+                    {
+                        size = returned;
+                    }
+                    close();
+                }
+            }
+            return null;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to query with " + query, e );
+        }
+    }
+    
+    private boolean nextSegment() throws IOException
+    {
+        scorer = null;
+        while ( scorer == null )
+        {
+            if ( ++segment >= segments.length )
+            {
+                return false;
+            }
+            scorer = scorer( segments[segment] );
+        }
+        ids = FieldCache.DEFAULT.getLongs( segments[segment], LuceneIndex.KEY_DOC_ID );
+        return true;
+    }
+    
+    /**
+     * @return a scorer which visits the matches in {@code reader} in order,
+     * or {@code null} if there are none. Scores are only computed if asked
+     * for, which they never are here.
+     */
+    private Scorer scorer( IndexReader reader ) throws IOException
+    {
+        if ( weight == null )
+        {
+            weight = query.weight( searcherOrNull.getSearcher() );
+        }
+        return weight.scorer( reader, true, false );
+    }
+    
+    private boolean isExcluded( long id )
+    {
+        return exclude != null && !exclude.isEmpty() && exclude.contains( id );
+    }
+    
+    /**
+     * Counts the hits in a separate pass over the matches, which doesn't
+     * load anything but the cached ids, and only if the hits haven't already
+     * been read to the end.
+     */
+    public int size()
+    {
+        if ( size == -1 )
+        {
+            if ( searcherOrNull == null )
+            {
+                // Closed before reaching the end, there's nothing left to count with
+                return returned;
+            }
+            try
+            {
+                int count = 0;
+                for ( IndexReader reader : segments )
+                {
+                    Scorer counter = scorer( reader );
+                    if ( counter == null )
+                    {
+                        continue;
+                    }
+                    long[] segmentIds = exclude == null || exclude.isEmpty() ? null :
+                            FieldCache.DEFAULT.getLongs( reader, LuceneIndex.KEY_DOC_ID );
+                    for ( int doc = counter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                            doc = counter.nextDoc() )
+                    {
+                        if ( segmentIds == null || !isExcluded( segmentIds[doc] ) )
+                        {
+                            count++;
+                        }
+                    }
+                }
+                size = count;
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to count hits for " + query, e );
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * @return {@link Float#NaN} since the hits aren't scored, use
+     * {@link QueryContext#sortByScore()} to get hits with scores.
+     */
+    public float currentScore()
+    {
+        return Float.NaN;
+    }
+    
+    @Override
+    public void close()
+    {
+        if ( searcherOrNull != null )
+        {
+            searcherOrNull.closeStrict();
+            searcherOrNull = null;
+        }
+    }
+    
+    @Override
+    protected void finalize() throws Throwable
+    {
+        close();
+        super.finalize();
+    }
+}
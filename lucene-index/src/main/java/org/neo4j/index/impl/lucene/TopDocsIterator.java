@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Searcher;
@@ -57,7 +58,8 @@ class TopDocsIterator extends AbstractIndexHits<Document>
         }
         else
         {
-            boolean forceScore = context == null || !context.getTradeCorrectnessForSpeed();
+            boolean forceScore = (context == null || !context.getTradeCorrectnessForSpeed()) &&
+                    !(query instanceof NumericRangeQuery);
             if ( forceScore )
             {
                 TopFieldCollector collector = LuceneDataSource.scoringCollector( sorting, context.getTop() );
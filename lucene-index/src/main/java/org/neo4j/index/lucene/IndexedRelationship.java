@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * A relationship as it's stored in a relationship index, that is its id,
+ * the ids of its start and end nodes and its type. Returned by
+ * {@link LuceneRelationshipIndex} for queries which don't need to load the
+ * relationships themselves.
+ */
+public final class IndexedRelationship
+{
+    private final long id;
+    private final long startNodeId;
+    private final long endNodeId;
+    private final String typeName;
+    
+    public IndexedRelationship( long id, long startNodeId, long endNodeId, String typeName )
+    {
+        this.id = id;
+        this.startNodeId = startNodeId;
+        this.endNodeId = endNodeId;
+        this.typeName = typeName;
+    }
+    
+    /**
+     * @return the id of the relationship.
+     */
+    public long getId()
+    {
+        return id;
+    }
+    
+    /**
+     * @return the id of the start node of the relationship.
+     */
+    public long getStartNodeId()
+    {
+        return startNodeId;
+    }
+    
+    /**
+     * @return the id of the end node of the relationship.
+     */
+    public long getEndNodeId()
+    {
+        return endNodeId;
+    }
+    
+    /**
+     * @param nodeId the id of one of the nodes of the relationship.
+     * @return the id of the other node.
+     */
+    public long getOtherNodeId( long nodeId )
+    {
+        if ( nodeId == startNodeId )
+        {
+            return endNodeId;
+        }
+        else if ( nodeId == endNodeId )
+        {
+            return startNodeId;
+        }
+        throw new IllegalArgumentException( "Node[" + nodeId + "] isn't a node of " + this );
+    }
+    
+    /**
+     * @return the type of the relationship, or {@code null} if it was added
+     * to the index by a version which didn't store relationship types. Such
+     * relationships get their type once they are added to the index again.
+     */
+    public RelationshipType getType()
+    {
+        return typeName != null ? DynamicRelationshipType.withName( typeName ) : null;
+    }
+    
+    @Override
+    public boolean equals( Object obj )
+    {
+        return obj instanceof IndexedRelationship && ((IndexedRelationship) obj).id == id;
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return (int) (id ^ (id >>> 32));
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "(" + startNodeId + ")-[" + id + ":" + typeName + "]->(" + endNodeId + ")";
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * An {@link Index} backed by Lucene, which can return the ids of the
+ * entities it has hits for instead of the entities themselves. The ids are
+ * read from the index and the entities aren't loaded, so ids of entities
+ * which have been deleted without being removed from the index are returned
+ * as well. Skipping hits is as cheap as reading ids, f.ex. for paging:
+ * 
+ * <pre>
+ * IndexHits&lt;Long&gt; ids = ((LuceneIdIndex&lt;Node&gt;) index).queryIds( "name", "Ma*" );
+ * </pre>
+ * 
+ * Node and relationship indexes of the lucene index provider implement this
+ * interface.
+ */
+public interface LuceneIdIndex<T extends PropertyContainer> extends Index<T>
+{
+    /**
+     * Like {@link #get(String, Object)}, but returns the ids of the entities.
+     */
+    IndexHits<Long> getIds( String key, Object value );
+
+    /**
+     * Like {@link #query(String, Object)}, but returns the ids of the entities.
+     */
+    IndexHits<Long> queryIds( String key, Object queryOrQueryObject );
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = LuceneIndexMaintenance.NAME )
+@Description( "Background merging and committing of the lucene indexes" )
+public interface LuceneIndexMaintenance
+{
+    final String NAME = "Lucene index maintenance";
+
+    @Description( "How often, in milliseconds, changed indexes are committed in the background" )
+    long getCommitInterval();
+
+    @Description( "The maximum number of segment merges running at the same time" )
+    int getMergeThreads();
+
+    @Description( "The number of index commits, in the background and at log rotation" )
+    long getCommitCount();
+
+    @Description( "The total time, in milliseconds, spent committing indexes" )
+    long getCommitTime();
+
+    @Description( "The time, in milliseconds, that the last index commit took" )
+    long getLastCommitTime();
+
+    @Description( "The number of indexes with changes which are yet to be committed" )
+    int getUncommittedIndexCount();
+
+    @Description( "The number of segment merges which have completed" )
+    long getMergeCount();
+
+    @Description( "The total time, in milliseconds, spent merging segments" )
+    long getMergeTime();
+
+    @Description( "The time, in milliseconds, that the last segment merge took" )
+    long getLastMergeTime();
+
+    @Description( "The number of segment merges running right now" )
+    int getRunningMerges();
+}
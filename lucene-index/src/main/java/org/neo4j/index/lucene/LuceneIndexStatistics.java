@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = LuceneIndexStatistics.NAME )
+@Description( "Latencies of lookups, queries and commits per lucene index, and the slow queries" )
+public interface LuceneIndexStatistics
+{
+    final String NAME = "Lucene index statistics";
+
+    @Description( "Per index: latencies, in microseconds, of exact lookups, queries and commits, "
+                  + "searcher reopens, cache hit ratio and number of documents" )
+    String[] getIndexStatistics();
+
+    @Description( "How long, in milliseconds, a lookup or query may take before it's logged as slow, "
+                  + "0 logs none" )
+    long getSlowQueryThreshold();
+
+    void setSlowQueryThreshold( long millis );
+
+    @Description( "The most recent slow lookups and queries, with how long they took and their number of hits" )
+    String[] getSlowQueries();
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.RelationshipIndex;
+
+/**
+ * A {@link RelationshipIndex} backed by Lucene, which can return what it
+ * has stored about each relationship, see {@link IndexedRelationship},
+ * instead of the relationships themselves. The relationships aren't loaded,
+ * so filtering on start/end node, sorting and {@link QueryContext#top(int)}
+ * are all done by Lucene, f.ex:
+ * 
+ * <pre>
+ * IndexHits&lt;IndexedRelationship&gt; latest = ((LuceneRelationshipIndex) index).queryIndexed(
+ *         "since", new QueryContext( "*" ).sort( "since" ).top( 10 ), node, null );
+ * </pre>
+ * 
+ * Relationship indexes of the lucene index provider implement this interface.
+ */
+public interface LuceneRelationshipIndex extends RelationshipIndex
+{
+    /**
+     * Like {@link #get(String, Object, Node, Node)}, but returns what's
+     * stored about the relationships in the index.
+     */
+    IndexHits<IndexedRelationship> getIndexed( String key, Object valueOrNull, Node startNodeOrNull,
+            Node endNodeOrNull );
+
+    /**
+     * Like {@link #query(String, Object, Node, Node)}, but returns what's
+     * stored about the relationships in the index.
+     */
+    IndexHits<IndexedRelationship> queryIndexed( String key, Object queryOrQueryObjectOrNull,
+            Node startNodeOrNull, Node endNodeOrNull );
+}
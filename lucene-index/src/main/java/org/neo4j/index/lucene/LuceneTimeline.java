@@ -20,7 +20,7 @@
 package org.neo4j.index.lucene;
 
 import static java.lang.Long.MAX_VALUE;
-import static org.apache.lucene.search.NumericRangeQuery.newLongRange;
+import static org.neo4j.index.lucene.QueryContext.numericRange;
 import static org.neo4j.index.lucene.ValueContext.numeric;
 
 import java.util.Map;
@@ -60,14 +60,14 @@ public class LuceneTimeline<T extends PropertyContainer> implements TimelineInde
     
     private QueryContext everythingQuery()
     {
-        return new QueryContext( newLongRange( FIELD, 0L, MAX_VALUE, true, true ) );
+        return numericRange( FIELD, 0L, MAX_VALUE );
     }
 
     private QueryContext rangeQuery( Long startTimestampOrNull, Long endTimestampOrNull )
     {
         long start = startTimestampOrNull != null ? startTimestampOrNull : 0L;
         long end = endTimestampOrNull != null ? endTimestampOrNull : MAX_VALUE;
-        return new QueryContext( newLongRange( FIELD, start, end, false, false ) );
+        return numericRange( FIELD, start, end, false, false );
     }
     
     private QueryContext sort( QueryContext query, boolean reversed )
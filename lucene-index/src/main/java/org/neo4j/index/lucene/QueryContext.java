@@ -21,6 +21,7 @@ package org.neo4j.index.lucene;
 
 import org.apache.lucene.queryParser.QueryParser.Operator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.neo4j.graphdb.index.Index;
@@ -139,6 +140,9 @@ public class QueryContext
      * The default behaviour is that these modifications are visible, but using
      * this method will tell the query to not strive to include the absolutely
      * latest modifications, so that such a performance penalty can be avoided.
+     * Hits of such a query without any sorting or {@link #top(int)} aren't
+     * scored either, they come in index order and
+     * {@link IndexHits#currentScore()} is {@link Float#NaN} for them.
      *
      * @return A QueryContext which doesn't necessarily include the latest
      * transaction modifications in the results, but may perform faster.
@@ -180,4 +184,65 @@ public class QueryContext
     {
         return this.topHits;
     }
+    
+    /**
+     * Will create a {@link QueryContext} with a query for numeric ranges, that is
+     * values that have been indexed using {@link ValueContext#indexNumeric()},
+     * or added to an index of type "numeric". It will match the type of numbers
+     * supplied to the type of values that are indexed in the index, i.e. an
+     * {@link Integer} bound queries int values and so on. If the bounds are of
+     * different types the range is of the widest one, e.g. a {@link Long} and
+     * a {@link Double} bound queries double values. Indexes of type "numeric"
+     * have double values and query any range as a double range. {@code null}
+     * can be passed for either bound to leave that end open.
+     * 
+     * @param key the property key to query.
+     * @param from the low end of the range (inclusive)
+     * @param to the high end of the range (inclusive)
+     * @return a {@link QueryContext} to do numeric range queries with.
+     */
+    public static QueryContext numericRange( String key, Number from, Number to )
+    {
+        return numericRange( key, from, to, true, true );
+    }
+
+    /**
+     * Will create a {@link QueryContext} with a query for numeric ranges, that is
+     * values that have been indexed using {@link ValueContext#indexNumeric()},
+     * or added to an index of type "numeric".
+     * 
+     * @param key the property key to query.
+     * @param from the low end of the range, or {@code null} for no low end.
+     * @param to the high end of the range, or {@code null} for no high end.
+     * @param includeFrom whether or not {@code from} itself is a match.
+     * @param includeTo whether or not {@code to} itself is a match.
+     * @return a {@link QueryContext} to do numeric range queries with.
+     * @see #numericRange(String, Number, Number)
+     */
+    public static QueryContext numericRange( String key, Number from, Number to,
+            boolean includeFrom, boolean includeTo )
+    {
+        if ( from instanceof Double || to instanceof Double )
+        {
+            return new QueryContext( NumericRangeQuery.newDoubleRange( key,
+                    from != null ? from.doubleValue() : null,
+                    to != null ? to.doubleValue() : null, includeFrom, includeTo ) );
+        }
+        else if ( from instanceof Float || to instanceof Float )
+        {
+            return new QueryContext( NumericRangeQuery.newFloatRange( key,
+                    from != null ? from.floatValue() : null,
+                    to != null ? to.floatValue() : null, includeFrom, includeTo ) );
+        }
+        else if ( (from instanceof Integer || to instanceof Integer) &&
+                !(from instanceof Long || to instanceof Long) )
+        {
+            return new QueryContext( NumericRangeQuery.newIntRange( key,
+                    from != null ? from.intValue() : null,
+                    to != null ? to.intValue() : null, includeFrom, includeTo ) );
+        }
+        return new QueryContext( NumericRangeQuery.newLongRange( key,
+                from != null ? from.longValue() : null,
+                to != null ? to.longValue() : null, includeFrom, includeTo ) );
+    }
 }
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.map;
+import static org.neo4j.index.Neo4jTestCase.assertContains;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.BatchInserterIndex;
+import org.neo4j.graphdb.index.BatchInserterIndexProvider;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.index.Neo4jTestCase;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+
+public class TestHashIndex
+{
+    private static final String PATH = "target/var/hash";
+    
+    private GraphDatabaseService db;
+    private Transaction tx;
+    
+    @Before
+    public void startDb()
+    {
+        Neo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        db = new EmbeddedGraphDatabase( PATH );
+    }
+    
+    @After
+    public void stopDb()
+    {
+        finishTx( false );
+        db.shutdown();
+    }
+    
+    private void beginTx()
+    {
+        tx = db.beginTx();
+    }
+    
+    private void finishTx( boolean success )
+    {
+        if ( tx != null )
+        {
+            if ( success )
+            {
+                tx.success();
+            }
+            tx.finish();
+            tx = null;
+        }
+    }
+    
+    private void restartTx()
+    {
+        finishTx( true );
+        beginTx();
+    }
+    
+    private Index<Node> nodeIndex( String name )
+    {
+        return db.index().forNodes( name, HashIndexImplementation.CONFIG );
+    }
+    
+    @Test
+    public void addedEntitiesCanBeLookedUp()
+    {
+        beginTx();
+        Index<Node> index = nodeIndex( "users" );
+        Node alice = db.createNode();
+        Node bob = db.createNode();
+        index.add( alice, "email", "alice@example.com" );
+        index.add( bob, "email", "bob@example.com" );
+        index.add( bob, "group", 5 );
+        index.add( alice, "group", 5 );
+        
+        // Read your own writes
+        assertEquals( alice, index.get( "email", "alice@example.com" ).getSingle() );
+        assertContains( index.get( "group", 5 ), alice, bob );
+        restartTx();
+        
+        assertEquals( alice, index.get( "email", "alice@example.com" ).getSingle() );
+        assertEquals( bob, index.get( "email", "bob@example.com" ).getSingle() );
+        assertContains( index.get( "group", "5" ), alice, bob );
+        assertNull( index.get( "email", "carol@example.com" ).getSingle() );
+        assertNull( index.get( "name", "alice@example.com" ).getSingle() );
+    }
+    
+    @Test
+    public void removeEntityValueKeyOrAll()
+    {
+        beginTx();
+        Index<Node> index = nodeIndex( "users" );
+        Node node = db.createNode();
+        index.add( node, "email", "a@example.com" );
+        index.add( node, "email", "b@example.com" );
+        index.add( node, "name", "Alice" );
+        restartTx();
+        
+        index.remove( node, "email", "a@example.com" );
+        assertContains( index.get( "email", "a@example.com" ) );
+        assertContains( index.get( "email", "b@example.com" ), node );
+        restartTx();
+        assertContains( index.get( "email", "a@example.com" ) );
+        assertContains( index.get( "email", "b@example.com" ), node );
+        
+        index.remove( node, "email" );
+        assertContains( index.get( "email", "b@example.com" ) );
+        assertContains( index.get( "name", "Alice" ), node );
+        restartTx();
+        assertContains( index.get( "email", "b@example.com" ) );
+        assertContains( index.get( "name", "Alice" ), node );
+        
+        index.remove( node );
+        assertContains( index.get( "name", "Alice" ) );
+        restartTx();
+        assertContains( index.get( "name", "Alice" ) );
+    }
+    
+    @Test
+    public void rolledBackChangesAreNotVisible()
+    {
+        beginTx();
+        Index<Node> index = nodeIndex( "users" );
+        Node node = db.createNode();
+        index.add( node, "email", "a@example.com" );
+        restartTx();
+        
+        index.add( db.createNode(), "email", "b@example.com" );
+        index.remove( node, "email", "a@example.com" );
+        finishTx( false );
+        
+        beginTx();
+        assertContains( index.get( "email", "a@example.com" ), node );
+        assertContains( index.get( "email", "b@example.com" ) );
+    }
+    
+    @Test
+    public void indexSurvivesRestart()
+    {
+        beginTx();
+        Node node = db.createNode();
+        nodeIndex( "users" ).add( node, "email", "a@example.com" );
+        finishTx( true );
+        db.shutdown();
+        
+        db = new EmbeddedGraphDatabase( PATH );
+        beginTx();
+        assertEquals( node, nodeIndex( "users" ).get( "email", "a@example.com" ).getSingle() );
+    }
+    
+    @Test
+    public void relationshipIndexFiltersOnStartAndEndNode()
+    {
+        beginTx();
+        RelationshipIndex index = db.index().forRelationships( "knows",
+                HashIndexImplementation.CONFIG );
+        Node a = db.createNode();
+        Node b = db.createNode();
+        Node c = db.createNode();
+        Relationship ab = a.createRelationshipTo( b, DynamicRelationshipType.withName( "KNOWS" ) );
+        Relationship ac = a.createRelationshipTo( c, DynamicRelationshipType.withName( "KNOWS" ) );
+        index.add( ab, "since", 2010 );
+        index.add( ac, "since", 2010 );
+        restartTx();
+        
+        assertContains( index.get( "since", 2010 ), ab, ac );
+        assertContains( index.get( "since", 2010, a, c ), ac );
+        assertContains( index.get( "since", 2010, null, b ), ab );
+        assertContains( index.get( "since", 2010, c, null ) );
+    }
+    
+    @Test
+    public void queriesAreNotSupported()
+    {
+        beginTx();
+        try
+        {
+            nodeIndex( "users" ).query( "email:*" );
+            fail( "Should not support queries" );
+        }
+        catch ( UnsupportedOperationException e )
+        {   // Good
+        }
+    }
+    
+    @Test
+    public void deletedIndexIsEmptyWhenRecreated()
+    {
+        beginTx();
+        Index<Node> index = nodeIndex( "users" );
+        index.add( db.createNode(), "email", "a@example.com" );
+        restartTx();
+        index.delete();
+        restartTx();
+        assertContains( nodeIndex( "users" ).get( "email", "a@example.com" ) );
+    }
+    
+    @Test
+    public void batchInsertedIndexCanBeUsedByTheDatabase()
+    {
+        db.shutdown();
+        Neo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        BatchInserter inserter = new BatchInserterImpl( PATH );
+        BatchInserterIndexProvider provider = new HashBatchInserterIndexProvider( inserter );
+        BatchInserterIndex index = provider.nodeIndex( "users", HashIndexImplementation.CONFIG );
+        long[] ids = new long[1000];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            ids[i] = inserter.createNode( null );
+            index.add( ids[i], map( "email", "user" + i + "@example.com" ) );
+        }
+        assertEquals( ids[10], index.get( "email", "user10@example.com" ).getSingle().longValue() );
+        index.updateOrAdd( ids[10], map( "email", "changed@example.com" ) );
+        assertNull( index.get( "email", "user10@example.com" ).getSingle() );
+        provider.shutdown();
+        inserter.shutdown();
+        
+        db = new EmbeddedGraphDatabase( PATH );
+        beginTx();
+        Index<Node> dbIndex = nodeIndex( "users" );
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            String email = i == 10 ? "changed@example.com" : "user" + i + "@example.com";
+            assertEquals( ids[i], dbIndex.get( "email", email ).getSingle().getId() );
+        }
+    }
+}
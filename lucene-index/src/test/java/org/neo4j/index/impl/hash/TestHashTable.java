@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.index.Neo4jTestCase;
+
+public class TestHashTable
+{
+    private File file;
+    private HashTable table;
+    
+    @Before
+    public void createTable() throws Exception
+    {
+        file = new File( "target/var/hashtable" );
+        file.getParentFile().mkdirs();
+        file.delete();
+        table = new HashTable( file );
+    }
+    
+    @After
+    public void deleteTable() throws Exception
+    {
+        table.close();
+        Neo4jTestCase.deleteFileOrDirectory( file );
+    }
+    
+    @Test
+    public void addedRecordsCanBeFound() throws Exception
+    {
+        assertTrue( table.add( 10, 1, 100, 7 ) );
+        assertTrue( table.add( 10, 1, 101, 7 ) );
+        assertTrue( table.add( 10, 2, 102, 7 ) );
+        assertTrue( table.add( 11, 1, 103, 7 ) );
+        assertFalse( table.add( 10, 1, 100, 7 ) );
+        assertEquals( 4, table.size() );
+        assertArrayEquals( new long[] { 100, 101 }, sorted( table.find( 10, 1 ) ) );
+        assertArrayEquals( new long[] { 102 }, table.find( 10, 2 ) );
+        assertArrayEquals( new long[0], table.find( 12, 1 ) );
+        List<long[]> records = table.find( 10 );
+        assertEquals( 3, records.size() );
+    }
+    
+    @Test
+    public void removedRecordsAreNotFound() throws Exception
+    {
+        table.add( 10, 1, 100, 7 );
+        table.add( 10, 1, 101, 7 );
+        assertTrue( table.remove( 10, 1, 100, 7 ) );
+        assertFalse( table.remove( 10, 1, 100, 7 ) );
+        assertArrayEquals( new long[] { 101 }, table.find( 10, 1 ) );
+        assertEquals( 1, table.size() );
+        assertTrue( table.add( 10, 1, 100, 7 ) );
+        assertArrayEquals( new long[] { 100, 101 }, sorted( table.find( 10, 1 ) ) );
+    }
+    
+    @Test
+    public void growsAndDropsRemovedRecords() throws Exception
+    {
+        long initialCapacity = table.capacity();
+        int count = (int) initialCapacity * 4;
+        for ( int i = 0; i < count; i++ )
+        {
+            table.add( HashTable.mix( i ) | 2, i, i, 0 );
+        }
+        assertTrue( table.capacity() > initialCapacity );
+        for ( int i = 0; i < count; i += 2 )
+        {
+            assertTrue( table.remove( HashTable.mix( i ) | 2, i, i, 0 ) );
+        }
+        for ( int i = 0; i < count; i++ )
+        {
+            long[] expected = i % 2 == 0 ? new long[0] : new long[] { i };
+            assertArrayEquals( expected, table.find( HashTable.mix( i ) | 2, i ) );
+        }
+        assertEquals( count / 2, table.size() );
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+    }
+    
+    @Test
+    public void survivesReopen() throws Exception
+    {
+        for ( int i = 0; i < 5000; i++ )
+        {
+            table.add( 1000 + i, 1, i, 0 );
+        }
+        table.remove( 1000, 1, 0, 0 );
+        table.close();
+        table = new HashTable( file );
+        assertEquals( 4999, table.size() );
+        assertArrayEquals( new long[0], table.find( 1000, 1 ) );
+        assertArrayEquals( new long[] { 4999 }, table.find( 5999, 1 ) );
+    }
+    
+    private long[] sorted( long[] values )
+    {
+        Arrays.sort( values );
+        return values;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.index.Neo4jTestCase;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Measures query and commit throughput for a mix of readers and writers
+ * spread over several indexes. Each writer commits small transactions to
+ * an index of its own, and readers do exact lookups in random indexes, so
+ * the numbers show how much readers and writers of different indexes get
+ * in each other's way.
+ */
+public class IndexConcurrencyBenchmark
+{
+    private static final int INDEXES = 8;
+    private static final int READERS = 8;
+    private static final int VALUES = 1000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        String storeDir = args.length > 0 ? args[0] : "target/var/indexconcurrency";
+        long seconds = args.length > 1 ? Long.parseLong( args[1] ) : 10;
+        Neo4jTestCase.deleteFileOrDirectory( new File( storeDir ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir );
+        try
+        {
+            Index<Node>[] indexes = createIndexes( db );
+            for ( int writers = 0; writers <= INDEXES; writers = writers == 0 ? 1 : writers * 2 )
+            {
+                run( db, indexes, writers, TimeUnit.SECONDS.toMillis( seconds ) );
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Index<Node>[] createIndexes( GraphDatabaseService db )
+    {
+        Index<Node>[] indexes = new Index[INDEXES];
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < INDEXES; i++ )
+            {
+                indexes[i] = db.index().forNodes( "index" + i );
+                for ( int value = 0; value < VALUES; value++ )
+                {
+                    indexes[i].add( db.createNode(), "key", value );
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return indexes;
+    }
+
+    private static void run( final GraphDatabaseService db, final Index<Node>[] indexes,
+            int writers, long millis ) throws InterruptedException
+    {
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong commits = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final long endTime[] = new long[1];
+        Thread[] threads = new Thread[READERS + writers];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final boolean reader = i < READERS;
+            final Index<Node> own = indexes[i % INDEXES];
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random();
+                    long done = 0;
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    while ( System.currentTimeMillis() < endTime[0] )
+                    {
+                        if ( reader )
+                        {
+                            Index<Node> index = indexes[random.nextInt( indexes.length )];
+                            IteratorUtil.count( (Iterable<Node>) index.get( "key",
+                                    random.nextInt( VALUES ) ) );
+                        }
+                        else
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                own.add( db.createNode(), "key", random.nextInt( VALUES ) );
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                        done++;
+                    }
+                    ( reader ? reads : commits ).addAndGet( done );
+                }
+            };
+            threads[i].start();
+        }
+        endTime[0] = System.currentTimeMillis() + millis;
+        start.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        double seconds = millis / 1000.0;
+        System.out.printf( "%d readers, %d writers: %.1f reads/s, %.1f commits/s%n", READERS,
+                writers, reads.get() / seconds, commits.get() / seconds );
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+
+public class TestIndexLocking extends AbstractLuceneIndexTest
+{
+    @Test( timeout = 30000 )
+    public void commitToOneIndexDoesntBlockOtherIndexesOrFreshReaders() throws Exception
+    {
+        final LuceneIndex<Node> committing = (LuceneIndex<Node>) nodeIndex( "committing",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        Index<Node> other = nodeIndex( "other", LuceneIndexImplementation.EXACT_CONFIG );
+        Node node = graphDb.createNode();
+        committing.add( node, "key", "value" );
+        other.add( node, "key", "value" );
+        restartTx();
+        assertEquals( node, committing.get( "key", "value" ).getSingle() );
+
+        final CountDownLatch locked = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 1 );
+        Thread committer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                LuceneDataSource dataSource = committing.service.dataSource();
+                dataSource.getWriteLock( committing.getIdentifier() );
+                try
+                {
+                    locked.countDown();
+                    done.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+                finally
+                {
+                    dataSource.releaseWriteLock( committing.getIdentifier() );
+                }
+            }
+        };
+        committer.start();
+        try
+        {
+            locked.await();
+            assertEquals( node, committing.get( "key", "value" ).getSingle() );
+            assertEquals( node, other.get( "key", "value" ).getSingle() );
+            Node otherNode = graphDb.createNode();
+            other.add( otherNode, "key", "other value" );
+            restartTx();
+            assertEquals( otherNode, other.get( "key", "other value" ).getSingle() );
+        }
+        finally
+        {
+            done.countDown();
+            committer.join();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.index.Neo4jTestCase.deleteFileOrDirectory;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+public class TestIndexMaintenance
+{
+    private static final String STORE_DIR = "target/var/maintenance";
+    
+    private EmbeddedGraphDatabase graphDb;
+    
+    @Before
+    public void startDb()
+    {
+        deleteFileOrDirectory( new File( STORE_DIR ) );
+        graphDb = new EmbeddedGraphDatabase( STORE_DIR, MapUtil.stringMap(
+                LuceneDataSource.COMMIT_INTERVAL, "50",
+                LuceneDataSource.MERGE_FACTOR, "2" ) );
+    }
+    
+    @After
+    public void stopDb()
+    {
+        graphDb.shutdown();
+    }
+    
+    @Test( timeout = 30000 )
+    public void commitsChangedIndexesInTheBackground() throws Exception
+    {
+        LuceneIndex<Node> index = (LuceneIndex<Node>) graphDb.index().forNodes( "index",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        IndexMaintenance maintenance = index.service.dataSource().getMaintenance();
+        assertEquals( 50, maintenance.getCommitInterval() );
+        Transaction tx = graphDb.beginTx();
+        Node node = graphDb.createNode();
+        index.add( node, "key", "value" );
+        tx.success();
+        tx.finish();
+        
+        while ( maintenance.getCommitCount() == 0 || maintenance.getUncommittedIndexCount() > 0 )
+        {
+            Thread.sleep( 10 );
+        }
+        IndexReader reader = IndexReader.open( LuceneDataSource.getDirectory(
+                new File( STORE_DIR, "index" ).getAbsolutePath(), index.getIdentifier() ), true );
+        try
+        {
+            assertEquals( 1, reader.numDocs() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void rotationCommitsIndexesWithTheLastAppliedTx() throws Exception
+    {
+        graphDb.shutdown();
+        graphDb = new EmbeddedGraphDatabase( STORE_DIR, MapUtil.stringMap(
+                LuceneDataSource.COMMIT_INTERVAL, "0" ) );
+        LuceneIndex<Node> index = (LuceneIndex<Node>) graphDb.index().forNodes( "index",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        LuceneDataSource dataSource = index.service.dataSource();
+        IndexMaintenance maintenance = dataSource.getMaintenance();
+        Transaction tx = graphDb.beginTx();
+        Node node = graphDb.createNode();
+        index.add( node, "key", "value" );
+        tx.success();
+        tx.finish();
+        assertEquals( 1, maintenance.getUncommittedIndexCount() );
+        
+        dataSource.rotateLogicalLog();
+        assertEquals( 0, maintenance.getUncommittedIndexCount() );
+        Map<String, String> userData = IndexReader.getCommitUserData( LuceneDataSource.getDirectory(
+                new File( STORE_DIR, "index" ).getAbsolutePath(), index.getIdentifier() ) );
+        assertEquals( String.valueOf( dataSource.getLastCommittedTxId() ),
+                userData.get( LuceneDataSource.LAST_APPLIED_TX ) );
+    }
+    
+    @Test( timeout = 30000 )
+    public void mergesSegmentsInTheBackground() throws Exception
+    {
+        LuceneIndex<Node> index = (LuceneIndex<Node>) graphDb.index().forNodes( "index",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        IndexMaintenance maintenance = index.service.dataSource().getMaintenance();
+        for ( int i = 0; i < 20; i++ )
+        {
+            Transaction tx = graphDb.beginTx();
+            Node node = graphDb.createNode();
+            index.add( node, "key", "value" );
+            tx.success();
+            tx.finish();
+            // Flushes a segment of its own
+            assertEquals( i + 1, index.get( "key", "value" ).size() );
+        }
+        
+        while ( maintenance.getMergeCount() == 0 )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( maintenance.getMergeTime() >= 0 );
+        assertEquals( 20, index.get( "key", "value" ).size() );
+    }
+}
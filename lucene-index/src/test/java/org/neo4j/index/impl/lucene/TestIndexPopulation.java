@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.neo4j.index.Neo4jTestCase.assertContains;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.RelationshipIndex;
+
+public class TestIndexPopulation extends AbstractLuceneIndexTest
+{
+    @Test
+    public void populatesNodeIndexFromExistingNodes()
+    {
+        List<Node> nodes = new ArrayList<Node>();
+        for ( int i = 0; i < 25000; i++ )
+        {
+            nodes.add( NODE_CREATOR.create( "name", "name " + (i % 10), "age", i, "other", "x" ) );
+        }
+        Node deleted = NODE_CREATOR.create( "name", "name 0" );
+        restartTx();
+        deleted.delete();
+        restartTx();
+        
+        Index<Node> index = new LuceneIndexPopulator( graphDb ).threads( 3 ).populateNodeIndex(
+                "populated", LuceneIndexImplementation.EXACT_CONFIG, "name", "age" );
+        assertEquals( 2500, index.get( "name", "name 3" ).size() );
+        assertEquals( 2500, index.get( "name", "name 0" ).size() );
+        assertEquals( nodes.get( 12345 ), index.get( "age", 12345 ).getSingle() );
+        assertNull( index.get( "other", "x" ).getSingle() );
+        
+        // A populated index is just like any other index
+        Node node = NODE_CREATOR.create();
+        index.add( node, "name", "name 3" );
+        restartTx();
+        assertEquals( 2501, index.get( "name", "name 3" ).size() );
+    }
+    
+    @Test
+    public void populatesRelationshipIndexFromExistingRelationships()
+    {
+        Relationship rel = RELATIONSHIP_CREATOR.create( "since", 1999, "names", new String[] { "a", "b" } );
+        Relationship other = RELATIONSHIP_CREATOR.create( "names", "b" );
+        RELATIONSHIP_CREATOR.create( "other", "b" );
+        restartTx();
+        
+        RelationshipIndex index = new LuceneIndexPopulator( graphDb ).throttle( 100000 )
+                .populateRelationshipIndex( "populatedRels", LuceneIndexImplementation.FULLTEXT_CONFIG,
+                        "since", "names" );
+        assertEquals( rel, index.get( "names", "a" ).getSingle() );
+        assertContains( index.query( "names:B" ), rel, other );
+        assertContains( index.get( "names", "b", null, other.getEndNode() ), other );
+        assertEquals( rel, index.get( "since", 1999 ).getSingle() );
+    }
+    
+    @Test
+    public void doesNotPopulateExistingIndex()
+    {
+        nodeIndex( "existing", LuceneIndexImplementation.EXACT_CONFIG );
+        restartTx();
+        try
+        {
+            new LuceneIndexPopulator( graphDb ).populateNodeIndex( "existing",
+                    LuceneIndexImplementation.EXACT_CONFIG, "name" );
+            fail( "Shouldn't be able to populate an existing index" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // Good
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.index.Neo4jTestCase.deleteFileOrDirectory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+public class TestIndexStatistics
+{
+    private static final String STORE_DIR = "target/var/statistics";
+    
+    private EmbeddedGraphDatabase graphDb;
+    
+    @Before
+    public void startDb()
+    {
+        deleteFileOrDirectory( new File( STORE_DIR ) );
+        graphDb = new EmbeddedGraphDatabase( STORE_DIR );
+    }
+    
+    @After
+    public void stopDb()
+    {
+        graphDb.shutdown();
+    }
+    
+    @Test
+    public void measuresLookupsQueriesAndCommitsPerIndex()
+    {
+        LuceneIndex<Node> index = (LuceneIndex<Node>) graphDb.index().forNodes( "index",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        Transaction tx = graphDb.beginTx();
+        Node node = graphDb.createNode();
+        index.add( node, "key", "value" );
+        tx.success();
+        tx.finish();
+        
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertEquals( node, index.get( "key", "value" ).getSingle() );
+        }
+        assertEquals( node, index.query( "key", "val*" ).getSingle() );
+        
+        LuceneDataSource dataSource = index.service.dataSource();
+        IndexStatistics.Statistics statistics = dataSource.getStatistics().get( index.getIdentifier() );
+        assertEquals( 5, statistics.gets.count() );
+        assertEquals( 1, statistics.queries.count() );
+        assertEquals( 1, statistics.commits.count() );
+        assertEquals( 5, statistics.cacheHits.get() + statistics.cacheMisses.get() );
+        assertTrue( statistics.cacheHits.get() > 0 );
+        assertEquals( Integer.valueOf( 1 ), dataSource.getDocumentCounts().get( index.getIdentifier() ) );
+        assertEquals( 1, dataSource.getStatistics().summarize( dataSource.getDocumentCounts() ).length );
+        
+        index.delete();
+        assertEquals( 0, dataSource.getStatistics().summarize( dataSource.getDocumentCounts() ).length );
+    }
+    
+    @Test
+    public void logsQueriesSlowerThanTheThreshold()
+    {
+        IndexStatistics statistics = new IndexStatistics( 0 );
+        IndexIdentifier identifier = new IndexIdentifier( LuceneCommand.NODE, null, "index" );
+        int hits = 3;
+        long twoSeconds = TimeUnit.SECONDS.toNanos( 2 );
+        statistics.searched( identifier, false, "key:value", twoSeconds, hits );
+        assertEquals( 0, statistics.getSlowQueries().length );
+        
+        statistics.setSlowQueryThreshold( 1000 );
+        statistics.searched( identifier, false, "key:value", twoSeconds, hits );
+        statistics.searched( identifier, true, "key=value", 0, hits );
+        assertEquals( 1, statistics.getSlowQueries().length );
+        assertTrue( statistics.getSlowQueries()[0].contains( "key:value" ) );
+        assertTrue( statistics.getSlowQueries()[0].contains( "3 hits" ) );
+        
+        for ( int i = 0; i < IndexStatistics.MAX_SLOW_QUERIES * 2; i++ )
+        {
+            statistics.searched( identifier, false, "key:value", twoSeconds, hits );
+        }
+        assertEquals( IndexStatistics.MAX_SLOW_QUERIES, statistics.getSlowQueries().length );
+    }
+    
+    @Test
+    public void timesQueriesUntilTheirHitsAreReadOrClosed()
+    {
+        IndexStatistics statistics = new IndexStatistics( 1000 );
+        IndexIdentifier identifier = new IndexIdentifier( LuceneCommand.NODE, null, "index" );
+        long twoSecondsAgo = System.nanoTime() - TimeUnit.SECONDS.toNanos( 2 );
+        IndexHits<Long> hits = statistics.timed( identifier, false, "key:value", twoSecondsAgo,
+                new ConstantScoreIterator<Long>( Arrays.asList( 1L, 2L ), 0 ) );
+        assertNull( statistics.get( identifier ) );
+        assertEquals( Long.valueOf( 1 ), hits.next() );
+        assertEquals( Long.valueOf( 2 ), hits.next() );
+        assertEquals( 0, statistics.getSlowQueries().length );
+        assertFalse( hits.hasNext() );
+        hits.close();
+        assertEquals( 1, statistics.get( identifier ).queries.count() );
+        assertEquals( 1, statistics.getSlowQueries().length );
+        assertTrue( statistics.getSlowQueries()[0].contains( "2 hits" ) );
+        
+        hits = statistics.timed( identifier, true, "key=value", twoSecondsAgo,
+                new ConstantScoreIterator<Long>( Arrays.asList( 1L, 2L ), 0 ) );
+        hits.next();
+        hits.close();
+        assertEquals( 1, statistics.get( identifier ).gets.count() );
+        assertTrue( statistics.getSlowQueries()[1].contains( "1 hits" ) );
+    }
+    
+    @Test
+    public void timeSpentByTheReaderOfTheHitsIsNotCounted() throws Exception
+    {
+        IndexStatistics statistics = new IndexStatistics( 500 );
+        IndexIdentifier identifier = new IndexIdentifier( LuceneCommand.NODE, null, "index" );
+        IndexHits<Long> hits = statistics.timed( identifier, false, "key:value", System.nanoTime(),
+                new ConstantScoreIterator<Long>( Arrays.asList( 1L, 2L ), 0 ) );
+        hits.next();
+        Thread.sleep( 600 );
+        hits.next();
+        assertFalse( hits.hasNext() );
+        assertEquals( 1, statistics.get( identifier ).queries.count() );
+        assertEquals( 0, statistics.getSlowQueries().length );
+        
+        hits = statistics.timed( identifier, false, "key:value", System.nanoTime(),
+                new AbstractIndexHits<Long>()
+                {
+                    private long next;
+                    
+                    public int size()
+                    {
+                        return 2;
+                    }
+                    
+                    public float currentScore()
+                    {
+                        return 0;
+                    }
+                    
+                    @Override
+                    protected Long fetchNextOrNull()
+                    {
+                        try
+                        {
+                            Thread.sleep( 300 );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        return next < 2 ? Long.valueOf( next++ ) : null;
+                    }
+                } );
+        while ( hits.hasNext() )
+        {
+            hits.next();
+        }
+        assertEquals( 1, statistics.getSlowQueries().length );
+    }
+    
+    @Test
+    public void histogramPercentilesAreWithinAFactorOfTwo()
+    {
+        IndexStatistics.LatencyHistogram histogram = new IndexStatistics.LatencyHistogram();
+        assertEquals( 0, histogram.percentile( 0.99 ) );
+        for ( int i = 1; i <= 100; i++ )
+        {
+            histogram.record( TimeUnit.MICROSECONDS.toNanos( i * 10 ) );
+        }
+        assertEquals( 100, histogram.count() );
+        assertEquals( 1000, histogram.max() );
+        assertEquals( 505, histogram.mean() );
+        long median = histogram.percentile( 0.5 );
+        assertTrue( median >= 500 && median <= 1000 );
+        assertEquals( 1000, histogram.percentile( 1 ) );
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLookupCache
+{
+    private static final IndexIdentifier INDEX = new IndexIdentifier( LuceneCommand.NODE, null, "index" );
+    private static final IndexIdentifier OTHER_INDEX = new IndexIdentifier( LuceneCommand.NODE, null, "other" );
+    
+    @Test
+    public void admitsLookupsMadeRepeatedly()
+    {
+        Cache cache = new Cache( 1024 * 1024 );
+        assertNull( cache.get( INDEX, "key", "value" ) );
+        assertFalse( cache.shouldCache( INDEX, "key", "value" ) );
+        assertNull( cache.get( INDEX, "key", "value" ) );
+        assertTrue( cache.shouldCache( INDEX, "key", "value" ) );
+        cache.put( INDEX, "key", "value", new long[] { 1, 2 } );
+        assertArrayEquals( new long[] { 1, 2 }, cache.get( INDEX, "key", "value" ) );
+        assertNull( cache.get( OTHER_INDEX, "key", "value" ) );
+    }
+    
+    @Test
+    public void admitsKeysWithCapacityRightAway()
+    {
+        Cache cache = new Cache( 1024 * 1024 );
+        cache.setCapacity( INDEX, "key", 100 );
+        assertEquals( (Integer) 100, cache.getCapacity( INDEX, "key" ) );
+        assertNull( cache.get( INDEX, "key", "value" ) );
+        assertTrue( cache.shouldCache( INDEX, "key", "value" ) );
+    }
+    
+    @Test
+    public void invalidatesValuesKeysAndIndexes()
+    {
+        Cache cache = new Cache( 1024 * 1024 );
+        cache.put( INDEX, "key", "one", new long[] { 1 } );
+        cache.put( INDEX, "key", "two", new long[] { 2 } );
+        cache.put( INDEX, "other", "one", new long[] { 3 } );
+        cache.put( OTHER_INDEX, "key", "one", new long[] { 4 } );
+        
+        cache.invalidate( INDEX, "key", "one" );
+        assertNull( cache.get( INDEX, "key", "one" ) );
+        assertArrayEquals( new long[] { 2 }, cache.get( INDEX, "key", "two" ) );
+        
+        cache.invalidate( INDEX, "key" );
+        assertNull( cache.get( INDEX, "key", "two" ) );
+        assertArrayEquals( new long[] { 3 }, cache.get( INDEX, "other", "one" ) );
+        
+        cache.disable( INDEX );
+        assertNull( cache.get( INDEX, "other", "one" ) );
+        assertArrayEquals( new long[] { 4 }, cache.get( OTHER_INDEX, "key", "one" ) );
+    }
+    
+    @Test
+    public void staysWithinItsMemoryBound()
+    {
+        long maxBytes = 64 * 1024;
+        Cache cache = new Cache( maxBytes );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            cache.put( INDEX, "key", "value" + i, new long[] { i, i + 1, i + 2 } );
+            assertTrue( cache.usedBytes() <= maxBytes );
+        }
+        assertTrue( cache.size() > 0 );
+        assertTrue( cache.size() < 10000 );
+    }
+    
+    @Test
+    public void keepsReferencedEntriesOnEviction()
+    {
+        Cache cache = new Cache( 64 * 1024 );
+        cache.put( INDEX, "key", "hot", new long[] { 0 } );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            assertArrayEquals( new long[] { 0 }, cache.get( INDEX, "key", "hot" ) );
+            cache.put( INDEX, "key", "cold" + i, new long[] { i } );
+        }
+    }
+    
+    @Test
+    public void doesNotCacheLargeResultsOrWhenDisabled()
+    {
+        Cache cache = new Cache( 1024 * 1024 );
+        cache.put( INDEX, "key", "value", new long[Cache.MAX_IDS_PER_ENTRY + 1] );
+        assertNull( cache.get( INDEX, "key", "value" ) );
+        
+        Cache disabled = new Cache( 0 );
+        disabled.setCapacity( INDEX, "key", 100 );
+        assertFalse( disabled.shouldCache( INDEX, "key", "value" ) );
+        disabled.put( INDEX, "key", "value", new long[] { 1 } );
+        assertNull( disabled.get( INDEX, "key", "value" ) );
+    }
+}
@@ -24,6 +24,7 @@ import org.apache.lucene.queryParser.QueryParser.Operator;
 import org.apache.lucene.search.DefaultSimilarity;
 import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.junit.Test;
 import org.neo4j.graphdb.DynamicRelationshipType;
@@ -37,15 +38,22 @@ import org.neo4j.graphdb.index.RelationshipIndex;
 import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.index.Neo4jTestCase;
+import org.neo4j.index.lucene.IndexedRelationship;
+import org.neo4j.index.lucene.LuceneIdIndex;
+import org.neo4j.index.lucene.LuceneRelationshipIndex;
 import org.neo4j.index.lucene.QueryContext;
 import org.neo4j.index.lucene.ValueContext;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
@@ -515,6 +523,49 @@ public class TestLuceneIndex extends AbstractLuceneIndexTest
         index.delete();
     }
 
+    @Test
+    public void testIndexedRelationshipsAreReadFromTheIndex()
+    {
+        LuceneRelationshipIndex index = (LuceneRelationshipIndex) relationshipIndex( "indexed",
+                LuceneIndexImplementation.EXACT_CONFIG );
+
+        RelationshipType type = DynamicRelationshipType.withName( "KNOWS" );
+        Node startNode = graphDb.createNode();
+        Node endNode1 = graphDb.createNode();
+        Node endNode2 = graphDb.createNode();
+        Relationship rel1 = startNode.createRelationshipTo( endNode1, type );
+        Relationship rel2 = startNode.createRelationshipTo( endNode2, type );
+        index.add( rel1, "since", numeric( 2001 ) );
+        index.add( rel2, "since", numeric( 1999 ) );
+        
+        for ( int i = 0; i < 2; i++ )
+        {
+            IndexedRelationship indexed = index.getIndexed( null, null, startNode, endNode2 ).getSingle();
+            assertEquals( rel2.getId(), indexed.getId() );
+            assertEquals( startNode.getId(), indexed.getStartNodeId() );
+            assertEquals( endNode2.getId(), indexed.getEndNodeId() );
+            assertEquals( endNode2.getId(), indexed.getOtherNodeId( startNode.getId() ) );
+            assertEquals( type.name(), indexed.getType().name() );
+            assertEquals( 2, index.queryIndexed( "since", QueryContext.numericRange( "since", 1990, 2010 ),
+                    startNode, null ).size() );
+            restartTx();
+        }
+        
+        QueryContext latest = QueryContext.numericRange( "since", 1990, 2010 ).sort(
+                new Sort( new SortField( "since", SortField.INT, true ) ) ).top( 1 );
+        assertEquals( rel1.getId(), index.queryIndexed( "since", latest, startNode, null ).getSingle().getId() );
+        
+        index.remove( rel1 );
+        assertEquals( rel2.getId(), index.queryIndexed( "since", latest, startNode, null ).getSingle().getId() );
+        
+        rel2.delete();
+        rel1.delete();
+        startNode.delete();
+        endNode1.delete();
+        endNode2.delete();
+        index.delete();
+    }
+
     @Test
     public void testSortByRelevance()
     {
@@ -640,6 +691,98 @@ public class TestLuceneIndex extends AbstractLuceneIndexTest
         assertThat( index.query( NumericRangeQuery.newIntRange( key, 0, 20, false, false ) ), contains( node2 ) );
     }
 
+    @Test
+    public void testNumericIndexType()
+    {
+        Index<Node> index = nodeIndex( "numeric3", LuceneIndexImplementation.NUMERIC_CONFIG );
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        Node node3 = graphDb.createNode();
+        String key = "key";
+        index.add( node1, key, 5 );
+        index.add( node1, key, 25L );
+        index.add( node2, key, "15" );
+        index.add( node3, key, numeric( 2.5d ) );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertThat( index.get( key, 5L ), contains( node1 ) );
+            assertThat( index.get( key, "25" ), contains( node1 ) );
+            assertThat( index.get( key, 15 ), contains( node2 ) );
+            assertThat( index.get( key, 2.5f ), contains( node3 ) );
+            assertThat( index.query( QueryContext.numericRange( key, 10L, 30L ) ), contains( node1, node2 ) );
+            assertThat( index.query( QueryContext.numericRange( key, 1.0d, 3.0d ) ), contains( node3 ) );
+            assertThat( index.query( key, "[10 TO *]" ), contains( node1, node2 ) );
+            assertThat( index.query( key, "{5 TO 16}" ), contains( node2 ) );
+            assertThat( index.query( key, "5" ), contains( node1 ) );
+            restartTx();
+        }
+
+        // The numbers left in a changed document must still be numbers
+        index.remove( node1, key, 5 );
+        index.add( node1, "other", 100 );
+        restartTx();
+        assertThat( index.get( key, 5 ), isEmpty() );
+        assertThat( index.query( QueryContext.numericRange( key, 20L, null ) ), contains( node1 ) );
+        assertThat( index.query( QueryContext.numericRange( "other", 100L, 100L ) ), contains( node1 ) );
+    }
+
+    @Test
+    public void testNumericIndexRangesMatchIntegralAndDecimalValues()
+    {
+        Index<Node> index = nodeIndex( "numeric5", LuceneIndexImplementation.NUMERIC_CONFIG );
+        Node node2 = graphDb.createNode();
+        Node node2_5 = graphDb.createNode();
+        Node node15 = graphDb.createNode();
+        Node node20_25 = graphDb.createNode();
+        String key = "key";
+        index.add( node2, key, 2 );
+        index.add( node2_5, key, 2.5d );
+        index.add( node15, key, 15L );
+        index.add( node20_25, key, "20.25" );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertThat( index.query( QueryContext.numericRange( key, 1, 3 ) ), contains( node2, node2_5 ) );
+            assertThat( index.query( QueryContext.numericRange( key, 1L, 3L ) ), contains( node2, node2_5 ) );
+            assertThat( index.query( QueryContext.numericRange( key, 1.5d, 2.75d ) ), contains( node2, node2_5 ) );
+            assertThat( index.query( QueryContext.numericRange( key, 10L, 20.5d ) ), contains( node15, node20_25 ) );
+            assertThat( index.query( QueryContext.numericRange( key, 2L, 20L, false, true ) ), contains( node2_5, node15 ) );
+            assertThat( index.query( key, "[2 TO 2.5]" ), contains( node2, node2_5 ) );
+            assertThat( index.query( key, "[15.5 TO *]" ), contains( node20_25 ) );
+            assertThat( index.get( key, 2.0d ), contains( node2 ) );
+            assertThat( index.get( key, 15 ), contains( node15 ) );
+            restartTx();
+        }
+    }
+
+    @Test
+    public void testSortedNumericRangeIsInOrder()
+    {
+        Index<Node> index = nodeIndex( "numeric4", LuceneIndexImplementation.NUMERIC_CONFIG );
+        String key = "key";
+        Map<Long, Node> nodes = new HashMap<Long, Node>();
+        for ( long value : new long[] { 40, -3, 17, 1000, 0, 23, 17000, 5 } )
+        {
+            Node node = graphDb.createNode();
+            index.add( node, key, value );
+            nodes.put( value, node );
+        }
+        restartTx();
+
+        Sort sort = new Sort( new SortField( key, SortField.LONG ) );
+        assertContainsInOrder( index.query( QueryContext.numericRange( key, 0L, 1000L ).sort( sort ) ),
+                nodes.get( 0L ), nodes.get( 5L ), nodes.get( 23L ), nodes.get( 40L ), nodes.get( 1000L ) );
+        assertContainsInOrder( index.query( QueryContext.numericRange( key, 0L, 1000L, false, false ).sort( sort ) ),
+                nodes.get( 5L ), nodes.get( 23L ), nodes.get( 40L ) );
+        assertContainsInOrder( index.query( QueryContext.numericRange( key, null, null ).sort( sort ).top( 2 ) ),
+                nodes.get( -3L ), nodes.get( 0L ) );
+        assertThat( index.query( QueryContext.numericRange( key, 24L, 39L ).sort( sort ) ), isEmpty() );
+        assertContainsInOrder( index.query( QueryContext.numericRange( key, 1000L, null ).sort(
+                new Sort( new SortField( key, SortField.LONG, true ) ) ) ),
+                nodes.get( 17000L ), nodes.get( 1000L ) );
+    }
+
     @Test
     public void testIndexNumberAsString()
     {
@@ -899,6 +1042,81 @@ public class TestLuceneIndex extends AbstractLuceneIndexTest
         nodeIndex( name, MapUtil.stringMap( new HashMap<String, String>( config ), "whatever", "something" ) );
     }
     
+    @Test
+    public void testUnsortedHitsAreStreamedWithoutScoresIfAskedFor()
+    {
+        Index<Node> index = nodeIndex( "streamed", LuceneIndexImplementation.EXACT_CONFIG );
+        String key = "group";
+        List<Node> nodes = new ArrayList<Node>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            Node node = graphDb.createNode();
+            index.add( node, key, i % 2 == 0 ? "even" : "odd" );
+            nodes.add( node );
+            if ( i % 10 == 0 )
+            {
+                // More than one segment to stream over
+                restartTx();
+            }
+        }
+        restartTx();
+        
+        IndexHits<Node> hits = index.query( key, new QueryContext( "even" ).tradeCorrectnessForSpeed() );
+        assertEquals( 50, hits.size() );
+        Set<Node> found = new HashSet<Node>();
+        for ( Node node : hits )
+        {
+            assertTrue( Float.isNaN( hits.currentScore() ) );
+            found.add( node );
+        }
+        assertEquals( 50, found.size() );
+        assertEquals( 50, hits.size() );
+        
+        // Hits are scored unless streaming is asked for
+        hits = index.query( key, "even" );
+        for ( Node node : hits )
+        {
+            assertFalse( Float.isNaN( hits.currentScore() ) );
+        }
+        
+        index.remove( nodes.get( 0 ), key, "even" );
+        assertEquals( 49, index.query( key, new QueryContext( "even" ).tradeCorrectnessForSpeed() ).size() );
+        assertEquals( 49, IteratorUtil.count( (Iterator<Node>) index.query(
+                new QueryContext( key + ":even" ).tradeCorrectnessForSpeed() ) ) );
+        assertEquals( 49, IteratorUtil.count( (Iterator<Node>) index.query( key + ":even" ) ) );
+        found.remove( nodes.get( 0 ) );
+        assertEquals( found, IteratorUtil.addToCollection( (Iterator<Node>) index.get( key, "even" ),
+                new HashSet<Node>() ) );
+        
+        for ( Node node : nodes )
+        {
+            node.delete();
+        }
+        index.delete();
+    }
+    
+    @Test
+    public void idsAreReturnedWithoutLoadingTheEntities()
+    {
+        LuceneIdIndex<Node> index = (LuceneIdIndex<Node>) nodeIndex( "ids",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        Node node = graphDb.createNode();
+        index.add( node, "name", "Mattias" );
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertEquals( Long.valueOf( node.getId() ), index.getIds( "name", "Mattias" ).getSingle() );
+            assertEquals( Long.valueOf( node.getId() ), index.queryIds( "name", "Matt*" ).getSingle() );
+            restartTx();
+        }
+        
+        // Still in the index, but not in the store
+        node.delete();
+        restartTx();
+        assertEquals( Long.valueOf( node.getId() ), index.getIds( "name", "Mattias" ).getSingle() );
+        assertNull( index.get( "name", "Mattias" ).getSingle() );
+        index.delete();
+    }
+    
     @Test
     public void testScoring()
     {
@@ -1201,4 +1419,129 @@ public class TestLuceneIndex extends AbstractLuceneIndexTest
             restartTx();
         }
     }
+
+    @Test
+    public void shouldUpdateManyExistingDocumentsInOneTx()
+    {
+        Index<Node> index = nodeIndex( "many-updates", LuceneIndexImplementation.EXACT_CONFIG );
+        Node[] nodes = new Node[1000];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = graphDb.createNode();
+            index.add( nodes[i], "key", "old" );
+        }
+        restartTx();
+
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            if ( i % 2 == 0 )
+            {
+                index.add( nodes[i], "other", "new" );
+            }
+            else
+            {
+                index.remove( nodes[i], "key", "old" );
+            }
+        }
+        restartTx();
+
+        assertEquals( nodes.length / 2, index.get( "key", "old" ).size() );
+        assertEquals( nodes.length / 2, index.get( "other", "new" ).size() );
+        assertEquals( nodes.length / 2, IteratorUtil.count(
+                (Iterator<Node>) index.query( "key:old AND other:new" ) ) );
+    }
+
+    @Test
+    public void shouldMergeChangesIntoExistingDocumentsInSeveralSegments()
+    {
+        Index<Node> index = nodeIndex( "merged-updates", LuceneIndexImplementation.EXACT_CONFIG );
+        Node[] nodes = new Node[500];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = graphDb.createNode();
+            index.add( nodes[i], "key", "old" );
+            if ( i % 50 == 49 )
+            {
+                restartTx();
+                // Reopens the searcher, so that the documents end up in several segments
+                assertEquals( i + 1, index.get( "key", "old" ).size() );
+            }
+        }
+
+        for ( Node node : nodes )
+        {
+            index.add( node, "other", "new" );
+        }
+        restartTx();
+
+        LuceneIndex<Node> luceneIndex = (LuceneIndex<Node>) index;
+        IndexSearcherRef searcher = luceneIndex.service.dataSource().getIndexSearcher(
+                luceneIndex.getIdentifier(), true );
+        try
+        {
+            assertEquals( nodes.length, searcher.getSearcher().getIndexReader().numDocs() );
+        }
+        finally
+        {
+            searcher.closeStrict();
+        }
+        assertEquals( nodes.length, IteratorUtil.count(
+                (Iterator<Node>) index.query( "key:old AND other:new" ) ) );
+    }
+
+    @Test
+    public void lookupsWithTooManyHitsToCacheReturnThemAll()
+    {
+        Index<Node> index = nodeIndex( "many-hits", LuceneIndexImplementation.EXACT_CONFIG );
+        int count = Cache.MAX_IDS_PER_ENTRY + 10;
+        for ( int i = 0; i < count; i++ )
+        {
+            index.add( graphDb.createNode(), "key", "value" );
+        }
+        restartTx();
+        
+        for ( int i = 0; i < Cache.ADMISSION_FREQUENCY + 2; i++ )
+        {
+            IndexHits<Node> hits = index.get( "key", "value" );
+            assertEquals( count, hits.size() );
+            assertEquals( count, IteratorUtil.count( (Iterator<Node>) hits ) );
+        }
+    }
+
+    @Test
+    public void cachedLookupsSeeCommittedChanges()
+    {
+        Index<Node> index = nodeIndex( "cached-lookups", LuceneIndexImplementation.EXACT_CONFIG );
+        Node first = graphDb.createNode();
+        Node second = graphDb.createNode();
+        index.add( first, "name", "Mattias" );
+        index.add( first, "title", "Hacker" );
+        restartTx();
+        
+        for ( int i = 0; i < Cache.ADMISSION_FREQUENCY + 1; i++ )
+        {
+            assertThat( index.get( "name", "Mattias" ), contains( first ) );
+            assertThat( index.get( "title", "Hacker" ), contains( first ) );
+            assertThat( index.get( "name", "Johan" ), isEmpty() );
+        }
+        
+        index.add( second, "name", "Mattias" );
+        index.add( second, "name", "Johan" );
+        assertThat( index.get( "name", "Mattias" ), contains( first, second ) );
+        restartTx();
+        assertThat( index.get( "name", "Mattias" ), contains( first, second ) );
+        assertThat( index.get( "name", "Johan" ), contains( second ) );
+        
+        index.remove( first, "name", "Mattias" );
+        assertThat( index.get( "name", "Mattias" ), contains( second ) );
+        restartTx();
+        assertThat( index.get( "name", "Mattias" ), contains( second ) );
+        
+        index.remove( second, "name" );
+        index.remove( first );
+        restartTx();
+        assertThat( index.get( "name", "Mattias" ), isEmpty() );
+        assertThat( index.get( "name", "Johan" ), isEmpty() );
+        assertThat( index.get( "title", "Hacker" ), isEmpty() );
+    }
 }
@@ -20,9 +20,12 @@
 package org.neo4j.server.rest.repr;
 
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.helpers.collection.IterableWrapper;
 import org.neo4j.helpers.collection.PrefetchingIterator;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -30,18 +33,37 @@ import java.util.Iterator;
 public final class ListRepresentation extends Representation
 {
     private final Iterable<? extends Representation> content;
+    private final IndexHits<?> hits;
 
     public ListRepresentation( final String type, final Iterable<? extends Representation> content )
     {
         super( type );
         this.content = content;
+        this.hits = null;
     }
 
     public ListRepresentation( RepresentationType type,
             final Iterable<? extends Representation> content )
+    {
+        this( type, content, null );
+    }
+
+    private ListRepresentation( RepresentationType type,
+            Iterable<? extends Representation> content, IndexHits<?> hits )
     {
         super( type );
         this.content = content;
+        this.hits = hits;
+    }
+
+    /**
+     * @return this list, which closes {@code hits} when it has been written,
+     * so that a client going away or a failure while writing doesn't keep
+     * them open until they are garbage collected.
+     */
+    public ListRepresentation closing( IndexHits<?> hits )
+    {
+        return new ListRepresentation( type, content, hits );
     }
 
     @Override
@@ -53,6 +75,15 @@ public final class ListRepresentation extends Representation
         return format.complete( writer );
     }
 
+    @Override
+    void serialize( StreamingFormat format, URI baseUri, ExtensionInjector extensions,
+            OutputStream output ) throws IOException
+    {
+        ListWriter writer = format.serializeList( type, output );
+        serialize( new ListSerializer( writer, baseUri, extensions ) );
+        writer.done();
+    }
+
     void serialize( ListSerializer serializer )
     {
         for ( Representation repr : content )
@@ -61,6 +92,15 @@ public final class ListRepresentation extends Representation
         }
     }
 
+    @Override
+    void close()
+    {
+        if ( hits != null )
+        {
+            hits.close();
+        }
+    }
+
     @Override
     void addTo( ListSerializer serializer )
     {
@@ -126,6 +166,19 @@ public final class ListRepresentation extends Representation
         } );
     }
 
+    public static ListRepresentation numbers( Iterable<Long> values )
+    {
+        return new ListRepresentation( RepresentationType.LONG, new IterableWrapper<Representation, Long>(
+                values )
+        {
+            @Override
+            protected Representation underlyingObjectToObject( Long value )
+            {
+                return ValueRepresentation.number( value.longValue() );
+            }
+        } );
+    }
+
     public static ListRepresentation numbers( final double[] values )
     {
         return new ListRepresentation( RepresentationType.DOUBLE,
@@ -19,6 +19,8 @@
  */
 package org.neo4j.server.rest.repr;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.Map;
 
@@ -44,6 +46,16 @@ public abstract class MappingRepresentation extends Representation
         return format.complete( writer );
     }
 
+    @Override
+    void serialize( StreamingFormat format, URI baseUri, ExtensionInjector extensions,
+            OutputStream output ) throws IOException
+    {
+        MappingWriter writer = format.serializeMapping( type, output );
+        Serializer.injectExtensions( writer, this, baseUri, extensions );
+        serialize( new MappingSerializer( writer, baseUri, extensions ) );
+        writer.done();
+    }
+
     protected abstract void serialize( MappingSerializer serializer );
 
     @Override
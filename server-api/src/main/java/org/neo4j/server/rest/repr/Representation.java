@@ -19,6 +19,8 @@
  */
 package org.neo4j.server.rest.repr;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 
 public abstract class Representation
@@ -75,6 +77,25 @@ public abstract class Representation
     abstract String serialize( RepresentationFormat format, URI baseUri,
             ExtensionInjector extensions ) ;
 
+    /**
+     * Writes this representation to {@code output}. Lists and mappings
+     * override this to write their content as it is serialized, other
+     * representations are small enough to be written in one go.
+     */
+    void serialize( StreamingFormat format, URI baseUri, ExtensionInjector extensions,
+            OutputStream output ) throws IOException
+    {
+        output.write( serialize( format, baseUri, extensions ).getBytes( format.getCharset() ) );
+    }
+
+    /**
+     * Releases what the content of this representation holds on to, once
+     * it has been written, whether it was written to the end or not.
+     */
+    void close()
+    {
+    }
+
     abstract void addTo( ListSerializer serializer );
 
     abstract void putTo( MappingSerializer serializer, String key );
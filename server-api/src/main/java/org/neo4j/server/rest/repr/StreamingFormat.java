@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * A {@link RepresentationFormat} that can write a representation directly to
+ * an {@link OutputStream} while it is being serialized. Lists are written one
+ * element at a time as the underlying {@link Iterable} is iterated, so the
+ * response never has to be held in memory as a whole.
+ *
+ * Implementations of this class must be stateless, all state of a
+ * serialization lives in the writers returned for a stream.
+ */
+public abstract class StreamingFormat extends RepresentationFormat
+{
+    public StreamingFormat( MediaType mediaType )
+    {
+        super( mediaType );
+    }
+
+    ListWriter serializeList( RepresentationType type, OutputStream output ) throws IOException
+    {
+        if ( type.listName == null )
+            throw new IllegalStateException( "Invalid list type: " + type );
+        return serializeList( type.listName, output );
+    }
+
+    /**
+     * Returns a writer that writes the list to {@code output} as elements are
+     * added. When the writer is {@link ListWriter#done() done} the list must
+     * have been completely written and flushed.
+     */
+    protected abstract ListWriter serializeList( String type, OutputStream output )
+            throws IOException;
+
+    MappingWriter serializeMapping( RepresentationType type, OutputStream output )
+            throws IOException
+    {
+        return serializeMapping( type.valueName, output );
+    }
+
+    /**
+     * Returns a writer that writes the mapping to {@code output} as entries
+     * are added. When the writer is {@link MappingWriter#done() done} the
+     * mapping must have been completely written and flushed.
+     */
+    protected abstract MappingWriter serializeMapping( String type, OutputStream output )
+            throws IOException;
+
+    /**
+     * The character encoding used for what is written to the stream.
+     */
+    protected String getCharset()
+    {
+        return "UTF-8";
+    }
+}
@@ -24,6 +24,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -171,7 +172,7 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer {
 
         log.info("Starting Neo Server on port [%s]", webServerPort);
         webServer.setPort(webServerPort);
-
+        setRequestLimits();
 
         try {
             webServer.start();
@@ -181,6 +182,28 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer {
         }
     }
 
+    private void setRequestLimits() {
+        Configuration configuration = configurator.configuration();
+        int maxConcurrentRequests = configuration.getInt(Configurator.WEBSERVER_LIMIT_CONCURRENT_REQUESTS_PROPERTY_KEY, 0);
+        if (maxConcurrentRequests <= 0) {
+            return;
+        }
+        Map<String, Integer> endpointLimits = new LinkedHashMap<String, Integer>();
+        for (String endpointLimit : configuration.getStringArray(Configurator.WEBSERVER_LIMIT_ENDPOINTS_PROPERTY_KEY)) {
+            String[] nameAndLimit = endpointLimit.split(":");
+            if (nameAndLimit.length != 2) {
+                log.warn("Ignoring endpoint limit [%s], expected <endpoint>:<limit>", endpointLimit);
+                continue;
+            }
+            endpointLimits.put(nameAndLimit[0].trim(), Integer.valueOf(nameAndLimit[1].trim()));
+        }
+        log.info("Limiting concurrent requests to [%d], endpoint limits %s", maxConcurrentRequests, endpointLimits);
+        webServer.setRequestLimits(maxConcurrentRequests,
+                configuration.getInt(Configurator.WEBSERVER_LIMIT_QUEUED_REQUESTS_PROPERTY_KEY, Configurator.DEFAULT_WEBSERVER_LIMIT_QUEUED_REQUESTS),
+                configuration.getLong(Configurator.WEBSERVER_LIMIT_MAX_WAIT_PROPERTY_KEY, Configurator.DEFAULT_WEBSERVER_LIMIT_MAX_WAIT),
+                endpointLimits);
+    }
+
     protected int getWebServerPort() {
         return configurator.configuration().getInt(Configurator.WEBSERVER_PORT_PROPERTY_KEY, Configurator.DEFAULT_WEBSERVER_PORT);
     }
@@ -35,6 +35,18 @@ public interface Configurator {
     int DEFAULT_WEBSERVER_PORT = 7474;
     String WEBSERVER_PORT_PROPERTY_KEY = "org.neo4j.server.webserver.port";
 
+    String WEBSERVER_LIMIT_CONCURRENT_REQUESTS_PROPERTY_KEY = "org.neo4j.server.webserver.limit.concurrent_requests";
+    String WEBSERVER_LIMIT_QUEUED_REQUESTS_PROPERTY_KEY = "org.neo4j.server.webserver.limit.queued_requests";
+    String WEBSERVER_LIMIT_MAX_WAIT_PROPERTY_KEY = "org.neo4j.server.webserver.limit.max_wait_ms";
+    String WEBSERVER_LIMIT_ENDPOINTS_PROPERTY_KEY = "org.neo4j.server.webserver.limit.endpoints";
+    int DEFAULT_WEBSERVER_LIMIT_QUEUED_REQUESTS = 1000;
+    long DEFAULT_WEBSERVER_LIMIT_MAX_WAIT = 30000;
+
+    String WEBSERVER_HTTP_CACHE_ENTRIES_PROPERTY_KEY = "org.neo4j.server.webserver.http_cache.entries";
+    String WEBSERVER_HTTP_CACHE_MAX_ENTRY_SIZE_PROPERTY_KEY = "org.neo4j.server.webserver.http_cache.max_entry_size";
+    int DEFAULT_WEBSERVER_HTTP_CACHE_ENTRIES = 0;
+    int DEFAULT_WEBSERVER_HTTP_CACHE_MAX_ENTRY_SIZE = 64 * 1024;
+
     String DATA_API_PATH_PROPERTY_KEY = "org.neo4j.server.webadmin.data.uri";
     String DATA_API_PACKAGE = "org.neo4j.server.rest.web";
     String DEFAULT_DATA_API_PATH = "/db/data";
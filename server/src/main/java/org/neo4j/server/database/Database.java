@@ -28,7 +28,9 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.graphdb.index.RelationshipIndex;
 import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 import org.neo4j.server.logging.Logger;
+import org.neo4j.server.rest.paging.TraversalCursors;
 import org.rrd4j.core.RrdDb;
 
 public class Database
@@ -39,6 +41,7 @@ public class Database
 
     private final String databaseStoreDirectory;
     private RrdDb rrdDb;
+    private final TraversalCursors traversalCursors = new TraversalCursors();
 
     public Database( AbstractGraphDatabase db )
     {
@@ -147,6 +150,34 @@ public class Database
 
 
 
+    public TraversalCursors getTraversalCursors()
+    {
+        return traversalCursors;
+    }
+
+    /**
+     * @return a number that grows with every transaction committed to the
+     * database, the sum of the last committed transaction ids of its data
+     * sources. Data sources that don't keep track of transaction ids are
+     * left out.
+     */
+    public long getLastCommittedTxVersion()
+    {
+        long version = 0;
+        for ( XaDataSource dataSource : graph.getConfig().getTxModule().getXaDataSourceManager().getAllRegisteredDataSources() )
+        {
+            try
+            {
+                version += dataSource.getLastCommittedTxId();
+            }
+            catch ( UnsupportedOperationException e )
+            {
+                // not versioned, changes to it can't be detected
+            }
+        }
+        return version;
+    }
+
     public IndexManager getIndexManager()
     {
         return graph.index();
@@ -21,18 +21,27 @@ package org.neo4j.server.modules;
 
 import static org.neo4j.server.JAXRSHelper.listFrom;
 
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.configuration.Configuration;
 import org.neo4j.server.NeoServerWithEmbeddedWebServer;
 import org.neo4j.server.configuration.Configurator;
 import org.neo4j.server.logging.Logger;
 import org.neo4j.server.plugins.PluginManager;
+import org.neo4j.server.rest.domain.ScriptCache;
+import org.neo4j.server.rest.web.HttpCacheFilter;
 
 public class RESTApiModule implements ServerModule
 {
 
     private static final Logger log = Logger.getLogger( RESTApiModule.class );
+    private static final String SCRIPT_CACHE_BEAN_NAME = "org.neo4j.server:type=ScriptCache";
     private PluginManager plugins;
 
     public void start( NeoServerWithEmbeddedWebServer neoServer )
@@ -43,7 +52,9 @@ public class RESTApiModule implements ServerModule
 
             neoServer.getWebServer().addJAXRSPackages( listFrom( new String[] { Configurator.DATA_API_PACKAGE } ),
                     restApiUri.toString() );
+            addHttpCache( neoServer, restApiUri );
             loadPlugins( neoServer );
+            registerScriptCacheBean();
 
             log.info( "Mounted REST API at [%s]", restApiUri.toString() );
         }
@@ -55,7 +66,52 @@ public class RESTApiModule implements ServerModule
 
     public void stop()
     {
-        // Do nothing.
+        unregisterScriptCacheBean();
+    }
+
+    private void addHttpCache( NeoServerWithEmbeddedWebServer neoServer, URI restApiUri )
+    {
+        Configuration configuration = neoServer.getConfiguration();
+        neoServer.getWebServer().addFilter( new HttpCacheFilter( neoServer.getDatabase(),
+                configuration.getInt( Configurator.WEBSERVER_HTTP_CACHE_ENTRIES_PROPERTY_KEY,
+                        Configurator.DEFAULT_WEBSERVER_HTTP_CACHE_ENTRIES ),
+                configuration.getInt( Configurator.WEBSERVER_HTTP_CACHE_MAX_ENTRY_SIZE_PROPERTY_KEY,
+                        Configurator.DEFAULT_WEBSERVER_HTTP_CACHE_MAX_ENTRY_SIZE ) ),
+                restApiUri.toString() );
+    }
+
+    private void registerScriptCacheBean()
+    {
+        try
+        {
+            MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName( SCRIPT_CACHE_BEAN_NAME );
+            if ( !beanServer.isRegistered( name ) )
+            {
+                beanServer.registerMBean( ScriptCache.shared(), name );
+            }
+        }
+        catch ( JMException e )
+        {
+            log.warn( "Unable to register script cache statistics: %s", e.getMessage() );
+        }
+    }
+
+    private void unregisterScriptCacheBean()
+    {
+        try
+        {
+            MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName( SCRIPT_CACHE_BEAN_NAME );
+            if ( beanServer.isRegistered( name ) )
+            {
+                beanServer.unregisterMBean( name );
+            }
+        }
+        catch ( JMException e )
+        {
+            log.warn( "Unable to unregister script cache statistics: %s", e.getMessage() );
+        }
     }
 
     private URI restApiUri( NeoServerWithEmbeddedWebServer neoServer ) throws URISyntaxException
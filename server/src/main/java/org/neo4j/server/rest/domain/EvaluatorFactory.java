@@ -21,12 +21,7 @@ package org.neo4j.server.rest.domain;
 
 import java.util.Map;
 
-import javax.script.Compilable;
-import javax.script.CompiledScript;
 import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
 import javax.script.SimpleScriptContext;
 
 import org.neo4j.graphdb.Path;
@@ -55,8 +50,7 @@ abstract class EvaluatorFactory
         }
         else
         {
-            return new ScriptedPruneEvaluator( scriptEngine( description ),
-                    (String) description.get( KEY_BODY ) );
+            return new ScriptedPruneEvaluator( script( description ) );
         }
     }
 
@@ -68,8 +62,7 @@ abstract class EvaluatorFactory
         }
         else
         {
-            return new ScriptedReturnEvaluator( scriptEngine( description ),
-                    (String) description.get( KEY_BODY ) );
+            return new ScriptedReturnEvaluator( script( description ) );
         }
     }
 
@@ -112,147 +105,57 @@ abstract class EvaluatorFactory
         }
     }
 
-    private static ScriptEngine scriptEngine( Map<String, Object> description )
+    private static ScriptCache.Script script( Map<String, Object> description )
     {
-        String language = (String) description.get( KEY_LANGUAGE );
-        ScriptEngine engine = new ScriptEngineManager().getEngineByName( language );
-        if ( engine == null )
-        {
-            throw new EvaluationException( "Unknown script language '" + language + "'" );
-        }
-        return engine;
+        return ScriptCache.shared().get( (String) description.get( KEY_LANGUAGE ),
+                (String) description.get( KEY_BODY ) );
     }
 
     /**
-     * An abstract for {@link ScriptEngine} and {@link CompiledScript}. They
-     * have no common interface... other than this one.
+     * Evaluates a cached script with a context of its own, so that the
+     * script can be shared with evaluators used by other threads.
      */
-    private static abstract class ScriptExecutor
-    {
-        abstract Object eval( Path position );
-    }
-
-    private static class EvalScriptExecutor extends ScriptExecutor
-    {
-        private final ScriptEngine script;
-        private final String body;
-
-        EvalScriptExecutor( ScriptEngine script, String body )
-        {
-            this.script = script;
-            this.body = body;
-        }
-
-        @Override
-        Object eval( Path position )
-        {
-            try
-            {
-                this.script.getContext().setAttribute( "position", position,
-                        ScriptContext.ENGINE_SCOPE );
-                return this.script.eval( body );
-            }
-            catch ( ScriptException e )
-            {
-                throw new EvaluationException( e );
-            }
-        }
-    }
-
-    private static class CompiledScriptExecutor extends ScriptExecutor
-    {
-        private final CompiledScript script;
-        private final ScriptContext context;
-
-        CompiledScriptExecutor( CompiledScript script, ScriptContext context )
-        {
-            this.script = script;
-            this.context = context;
-        }
-
-        @Override
-        Object eval( Path position )
-        {
-            try
-            {
-                this.context.setAttribute( "position", position, ScriptContext.ENGINE_SCOPE );
-                return this.script.eval( this.context );
-            }
-            catch ( ScriptException e )
-            {
-                throw new EvaluationException( e );
-            }
-        }
-    }
-
     private static abstract class ScriptedEvaluator
     {
-        private final ScriptEngine engine;
-        private final String body;
-        private ScriptExecutor executor;
+        private final ScriptCache.Script script;
+        private final ScriptContext context = new SimpleScriptContext();
 
-        ScriptedEvaluator( ScriptEngine engine, String body )
+        ScriptedEvaluator( ScriptCache.Script script )
         {
-            this.engine = engine;
-            this.body = body;
+            this.script = script;
         }
 
-        protected ScriptExecutor executor( Path position )
+        protected Object eval( Path position )
         {
-            // We'll have to decide between evaluated script or compiled script
-            // the first time we execute it, else the compiled script can't be
-            // compiled (since position must be a valid object).
-            if ( this.executor == null )
-            {
-                try
-                {
-                    ScriptContext context = new SimpleScriptContext();
-                    context.setAttribute( "position", position, ScriptContext.ENGINE_SCOPE );
-                    this.engine.setContext( context );
-                    if ( this.engine instanceof Compilable )
-                    {
-                        this.executor = new CompiledScriptExecutor(
-                                ((Compilable) engine).compile( body ), context );
-                    }
-                    else
-                    {
-                        this.executor = new EvalScriptExecutor( engine, body );
-                    }
-                    return executor;
-                }
-                catch ( ScriptException e )
-                {
-                    throw new EvaluationException( e );
-                }
-            }
-            return this.executor;
+            context.setAttribute( "position", position, ScriptContext.ENGINE_SCOPE );
+            return script.eval( context );
         }
     }
 
     private static class ScriptedPruneEvaluator extends ScriptedEvaluator implements PruneEvaluator
     {
-        ScriptedPruneEvaluator( ScriptEngine engine, String body )
+        ScriptedPruneEvaluator( ScriptCache.Script script )
         {
-            super( engine, body );
+            super( script );
         }
 
         public boolean pruneAfter( Path position )
         {
-            return (Boolean) executor( position ).eval( position );
+            return (Boolean) eval( position );
         }
     }
 
     private static class ScriptedReturnEvaluator extends ScriptedEvaluator implements
             Predicate<Path>
     {
-        ScriptedReturnEvaluator( ScriptEngine engine, String body )
+        ScriptedReturnEvaluator( ScriptCache.Script script )
         {
-            super( engine, body );
+            super( script );
         }
 
         public boolean accept( Path position )
         {
-            return (Boolean) this.executor( position ).eval( position );
+            return (Boolean) eval( position );
         }
     }
 }
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.domain;
+
+import java.util.Iterator;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.index.lucene.QueryContext;
+
+/**
+ * An index query together with the page of hits to return. The limit and
+ * the ordering are handed to the index, through a {@link QueryContext}, so
+ * that only the top hits of the page are collected and loaded; the hits
+ * before the page are skipped as they are read.
+ * <p>
+ * The ordering is a comma separated list of keys, where a key with a "-"
+ * in front of it sorts in descending order, f.ex. "name,-age".
+ */
+public class IndexQuery
+{
+    private final String query;
+    private final int limit;
+    private final int skip;
+    private final String sort;
+
+    /**
+     * @param limit the maximum number of hits to return, or 0 for all.
+     * @param skip the number of hits before the returned ones.
+     * @param sort the keys to order by, or {@code null} for the order of
+     * the index.
+     */
+    public IndexQuery( String query, int limit, int skip, String sort )
+    {
+        if ( limit < 0 )
+        {
+            throw new IllegalArgumentException( "Limit must not be negative, was " + limit );
+        }
+        if ( skip < 0 )
+        {
+            throw new IllegalArgumentException( "Skip must not be negative, was " + skip );
+        }
+        this.query = query;
+        this.limit = limit;
+        this.skip = skip;
+        this.sort = sort == null || sort.trim().length() == 0 ? null : sort;
+    }
+
+    /**
+     * @return what to pass to {@code Index.query(key, ...)}.
+     */
+    public Object queryObject()
+    {
+        if ( limit == 0 && sort == null )
+        {
+            return query;
+        }
+        QueryContext context = new QueryContext( query );
+        if ( limit > 0 )
+        {
+            context.top( skip + limit );
+        }
+        if ( sort != null )
+        {
+            context.sort( sorting( sort ) );
+        }
+        return context;
+    }
+
+    /**
+     * @return the hits of the page, read lazily. The hits are closed when
+     * the page has been read.
+     */
+    public <T> Iterable<T> page( final IndexHits<T> hits )
+    {
+        return new Iterable<T>()
+        {
+            public Iterator<T> iterator()
+            {
+                return new PrefetchingIterator<T>()
+                {
+                    private int position;
+                    private boolean closed;
+
+                    @Override
+                    protected T fetchNextOrNull()
+                    {
+                        if ( closed )
+                        {
+                            return null;
+                        }
+                        while ( position < skip && hits.hasNext() )
+                        {
+                            hits.next();
+                            position++;
+                        }
+                        if ( ( limit > 0 && position >= skip + limit ) || !hits.hasNext() )
+                        {
+                            hits.close();
+                            closed = true;
+                            return null;
+                        }
+                        position++;
+                        return hits.next();
+                    }
+                };
+            }
+        };
+    }
+
+    private static Sort sorting( String sort )
+    {
+        String[] keys = sort.split( "," );
+        SortField[] fields = new SortField[keys.length];
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            String key = keys[i].trim();
+            boolean descending = key.startsWith( "-" );
+            fields[i] = new SortField( descending ? key.substring( 1 ) : key, SortField.STRING,
+                    descending );
+        }
+        return new Sort( fields );
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Bounded, least recently used cache of scripts keyed by language and body,
+ * so that a script sent with many traversal requests is compiled only once.
+ * A cached script holds no state of its own between evaluations: each
+ * evaluation gets the {@link ScriptContext} of its caller, so a script can
+ * be shared between threads.
+ */
+public class ScriptCache implements ScriptCacheMBean
+{
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final ScriptCache SHARED = new ScriptCache( DEFAULT_MAX_SIZE );
+
+    private final int maxSize;
+    private final Map<String, Script> scripts;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compileTimeNanos = new AtomicLong();
+
+    @SuppressWarnings( "serial" )
+    public ScriptCache( final int maxSize )
+    {
+        this.maxSize = maxSize;
+        this.scripts = new LinkedHashMap<String, Script>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Script> eldest )
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cache used for the scripts of REST traversals.
+     */
+    public static ScriptCache shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * @return the compiled script for {@code body}, compiling it if it
+     * isn't in the cache.
+     */
+    public Script get( String language, String body )
+    {
+        String key = language + ":" + body;
+        Script script;
+        synchronized ( scripts )
+        {
+            script = scripts.get( key );
+        }
+        if ( script != null )
+        {
+            hits.incrementAndGet();
+            return script;
+        }
+        misses.incrementAndGet();
+        // compiled outside of the lock, concurrent misses for the same
+        // script just compile it more than once
+        long start = System.nanoTime();
+        script = compile( language, body );
+        compileTimeNanos.addAndGet( System.nanoTime() - start );
+        synchronized ( scripts )
+        {
+            scripts.put( key, script );
+        }
+        return script;
+    }
+
+    private static Script compile( String language, String body )
+    {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName( language );
+        if ( engine == null )
+        {
+            throw new EvaluationException( "Unknown script language '" + language + "'" );
+        }
+        boolean threadSafe = engine.getFactory().getParameter( "THREADING" ) != null;
+        if ( engine instanceof Compilable )
+        {
+            try
+            {
+                return new CompiledScriptWrapper( ( (Compilable) engine ).compile( body ),
+                        threadSafe );
+            }
+            catch ( ScriptException e )
+            {
+                throw new EvaluationException( e );
+            }
+        }
+        return new InterpretedScript( engine, body, threadSafe );
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getCompileTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( compileTimeNanos.get() );
+    }
+
+    public int getSize()
+    {
+        synchronized ( scripts )
+        {
+            return scripts.size();
+        }
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * A script ready to be evaluated. Evaluations are serialized for script
+     * engines that don't declare themselves thread safe.
+     */
+    public static abstract class Script
+    {
+        private final boolean threadSafe;
+
+        Script( boolean threadSafe )
+        {
+            this.threadSafe = threadSafe;
+        }
+
+        public Object eval( ScriptContext context )
+        {
+            try
+            {
+                if ( threadSafe )
+                {
+                    return doEval( context );
+                }
+                synchronized ( this )
+                {
+                    return doEval( context );
+                }
+            }
+            catch ( ScriptException e )
+            {
+                throw new EvaluationException( e );
+            }
+        }
+
+        abstract Object doEval( ScriptContext context ) throws ScriptException;
+    }
+
+    private static class CompiledScriptWrapper extends Script
+    {
+        private final CompiledScript script;
+
+        CompiledScriptWrapper( CompiledScript script, boolean threadSafe )
+        {
+            super( threadSafe );
+            this.script = script;
+        }
+
+        @Override
+        Object doEval( ScriptContext context ) throws ScriptException
+        {
+            return script.eval( context );
+        }
+    }
+
+    private static class InterpretedScript extends Script
+    {
+        private final ScriptEngine engine;
+        private final String body;
+
+        InterpretedScript( ScriptEngine engine, String body, boolean threadSafe )
+        {
+            super( threadSafe );
+            this.engine = engine;
+            this.body = body;
+        }
+
+        @Override
+        Object doEval( ScriptContext context ) throws ScriptException
+        {
+            return engine.eval( body, context );
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.paging;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.neo4j.graphdb.Path;
+
+/**
+ * A traversal kept alive between requests, handing out its result one page
+ * at a time. The underlying iterator is advanced lazily, so only the
+ * positions of the page being returned are ever held in memory.
+ */
+public class PagedTraverser
+{
+    private final Iterator<Path> positions;
+    private final int pageSize;
+    private final long leaseMillis;
+    private volatile long expiresAt;
+
+    public PagedTraverser( Iterable<Path> traverser, int pageSize, long leaseMillis )
+    {
+        if ( pageSize < 1 )
+        {
+            throw new IllegalArgumentException( "Page size must be positive, was " + pageSize );
+        }
+        this.positions = traverser.iterator();
+        this.pageSize = pageSize;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * @return the next page of at most the page size positions, or
+     * {@code null} if the traversal has been exhausted.
+     */
+    public synchronized List<Path> nextPage()
+    {
+        if ( !positions.hasNext() )
+        {
+            return null;
+        }
+        List<Path> page = new ArrayList<Path>( pageSize );
+        while ( page.size() < pageSize && positions.hasNext() )
+        {
+            page.add( positions.next() );
+        }
+        return page;
+    }
+
+    void renewLease( long now )
+    {
+        expiresAt = now + leaseMillis;
+    }
+
+    boolean isExpired( long now )
+    {
+        return now > expiresAt;
+    }
+}
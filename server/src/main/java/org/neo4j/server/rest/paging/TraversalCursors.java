@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.paging;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded in-memory store of {@link PagedTraverser}s, keyed by an id that is
+ * handed out to clients as part of the cursor URI. A traverser is evicted
+ * when its lease runs out without being used, or when the store is full and
+ * it is the least recently used one.
+ */
+public class TraversalCursors
+{
+    public static final int DEFAULT_MAX_CURSORS = 1000;
+
+    private final Map<String, PagedTraverser> cursors;
+
+    public TraversalCursors()
+    {
+        this( DEFAULT_MAX_CURSORS );
+    }
+
+    @SuppressWarnings( "serial" )
+    public TraversalCursors( final int maxCursors )
+    {
+        this.cursors = new LinkedHashMap<String, PagedTraverser>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, PagedTraverser> eldest )
+            {
+                return size() > maxCursors;
+            }
+        };
+    }
+
+    /**
+     * @return the id the traverser can later be looked up with.
+     */
+    public synchronized String add( PagedTraverser traverser )
+    {
+        long now = currentTimeMillis();
+        evictExpired( now );
+        String id = UUID.randomUUID().toString().replace( "-", "" );
+        traverser.renewLease( now );
+        cursors.put( id, traverser );
+        return id;
+    }
+
+    /**
+     * Looks up a traverser and renews its lease.
+     *
+     * @return the traverser, or {@code null} if there is no such id or its
+     * lease has run out.
+     */
+    public synchronized PagedTraverser get( String id )
+    {
+        long now = currentTimeMillis();
+        evictExpired( now );
+        PagedTraverser traverser = cursors.get( id );
+        if ( traverser != null )
+        {
+            traverser.renewLease( now );
+        }
+        return traverser;
+    }
+
+    public synchronized boolean remove( String id )
+    {
+        return cursors.remove( id ) != null;
+    }
+
+    public synchronized int size()
+    {
+        return cursors.size();
+    }
+
+    private void evictExpired( long now )
+    {
+        for ( Iterator<PagedTraverser> iterator = cursors.values().iterator(); iterator.hasNext(); )
+        {
+            if ( iterator.next().isExpired( now ) )
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.neo4j.server.rest.repr;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 
@@ -27,6 +29,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 public class OutputFormat
 {
@@ -42,6 +45,15 @@ public class OutputFormat
         this.extensions = extensions;
     }
 
+    /**
+     * @return an output format which writes with {@code format} instead,
+     * with the same base URI and extensions as this one.
+     */
+    public OutputFormat withFormat( RepresentationFormat format )
+    {
+        return new OutputFormat( format, baseUri, extensions );
+    }
+
     public final Response ok( Representation representation )
     {
         if ( representation.isEmpty() ) return noContent();
@@ -54,6 +66,11 @@ public class OutputFormat
         return response( Response.created( uri( representation ) ), representation );
     }
 
+    public final Response created( URI location, Representation representation )
+    {
+        return response( Response.created( location ), representation );
+    }
+
     public final Response response( Status status, Representation representation ) throws BadInputException
     {
         return response( Response.status( status ), representation );
@@ -93,9 +110,35 @@ public class OutputFormat
         return URI.create( format( representation.selfUri() ) );
     }
 
-    protected Response response( ResponseBuilder response, Representation representation )
+    protected Response response( ResponseBuilder response, final Representation representation )
     {
-        String entity = format( representation );
+        if ( format instanceof StreamingFormat )
+        {
+            return response.entity( new StreamingOutput()
+            {
+                public void write( OutputStream output ) throws IOException
+                {
+                    try
+                    {
+                        representation.serialize( (StreamingFormat) format, baseUri, extensions,
+                                output );
+                    }
+                    finally
+                    {
+                        representation.close();
+                    }
+                }
+            } ).header( HttpHeaders.CONTENT_ENCODING, UTF8 ).type( getMediaType() ).build();
+        }
+        String entity;
+        try
+        {
+            entity = format( representation );
+        }
+        finally
+        {
+            representation.close();
+        }
         byte[] entityAsBytes;
         try
         {
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The encoding of {@link BinaryFormat}. Every value starts with a one byte
+ * tag. Strings are written as their length followed by their UTF-8 bytes,
+ * numbers in big-endian binary. Lists and mappings are written as their
+ * elements, mapping entries prefixed by their key, followed by an end tag,
+ * so that they can be written before their size is known.
+ * <p>
+ * References to nodes and relationships are written as their id, and read
+ * back as the relative path of the entity, f.ex. {@code node/12}.
+ */
+final class BinaryEncoding
+{
+    static final String CHARSET = "ISO-8859-1";
+
+    static final int MAPPING = 'M';
+    static final int LIST = 'L';
+    static final int END = 'E';
+    static final int STRING = 'S';
+    static final int INT = 'i';
+    static final int LONG = 'I';
+    static final int DOUBLE = 'D';
+    static final int TRUE = 'T';
+    static final int FALSE = 'F';
+    static final int NULL = 'Z';
+    static final int URI = 'U';
+    static final int NODE = 'n';
+    static final int RELATIONSHIP = 'r';
+
+    private static final String URI_TYPE = "uri";
+    private static final String TEMPLATE_TYPE = "uri-template";
+    private static final Pattern ENTITY_URI = Pattern.compile( "(?:.*/)?(node|relationship)/(\\d+)" );
+
+    private BinaryEncoding()
+    {
+    }
+
+    /**
+     * @return {@code true} if a value of this type is a link that isn't
+     * written when links are omitted: a template, or a URI of something else
+     * than a node or a relationship.
+     */
+    static boolean isLink( String type, Object value )
+    {
+        if ( TEMPLATE_TYPE.equals( type ) )
+        {
+            return true;
+        }
+        return URI_TYPE.equals( type ) && !ENTITY_URI.matcher( value.toString() ).matches();
+    }
+
+    static void writeValue( DataOutputStream out, String type, Object value ) throws IOException
+    {
+        if ( URI_TYPE.equals( type ) || TEMPLATE_TYPE.equals( type ) || value instanceof URI )
+        {
+            writeUri( out, value.toString() );
+        }
+        else
+        {
+            writeValue( out, value );
+        }
+    }
+
+    static void writeValue( DataOutputStream out, Object value ) throws IOException
+    {
+        if ( value == null )
+        {
+            out.write( NULL );
+        }
+        else if ( value instanceof String || value instanceof Character )
+        {
+            out.write( STRING );
+            writeString( out, value.toString() );
+        }
+        else if ( value instanceof Double || value instanceof Float )
+        {
+            writeFloatingPointNumber( out, ( (Number) value ).doubleValue() );
+        }
+        else if ( value instanceof Number )
+        {
+            writeInteger( out, ( (Number) value ).longValue() );
+        }
+        else if ( value instanceof Boolean )
+        {
+            out.write( ( (Boolean) value ).booleanValue() ? TRUE : FALSE );
+        }
+        else if ( value instanceof URI )
+        {
+            writeUri( out, value.toString() );
+        }
+        else
+        {
+            out.write( STRING );
+            writeString( out, value.toString() );
+        }
+    }
+
+    static void writeInteger( DataOutputStream out, long value ) throws IOException
+    {
+        if ( value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE )
+        {
+            out.write( INT );
+            out.writeInt( (int) value );
+        }
+        else
+        {
+            out.write( LONG );
+            out.writeLong( value );
+        }
+    }
+
+    static void writeFloatingPointNumber( DataOutputStream out, double value ) throws IOException
+    {
+        out.write( DOUBLE );
+        out.writeDouble( value );
+    }
+
+    static void writeUri( DataOutputStream out, String uri ) throws IOException
+    {
+        Matcher matcher = ENTITY_URI.matcher( uri );
+        if ( matcher.matches() )
+        {
+            out.write( "node".equals( matcher.group( 1 ) ) ? NODE : RELATIONSHIP );
+            out.writeLong( Long.parseLong( matcher.group( 2 ) ) );
+        }
+        else
+        {
+            out.write( URI );
+            writeString( out, uri );
+        }
+    }
+
+    static void writeString( DataOutputStream out, String value ) throws IOException
+    {
+        byte[] bytes = value.getBytes( "UTF-8" );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    static void writeKey( DataOutputStream out, String key ) throws IOException
+    {
+        out.write( STRING );
+        writeString( out, key );
+    }
+
+    static Object read( DataInputStream in ) throws IOException
+    {
+        Object value = read( in, in.read() );
+        if ( in.read() != -1 )
+        {
+            throw new IOException( "Trailing data after value" );
+        }
+        return value;
+    }
+
+    private static Object read( DataInputStream in, int tag ) throws IOException
+    {
+        switch ( tag )
+        {
+        case MAPPING:
+            Map<String, Object> mapping = new LinkedHashMap<String, Object>();
+            for ( int next = in.read(); next != END; next = in.read() )
+            {
+                if ( next != STRING )
+                {
+                    throw new IOException( "Expected a key, got tag " + describe( next ) );
+                }
+                String key = readString( in );
+                mapping.put( key, read( in, in.read() ) );
+            }
+            return mapping;
+        case LIST:
+            List<Object> list = new ArrayList<Object>();
+            for ( int next = in.read(); next != END; next = in.read() )
+            {
+                list.add( read( in, next ) );
+            }
+            return list;
+        case STRING:
+            return readString( in );
+        case INT:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case DOUBLE:
+            return in.readDouble();
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case NULL:
+            return null;
+        case URI:
+            return readString( in );
+        case NODE:
+            return "node/" + in.readLong();
+        case RELATIONSHIP:
+            return "relationship/" + in.readLong();
+        case -1:
+            throw new EOFException( "Unexpected end of input" );
+        default:
+            throw new IOException( "Unknown tag " + describe( tag ) );
+        }
+    }
+
+    private static String readString( DataInputStream in ) throws IOException
+    {
+        int length = in.readInt();
+        if ( length < 0 )
+        {
+            throw new IOException( "Negative string length " + length );
+        }
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, "UTF-8" );
+    }
+
+    private static String describe( int tag )
+    {
+        return tag == -1 ? "<end of input>" : "'" + (char) tag + "'";
+    }
+}
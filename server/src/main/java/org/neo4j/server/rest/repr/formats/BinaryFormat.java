@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.neo4j.server.rest.repr.BadInputException;
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+import org.neo4j.server.rest.repr.StreamingFormat;
+
+/**
+ * Compact binary format, selected with the
+ * <code>application/x-neo4j-binary</code> media type, see
+ * {@link BinaryEncoding} for the encoding. Nodes and relationships are
+ * referred to by id rather than by URI.
+ * <p>
+ * Representations are handled as strings by the rest of the server, these
+ * are strings with one ISO-8859-1 character per byte. Clients sending a
+ * binary request body should therefore declare
+ * <code>charset=ISO-8859-1</code> for it.
+ */
+public class BinaryFormat extends StreamingFormat
+{
+    public static final MediaType MEDIA_TYPE = new MediaType( "application", "x-neo4j-binary" );
+
+    private final boolean links;
+
+    public BinaryFormat()
+    {
+        this( MEDIA_TYPE, true );
+    }
+
+    /**
+     * @param links whether to write links to other resources than nodes and
+     * relationships, and link templates.
+     */
+    protected BinaryFormat( MediaType mediaType, boolean links )
+    {
+        super( mediaType );
+        this.links = links;
+    }
+
+    @Override
+    protected ListWriter serializeList( String type, OutputStream output ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( output );
+        out.write( BinaryEncoding.LIST );
+        return new BinaryListWriter( out, links, output );
+    }
+
+    @Override
+    protected MappingWriter serializeMapping( String type, OutputStream output ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( output );
+        out.write( BinaryEncoding.MAPPING );
+        return new BinaryMappingWriter( out, links, output );
+    }
+
+    @Override
+    protected ListWriter serializeList( String type )
+    {
+        try
+        {
+            return serializeList( type, new ByteArrayOutputStream() );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+
+    @Override
+    protected String complete( ListWriter serializer )
+    {
+        return toString( ( (BinaryListWriter) serializer ).output );
+    }
+
+    @Override
+    protected MappingWriter serializeMapping( String type )
+    {
+        try
+        {
+            return serializeMapping( type, new ByteArrayOutputStream() );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+
+    @Override
+    protected String complete( MappingWriter serializer )
+    {
+        return toString( ( (BinaryMappingWriter) serializer ).output );
+    }
+
+    @Override
+    protected String serializeValue( String type, Object value )
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try
+        {
+            BinaryEncoding.writeValue( new DataOutputStream( buffer ), type, value );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+        return toString( buffer );
+    }
+
+    @Override
+    protected String getCharset()
+    {
+        return BinaryEncoding.CHARSET;
+    }
+
+    private static String toString( OutputStream buffer )
+    {
+        try
+        {
+            return ( (ByteArrayOutputStream) buffer ).toString( BinaryEncoding.CHARSET );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+
+    @Override
+    public Object readValue( String input ) throws BadInputException
+    {
+        if ( empty( input ) ) return Collections.emptyMap();
+        try
+        {
+            return BinaryEncoding.read( new DataInputStream( new ByteArrayInputStream(
+                    input.getBytes( BinaryEncoding.CHARSET ) ) ) );
+        }
+        catch ( IOException e )
+        {
+            throw new BadInputException( e );
+        }
+    }
+
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public Map<String, Object> readMap( String input ) throws BadInputException
+    {
+        Object value = readValue( input );
+        if ( value instanceof Map )
+        {
+            return (Map<String, Object>) value;
+        }
+        throw new BadInputException( "Not a mapping: " + value );
+    }
+
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public List<Object> readList( String input ) throws BadInputException
+    {
+        if ( empty( input ) ) return Collections.emptyList();
+        Object value = readValue( input );
+        if ( value instanceof List )
+        {
+            return (List<Object>) value;
+        }
+        throw new BadInputException( "Not a list: " + value );
+    }
+
+    @Override
+    public URI readUri( String input ) throws BadInputException
+    {
+        try
+        {
+            return new URI( readValue( input ).toString() );
+        }
+        catch ( URISyntaxException e )
+        {
+            throw new BadInputException( e );
+        }
+    }
+
+    private static boolean empty( String input )
+    {
+        return input == null || input.length() == 0;
+    }
+}
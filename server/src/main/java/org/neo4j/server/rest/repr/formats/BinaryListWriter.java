@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+
+/**
+ * Writes a list in the {@link BinaryEncoding}. The start tag of the list has
+ * already been written when the writer is created.
+ */
+class BinaryListWriter extends ListWriter
+{
+    private final DataOutputStream out;
+    private final boolean links;
+    /** The stream of the outermost writer, {@code null} for nested writers */
+    final OutputStream output;
+
+    BinaryListWriter( DataOutputStream out, boolean links, OutputStream output )
+    {
+        this.out = out;
+        this.links = links;
+        this.output = output;
+    }
+
+    @Override
+    protected MappingWriter newMapping( String type )
+    {
+        try
+        {
+            out.write( BinaryEncoding.MAPPING );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+        return new BinaryMappingWriter( out, links, null );
+    }
+
+    @Override
+    protected ListWriter newList( String type )
+    {
+        try
+        {
+            out.write( BinaryEncoding.LIST );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+        return new BinaryListWriter( out, links, null );
+    }
+
+    @Override
+    protected void writeInteger( String type, long value )
+    {
+        try
+        {
+            BinaryEncoding.writeInteger( out, value );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+
+    @Override
+    protected void writeFloatingPointNumber( String type, double value )
+    {
+        try
+        {
+            BinaryEncoding.writeFloatingPointNumber( out, value );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+
+    @Override
+    protected void writeValue( String type, Object value )
+    {
+        if ( !links && BinaryEncoding.isLink( type, value ) )
+        {
+            return;
+        }
+        try
+        {
+            BinaryEncoding.writeValue( out, type, value );
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+
+    @Override
+    protected void done()
+    {
+        try
+        {
+            out.write( BinaryEncoding.END );
+            if ( output != null )
+            {
+                out.flush();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new BinaryFormatException( e );
+        }
+    }
+}
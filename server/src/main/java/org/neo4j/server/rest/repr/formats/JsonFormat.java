@@ -93,10 +93,22 @@ public class JsonFormat extends RepresentationFormat
     }
 
     @Override
-    public List<Object> readList( String input )
+    @SuppressWarnings( "unchecked" )
+    public List<Object> readList( String input ) throws BadInputException
     {
-        // TODO tobias: Implement readList() [Dec 10, 2010]
-        throw new UnsupportedOperationException( "Not implemented: JsonInput.readList()" );
+        if ( empty( input ) ) return Collections.emptyList();
+        try
+        {
+            return (List<Object>) (List<?>) JsonHelper.jsonToList( stripByteOrderMark( input ) );
+        }
+        catch ( JsonParseException ex )
+        {
+            throw new BadInputException( ex );
+        }
+        catch ( ClassCastException ex )
+        {
+            throw new BadInputException( ex );
+        }
     }
 
     @Override
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.neo4j.server.rest.domain.JsonBuildRuntimeException;
+import org.neo4j.server.rest.repr.BadInputException;
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+import org.neo4j.server.rest.repr.StreamingFormat;
+
+/**
+ * JSON format that writes the response with a {@link JsonGenerator} straight
+ * to the response stream, selected with the
+ * <code>application/json;stream=true</code> media type. Input is read the
+ * same way as for {@link JsonFormat}.
+ */
+public class StreamingJsonFormat extends StreamingFormat
+{
+    public static final MediaType MEDIA_TYPE = new MediaType( "application", "json",
+            Collections.singletonMap( "stream", "true" ) );
+
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getJsonFactory();
+
+    private final JsonFormat input = new JsonFormat();
+
+    public StreamingJsonFormat()
+    {
+        super( MEDIA_TYPE );
+    }
+
+    @Override
+    protected ListWriter serializeList( String type, OutputStream output ) throws IOException
+    {
+        JsonGenerator generator = createGenerator( output );
+        generator.writeStartArray();
+        return new StreamingJsonListWriter( generator, output );
+    }
+
+    @Override
+    protected MappingWriter serializeMapping( String type, OutputStream output ) throws IOException
+    {
+        JsonGenerator generator = createGenerator( output );
+        generator.writeStartObject();
+        return new StreamingJsonMappingWriter( generator, output );
+    }
+
+    @Override
+    protected ListWriter serializeList( String type )
+    {
+        try
+        {
+            return serializeList( type, new ByteArrayOutputStream() );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected String complete( ListWriter serializer )
+    {
+        return toString( ( (StreamingJsonListWriter) serializer ).output );
+    }
+
+    @Override
+    protected MappingWriter serializeMapping( String type )
+    {
+        try
+        {
+            return serializeMapping( type, new ByteArrayOutputStream() );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected String complete( MappingWriter serializer )
+    {
+        return toString( ( (StreamingJsonMappingWriter) serializer ).output );
+    }
+
+    @Override
+    protected String serializeValue( String type, Object value )
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try
+        {
+            JsonGenerator generator = createGenerator( buffer );
+            generator.writeObject( value );
+            generator.flush();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+        return toString( buffer );
+    }
+
+    private static JsonGenerator createGenerator( OutputStream output ) throws IOException
+    {
+        return JSON_FACTORY.createJsonGenerator( output, JsonEncoding.UTF8 );
+    }
+
+    private String toString( OutputStream buffer )
+    {
+        try
+        {
+            return ( (ByteArrayOutputStream) buffer ).toString( getCharset() );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    public Map<String, Object> readMap( String input ) throws BadInputException
+    {
+        return this.input.readMap( input );
+    }
+
+    @Override
+    public List<Object> readList( String input ) throws BadInputException
+    {
+        return this.input.readList( input );
+    }
+
+    @Override
+    public Object readValue( String input ) throws BadInputException
+    {
+        return this.input.readValue( input );
+    }
+
+    @Override
+    public URI readUri( String input ) throws BadInputException
+    {
+        return this.input.readUri( input );
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.server.rest.domain.JsonBuildRuntimeException;
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+
+/**
+ * Writes a JSON array element by element with a {@link JsonGenerator}. The
+ * start of the array has already been written when the writer is created.
+ */
+class StreamingJsonListWriter extends ListWriter
+{
+    private final JsonGenerator out;
+    /** The stream of the outermost writer, {@code null} for nested writers */
+    final OutputStream output;
+
+    StreamingJsonListWriter( JsonGenerator out, OutputStream output )
+    {
+        this.out = out;
+        this.output = output;
+    }
+
+    @Override
+    protected MappingWriter newMapping( String type )
+    {
+        try
+        {
+            out.writeStartObject();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+        return new StreamingJsonMappingWriter( out, null );
+    }
+
+    @Override
+    protected ListWriter newList( String type )
+    {
+        try
+        {
+            out.writeStartArray();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+        return new StreamingJsonListWriter( out, null );
+    }
+
+    @Override
+    protected void writeString( String value )
+    {
+        try
+        {
+            out.writeString( value );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected void writeBoolean( boolean value )
+    {
+        try
+        {
+            out.writeBoolean( value );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected void writeInteger( String type, long value )
+    {
+        try
+        {
+            out.writeNumber( value );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected void writeFloatingPointNumber( String type, double value )
+    {
+        try
+        {
+            out.writeNumber( value );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected void writeValue( String type, Object value )
+    {
+        try
+        {
+            out.writeObject( value );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected void done()
+    {
+        try
+        {
+            out.writeEndArray();
+            if ( output != null )
+            {
+                out.flush();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+}
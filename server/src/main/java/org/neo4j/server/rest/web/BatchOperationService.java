@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.server.database.Database;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.repr.BadInputException;
+import org.neo4j.server.rest.repr.InputFormat;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.formats.JsonFormat;
+import org.neo4j.server.rest.web.ResourceMethodRouter.BadRouteParameterException;
+
+/**
+ * Executes a list of REST operations in a single transaction, so that a
+ * client loading data pays for one round trip and one commit instead of one
+ * per primitive. Each operation is a map of {@code method}, {@code to} (a URI
+ * relative to the data root), an optional {@code body} and an optional
+ * client {@code id}. A <code>{id}</code> in the URI or body of an operation
+ * is replaced by the location of the entity created by the earlier operation
+ * with that id.
+ * <p>
+ * The results are kept until the batch has been committed and are then
+ * written one after the other, the body of each as it was serialized. If any
+ * operation fails the whole batch is rolled back and the response is the
+ * status of the failed operation, with its index in the batch, its
+ * {@code id}, its URI and the body of its response.
+ */
+@Path( "/batch" )
+public class BatchOperationService
+{
+    private static final ResourceMethodRouter ROUTER = new ResourceMethodRouter(
+            RestfulGraphDatabase.class );
+    private static final Pattern BACK_REFERENCE = Pattern.compile( "\\{(\\d+)\\}" );
+    private static final String UTF8 = "UTF-8";
+
+    private final UriInfo uriInfo;
+    private final Database database;
+    private final InputFormat input;
+    private final OutputFormat output;
+
+    public BatchOperationService( @Context UriInfo uriInfo, @Context Database database,
+            @Context InputFormat input, @Context OutputFormat output )
+    {
+        this.uriInfo = uriInfo;
+        this.database = database;
+        this.input = input;
+        this.output = output;
+    }
+
+    @POST
+    @SuppressWarnings( "unchecked" )
+    public Response performBatchOperations( String body )
+    {
+        List<Object> operations;
+        try
+        {
+            operations = input.readList( body );
+        }
+        catch ( BadInputException e )
+        {
+            return output.badRequest( e );
+        }
+
+        URI baseUri = uriInfo.getBaseUri();
+        // the individual results are embedded in the batch result as json
+        OutputFormat json = output.withFormat( new JsonFormat() );
+        RestfulGraphDatabase resource = new RestfulGraphDatabase( uriInfo, database, input, json );
+        List<OperationResult> results = new ArrayList<OperationResult>( operations.size() );
+        Map<String, String> locations = new HashMap<String, String>();
+        Transaction tx = database.graph.beginTx();
+        try
+        {
+            for ( int index = 0; index < operations.size(); index++ )
+            {
+                Object operation = operations.get( index );
+                Map<String, Object> spec;
+                String method;
+                String to;
+                try
+                {
+                    spec = (Map<String, Object>) operation;
+                    method = (String) spec.get( "method" );
+                    to = (String) spec.get( "to" );
+                }
+                catch ( ClassCastException e )
+                {
+                    return failure( index, null, null, json.badRequest( e ) );
+                }
+                Object id = spec.get( "id" );
+                if ( method == null || to == null )
+                {
+                    return failure( index, id, to, json.badRequest( new BadInputException(
+                            "Operation must have a method and a to URI: " + operation ) ) );
+                }
+                String operationBody = spec.containsKey( "body" ) ? replaceBackReferences(
+                        JsonHelper.createJsonFrom( spec.get( "body" ) ), locations ) : "";
+                to = relativeTo( baseUri, replaceBackReferences( to, locations ) );
+
+                Response response;
+                try
+                {
+                    response = ROUTER.invoke( resource, method.toUpperCase(), to, operationBody );
+                }
+                catch ( BadRouteParameterException e )
+                {
+                    return failure( index, id, to, json.badRequest( e ) );
+                }
+                if ( response.getStatus() >= 400 )
+                {
+                    return failure( index, id, to, response );
+                }
+                Object location = response.getMetadata().getFirst( "Location" );
+                if ( id != null && location != null )
+                {
+                    locations.put( id.toString(), location.toString() );
+                }
+                results.add( new OperationResult( id, to, location, entityAsJson( response ) ) );
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return Response.ok( new ResultsOutput( results ) ).type( MediaType.APPLICATION_JSON ).build();
+    }
+
+    /**
+     * @return the status of the failed operation, with its index, id, URI
+     * and response body.
+     */
+    private static Response failure( int index, Object id, String to, Response response )
+    {
+        StringBuilder json = new StringBuilder( "{\"index\":" ).append( index );
+        if ( id != null )
+        {
+            json.append( ",\"id\":" ).append( JsonHelper.createJsonFrom( id ) );
+        }
+        if ( to != null )
+        {
+            json.append( ",\"from\":" ).append( JsonHelper.createJsonFrom( to ) );
+        }
+        json.append( ",\"status\":" ).append( response.getStatus() );
+        String body = entityAsJson( response );
+        if ( body != null )
+        {
+            json.append( ",\"body\":" ).append( body );
+        }
+        json.append( '}' );
+        try
+        {
+            return Response.status( response.getStatus() ).entity( json.toString().getBytes( UTF8 ) )
+                    .type( MediaType.APPLICATION_JSON ).build();
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( "Could not encode string as UTF-8", e );
+        }
+    }
+
+    /**
+     * @return the entity of {@code response} as JSON, or {@code null} if it
+     * has none. A body which isn't JSON, e.g. the plain text message of a bad
+     * request, is given as a JSON string.
+     */
+    private static String entityAsJson( Response response )
+    {
+        Object entity = response.getEntity();
+        String body;
+        try
+        {
+            if ( entity instanceof StreamingOutput )
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ((StreamingOutput) entity).write( bytes );
+                entity = bytes.toByteArray();
+            }
+            body = entity instanceof byte[] ? new String( (byte[]) entity, UTF8 ) :
+                    entity != null ? entity.toString() : null;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Could not serialize the response of an operation", e );
+        }
+        if ( body == null || body.length() == 0 )
+        {
+            return null;
+        }
+        Object type = response.getMetadata().getFirst( HttpHeaders.CONTENT_TYPE );
+        boolean json = type != null && type.toString().startsWith( MediaType.APPLICATION_JSON );
+        return json ? body : JsonHelper.createJsonFrom( body );
+    }
+
+    static String replaceBackReferences( String text, Map<String, String> locations )
+    {
+        Matcher matcher = BACK_REFERENCE.matcher( text );
+        StringBuffer result = new StringBuffer();
+        while ( matcher.find() )
+        {
+            String location = locations.get( matcher.group( 1 ) );
+            matcher.appendReplacement( result,
+                    Matcher.quoteReplacement( location != null ? location : matcher.group() ) );
+        }
+        matcher.appendTail( result );
+        return result.toString();
+    }
+
+    private static String relativeTo( URI baseUri, String uri )
+    {
+        String base = baseUri.toString();
+        return uri.startsWith( base ) ? uri.substring( base.length() ) : uri;
+    }
+
+    private static class OperationResult
+    {
+        private final Object id;
+        private final String from;
+        private final Object location;
+        private final String body;
+
+        OperationResult( Object id, String from, Object location, String body )
+        {
+            this.id = id;
+            this.from = from;
+            this.location = location;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Writes the results one by one, with the already serialized body of
+     * each embedded as it is.
+     */
+    private static class ResultsOutput implements StreamingOutput
+    {
+        private final List<OperationResult> results;
+
+        ResultsOutput( List<OperationResult> results )
+        {
+            this.results = results;
+        }
+
+        public void write( OutputStream output ) throws IOException
+        {
+            Writer writer = new OutputStreamWriter( output, UTF8 );
+            writer.write( '[' );
+            String separator = "";
+            for ( OperationResult result : results )
+            {
+                writer.write( separator );
+                separator = ",";
+                writer.write( '{' );
+                if ( result.id != null )
+                {
+                    writer.write( "\"id\":" + JsonHelper.createJsonFrom( result.id ) + "," );
+                }
+                writer.write( "\"from\":" + JsonHelper.createJsonFrom( result.from ) );
+                if ( result.location != null )
+                {
+                    writer.write( ",\"location\":"
+                                  + JsonHelper.createJsonFrom( result.location.toString() ) );
+                }
+                if ( result.body != null )
+                {
+                    writer.write( ",\"body\":" );
+                    writer.write( result.body );
+                }
+                writer.write( '}' );
+            }
+            writer.write( ']' );
+            writer.flush();
+        }
+    }
+}
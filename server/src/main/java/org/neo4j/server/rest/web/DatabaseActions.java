@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.neo4j.graphalgo.CommonEvaluators;
 import org.neo4j.graphalgo.CostEvaluator;
@@ -47,17 +48,22 @@ import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.RelationshipIndex;
 import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.helpers.collection.FilteringIterable;
 import org.neo4j.helpers.collection.IterableWrapper;
+import org.neo4j.index.lucene.LuceneIdIndex;
 import org.neo4j.kernel.AbstractGraphDatabase;
 import org.neo4j.kernel.Traversal;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.database.DatabaseBlockedException;
 import org.neo4j.server.rest.domain.EndNodeNotFoundException;
+import org.neo4j.server.rest.domain.IndexQuery;
 import org.neo4j.server.rest.domain.RelationshipExpanderBuilder;
 import org.neo4j.server.rest.domain.StartNodeNotFoundException;
 import org.neo4j.server.rest.domain.StartNodeSameAsEndNodeException;
 import org.neo4j.server.rest.domain.TraversalDescriptionBuilder;
 import org.neo4j.server.rest.domain.TraverserReturnType;
+import org.neo4j.server.rest.paging.PagedTraverser;
+import org.neo4j.server.rest.paging.TraversalCursors;
 import org.neo4j.server.rest.repr.DatabaseRepresentation;
 import org.neo4j.server.rest.repr.IndexRepresentation;
 import org.neo4j.server.rest.repr.IndexedEntityRepresentation;
@@ -78,10 +84,12 @@ import org.neo4j.server.rest.repr.WeightedPathRepresentation;
 public class DatabaseActions
 {
     private final AbstractGraphDatabase graphDb;
+    private final TraversalCursors traversalCursors;
 
     public DatabaseActions( Database database )
     {
         this.graphDb = database.graph;
+        this.traversalCursors = database.getTraversalCursors();
     }
 
     private Node node( long id ) throws NodeNotFoundException
@@ -770,25 +778,64 @@ public class DatabaseActions
 
     public ListRepresentation getIndexedNodesByQuery( String indexName, String key,
                                                String query )
+    {
+        return getIndexedNodesByQuery( indexName, key, new IndexQuery( query, 0, 0, null ), false );
+    }
+
+    /**
+     * @param idsOnly return the ids of the nodes instead of the nodes
+     * themselves, which doesn't load them.
+     */
+    public ListRepresentation getIndexedNodesByQuery( String indexName, String key,
+                                               IndexQuery query, boolean idsOnly )
     {
         if ( !graphDb.index().existsForNodes( indexName ) )
             throw new NotFoundException();
         Index<Node> index = graphDb.index().forNodes( indexName );
-        List<Representation> representations = new ArrayList<Representation>();
 
-        Transaction tx = graphDb.beginTx();
-        try
+        // the hits are iterated while the response is written, reads don't
+        // need a transaction
+        if ( index instanceof LuceneIdIndex )
         {
-            for ( Node node : index.query( key, query ) )
+            // the hits before the page are skipped without loading them
+            IndexHits<Long> hits = ( (LuceneIdIndex<Node>) index ).queryIds( key,
+                    query.queryObject() );
+            Iterable<Long> ids = query.page( hits );
+            if ( idsOnly )
             {
-                representations.add( new NodeRepresentation( node ));
+                return ListRepresentation.numbers( ids ).closing( hits );
             }
-            tx.success();
-            return new ListRepresentation( RepresentationType.NODE, representations );
-        } finally
+            return NodeRepresentation.list( FilteringIterable.notNull( new IterableWrapper<Node, Long>( ids )
+            {
+                @Override
+                protected Node underlyingObjectToObject( Long id )
+                {
+                    try
+                    {
+                        return graphDb.getNodeById( id );
+                    }
+                    catch ( NotFoundException e )
+                    {
+                        // deleted, but still in the index
+                        return null;
+                    }
+                }
+            } ) ).closing( hits );
+        }
+        IndexHits<Node> hits = index.query( key, query.queryObject() );
+        Iterable<Node> page = query.page( hits );
+        if ( idsOnly )
         {
-            tx.finish();
+            return ListRepresentation.numbers( new IterableWrapper<Long, Node>( page )
+            {
+                @Override
+                protected Long underlyingObjectToObject( Node node )
+                {
+                    return node.getId();
+                }
+            } ).closing( hits );
         }
+        return NodeRepresentation.list( page ).closing( hits );
     }
 
 
@@ -818,43 +865,165 @@ public class DatabaseActions
 
     public ListRepresentation getIndexedRelationshipsByQuery( String indexName, String key,
                                                        String query )
+    {
+        return getIndexedRelationshipsByQuery( indexName, key, new IndexQuery( query, 0, 0, null ),
+                false );
+    }
+
+    /**
+     * @param idsOnly return the ids of the relationships instead of the
+     * relationships themselves, which doesn't load them.
+     */
+    public ListRepresentation getIndexedRelationshipsByQuery( String indexName, String key,
+                                                       IndexQuery query, boolean idsOnly )
     {
         if ( !graphDb.index().existsForRelationships( indexName ) )
             throw new NotFoundException();
-        List<Representation> representations = new ArrayList<Representation>();
         Index<Relationship> index = graphDb.index().forRelationships( indexName );
 
-        Transaction tx = graphDb.beginTx();
-        try
+        // the hits are iterated while the response is written, reads don't
+        // need a transaction
+        if ( index instanceof LuceneIdIndex )
         {
-            for ( Relationship rel : index.query( key, query ) )
+            // the hits before the page are skipped without loading them
+            IndexHits<Long> hits = ( (LuceneIdIndex<Relationship>) index ).queryIds( key,
+                    query.queryObject() );
+            Iterable<Long> ids = query.page( hits );
+            if ( idsOnly )
             {
-                representations.add( new RelationshipRepresentation( rel ));
+                return ListRepresentation.numbers( ids ).closing( hits );
             }
-            tx.success();
-            return new ListRepresentation( RepresentationType.RELATIONSHIP, representations );
-        } finally
+            return RelationshipRepresentation.list( FilteringIterable.notNull(
+                    new IterableWrapper<Relationship, Long>( ids )
+                    {
+                        @Override
+                        protected Relationship underlyingObjectToObject( Long id )
+                        {
+                            try
+                            {
+                                return graphDb.getRelationshipById( id );
+                            }
+                            catch ( NotFoundException e )
+                            {
+                                // deleted, but still in the index
+                                return null;
+                            }
+                        }
+                    } ) ).closing( hits );
+        }
+        IndexHits<Relationship> hits = index.query( key, query.queryObject() );
+        Iterable<Relationship> page = query.page( hits );
+        if ( idsOnly )
         {
-            tx.finish();
+            return ListRepresentation.numbers( new IterableWrapper<Long, Relationship>( page )
+            {
+                @Override
+                protected Long underlyingObjectToObject( Relationship relationship )
+                {
+                    return relationship.getId();
+                }
+            } ).closing( hits );
         }
+        return RelationshipRepresentation.list( page ).closing( hits );
     }
 
     // Traversal
 
     public ListRepresentation traverse( long startNode, Map<String, Object> description,
-                                        TraverserReturnType returnType )
+                                        final TraverserReturnType returnType )
     {
         Node node = graphDb.getNodeById( startNode );
 
-        List<Representation> result = new ArrayList<Representation>();
+        TraversalDescription traversalDescription = TraversalDescriptionBuilder.from( description );
+        // the traversal runs as the response is written, so that a streaming
+        // format never has to hold all positions in memory
+        return new ListRepresentation( returnType.repType,
+                new IterableWrapper<Representation, Path>( traversalDescription.traverse( node ) )
+                {
+                    @Override
+                    protected Representation underlyingObjectToObject( Path position )
+                    {
+                        return returnType.toRepresentation( position );
+                    }
+                } );
+    }
+
+    /**
+     * Starts a traversal that is kept on the server and read one page at a
+     * time through {@link #pagedTraverse(String, TraverserReturnType)}.
+     *
+     * @return the id of the created traverser.
+     */
+    public String createPagedTraverser( long startNode, Map<String, Object> description,
+                                        int pageSize, int leaseTimeInSeconds )
+    {
+        if ( leaseTimeInSeconds < 1 )
+        {
+            throw new IllegalArgumentException( "Lease time must be positive, was "
+                                                + leaseTimeInSeconds );
+        }
+        Node node = graphDb.getNodeById( startNode );
 
         TraversalDescription traversalDescription = TraversalDescriptionBuilder.from( description );
-        for ( Path position : traversalDescription.traverse( node ) )
+        return traversalCursors.add( new PagedTraverser( traversalDescription.traverse( node ),
+                pageSize, TimeUnit.SECONDS.toMillis( leaseTimeInSeconds ) ) );
+    }
+
+    /**
+     * @return the first page of a traverser created with
+     * {@link #createPagedTraverser(long, Map, int, int)}, which is empty if
+     * the traversal has no results. A traverser without results is removed
+     * right away, since there's nothing more to page through.
+     */
+    public ListRepresentation firstPage( String traverserId,
+                                         final TraverserReturnType returnType )
+    {
+        return page( traverserId, returnType, true );
+    }
+
+    /**
+     * @return the next page of the traverser, throwing
+     * {@link NotFoundException} if its lease has expired or all of it has
+     * already been returned.
+     */
+    public ListRepresentation pagedTraverse( String traverserId,
+                                             final TraverserReturnType returnType )
+    {
+        return page( traverserId, returnType, false );
+    }
+
+    private ListRepresentation page( String traverserId, final TraverserReturnType returnType,
+                                     boolean first )
+    {
+        PagedTraverser traverser = traversalCursors.get( traverserId );
+        if ( traverser == null )
         {
-            result.add( returnType.toRepresentation( position ) );
+            throw new NotFoundException( "No traverser with id [" + traverserId + "]" );
         }
+        List<Path> page = traverser.nextPage();
+        if ( page == null )
+        {
+            traversalCursors.remove( traverserId );
+            if ( !first )
+            {
+                throw new NotFoundException( "Traverser [" + traverserId + "] is exhausted" );
+            }
+            page = Collections.emptyList();
+        }
+        return new ListRepresentation( returnType.repType,
+                new IterableWrapper<Representation, Path>( page )
+                {
+                    @Override
+                    protected Representation underlyingObjectToObject( Path position )
+                    {
+                        return returnType.toRepresentation( position );
+                    }
+                } );
+    }
 
-        return new ListRepresentation( returnType.repType, result );
+    public boolean removePagedTraverser( String traverserId )
+    {
+        return traversalCursors.remove( traverserId );
     }
 
     @SuppressWarnings( "rawtypes" )
@@ -0,0 +1,488 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.neo4j.server.database.Database;
+
+/**
+ * Conditional request support for reads of the REST API. GET and HEAD
+ * responses get an ETag and a Last-Modified header derived from the last
+ * committed transaction of the database, and a request whose
+ * If-None-Match or If-Modified-Since header shows that the client already
+ * has the current version is answered with 304 Not Modified without
+ * touching the graph.
+ * <p>
+ * Any commit changes the version, so a client can't tell which responses
+ * were actually affected by it, only that they might have been.
+ * <p>
+ * Optionally keeps a bounded cache of recent responses, up to a maximum
+ * size each, that are served again as long as nothing has been committed
+ * since they were produced. The whole cache is dropped on the first
+ * request that sees a new version.
+ * <p>
+ * Paged traversals are left alone, since getting a page moves the cursor.
+ */
+public class HttpCacheFilter implements Filter
+{
+    private static final String PAGED_SEGMENT = "/paged/";
+
+    private final Database database;
+    private final int maxCachedResponses;
+    private final int maxCachedResponseSize;
+
+    private final Object lock = new Object();
+    private long knownVersion = -1;
+    private long lastModified;
+    private long cachedVersion = -1;
+    private final Map<String, CachedResponse> cache;
+
+    public HttpCacheFilter( Database database, final int maxCachedResponses,
+            int maxCachedResponseSize )
+    {
+        this.database = database;
+        this.maxCachedResponses = maxCachedResponses;
+        this.maxCachedResponseSize = maxCachedResponseSize;
+        this.cache = new LinkedHashMap<String, CachedResponse>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, CachedResponse> eldest )
+            {
+                return size() > maxCachedResponses;
+            }
+        };
+    }
+
+    public void init( FilterConfig config ) throws ServletException
+    {
+    }
+
+    public void destroy()
+    {
+    }
+
+    public void doFilter( ServletRequest req, ServletResponse res, FilterChain chain )
+            throws IOException, ServletException
+    {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        if ( !isCacheable( request ) )
+        {
+            chain.doFilter( req, res );
+            return;
+        }
+
+        long version = database.getLastCommittedTxVersion();
+        long modified = lastModified( version );
+        String etag = etag( version, request.getHeader( "Accept" ) );
+        response.setHeader( "ETag", etag );
+        response.setDateHeader( "Last-Modified", modified );
+        response.setHeader( "Vary", "Accept" );
+        if ( notModified( request, etag, modified ) )
+        {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            return;
+        }
+
+        if ( maxCachedResponses <= 0 )
+        {
+            chain.doFilter( req, res );
+            return;
+        }
+        String key = cacheKey( request );
+        CachedResponse cached = lookup( key, version );
+        if ( cached != null )
+        {
+            cached.writeTo( response, !"HEAD".equals( request.getMethod() ) );
+            return;
+        }
+        CapturingResponse capturing = new CapturingResponse( response, maxCachedResponseSize );
+        chain.doFilter( req, capturing );
+        capturing.flushBuffer();
+        if ( capturing.isCacheable() && "GET".equals( request.getMethod() )
+             // don't cache what a commit during the request may have seen
+             && database.getLastCommittedTxVersion() == version )
+        {
+            store( key, version, capturing.toCachedResponse() );
+        }
+    }
+
+    /**
+     * @return the time of the first request that saw the current version,
+     * which is never earlier than the commit that made it. Different
+     * versions get different seconds, since that's the resolution of
+     * If-Modified-Since.
+     */
+    private long lastModified( long version )
+    {
+        synchronized ( lock )
+        {
+            if ( version != knownVersion )
+            {
+                knownVersion = version;
+                lastModified = Math.max( System.currentTimeMillis() / 1000 * 1000,
+                        lastModified + 1000 );
+            }
+            return lastModified;
+        }
+    }
+
+    private CachedResponse lookup( String key, long version )
+    {
+        synchronized ( lock )
+        {
+            if ( version != cachedVersion )
+            {
+                cache.clear();
+                cachedVersion = version;
+                return null;
+            }
+            return cache.get( key );
+        }
+    }
+
+    private void store( String key, long version, CachedResponse response )
+    {
+        synchronized ( lock )
+        {
+            if ( version != cachedVersion )
+            {
+                cache.clear();
+                cachedVersion = version;
+            }
+            cache.put( key, response );
+        }
+    }
+
+    int cachedResponses()
+    {
+        synchronized ( lock )
+        {
+            return cache.size();
+        }
+    }
+
+    private static boolean isCacheable( HttpServletRequest request )
+    {
+        String method = request.getMethod();
+        if ( !"GET".equals( method ) && !"HEAD".equals( method ) )
+        {
+            return false;
+        }
+        String path = request.getPathInfo();
+        return path == null || !path.contains( PAGED_SEGMENT );
+    }
+
+    private static boolean notModified( HttpServletRequest request, String etag, long modified )
+    {
+        String ifNoneMatch = request.getHeader( "If-None-Match" );
+        if ( ifNoneMatch != null )
+        {
+            for ( String candidate : ifNoneMatch.split( "," ) )
+            {
+                candidate = candidate.trim();
+                if ( candidate.equals( "*" ) || candidate.equals( etag )
+                     || candidate.equals( "W/" + etag ) )
+                {
+                    return true;
+                }
+            }
+            // If-Modified-Since is ignored when there is an If-None-Match
+            return false;
+        }
+        long ifModifiedSince;
+        try
+        {
+            ifModifiedSince = request.getDateHeader( "If-Modified-Since" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return false;
+        }
+        return ifModifiedSince != -1 && modified <= ifModifiedSince;
+    }
+
+    /**
+     * The representation of a resource depends on the Accept header, so
+     * each accepted format gets a tag of its own.
+     */
+    private static String etag( long version, String accept )
+    {
+        return "\"" + Long.toHexString( version ) + "-"
+               + Integer.toHexString( accept == null ? 0 : accept.hashCode() ) + "\"";
+    }
+
+    private static String cacheKey( HttpServletRequest request )
+    {
+        StringBuilder key = new StringBuilder( request.getRequestURI() );
+        if ( request.getQueryString() != null )
+        {
+            key.append( '?' ).append( request.getQueryString() );
+        }
+        return key.append( '\n' ).append( request.getHeader( "Accept" ) ).toString();
+    }
+
+    private static class CachedResponse
+    {
+        private final String contentType;
+        private final List<String[]> headers;
+        private final byte[] body;
+
+        CachedResponse( String contentType, List<String[]> headers, byte[] body )
+        {
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        void writeTo( HttpServletResponse response, boolean includeBody ) throws IOException
+        {
+            response.setStatus( HttpServletResponse.SC_OK );
+            for ( String[] header : headers )
+            {
+                response.addHeader( header[0], header[1] );
+            }
+            if ( contentType != null )
+            {
+                response.setContentType( contentType );
+            }
+            response.setContentLength( body.length );
+            if ( includeBody )
+            {
+                response.getOutputStream().write( body );
+            }
+        }
+    }
+
+    /**
+     * Passes everything on to the real response while keeping a copy of
+     * the status, headers and body, as long as the body fits in the cache.
+     */
+    private static class CapturingResponse extends HttpServletResponseWrapper
+    {
+        private final int maxSize;
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private final List<String[]> headers = new ArrayList<String[]>();
+        private int status = SC_OK;
+        private boolean cacheable = true;
+        private ServletOutputStream output;
+        private PrintWriter writer;
+
+        CapturingResponse( HttpServletResponse response, int maxSize )
+        {
+            super( response );
+            this.maxSize = maxSize;
+        }
+
+        boolean isCacheable()
+        {
+            return cacheable && status == SC_OK;
+        }
+
+        CachedResponse toCachedResponse()
+        {
+            return new CachedResponse( getContentType(), headers, copy.toByteArray() );
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException
+        {
+            if ( output == null )
+            {
+                final ServletOutputStream target = super.getOutputStream();
+                output = new ServletOutputStream()
+                {
+                    @Override
+                    public void write( int b ) throws IOException
+                    {
+                        target.write( b );
+                        if ( keep( 1 ) )
+                        {
+                            copy.write( b );
+                        }
+                    }
+
+                    @Override
+                    public void write( byte[] b, int off, int len ) throws IOException
+                    {
+                        target.write( b, off, len );
+                        if ( keep( len ) )
+                        {
+                            copy.write( b, off, len );
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException
+                    {
+                        target.flush();
+                    }
+                };
+            }
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException
+        {
+            if ( writer == null )
+            {
+                writer = new PrintWriter( new OutputStreamWriter( getOutputStream(),
+                        getCharacterEncoding() ) );
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException
+        {
+            if ( writer != null )
+            {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+
+        private boolean keep( int length )
+        {
+            if ( cacheable && copy.size() + length > maxSize )
+            {
+                cacheable = false;
+                copy.reset();
+            }
+            return cacheable;
+        }
+
+        @Override
+        public void setStatus( int sc )
+        {
+            status = sc;
+            super.setStatus( sc );
+        }
+
+        @Override
+        @SuppressWarnings( "deprecation" )
+        public void setStatus( int sc, String sm )
+        {
+            status = sc;
+            super.setStatus( sc, sm );
+        }
+
+        @Override
+        public void sendError( int sc ) throws IOException
+        {
+            status = sc;
+            super.sendError( sc );
+        }
+
+        @Override
+        public void sendError( int sc, String msg ) throws IOException
+        {
+            status = sc;
+            super.sendError( sc, msg );
+        }
+
+        @Override
+        public void sendRedirect( String location ) throws IOException
+        {
+            status = SC_FOUND;
+            super.sendRedirect( location );
+        }
+
+        @Override
+        public void setHeader( String name, String value )
+        {
+            for ( Iterator<String[]> iterator = headers.iterator(); iterator.hasNext(); )
+            {
+                if ( iterator.next()[0].equalsIgnoreCase( name ) )
+                {
+                    iterator.remove();
+                }
+            }
+            headers.add( new String[] { name, value } );
+            super.setHeader( name, value );
+        }
+
+        @Override
+        public void addHeader( String name, String value )
+        {
+            headers.add( new String[] { name, value } );
+            super.addHeader( name, value );
+        }
+
+        // headers that aren't kept make the response uncacheable
+
+        @Override
+        public void setDateHeader( String name, long date )
+        {
+            cacheable = false;
+            super.setDateHeader( name, date );
+        }
+
+        @Override
+        public void addDateHeader( String name, long date )
+        {
+            cacheable = false;
+            super.addDateHeader( name, date );
+        }
+
+        @Override
+        public void setIntHeader( String name, int value )
+        {
+            cacheable = false;
+            super.setIntHeader( name, value );
+        }
+
+        @Override
+        public void addIntHeader( String name, int value )
+        {
+            cacheable = false;
+            super.addIntHeader( name, value );
+        }
+
+        @Override
+        public void addCookie( Cookie cookie )
+        {
+            cacheable = false;
+            super.addCookie( cookie );
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import com.sun.jersey.api.uri.UriComponent;
+import com.sun.jersey.api.uri.UriTemplate;
+
+/**
+ * Dispatches a request, given as method, relative URI and body, directly to
+ * the matching resource method of a resource class, on the calling thread.
+ * Only the parameter kinds used by the resources it is given are bound:
+ * path and query parameters, converted through a static
+ * {@code valueOf(String)} or a {@code String} constructor, and the request
+ * body as a {@code String}.
+ */
+class ResourceMethodRouter
+{
+    private static final Map<Class<?>, Class<?>> BOXED = new HashMap<Class<?>, Class<?>>();
+    static
+    {
+        BOXED.put( long.class, Long.class );
+        BOXED.put( int.class, Integer.class );
+        BOXED.put( boolean.class, Boolean.class );
+        BOXED.put( double.class, Double.class );
+    }
+
+    private final List<Route> routes = new ArrayList<Route>();
+
+    ResourceMethodRouter( Class<?> resourceClass )
+    {
+        String root = pathOf( resourceClass );
+        for ( Method method : resourceClass.getMethods() )
+        {
+            String httpMethod = httpMethodOf( method );
+            if ( httpMethod != null && method.getReturnType() == Response.class )
+            {
+                routes.add( new Route( httpMethod, root + pathOf( method ), method ) );
+            }
+        }
+        // same precedence as the JAX-RS runtime: most literal characters first
+        Collections.sort( routes, new Comparator<Route>()
+        {
+            public int compare( Route first, Route second )
+            {
+                return UriTemplate.COMPARATOR.compare( first.template, second.template );
+            }
+        } );
+    }
+
+    /**
+     * @param uri the request URI relative to the resource root, optionally
+     * with a query string.
+     * @return the response of the resource method, or a 404/405 response if
+     * no resource method matches.
+     */
+    Response invoke( Object resource, String httpMethod, String uri, String body )
+    {
+        String path = uri;
+        String query = "";
+        int queryStart = uri.indexOf( '?' );
+        if ( queryStart != -1 )
+        {
+            path = uri.substring( 0, queryStart );
+            query = uri.substring( queryStart + 1 );
+        }
+        if ( !path.startsWith( "/" ) )
+        {
+            path = "/" + path;
+        }
+
+        boolean pathMatched = false;
+        for ( Route route : routes )
+        {
+            Map<String, String> pathParameters = new HashMap<String, String>();
+            if ( !route.template.match( path, pathParameters ) )
+            {
+                continue;
+            }
+            pathMatched = true;
+            if ( route.httpMethod.equals( httpMethod ) )
+            {
+                return route.invoke( resource, pathParameters,
+                        UriComponent.decodeQuery( query, true ), body );
+            }
+        }
+        return Response.status( pathMatched ? 405 : 404 ).build();
+    }
+
+    private static String pathOf( AnnotatedElement element )
+    {
+        Path path = element.getAnnotation( Path.class );
+        if ( path == null )
+        {
+            return "";
+        }
+        String value = path.value();
+        if ( !value.startsWith( "/" ) )
+        {
+            value = "/" + value;
+        }
+        return value.endsWith( "/" ) ? value.substring( 0, value.length() - 1 ) : value;
+    }
+
+    private static String httpMethodOf( Method method )
+    {
+        for ( Class<? extends Annotation> type : new Class[] { GET.class, POST.class, PUT.class,
+                DELETE.class } )
+        {
+            if ( method.isAnnotationPresent( type ) )
+            {
+                return type.getAnnotation( HttpMethod.class ).value();
+            }
+        }
+        return null;
+    }
+
+    private static class Route
+    {
+        private final String httpMethod;
+        private final UriTemplate template;
+        private final Method method;
+
+        Route( String httpMethod, String path, Method method )
+        {
+            this.httpMethod = httpMethod;
+            this.template = new UriTemplate( path.length() == 0 ? "/" : path );
+            this.method = method;
+        }
+
+        Response invoke( Object resource, Map<String, String> pathParameters,
+                MultivaluedMap<String, String> queryParameters, String body )
+        {
+            Class<?>[] types = method.getParameterTypes();
+            Annotation[][] annotations = method.getParameterAnnotations();
+            Object[] arguments = new Object[types.length];
+            for ( int i = 0; i < types.length; i++ )
+            {
+                String value = body;
+                String defaultValue = null;
+                for ( Annotation annotation : annotations[i] )
+                {
+                    if ( annotation instanceof PathParam )
+                    {
+                        value = UriComponent.decode(
+                                pathParameters.get( ( (PathParam) annotation ).value() ),
+                                UriComponent.Type.PATH_SEGMENT );
+                    }
+                    else if ( annotation instanceof QueryParam )
+                    {
+                        value = queryParameters.getFirst( ( (QueryParam) annotation ).value() );
+                    }
+                    else if ( annotation instanceof DefaultValue )
+                    {
+                        defaultValue = ( (DefaultValue) annotation ).value();
+                    }
+                }
+                arguments[i] = convert( value != null ? value : defaultValue, types[i] );
+            }
+            try
+            {
+                return (Response) method.invoke( resource, arguments );
+            }
+            catch ( InvocationTargetException e )
+            {
+                if ( e.getCause() instanceof RuntimeException )
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException( e.getCause() );
+            }
+            catch ( IllegalAccessException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
+    private static Object convert( String value, Class<?> type )
+    {
+        if ( type == String.class )
+        {
+            return value == null ? "" : value;
+        }
+        if ( value == null )
+        {
+            if ( type.isPrimitive() )
+            {
+                throw new BadRouteParameterException( "Missing value for " + type );
+            }
+            return null;
+        }
+        Class<?> target = BOXED.containsKey( type ) ? BOXED.get( type ) : type;
+        try
+        {
+            try
+            {
+                return target.getMethod( "valueOf", String.class ).invoke( null, value );
+            }
+            catch ( NoSuchMethodException e )
+            {
+                Constructor<?> constructor = target.getConstructor( String.class );
+                return constructor.newInstance( value );
+            }
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw new BadRouteParameterException( "Invalid value '" + value + "' for " + type,
+                    e.getCause() );
+        }
+        catch ( Exception e )
+        {
+            throw new RuntimeException( "Can't convert parameters to " + type, e );
+        }
+    }
+
+    @SuppressWarnings( "serial" )
+    static class BadRouteParameterException extends RuntimeException
+    {
+        BadRouteParameterException( String message )
+        {
+            super( message );
+        }
+
+        BadRouteParameterException( String message, Throwable cause )
+        {
+            super( message, cause );
+        }
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.neo4j.server.rest.web;
 
+import java.net.URI;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -27,11 +28,13 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.rest.domain.EndNodeNotFoundException;
+import org.neo4j.server.rest.domain.IndexQuery;
 import org.neo4j.server.rest.domain.StartNodeNotFoundException;
 import org.neo4j.server.rest.domain.StartNodeSameAsEndNodeException;
 import org.neo4j.server.rest.domain.TraverserReturnType;
@@ -65,13 +68,15 @@ public class RestfulGraphDatabase {
     private static final String PATH_RELATIONSHIP_PROPERTIES = PATH_RELATIONSHIP + "/properties";
     private static final String PATH_RELATIONSHIP_PROPERTY = PATH_RELATIONSHIP_PROPERTIES + "/{key}";
     private static final String PATH_NODE_TRAVERSE = PATH_NODE + "/traverse/{returnType}";
+    private static final String PATH_NODE_PAGED_TRAVERSE = PATH_NODE + "/paged/traverse/{returnType}";
+    private static final String PATH_NODE_PAGED_TRAVERSER = PATH_NODE_PAGED_TRAVERSE + "/{traverserId}";
     private static final String PATH_NODE_PATH = PATH_NODE + "/path";
     private static final String PATH_NODE_PATHS = PATH_NODE + "/paths";
 
     protected static final String PATH_NODE_INDEX = "index/node";
     protected static final String PATH_NAMED_NODE_INDEX = PATH_NODE_INDEX + "/{indexName}";
     protected static final String PATH_NODE_INDEX_GET = PATH_NAMED_NODE_INDEX + "/{key}/{value}";
-    protected static final String PATH_NODE_INDEX_QUERY = PATH_NAMED_NODE_INDEX + "/{key}"; // http://localhost/db/data/index/node/foo?query=somelucenestuff
+    protected static final String PATH_NODE_INDEX_QUERY = PATH_NAMED_NODE_INDEX + "/{key}"; // http://localhost/db/data/index/node/foo?query=somelucenestuff&limit=10&skip=20&sort=name,-age&idsOnly=true
     protected static final String PATH_NODE_INDEX_ID = PATH_NODE_INDEX_GET + "/{id}";
     protected static final String PATH_NODE_INDEX_REMOVE_KEY = PATH_NAMED_NODE_INDEX + "/{key}/{id}";
     protected static final String PATH_NODE_INDEX_REMOVE = PATH_NAMED_NODE_INDEX + "/{id}";
@@ -84,11 +89,16 @@ public class RestfulGraphDatabase {
     protected static final String PATH_RELATIONSHIP_INDEX_REMOVE_KEY = PATH_NAMED_RELATIONSHIP_INDEX + "/{key}/{id}";
     protected static final String PATH_RELATIONSHIP_INDEX_REMOVE = PATH_NAMED_RELATIONSHIP_INDEX + "/{id}";
 
+    private static final String DEFAULT_PAGE_SIZE = "50";
+    private static final String DEFAULT_LEASE_TIME_IN_SECONDS = "60";
+
     private final DatabaseActions server;
     private final OutputFormat output;
     private final InputFormat input;
+    private final UriInfo uriInfo;
 
     public RestfulGraphDatabase(@Context UriInfo uriInfo, @Context Database database, @Context InputFormat input, @Context OutputFormat output) {
+        this.uriInfo = uriInfo;
         this.input = input;
         this.output = output;
         this.server = new DatabaseActions(database);
@@ -491,9 +501,13 @@ public class RestfulGraphDatabase {
 
     @GET
     @Path(PATH_NODE_INDEX_QUERY)
-    public Response getIndexedNodesByQuery(@PathParam("indexName") String indexName, @PathParam("key") String key, @QueryParam("query") String query) {
+    public Response getIndexedNodesByQuery(@PathParam("indexName") String indexName, @PathParam("key") String key, @QueryParam("query") String query,
+            @QueryParam("limit") @DefaultValue("0") int limit, @QueryParam("skip") @DefaultValue("0") int skip,
+            @QueryParam("sort") String sort, @QueryParam("idsOnly") @DefaultValue("false") boolean idsOnly) {
         try {
-            return output.ok(server.getIndexedNodesByQuery(indexName, key, query));
+            return output.ok(server.getIndexedNodesByQuery(indexName, key, new IndexQuery(query, limit, skip, sort), idsOnly));
+        } catch (IllegalArgumentException e) {
+            return output.badRequest(e);
         } catch (NotFoundException nfe) {
             return output.notFound(nfe);
         }
@@ -511,9 +525,13 @@ public class RestfulGraphDatabase {
 
     @GET
     @Path(PATH_RELATIONSHIP_INDEX_QUERY)
-    public Response getIndexedRelationshipsByQuery(@PathParam("indexName") String indexName, @PathParam("key") String key, @QueryParam("query") String query) {
+    public Response getIndexedRelationshipsByQuery(@PathParam("indexName") String indexName, @PathParam("key") String key, @QueryParam("query") String query,
+            @QueryParam("limit") @DefaultValue("0") int limit, @QueryParam("skip") @DefaultValue("0") int skip,
+            @QueryParam("sort") String sort, @QueryParam("idsOnly") @DefaultValue("false") boolean idsOnly) {
         try {
-            return output.ok(server.getIndexedRelationshipsByQuery(indexName, key, query));
+            return output.ok(server.getIndexedRelationshipsByQuery(indexName, key, new IndexQuery(query, limit, skip, sort), idsOnly));
+        } catch (IllegalArgumentException e) {
+            return output.badRequest(e);
         } catch (NotFoundException nfe) {
             return output.notFound(nfe);
         }
@@ -603,6 +621,43 @@ public class RestfulGraphDatabase {
         }
     }
 
+    @POST
+    @Path(PATH_NODE_PAGED_TRAVERSE)
+    public Response createPagedTraverser(@PathParam("nodeId") long startNode, @PathParam("returnType") TraverserReturnType returnType,
+            @QueryParam("pageSize") @DefaultValue(DEFAULT_PAGE_SIZE) int pageSize,
+            @QueryParam("leaseTime") @DefaultValue(DEFAULT_LEASE_TIME_IN_SECONDS) int leaseTimeInSeconds, String body) {
+        try {
+            String traverserId = server.createPagedTraverser(startNode, input.readMap(body), pageSize, leaseTimeInSeconds);
+            URI location = UriBuilder.fromUri(uriInfo.getBaseUri()).path(PATH_NODE_PAGED_TRAVERSER).build(startNode, returnType, traverserId);
+            return output.created(location, server.firstPage(traverserId, returnType));
+        } catch (BadInputException e) {
+            return output.badRequest(e);
+        } catch (IllegalArgumentException e) {
+            return output.badRequest(e);
+        } catch (NotFoundException e) {
+            return output.notFound(e);
+        }
+    }
+
+    @GET
+    @Path(PATH_NODE_PAGED_TRAVERSER)
+    public Response pagedTraverse(@PathParam("traverserId") String traverserId, @PathParam("returnType") TraverserReturnType returnType) {
+        try {
+            return output.ok(server.pagedTraverse(traverserId, returnType));
+        } catch (NotFoundException e) {
+            return output.notFound(e);
+        }
+    }
+
+    @DELETE
+    @Path(PATH_NODE_PAGED_TRAVERSER)
+    public Response removePagedTraverser(@PathParam("traverserId") String traverserId) {
+        if (server.removePagedTraverser(traverserId)) {
+            return nothing();
+        }
+        return output.notFound();
+    }
+
     @POST
     @Path(PATH_NODE_PATH)
     public Response singlePath(@PathParam("nodeId") long startNode, String body) {
@@ -21,10 +21,12 @@ package org.neo4j.server.web;
 
 import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.spi.container.servlet.ServletContainer;
+import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.SessionManager;
 import org.mortbay.jetty.handler.MovedContextHandler;
 import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.FilterHolder;
 import org.mortbay.jetty.servlet.HashSessionManager;
 import org.mortbay.jetty.servlet.ServletHolder;
 import org.mortbay.jetty.servlet.SessionHandler;
@@ -38,9 +40,12 @@ import org.neo4j.server.rest.web.AllowAjaxFilter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.servlet.Filter;
 import javax.servlet.Servlet;
 
 public class Jetty6WebServer implements WebServer
@@ -53,7 +58,9 @@ public class Jetty6WebServer implements WebServer
 
     private final HashMap<String, String> staticContent = new HashMap<String, String>();
     private final HashMap<String, ServletHolder> jaxRSPackages = new HashMap<String, ServletHolder>();
+    private final HashMap<String, List<Filter>> filters = new HashMap<String, List<Filter>>();
     private NeoServer server;
+    private RequestLimitFilter requestLimitFilter;
 
 
     @Override
@@ -109,6 +116,22 @@ public class Jetty6WebServer implements WebServer
         jetty.setThreadPool(new QueuedThreadPool(maxThreads));
     }
 
+    @Override
+    public void setRequestLimits(int maxConcurrentRequests, int maxQueuedRequests, long maxWaitMillis, Map<String, Integer> endpointLimits) {
+        requestLimitFilter = new RequestLimitFilter(maxConcurrentRequests, maxQueuedRequests, maxWaitMillis, endpointLimits);
+    }
+
+    @Override
+    public void addFilter(Filter filter, String mountPoint) {
+        mountPoint = trimTrailingSlash(ensureRelativeUri(mountPoint));
+        List<Filter> mountPointFilters = filters.get(mountPoint);
+        if (mountPointFilters == null) {
+            mountPointFilters = new ArrayList<Filter>();
+            filters.put(mountPoint, mountPointFilters);
+        }
+        mountPointFilters.add(filter);
+    }
+
     @Override
     public void addJAXRSPackages(List<String> packageNames, String mountPoint) {
         // We don't want absolute URIs at this point
@@ -203,6 +226,14 @@ public class Jetty6WebServer implements WebServer
             SessionManager sm = new HashSessionManager();
             SessionHandler sh = new SessionHandler(sm);
             jerseyContext.addServlet(servletHolder, "/*");
+            if (filters.containsKey(mountPoint)) {
+                for (Filter filter : filters.get(mountPoint)) {
+                    jerseyContext.addFilter(new FilterHolder(filter), "/*", Handler.DEFAULT);
+                }
+            }
+            if (requestLimitFilter != null) {
+                jerseyContext.addFilter(new FilterHolder(requestLimitFilter), "/*", Handler.DEFAULT);
+            }
             jerseyContext.setSessionHandler(sh);
         }
     }
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.web;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+
+/**
+ * Bounds the number of requests doing graph work at the same time, in total
+ * and per endpoint. A request that can't start right away is queued, as a
+ * suspended continuation that doesn't hold on to a connector thread, and
+ * resumed when a running request finishes. Reads are resumed before
+ * writes. When the queue is full, or a request has waited too long, it is
+ * answered with 503 and a Retry-After header instead.
+ * <p>
+ * An endpoint is named by a path segment: a request belongs to the first
+ * endpoint with a limit whose name is one of the segments of its path, f.ex.
+ * "traverse" for {@code /node/12/traverse/node}.
+ */
+public class RequestLimitFilter implements Filter
+{
+    private static final String ADMITTED = RequestLimitFilter.class.getName() + ".admitted";
+    private static final int READ_PRIORITY = 0;
+    private static final int WRITE_PRIORITY = 1;
+
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final long maxWaitMillis;
+    private final int retryAfterSeconds;
+    private final Map<String, Integer> endpointLimits;
+
+    private final Object lock = new Object();
+    private int running;
+    private final Map<String, Integer> runningPerEndpoint = new HashMap<String, Integer>();
+    private final LinkedList<Waiting>[] queues;
+    private int queued;
+
+    @SuppressWarnings( "unchecked" )
+    public RequestLimitFilter( int maxConcurrentRequests, int maxQueuedRequests,
+            long maxWaitMillis, Map<String, Integer> endpointLimits )
+    {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxWaitMillis = maxWaitMillis;
+        this.retryAfterSeconds = (int) Math.max( 1, maxWaitMillis / 1000 );
+        this.endpointLimits = new LinkedHashMap<String, Integer>( endpointLimits );
+        this.queues = new LinkedList[] { new LinkedList<Waiting>(), new LinkedList<Waiting>() };
+    }
+
+    public void init( FilterConfig config ) throws ServletException
+    {
+    }
+
+    public void destroy()
+    {
+    }
+
+    public void doFilter( ServletRequest req, ServletResponse res, FilterChain chain )
+            throws IOException, ServletException
+    {
+        HttpServletRequest request = (HttpServletRequest) req;
+        String endpoint = endpointOf( request );
+        boolean admitted;
+        Waiting waiting = null;
+        synchronized ( lock )
+        {
+            Boolean state = (Boolean) request.getAttribute( ADMITTED );
+            if ( state == null )
+            {
+                admitted = tryAdmit( endpoint );
+                if ( !admitted && queued < maxQueuedRequests )
+                {
+                    // Each request waits on a mutex of its own, so that
+                    // resuming it wakes it and not another waiting request
+                    waiting = new Waiting( request, endpoint,
+                            ContinuationSupport.getContinuation( request, new Object() ) );
+                    request.setAttribute( ADMITTED, Boolean.FALSE );
+                    queues[priorityOf( request )].addLast( waiting );
+                    queued++;
+                }
+            }
+            else
+            {
+                // dispatched again, either resumed or timed out
+                admitted = state.booleanValue() || dequeue( request );
+            }
+        }
+        if ( waiting != null )
+        {
+            // releases the thread by throwing a RetryRequest on connectors
+            // that support it, waits on its mutex otherwise. A resume that
+            // comes before the suspend makes it return right away.
+            waiting.continuation.suspend( maxWaitMillis );
+            synchronized ( lock )
+            {
+                admitted = waiting.admitted || dequeue( request );
+            }
+        }
+
+        if ( !admitted )
+        {
+            HttpServletResponse response = (HttpServletResponse) res;
+            response.setHeader( "Retry-After", Integer.toString( retryAfterSeconds ) );
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            return;
+        }
+        try
+        {
+            chain.doFilter( req, res );
+        }
+        finally
+        {
+            release( endpoint );
+        }
+    }
+
+    /**
+     * Removes a request that timed out from the queue.
+     *
+     * @return {@code true} if the request was admitted after all.
+     */
+    private boolean dequeue( HttpServletRequest request )
+    {
+        if ( Boolean.TRUE.equals( request.getAttribute( ADMITTED ) ) )
+        {
+            return true;
+        }
+        for ( LinkedList<Waiting> queue : queues )
+        {
+            for ( Iterator<Waiting> iterator = queue.iterator(); iterator.hasNext(); )
+            {
+                if ( iterator.next().request == request )
+                {
+                    iterator.remove();
+                    queued--;
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    int getQueuedRequests()
+    {
+        synchronized ( lock )
+        {
+            return queued;
+        }
+    }
+
+    private boolean tryAdmit( String endpoint )
+    {
+        if ( running >= maxConcurrentRequests )
+        {
+            return false;
+        }
+        if ( endpoint != null )
+        {
+            Integer count = runningPerEndpoint.get( endpoint );
+            int current = count == null ? 0 : count.intValue();
+            if ( current >= endpointLimits.get( endpoint ).intValue() )
+            {
+                return false;
+            }
+            runningPerEndpoint.put( endpoint, current + 1 );
+        }
+        running++;
+        return true;
+    }
+
+    private void release( String endpoint )
+    {
+        synchronized ( lock )
+        {
+            running--;
+            if ( endpoint != null )
+            {
+                runningPerEndpoint.put( endpoint, runningPerEndpoint.get( endpoint ) - 1 );
+            }
+            for ( LinkedList<Waiting> queue : queues )
+            {
+                for ( Iterator<Waiting> iterator = queue.iterator(); iterator.hasNext(); )
+                {
+                    Waiting waiting = iterator.next();
+                    if ( tryAdmit( waiting.endpoint ) )
+                    {
+                        iterator.remove();
+                        queued--;
+                        waiting.admitted = true;
+                        waiting.request.setAttribute( ADMITTED, Boolean.TRUE );
+                        waiting.continuation.resume();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private String endpointOf( HttpServletRequest request )
+    {
+        if ( endpointLimits.isEmpty() || request.getPathInfo() == null )
+        {
+            return null;
+        }
+        String[] segments = request.getPathInfo().split( "/" );
+        for ( String endpoint : endpointLimits.keySet() )
+        {
+            for ( String segment : segments )
+            {
+                if ( endpoint.equals( segment ) )
+                {
+                    return endpoint;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int priorityOf( HttpServletRequest request )
+    {
+        String method = request.getMethod();
+        return "GET".equals( method ) || "HEAD".equals( method ) ? READ_PRIORITY : WRITE_PRIORITY;
+    }
+
+    private static class Waiting
+    {
+        private final HttpServletRequest request;
+        private final String endpoint;
+        private final Continuation continuation;
+        private boolean admitted;
+
+        Waiting( HttpServletRequest request, String endpoint, Continuation continuation )
+        {
+            this.request = request;
+            this.endpoint = endpoint;
+            this.continuation = continuation;
+        }
+    }
+}
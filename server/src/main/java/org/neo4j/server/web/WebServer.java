@@ -20,7 +20,9 @@
 package org.neo4j.server.web;
 
 import java.util.List;
+import java.util.Map;
 
+import javax.servlet.Filter;
 import javax.servlet.Servlet;
 
 import org.neo4j.server.NeoServer;
@@ -31,6 +33,8 @@ public interface WebServer {
     public void start();
     public void stop();
     public void setMaxThreads(int maxThreads);
+    public void setRequestLimits(int maxConcurrentRequests, int maxQueuedRequests, long maxWaitMillis, Map<String, Integer> endpointLimits);
+    public void addFilter(Filter filter, String serverMountPoint);
     public void addJAXRSPackages(List<String> packageNames, String serverMountPoint);
     public void addStaticContent(String contentLocation, String serverMountPoint);
 
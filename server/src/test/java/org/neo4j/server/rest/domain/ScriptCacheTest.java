@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import javax.script.ScriptContext;
+import javax.script.SimpleScriptContext;
+
+import org.junit.Test;
+
+public class ScriptCacheTest
+{
+    @Test
+    public void shouldCompileScriptOnlyOnce() throws Exception
+    {
+        ScriptCache cache = new ScriptCache( 10 );
+        ScriptCache.Script script = cache.get( "javascript", "position * 2;" );
+        assertSame( script, cache.get( "javascript", "position * 2;" ) );
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 1, cache.getHits() );
+
+        ScriptContext context = new SimpleScriptContext();
+        context.setAttribute( "position", 21, ScriptContext.ENGINE_SCOPE );
+        assertEquals( 42, ( (Number) script.eval( context ) ).intValue() );
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedScript() throws Exception
+    {
+        ScriptCache cache = new ScriptCache( 2 );
+        ScriptCache.Script first = cache.get( "javascript", "1;" );
+        cache.get( "javascript", "2;" );
+        cache.get( "javascript", "1;" );
+        cache.get( "javascript", "3;" );
+        assertEquals( 2, cache.getSize() );
+        assertSame( first, cache.get( "javascript", "1;" ) );
+        assertEquals( 3, cache.getMisses() );
+        assertEquals( 2, cache.getHits() );
+    }
+
+    @Test( expected = EvaluationException.class )
+    public void shouldFailForUnknownLanguage() throws Exception
+    {
+        new ScriptCache( 10 ).get( "no such language", "true;" );
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.paging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+
+public class TraversalCursorsTest
+{
+    private long now = 0;
+
+    private final TraversalCursors cursors = new TraversalCursors( 2 )
+    {
+        @Override
+        protected long currentTimeMillis()
+        {
+            return now;
+        }
+    };
+
+    @Test
+    public void shouldFindAddedTraverser()
+    {
+        PagedTraverser traverser = traverser( 1000 );
+        String id = cursors.add( traverser );
+        assertSame( traverser, cursors.get( id ) );
+        assertNull( cursors.get( "no such id" ) );
+    }
+
+    @Test
+    public void shouldEvictTraverserWhenLeaseRunsOut()
+    {
+        String id = cursors.add( traverser( 1000 ) );
+        now = 1001;
+        assertNull( cursors.get( id ) );
+        assertEquals( 0, cursors.size() );
+    }
+
+    @Test
+    public void shouldRenewLeaseOnAccess()
+    {
+        String id = cursors.add( traverser( 1000 ) );
+        now = 900;
+        assertTrue( cursors.get( id ) != null );
+        now = 1800;
+        assertTrue( cursors.get( id ) != null );
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedTraverserWhenFull()
+    {
+        String first = cursors.add( traverser( 1000 ) );
+        String second = cursors.add( traverser( 1000 ) );
+        cursors.get( first );
+        String third = cursors.add( traverser( 1000 ) );
+        assertEquals( 2, cursors.size() );
+        assertNull( cursors.get( second ) );
+        assertTrue( cursors.get( first ) != null );
+        assertTrue( cursors.get( third ) != null );
+    }
+
+    @Test
+    public void shouldRemoveTraverser()
+    {
+        String id = cursors.add( traverser( 1000 ) );
+        assertTrue( cursors.remove( id ) );
+        assertFalse( cursors.remove( id ) );
+        assertNull( cursors.get( id ) );
+    }
+
+    private PagedTraverser traverser( long leaseMillis )
+    {
+        return new PagedTraverser( Collections.<Path>emptyList(), 10, leaseMillis );
+    }
+}
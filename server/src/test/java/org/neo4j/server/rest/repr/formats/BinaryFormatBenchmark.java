@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.server.ServerTestUtils;
+import org.neo4j.server.rest.repr.NodeRepresentation;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.RepresentationFormat;
+
+/**
+ * Compares the cost of serializing a list of nodes, and the size of the
+ * result, between the JSON and the binary formats.
+ */
+public class BinaryFormatBenchmark
+{
+    private static final int NODE_COUNT = 1000;
+    private static final int ROUNDS = 200;
+
+    public static void main( String[] args ) throws Exception
+    {
+        File storeDir = ServerTestUtils.createTempDir();
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            List<Node> nodes = createNodes( db );
+            benchmark( "json", new JsonFormat(), nodes );
+            benchmark( "binary", new BinaryFormat(), nodes );
+            benchmark( "binary;links=false", new BinaryFormatWithoutLinks(), nodes );
+        }
+        finally
+        {
+            db.shutdown();
+            FileUtils.deleteDirectory( storeDir );
+        }
+    }
+
+    private static void benchmark( String name, RepresentationFormat format, List<Node> nodes )
+            throws Exception
+    {
+        OutputFormat output = new OutputFormat( format, new URI( "http://localhost:7474/db/data/" ),
+                null );
+        int bytes = 0;
+        // warm up
+        for ( int i = 0; i < ROUNDS; i++ )
+        {
+            output.format( NodeRepresentation.list( nodes ) );
+        }
+        long start = System.nanoTime();
+        for ( int i = 0; i < ROUNDS; i++ )
+        {
+            String entity = output.format( NodeRepresentation.list( nodes ) );
+            bytes = format instanceof BinaryFormat ? entity.length()
+                    : entity.getBytes( "UTF-8" ).length;
+        }
+        long nanosPerNode = ( System.nanoTime() - start ) / ( (long) ROUNDS * nodes.size() );
+        System.out.printf( "%-20s %6d ns/node %6d bytes/node%n", name, nanosPerNode,
+                bytes / nodes.size() );
+    }
+
+    private static List<Node> createNodes( GraphDatabaseService db )
+    {
+        List<Node> nodes = new ArrayList<Node>( NODE_COUNT );
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < NODE_COUNT; i++ )
+            {
+                Node node = db.createNode();
+                node.setProperty( "name", "node " + i );
+                node.setProperty( "age", i );
+                node.setProperty( "weight", i * 1.5 );
+                nodes.add( node );
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return nodes;
+    }
+}
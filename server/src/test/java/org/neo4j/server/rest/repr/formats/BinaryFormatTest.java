@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.server.rest.repr.BadInputException;
+import org.neo4j.server.rest.repr.ListRepresentation;
+import org.neo4j.server.rest.repr.MappingRepresentation;
+import org.neo4j.server.rest.repr.MappingSerializer;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.ValueRepresentation;
+
+public class BinaryFormatTest
+{
+    private final BinaryFormat input = new BinaryFormat();
+    private OutputFormat binary;
+    private OutputFormat withoutLinks;
+
+    @Before
+    public void createOutputFormats() throws Exception
+    {
+        binary = new OutputFormat( new BinaryFormat(), new URI( "http://localhost/" ), null );
+        withoutLinks = new OutputFormat( new BinaryFormatWithoutLinks(),
+                new URI( "http://localhost/" ), null );
+    }
+
+    @Test
+    public void canFormatString() throws Exception
+    {
+        String entity = binary.format( ValueRepresentation.string( "expected value" ) );
+        assertEquals( "expected value", input.readValue( entity ) );
+    }
+
+    @Test
+    public void canFormatListOfStrings() throws Exception
+    {
+        String entity = binary.format( ListRepresentation.strings( "hello", "world" ) );
+        assertEquals( Arrays.asList( "hello", "world" ), input.readList( entity ) );
+    }
+
+    @Test
+    public void canFormatEmptyObject() throws Exception
+    {
+        String entity = binary.format( new MappingRepresentation( "empty" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+            }
+        } );
+        assertEquals( Collections.emptyMap(), input.readMap( entity ) );
+    }
+
+    @Test
+    public void shouldWriteEntityUrisAsIds() throws Exception
+    {
+        Map<String, Object> result = input.readMap( binary.format( entity() ) );
+        assertEquals( "node/12", result.get( "self" ) );
+        assertEquals( "http://localhost/node/12/properties", result.get( "properties" ) );
+        assertEquals( "http://localhost/node/12/properties/{key}", result.get( "property" ) );
+        assertEquals( 42, result.get( "number" ) );
+    }
+
+    @Test
+    public void shouldOmitLinksWhenAskedTo() throws Exception
+    {
+        Map<String, Object> result = input.readMap( withoutLinks.format( entity() ) );
+        assertEquals( "node/12", result.get( "self" ) );
+        assertFalse( result.containsKey( "properties" ) );
+        assertFalse( result.containsKey( "property" ) );
+        assertEquals( 42, result.get( "number" ) );
+    }
+
+    @Test( expected = BadInputException.class )
+    public void shouldRejectTruncatedInput() throws Exception
+    {
+        String entity = binary.format( ListRepresentation.strings( "hello", "world" ) );
+        input.readList( entity.substring( 0, entity.length() - 3 ) );
+    }
+
+    private MappingRepresentation entity()
+    {
+        return new MappingRepresentation( "node" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+                serializer.putUri( "self", "node/12" );
+                serializer.putUri( "properties", "node/12/properties" );
+                serializer.putUriTemplate( "property", "node/12/properties/{key}" );
+                serializer.putNumber( "number", 42 );
+            }
+        };
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.repr.ListRepresentation;
+import org.neo4j.server.rest.repr.MappingRepresentation;
+import org.neo4j.server.rest.repr.MappingSerializer;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.Representation;
+import org.neo4j.server.rest.repr.RepresentationType;
+import org.neo4j.server.rest.repr.ValueRepresentation;
+
+public class StreamingJsonFormatTest
+{
+    private OutputFormat json;
+
+    @Before
+    public void createOutputFormat() throws Exception
+    {
+        json = new OutputFormat( new StreamingJsonFormat(), new URI( "http://localhost/" ), null );
+    }
+
+    @Test
+    public void canFormatString() throws Exception
+    {
+        String entity = json.format( ValueRepresentation.string( "expected value" ) );
+        assertEquals( "\"expected value\"", entity );
+    }
+
+    @Test
+    public void canFormatListOfStrings() throws Exception
+    {
+        String entity = json.format( ListRepresentation.strings( "hello", "world" ) );
+        assertEquals( Arrays.asList( "hello", "world" ), JsonHelper.jsonToList( entity ) );
+    }
+
+    @Test
+    public void canFormatObjectWithStringField() throws Exception
+    {
+        String entity = json.format( new MappingRepresentation( "string" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+                serializer.putString( "key", "expected string" );
+            }
+        } );
+        assertEquals( Collections.singletonMap( "key", "expected string" ),
+                JsonHelper.jsonToMap( entity ) );
+    }
+
+    @Test
+    public void streamsListElementsAsTheyAreWritten() throws Exception
+    {
+        final List<String> consumed = new ArrayList<String>();
+        Iterable<Representation> values = new Iterable<Representation>()
+        {
+            public Iterator<Representation> iterator()
+            {
+                final Iterator<String> strings = Arrays.asList( "a", "b", "c" ).iterator();
+                return new Iterator<Representation>()
+                {
+                    public boolean hasNext()
+                    {
+                        return strings.hasNext();
+                    }
+
+                    public Representation next()
+                    {
+                        String value = strings.next();
+                        consumed.add( value );
+                        return ValueRepresentation.string( value );
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        Response response = json.ok( new ListRepresentation( RepresentationType.STRING, values ) );
+        assertEquals( Collections.emptyList(), consumed );
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ( (StreamingOutput) response.getEntity() ).write( output );
+        assertEquals( Arrays.asList( "a", "b", "c" ), consumed );
+        assertEquals( Arrays.asList( "a", "b", "c" ),
+                JsonHelper.jsonToList( new String( output.toByteArray(), "UTF-8" ) ) );
+    }
+
+    @Test
+    public void closesHitsWhenWritingFails() throws Exception
+    {
+        FailingHits hits = new FailingHits();
+        Response response = json.ok( new ListRepresentation( RepresentationType.STRING, hits ).closing(
+                hits ) );
+        try
+        {
+            ( (StreamingOutput) response.getEntity() ).write( new ByteArrayOutputStream() );
+            fail( "Should have failed on the second hit" );
+        }
+        catch ( IllegalStateException e )
+        {
+            // expected
+        }
+        assertTrue( hits.closed );
+    }
+
+    private static class FailingHits extends PrefetchingIterator<Representation> implements
+            IndexHits<Representation>
+    {
+        private int read;
+        private boolean closed;
+
+        @Override
+        protected Representation fetchNextOrNull()
+        {
+            if ( read++ > 0 )
+            {
+                throw new IllegalStateException( "Failed reading hit " + read );
+            }
+            return ValueRepresentation.string( "a" );
+        }
+
+        public Iterator<Representation> iterator()
+        {
+            return this;
+        }
+
+        public int size()
+        {
+            return 2;
+        }
+
+        public void close()
+        {
+            closed = true;
+        }
+
+        public Representation getSingle()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public float currentScore()
+        {
+            return 0;
+        }
+    }
+}
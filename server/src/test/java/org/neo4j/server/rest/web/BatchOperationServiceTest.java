@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.server.ServerTestUtils;
+import org.neo4j.server.database.Database;
+import org.neo4j.server.rest.domain.GraphDbHelper;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.repr.ExtensionInjector;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.formats.JsonFormat;
+
+public class BatchOperationServiceTest
+{
+    private static final String BASE_URI = "http://neo4j.org/";
+    private BatchOperationService service;
+    private UriInfo uriInfo;
+    private Database database;
+    private GraphDbHelper helper;
+    private String databasePath;
+
+    @Before
+    public void doBefore() throws IOException
+    {
+        databasePath = ServerTestUtils.createTempDir().getAbsolutePath();
+        database = new Database( ServerTestUtils.EMBEDDED_GRAPH_DATABASE_FACTORY, databasePath );
+        helper = new GraphDbHelper( database );
+        uriInfo = mock( UriInfo.class );
+        when( uriInfo.getBaseUri() ).thenReturn( URI.create( BASE_URI ) );
+        service = new BatchOperationService( uriInfo, database, new JsonFormat(),
+                new OutputFormat( new JsonFormat(), URI.create( BASE_URI ), null ) );
+    }
+
+    @After
+    public void shutdownDatabase() throws IOException
+    {
+        this.database.shutdown();
+        org.apache.commons.io.FileUtils.forceDelete( new File( databasePath ) );
+    }
+
+    @Test
+    public void shouldExecuteOperationsWithBackReferences() throws Exception
+    {
+        int nodesBefore = helper.getNumberOfNodes();
+        Response response = service.performBatchOperations( "["
+                + "{\"method\":\"POST\",\"to\":\"node\",\"body\":{\"name\":\"a\"},\"id\":0},"
+                + "{\"method\":\"POST\",\"to\":\"node\",\"body\":{\"name\":\"b\"},\"id\":1},"
+                + "{\"method\":\"POST\",\"to\":\"{0}/relationships\","
+                + "\"body\":{\"to\":\"{1}\",\"type\":\"KNOWS\"},\"id\":2},"
+                + "{\"method\":\"PUT\",\"to\":\"{0}/properties/age\",\"body\":42}"
+                + "]" );
+
+        assertEquals( 200, response.getStatus() );
+        assertEquals( nodesBefore + 2, helper.getNumberOfNodes() );
+        assertEquals( 1, helper.getNumberOfRelationships() );
+
+        List<Map<String, Object>> results = JsonHelper.jsonToList( entityAsString( response ) );
+        assertEquals( 4, results.size() );
+        assertEquals( 1, results.get( 1 ).get( "id" ) );
+        Map<?, ?> node = (Map<?, ?>) results.get( 1 ).get( "body" );
+        assertEquals( results.get( 1 ).get( "location" ), node.get( "self" ) );
+        assertEquals( "KNOWS", ( (Map<?, ?>) results.get( 2 ).get( "body" ) ).get( "type" ) );
+    }
+
+    @Test
+    public void shouldRollBackAllOperationsIfOneFails() throws Exception
+    {
+        int nodesBefore = helper.getNumberOfNodes();
+        Response response = service.performBatchOperations( "["
+                + "{\"method\":\"POST\",\"to\":\"node\",\"id\":0},"
+                + "{\"method\":\"GET\",\"to\":\"node/9999999\",\"id\":1}"
+                + "]" );
+
+        assertEquals( 404, response.getStatus() );
+        assertEquals( nodesBefore, helper.getNumberOfNodes() );
+        Map<String, Object> failure = JsonHelper.jsonToMap( new String( (byte[]) response.getEntity(),
+                "UTF-8" ) );
+        assertEquals( 1, failure.get( "index" ) );
+        assertEquals( 1, failure.get( "id" ) );
+        assertEquals( "node/9999999", failure.get( "from" ) );
+        assertEquals( 404, failure.get( "status" ) );
+    }
+
+    @Test
+    public void shouldReportTheIndexOfAMalformedOperation() throws Exception
+    {
+        Response response = service.performBatchOperations( "["
+                + "{\"method\":\"POST\",\"to\":\"node\"},"
+                + "{\"to\":\"node\",\"id\":\"second\"}"
+                + "]" );
+
+        assertEquals( 400, response.getStatus() );
+        Map<String, Object> failure = JsonHelper.jsonToMap( new String( (byte[]) response.getEntity(),
+                "UTF-8" ) );
+        assertEquals( 1, failure.get( "index" ) );
+        assertEquals( "second", failure.get( "id" ) );
+    }
+
+    @Test
+    public void shouldReportAPlainTextFailureBodyAsAString() throws Exception
+    {
+        Response response = service.performBatchOperations( "["
+                + "{\"method\":\"POST\",\"to\":\"node\",\"id\":0},"
+                + "{\"method\":\"POST\",\"to\":\"node\",\"id\":1,\"body\":{\"mixed\":[1,\"two\"]}}"
+                + "]" );
+
+        assertEquals( 400, response.getStatus() );
+        Map<String, Object> failure = JsonHelper.jsonToMap( new String( (byte[]) response.getEntity(),
+                "UTF-8" ) );
+        assertEquals( 1, failure.get( "index" ) );
+        assertEquals( 1, failure.get( "id" ) );
+        assertTrue( ( (String) failure.get( "body" ) ).startsWith( "Invalid JSON array in POST body" ) );
+    }
+
+    @Test
+    public void shouldKeepTheExtensionsOfTheResults() throws Exception
+    {
+        ExtensionInjector extensions = new ExtensionInjector()
+        {
+            public Map<String, List<String>> getExensionsFor( Class<?> type )
+            {
+                return Collections.singletonMap( "Plugin",
+                        Collections.singletonList( "method" ) );
+            }
+        };
+        service = new BatchOperationService( uriInfo, database, new JsonFormat(),
+                new OutputFormat( new JsonFormat(), URI.create( BASE_URI ), extensions ) );
+        Response response = service.performBatchOperations(
+                "[{\"method\":\"POST\",\"to\":\"node\"}]" );
+
+        assertEquals( 200, response.getStatus() );
+        List<Map<String, Object>> results = JsonHelper.jsonToList( entityAsString( response ) );
+        Map<?, ?> node = (Map<?, ?>) results.get( 0 ).get( "body" );
+        assertTrue( ( (Map<?, ?>) node.get( "extensions" ) ).containsKey( "Plugin" ) );
+    }
+
+    @Test
+    public void shouldRespondWith400ForMalformedBatch() throws Exception
+    {
+        assertEquals( 400, service.performBatchOperations( "{\"method\":\"GET\"}" ).getStatus() );
+        assertEquals( 400, service.performBatchOperations( "[{\"to\":\"node\"}]" ).getStatus() );
+    }
+
+    @Test
+    public void shouldReplaceOnlyKnownBackReferences()
+    {
+        assertEquals( "http://neo4j.org/node/3/relationships {7}",
+                BatchOperationService.replaceBackReferences( "{0}/relationships {7}",
+                        Collections.singletonMap( "0", "http://neo4j.org/node/3" ) ) );
+    }
+
+    private static String entityAsString( Response response ) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ( (StreamingOutput) response.getEntity() ).write( output );
+        return new String( output.toByteArray(), "UTF-8" );
+    }
+}
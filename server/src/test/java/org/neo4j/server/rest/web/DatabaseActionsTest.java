@@ -55,6 +55,7 @@ import org.neo4j.server.database.Database;
 import org.neo4j.server.database.DatabaseBlockedException;
 import org.neo4j.server.rest.domain.EndNodeNotFoundException;
 import org.neo4j.server.rest.domain.GraphDbHelper;
+import org.neo4j.server.rest.domain.IndexQuery;
 import org.neo4j.server.rest.domain.StartNodeNotFoundException;
 import org.neo4j.server.rest.domain.StartNodeSameAsEndNodeException;
 import org.neo4j.server.rest.domain.TraverserReturnType;
@@ -672,6 +673,53 @@ public class DatabaseActionsTest
         assertEquals( 1, counter );
     }
 
+    @Test
+    public void shouldReturnOnePageOfSortedIdsFromIndexQuery() throws DatabaseBlockedException
+    {
+        String indexName = "paged";
+        graphdbHelper.createNodeIndex( indexName );
+        Map<String, Long> nodes = new HashMap<String, Long>();
+        for ( String name : new String[] { "d", "b", "e", "a", "c" } )
+        {
+            long nodeId = graphdbHelper.createNode();
+            graphdbHelper.addNodeToIndex( indexName, "name", name, nodeId );
+            nodes.put( name, nodeId );
+        }
+
+        List<Object> page = serialize( actions.getIndexedNodesByQuery( indexName, "name",
+                new IndexQuery( "*", 2, 1, "name" ), true ) );
+        assertEquals( 2, page.size() );
+        assertEquals( nodes.get( "b" ).longValue(), ( (Number) page.get( 0 ) ).longValue() );
+        assertEquals( nodes.get( "c" ).longValue(), ( (Number) page.get( 1 ) ).longValue() );
+
+        page = serialize( actions.getIndexedNodesByQuery( indexName, "name",
+                new IndexQuery( "*", 0, 0, "-name" ), true ) );
+        assertEquals( nodes.get( "e" ).longValue(), ( (Number) page.get( 0 ) ).longValue() );
+        assertEquals( 5, page.size() );
+    }
+
+    @Test
+    public void shouldReturnIdsFromIndexQueryWithoutLoadingTheNodes() throws DatabaseBlockedException
+    {
+        String indexName = "deleted";
+        graphdbHelper.createNodeIndex( indexName );
+        long kept = graphdbHelper.createNode();
+        long deleted = graphdbHelper.createNode();
+        graphdbHelper.addNodeToIndex( indexName, "name", "a", kept );
+        graphdbHelper.addNodeToIndex( indexName, "name", "b", deleted );
+        // still in the index, but not in the store
+        graphdbHelper.deleteNode( deleted );
+
+        List<Object> ids = serialize( actions.getIndexedNodesByQuery( indexName, "name",
+                new IndexQuery( "*", 1, 1, "name" ), true ) );
+        assertEquals( 1, ids.size() );
+        assertEquals( deleted, ( (Number) ids.get( 0 ) ).longValue() );
+
+        List<Object> nodes = serialize( actions.getIndexedNodesByQuery( indexName, "name",
+                new IndexQuery( "*", 0, 0, "name" ), false ) );
+        assertEquals( 1, nodes.size() );
+    }
+
     @Test
     public void shouldBeAbleToRemoveNodeFromIndex() throws DatabaseBlockedException
     {
@@ -851,6 +899,46 @@ public class DatabaseActionsTest
         assertEquals( 6, hits.size() );
     }
 
+    @Test
+    public void shouldBeAbleToTraverseOnePageAtATime() throws DatabaseBlockedException
+    {
+        long startNode = createBasicTraversableGraph();
+        String traverserId = actions.createPagedTraverser( startNode, MapUtil.map(
+                "return filter", MapUtil.map( "language", "builtin", "name", "all" ),
+                "max depth", 10 ), 4, 60 );
+        assertEquals( 4, serialize( actions.pagedTraverse( traverserId, TraverserReturnType.node ) ).size() );
+        assertEquals( 2, serialize( actions.pagedTraverse( traverserId, TraverserReturnType.node ) ).size() );
+        try
+        {
+            actions.pagedTraverse( traverserId, TraverserReturnType.node );
+            fail( "exhausted traverser should not be found" );
+        }
+        catch ( NotFoundException e )
+        {
+            // ok
+        }
+        assertFalse( actions.removePagedTraverser( traverserId ) );
+    }
+
+    @Test
+    public void shouldReturnAnEmptyFirstPageWhenPagedTraversalHasNoHits() throws DatabaseBlockedException
+    {
+        long startNode = graphdbHelper.createNode();
+        String traverserId = actions.createPagedTraverser( startNode, MapUtil.map( "max depth", 10 ), 4, 60 );
+        assertEquals( 0, serialize( actions.firstPage( traverserId, TraverserReturnType.node ) ).size() );
+        // nothing left to page through, so it's gone right away
+        assertFalse( actions.removePagedTraverser( traverserId ) );
+        try
+        {
+            actions.pagedTraverse( traverserId, TraverserReturnType.node );
+            fail( "exhausted traverser should not be found" );
+        }
+        catch ( NotFoundException e )
+        {
+            // ok
+        }
+    }
+
     @Test
     public void shouldBeAbleToUseCustomReturnFilter() throws DatabaseBlockedException
     {
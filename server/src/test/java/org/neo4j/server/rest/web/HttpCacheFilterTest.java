@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.neo4j.server.ServerTestUtils;
+import org.neo4j.server.database.Database;
+import org.neo4j.server.rest.domain.GraphDbHelper;
+
+public class HttpCacheFilterTest
+{
+    private Database database;
+    private GraphDbHelper graphdbHelper;
+    private int executed;
+
+    @Before
+    public void createDatabase() throws IOException
+    {
+        database = new Database( ServerTestUtils.EMBEDDED_GRAPH_DATABASE_FACTORY,
+                ServerTestUtils.createTempDir().getAbsolutePath() );
+        graphdbHelper = new GraphDbHelper( database );
+    }
+
+    @After
+    public void shutdownDatabase()
+    {
+        database.shutdown();
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedUntilSomethingIsCommitted() throws Exception
+    {
+        HttpCacheFilter filter = new HttpCacheFilter( database, 0, 0 );
+        HttpServletResponse first = response( new ByteArrayOutputStream() );
+        filter.doFilter( request( "GET", "/node/0", null ), first, chain( "" ) );
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass( String.class );
+        verify( first ).setHeader( eq( "ETag" ), etag.capture() );
+        assertEquals( 1, executed );
+
+        HttpServletResponse second = response( new ByteArrayOutputStream() );
+        filter.doFilter( request( "GET", "/node/0", etag.getValue() ), second, chain( "" ) );
+        verify( second ).setStatus( 304 );
+        assertEquals( 1, executed );
+
+        graphdbHelper.createNode();
+        HttpServletResponse third = response( new ByteArrayOutputStream() );
+        filter.doFilter( request( "GET", "/node/0", etag.getValue() ), third, chain( "" ) );
+        verify( third, never() ).setStatus( 304 );
+        assertEquals( 2, executed );
+    }
+
+    @Test
+    public void shouldServeCachedResponsesUntilSomethingIsCommitted() throws Exception
+    {
+        HttpCacheFilter filter = new HttpCacheFilter( database, 10, 1024 );
+        filter.doFilter( request( "GET", "/node/0", null ), response( new ByteArrayOutputStream() ),
+                chain( "{}" ) );
+        assertEquals( 1, filter.cachedResponses() );
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        filter.doFilter( request( "GET", "/node/0", null ), response( body ), chain( "{}" ) );
+        assertEquals( 1, executed );
+        assertEquals( "{}", body.toString( "UTF-8" ) );
+
+        graphdbHelper.createNode();
+        filter.doFilter( request( "GET", "/node/0", null ), response( new ByteArrayOutputStream() ),
+                chain( "{}" ) );
+        assertEquals( 2, executed );
+    }
+
+    @Test
+    public void shouldNotCacheResponsesLargerThanTheMaximumSize() throws Exception
+    {
+        HttpCacheFilter filter = new HttpCacheFilter( database, 10, 4 );
+        filter.doFilter( request( "GET", "/node/0", null ), response( new ByteArrayOutputStream() ),
+                chain( "{\"a\":1}" ) );
+        assertEquals( 0, filter.cachedResponses() );
+    }
+
+    @Test
+    public void shouldLeaveWritesAndPagedTraversalsAlone() throws Exception
+    {
+        HttpCacheFilter filter = new HttpCacheFilter( database, 10, 1024 );
+        HttpServletResponse write = response( new ByteArrayOutputStream() );
+        filter.doFilter( request( "POST", "/node", null ), write, chain( "{}" ) );
+        HttpServletResponse paged = response( new ByteArrayOutputStream() );
+        filter.doFilter( request( "GET", "/node/0/paged/traverse/node/abc", null ), paged,
+                chain( "[]" ) );
+
+        verify( write, never() ).setHeader( eq( "ETag" ), anyString() );
+        verify( paged, never() ).setHeader( eq( "ETag" ), anyString() );
+        assertEquals( 0, filter.cachedResponses() );
+    }
+
+    private FilterChain chain( final String body )
+    {
+        return new FilterChain()
+        {
+            public void doFilter( ServletRequest request, ServletResponse response )
+                    throws IOException
+            {
+                executed++;
+                response.getOutputStream().write( body.getBytes( "UTF-8" ) );
+            }
+        };
+    }
+
+    private static HttpServletRequest request( String method, String path, String ifNoneMatch )
+    {
+        HttpServletRequest request = mock( HttpServletRequest.class );
+        when( request.getMethod() ).thenReturn( method );
+        when( request.getPathInfo() ).thenReturn( path );
+        when( request.getRequestURI() ).thenReturn( "/db/data" + path );
+        when( request.getHeader( "Accept" ) ).thenReturn( "application/json" );
+        when( request.getHeader( "If-None-Match" ) ).thenReturn( ifNoneMatch );
+        when( request.getDateHeader( "If-Modified-Since" ) ).thenReturn( -1L );
+        return request;
+    }
+
+    private static HttpServletResponse response( final ByteArrayOutputStream body )
+            throws IOException
+    {
+        HttpServletResponse response = mock( HttpServletResponse.class );
+        when( response.getOutputStream() ).thenReturn( new ServletOutputStream()
+        {
+            @Override
+            public void write( int b )
+            {
+                body.write( b );
+            }
+        } );
+        return response;
+    }
+}
@@ -974,7 +974,7 @@ public class RestfulGraphDatabaseTest
 
         Map.Entry<String, String> indexedKeyValue = matrixers.indexedNodeKeyValues.entrySet().iterator().next();
         // query for the first letter with which the nodes were indexed.
-        Response response = service.getIndexedNodesByQuery( matrixers.nodeIndexName, indexedKeyValue.getKey(), indexedKeyValue.getValue().substring( 0, 1 ) + "*" );
+        Response response = service.getIndexedNodesByQuery( matrixers.nodeIndexName, indexedKeyValue.getKey(), indexedKeyValue.getValue().substring( 0, 1 ) + "*", 0, 0, null, false );
         assertEquals( Status.OK.getStatusCode(), response.getStatus() );
         Collection<?> items = (Collection<?>) JsonHelper.jsonToSingleValue( entityAsString( response ) );
         int counter = 0;
@@ -1049,7 +1049,7 @@ public class RestfulGraphDatabaseTest
         helper.addRelationshipToIndex( indexName, key, value, relationshipId1 );
         helper.addRelationshipToIndex( indexName, key, value, relationshipId2 );
 
-        Response response = service.getIndexedRelationshipsByQuery( indexName, key, value.substring( 0,1 ) + "*" );
+        Response response = service.getIndexedRelationshipsByQuery( indexName, key, value.substring( 0,1 ) + "*", 0, 0, null, false );
         assertEquals( Status.OK.getStatusCode(), response.getStatus() );
         Collection<?> items = (Collection<?>) JsonHelper.jsonToSingleValue( entityAsString( response ) );
         int counter = 0;
@@ -1144,6 +1144,21 @@ public class RestfulGraphDatabaseTest
         assertThat( resultAsList.size(), is( 0 ) );
     }
 
+    @Test
+    public void shouldGet201WithAnEmptyPageWhenPagedTraversalHasNoHits() throws DatabaseBlockedException,
+            BadInputException
+    {
+        long startNode = helper.createNode();
+        Response response = service.createPagedTraverser( startNode, TraverserReturnType.node, 50, 60, "" );
+        assertEquals( Status.CREATED.getStatusCode(), response.getStatus() );
+        assertThat( output.getResultAsList().size(), is( 0 ) );
+
+        String location = response.getMetadata().getFirst( HttpHeaders.LOCATION ).toString();
+        String traverserId = location.substring( location.lastIndexOf( '/' ) + 1 );
+        response = service.pagedTraverse( traverserId, TraverserReturnType.node );
+        assertEquals( Status.NOT_FOUND.getStatusCode(), response.getStatus() );
+    }
+
     @Test
     public void shouldGetSomeHitsWhenTraversingWithDefaultDescription() throws DatabaseBlockedException
     {
@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class RequestLimitFilterTest
+{
+    private final AtomicInteger executed = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    @Test
+    public void shouldRejectRequestsOverTheLimitWhenQueueIsFull() throws Exception
+    {
+        final RequestLimitFilter filter = new RequestLimitFilter( 1, 0, 1000,
+                Collections.<String, Integer>emptyMap() );
+        final HttpServletResponse rejected = mock( HttpServletResponse.class );
+
+        filter.doFilter( request( "GET", "/node/1" ), mock( HttpServletResponse.class ),
+                new FilterChain()
+                {
+                    public void doFilter( ServletRequest request, ServletResponse response )
+                            throws IOException, ServletException
+                    {
+                        executed.incrementAndGet();
+                        filter.doFilter( request( "GET", "/node/2" ), rejected, countingChain() );
+                    }
+                } );
+
+        assertEquals( 1, executed.get() );
+        verify( rejected ).setHeader( "Retry-After", "1" );
+        verify( rejected ).sendError( 503 );
+
+        filter.doFilter( request( "GET", "/node/3" ), mock( HttpServletResponse.class ),
+                countingChain() );
+        assertEquals( 2, executed.get() );
+    }
+
+    @Test
+    public void shouldLimitConcurrentRequestsPerEndpoint() throws Exception
+    {
+        final RequestLimitFilter filter = new RequestLimitFilter( 10, 0, 1000,
+                Collections.singletonMap( "traverse", 1 ) );
+        final HttpServletResponse accepted = mock( HttpServletResponse.class );
+        final HttpServletResponse rejected = mock( HttpServletResponse.class );
+
+        filter.doFilter( request( "POST", "/node/1/traverse/node" ),
+                mock( HttpServletResponse.class ), new FilterChain()
+                {
+                    public void doFilter( ServletRequest request, ServletResponse response )
+                            throws IOException, ServletException
+                    {
+                        executed.incrementAndGet();
+                        filter.doFilter( request( "GET", "/node/1" ), accepted, countingChain() );
+                        filter.doFilter( request( "POST", "/node/2/traverse/path" ), rejected,
+                                countingChain() );
+                    }
+                } );
+
+        assertEquals( 2, executed.get() );
+        verify( accepted, never() ).sendError( 503 );
+        verify( rejected ).sendError( 503 );
+    }
+
+    @Test
+    public void shouldQueueRequestsAndResumeThemWhenOthersFinish() throws Exception
+    {
+        RequestLimitFilter filter = new RequestLimitFilter( 1, 2, 10000,
+                Collections.<String, Integer>emptyMap() );
+        BlockingChain blocking = new BlockingChain();
+        Thread running = filterIn( filter, request( "GET", "/node/1" ), blocking );
+        blocking.awaitStarted();
+        HttpServletResponse firstResponse = mock( HttpServletResponse.class );
+        HttpServletResponse secondResponse = mock( HttpServletResponse.class );
+        Thread first = filterIn( filter, request( "GET", "/node/2" ), firstResponse, countingChain() );
+        Thread second = filterIn( filter, request( "GET", "/node/3" ), secondResponse, countingChain() );
+        awaitQueued( filter, 2 );
+        assertEquals( 0, executed.get() );
+
+        blocking.finish();
+        join( running, first, second );
+
+        assertEquals( 2, executed.get() );
+        assertEquals( 0, filter.getQueuedRequests() );
+        verify( firstResponse, never() ).sendError( 503 );
+        verify( secondResponse, never() ).sendError( 503 );
+    }
+
+    @Test
+    public void shouldResumeReadsBeforeWrites() throws Exception
+    {
+        RequestLimitFilter filter = new RequestLimitFilter( 1, 3, 10000,
+                Collections.<String, Integer>emptyMap() );
+        BlockingChain blocking = new BlockingChain();
+        Thread running = filterIn( filter, request( "POST", "/node" ), blocking );
+        blocking.awaitStarted();
+        List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+        Thread write = filterIn( filter, request( "POST", "/node/1/relationships" ),
+                mock( HttpServletResponse.class ), recordingChain( order ) );
+        awaitQueued( filter, 1 );
+        Thread firstRead = filterIn( filter, request( "GET", "/node/1" ),
+                mock( HttpServletResponse.class ), recordingChain( order ) );
+        awaitQueued( filter, 2 );
+        Thread secondRead = filterIn( filter, request( "GET", "/node/2" ),
+                mock( HttpServletResponse.class ), recordingChain( order ) );
+        awaitQueued( filter, 3 );
+
+        blocking.finish();
+        join( running, write, firstRead, secondRead );
+
+        assertEquals( Arrays.asList( "/node/1", "/node/2", "/node/1/relationships" ), order );
+    }
+
+    @Test
+    public void shouldRespondWith503WhenQueuedForTooLong() throws Exception
+    {
+        RequestLimitFilter filter = new RequestLimitFilter( 1, 2, 100,
+                Collections.<String, Integer>emptyMap() );
+        BlockingChain blocking = new BlockingChain();
+        Thread running = filterIn( filter, request( "GET", "/node/1" ), blocking );
+        blocking.awaitStarted();
+        HttpServletResponse firstRejected = mock( HttpServletResponse.class );
+        HttpServletResponse secondRejected = mock( HttpServletResponse.class );
+        Thread first = filterIn( filter, request( "GET", "/node/2" ), firstRejected, countingChain() );
+        Thread second = filterIn( filter, request( "POST", "/node" ), secondRejected, countingChain() );
+        join( first, second );
+
+        assertEquals( 0, executed.get() );
+        assertEquals( 0, filter.getQueuedRequests() );
+        verify( firstRejected ).setHeader( "Retry-After", "1" );
+        verify( firstRejected ).sendError( 503 );
+        verify( secondRejected ).sendError( 503 );
+
+        blocking.finish();
+        join( running );
+        filter.doFilter( request( "GET", "/node/3" ), mock( HttpServletResponse.class ),
+                countingChain() );
+        assertEquals( 1, executed.get() );
+    }
+
+    @Test
+    public void shouldRejectRequestsWhenQueueIsFull() throws Exception
+    {
+        RequestLimitFilter filter = new RequestLimitFilter( 1, 2, 10000,
+                Collections.<String, Integer>emptyMap() );
+        BlockingChain blocking = new BlockingChain();
+        Thread running = filterIn( filter, request( "GET", "/node/1" ), blocking );
+        blocking.awaitStarted();
+        HttpServletResponse firstQueued = mock( HttpServletResponse.class );
+        HttpServletResponse secondQueued = mock( HttpServletResponse.class );
+        Thread first = filterIn( filter, request( "GET", "/node/2" ), firstQueued, countingChain() );
+        Thread second = filterIn( filter, request( "GET", "/node/3" ), secondQueued, countingChain() );
+        awaitQueued( filter, 2 );
+
+        HttpServletResponse rejected = mock( HttpServletResponse.class );
+        filter.doFilter( request( "GET", "/node/4" ), rejected, countingChain() );
+        verify( rejected ).sendError( 503 );
+        assertEquals( 0, executed.get() );
+
+        blocking.finish();
+        join( running, first, second );
+        assertEquals( 2, executed.get() );
+        verify( firstQueued, never() ).sendError( 503 );
+        verify( secondQueued, never() ).sendError( 503 );
+    }
+
+    private Thread filterIn( RequestLimitFilter filter, HttpServletRequest request,
+            FilterChain chain )
+    {
+        return filterIn( filter, request, mock( HttpServletResponse.class ), chain );
+    }
+
+    /**
+     * Starts a thread which sends {@code request} through {@code filter}.
+     */
+    private Thread filterIn( final RequestLimitFilter filter, final HttpServletRequest request,
+            final HttpServletResponse response, final FilterChain chain )
+    {
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    filter.doFilter( request, response, chain );
+                }
+                catch ( Throwable e )
+                {
+                    failure.compareAndSet( null, e );
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void join( Thread... threads ) throws InterruptedException
+    {
+        for ( Thread thread : threads )
+        {
+            thread.join( 10000 );
+            assertFalse( "Request didn't finish", thread.isAlive() );
+        }
+        assertNull( failure.get() );
+    }
+
+    private static void awaitQueued( RequestLimitFilter filter, int count )
+            throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while ( filter.getQueuedRequests() < count )
+        {
+            if ( System.currentTimeMillis() > end )
+            {
+                throw new AssertionError( "Only " + filter.getQueuedRequests() +
+                        " requests got queued, expected " + count );
+            }
+            Thread.sleep( 10 );
+        }
+    }
+
+    /**
+     * Keeps the request running until {@link #finish()} is called.
+     */
+    private static class BlockingChain implements FilterChain
+    {
+        private final CountDownLatch started = new CountDownLatch( 1 );
+        private final CountDownLatch finished = new CountDownLatch( 1 );
+
+        public void doFilter( ServletRequest request, ServletResponse response )
+                throws IOException, ServletException
+        {
+            started.countDown();
+            try
+            {
+                finished.await();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void awaitStarted() throws InterruptedException
+        {
+            assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+        }
+
+        void finish()
+        {
+            finished.countDown();
+        }
+    }
+
+    private static FilterChain recordingChain( final List<String> order )
+    {
+        return new FilterChain()
+        {
+            public void doFilter( ServletRequest request, ServletResponse response )
+            {
+                order.add( ((HttpServletRequest) request).getPathInfo() );
+            }
+        };
+    }
+
+    private FilterChain countingChain()
+    {
+        return new FilterChain()
+        {
+            public void doFilter( ServletRequest request, ServletResponse response )
+            {
+                executed.incrementAndGet();
+            }
+        };
+    }
+
+    private static HttpServletRequest request( String method, String path )
+    {
+        HttpServletRequest request = mock( HttpServletRequest.class );
+        when( request.getMethod() ).thenReturn( method );
+        when( request.getPathInfo() ).thenReturn( path );
+        return request;
+    }
+}